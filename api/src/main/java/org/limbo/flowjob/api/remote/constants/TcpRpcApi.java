@@ -0,0 +1,65 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.api.remote.constants;
+
+/**
+ * TCP 协议下的方法名，请求体、响应体与对应的 HTTP 接口一致
+ *
+ * @author Brozen
+ * @since 2024-06-14
+ */
+public interface TcpRpcApi {
+
+    /**
+     * broker -> worker 下发任务，对应 {@link HttpWorkerApi#API_SEND_TASK}
+     */
+    String WORKER_SEND_TASK = "worker.task.send";
+
+    /**
+     * broker -> worker 批量下发任务，对应 {@link HttpWorkerApi#API_SEND_TASKS}
+     */
+    String WORKER_SEND_TASKS = "worker.task.sendBatch";
+
+    /**
+     * worker -> broker 注册
+     */
+    String BROKER_REGISTER = "broker.worker.register";
+
+    /**
+     * worker -> broker 心跳，key 为 workerId
+     */
+    String BROKER_HEARTBEAT = "broker.worker.heartbeat";
+
+    /**
+     * worker -> broker 任务反馈，key 为 taskId
+     */
+    String BROKER_TASK_FEEDBACK = "broker.task.feedback";
+
+    /**
+     * worker -> broker 长轮询拉取任务，key 为 workerId
+     */
+    String BROKER_TASK_PULL = "broker.task.pull";
+
+    /**
+     * worker -> broker 确认已接收拉取到的任务，key 为 workerId
+     */
+    String BROKER_TASK_ACK = "broker.task.ack";
+
+}
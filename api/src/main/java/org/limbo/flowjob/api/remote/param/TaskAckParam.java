@@ -0,0 +1,47 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.api.remote.param;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import javax.validation.constraints.NotEmpty;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * worker 确认已接收拉取到的任务，确认后任务才算下发成功
+ *
+ * @author Brozen
+ * @since 2024-06-17
+ */
+@Data
+@Schema(title = "worker 确认接收任务参数")
+public class TaskAckParam implements Serializable {
+
+    private static final long serialVersionUID = 5318750249261503402L;
+
+    /**
+     * 已接收的任务 ID
+     */
+    @NotEmpty(message = "taskIds can't be empty")
+    @Schema(description = "已接收的任务 ID")
+    private List<String> taskIds;
+
+}
@@ -0,0 +1,56 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.api.remote.param;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.io.Serializable;
+
+/**
+ * worker 拉取任务的参数，broker 根据 worker 注册的执行器、标签匹配任务
+ *
+ * @author Brozen
+ * @since 2024-06-17
+ */
+@Data
+@Schema(title = "worker 拉取任务参数")
+public class TaskPullParam implements Serializable {
+
+    private static final long serialVersionUID = -2403127624337166214L;
+
+    /**
+     * 本次最多拉取的任务数，一般为 worker 队列的余量
+     */
+    @NotNull(message = "limit can't be null")
+    @Min(value = 1, message = "limit must be positive")
+    @Schema(description = "本次最多拉取的任务数")
+    private Integer limit;
+
+    /**
+     * 没有任务时最长等待时间，毫秒，为 0 时立即返回
+     */
+    @Min(value = 0, message = "timeout can't be negative")
+    @Schema(description = "没有任务时最长等待时间，毫秒")
+    private long timeout;
+
+}
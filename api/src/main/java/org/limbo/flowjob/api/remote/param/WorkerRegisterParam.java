@@ -18,11 +18,14 @@
 
 package org.limbo.flowjob.api.remote.param;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.limbo.flowjob.common.constants.DispatchMode;
 import org.limbo.flowjob.common.constants.Protocol;
+import org.limbo.flowjob.common.utils.json.RpcURLDeserializer;
 
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
@@ -55,6 +58,7 @@ public class WorkerRegisterParam implements Serializable {
      */
     @NotNull(message = "worker 通信 URL 不可为空")
     @Schema(description = "worker 通信使用的 URL", implementation = String.class)
+    @JsonDeserialize(using = RpcURLDeserializer.class)
     private URL url;
 
     /**
@@ -76,6 +80,12 @@ public class WorkerRegisterParam implements Serializable {
     @Schema(description = "执行器")
     private List<WorkerExecutorRegisterParam> executors;
 
+    /**
+     * worker 获取任务的方式，未指定时为 {@link DispatchMode#PUSH}
+     */
+    @Schema(description = "worker 获取任务的方式，1-broker推送 2-worker拉取", implementation = Integer.class)
+    private DispatchMode dispatchMode;
+
     /**
      * worker所属租户信息
      */
@@ -23,6 +23,7 @@ import org.limbo.flowjob.broker.core.cluster.BrokerConfig;
 import org.limbo.flowjob.broker.core.cluster.NodeManger;
 import org.limbo.flowjob.broker.core.cluster.NodeRegistry;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTask;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskLoader;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskScheduler;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
@@ -41,18 +42,25 @@ public class BrokerStarter extends Broker implements ApplicationEventPublisherAw
 
     private final List<MetaTask> metaTasks;
 
+    private final List<MetaTaskLoader> metaTaskLoaders;
+
     private ApplicationEventPublisher eventPublisher;
 
-    public BrokerStarter(BrokerConfig config, NodeRegistry registry, NodeManger manger, MetaTaskScheduler metaTaskScheduler, List<MetaTask> metaTasks) {
+    public BrokerStarter(BrokerConfig config, NodeRegistry registry, NodeManger manger, MetaTaskScheduler metaTaskScheduler,
+                         List<MetaTask> metaTasks, List<MetaTaskLoader> metaTaskLoaders) {
         super(config, registry, manger);
         this.metaTaskScheduler = metaTaskScheduler;
         this.metaTasks = metaTasks;
+        this.metaTaskLoaders = metaTaskLoaders;
     }
 
     @Override
     public void start() {
         super.start();
 
+        // 注册元任务压缩记录的加载器
+        metaTaskLoaders.forEach(metaTaskScheduler::registerLoader);
+
         // 启动所有元任务调度
         metaTasks.forEach(metaTaskScheduler::schedule);
 
@@ -0,0 +1,172 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.broker.application.component;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.limbo.flowjob.api.ResponseDTO;
+import org.limbo.flowjob.api.remote.constants.TcpRpcApi;
+import org.limbo.flowjob.api.remote.param.TaskAckParam;
+import org.limbo.flowjob.api.remote.param.TaskFeedbackParam;
+import org.limbo.flowjob.api.remote.param.TaskPullParam;
+import org.limbo.flowjob.api.remote.param.WorkerHeartbeatParam;
+import org.limbo.flowjob.api.remote.param.WorkerRegisterParam;
+import org.limbo.flowjob.broker.application.config.BrokerProperties;
+import org.limbo.flowjob.broker.application.service.TaskService;
+import org.limbo.flowjob.broker.application.service.WorkerService;
+import org.limbo.flowjob.broker.core.schedule.scheduler.NamedThreadFactory;
+import org.limbo.flowjob.common.exception.VerifyException;
+import org.limbo.flowjob.common.rpc.RpcCodec;
+import org.limbo.flowjob.common.rpc.TcpRpcServer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * 对 worker 提供的 TCP 接口，与 WorkerRpcController 中的注册、心跳、任务反馈、任务拉取、确认接收接口一致。配置了 tcp-port 时启动。
+ *
+ * @author Brozen
+ * @since 2024-06-14
+ */
+@Slf4j
+@Component
+public class BrokerTcpServer {
+
+    @Setter(onMethod_ = @Inject)
+    private BrokerProperties brokerProperties;
+
+    @Setter(onMethod_ = @Inject)
+    private WorkerService workerService;
+
+    @Setter(onMethod_ = @Inject)
+    private TaskService taskService;
+
+    @Setter(onMethod_ = @Inject)
+    private Validator validator;
+
+    private TcpRpcServer server;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!brokerProperties.isEnabled() || brokerProperties.getTcpPort() <= 0) {
+            return;
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors() * 2;
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1024),
+                NamedThreadFactory.newInstance("BrokerTcpRpc"), new ThreadPoolExecutor.AbortPolicy());
+
+        server = new TcpRpcServer(brokerProperties.getTcpPort(), executor)
+                .register(TcpRpcApi.BROKER_REGISTER, (key, payload) -> handle(() -> {
+                    WorkerRegisterParam param = validate(RpcCodec.decode(payload, WorkerRegisterParam.class));
+                    return workerService.register(param);
+                }))
+                .register(TcpRpcApi.BROKER_HEARTBEAT, (key, payload) -> handle(() -> {
+                    WorkerHeartbeatParam param = validate(RpcCodec.decode(payload, WorkerHeartbeatParam.class));
+                    return workerService.heartbeat(key, param);
+                }))
+                .register(TcpRpcApi.BROKER_TASK_FEEDBACK, (key, payload) -> handle(() -> {
+                    TaskFeedbackParam param = validate(RpcCodec.decode(payload, TaskFeedbackParam.class));
+                    taskService.taskFeedback(key, param);
+                    return null;
+                }))
+                .registerAsync(TcpRpcApi.BROKER_TASK_PULL, (key, payload) -> {
+                    try {
+                        TaskPullParam param = validate(RpcCodec.decode(payload, TaskPullParam.class));
+                        return workerService.pullTasks(key, param).handle(this::response);
+                    } catch (Exception e) {
+                        return CompletableFuture.completedFuture(response(null, e));
+                    }
+                })
+                .register(TcpRpcApi.BROKER_TASK_ACK, (key, payload) -> handle(() -> {
+                    TaskAckParam param = validate(RpcCodec.decode(payload, TaskAckParam.class));
+                    return workerService.ackTasks(key, param);
+                }));
+        server.start();
+    }
+
+    /**
+     * 执行处理逻辑，异常转换为与 HTTP 接口相同的响应
+     */
+    private byte[] handle(Supplier<Object> supplier) {
+        try {
+            return response(supplier.get(), null);
+        } catch (Exception e) {
+            return response(null, e);
+        }
+    }
+
+    /**
+     * 将处理结果或异常转换为与 HTTP 接口相同的响应
+     */
+    private byte[] response(Object data, Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+
+        ResponseDTO<Object> response;
+        if (e == null) {
+            response = ResponseDTO.<Object>builder().ok(data).build();
+        } else if (e instanceof VerifyException) {
+            response = ResponseDTO.<Object>builder().badRequest(e.getMessage()).build();
+        } else {
+            log.error("出错了", e);
+            response = ResponseDTO.<Object>builder().error(e.getMessage()).build();
+        }
+        return RpcCodec.encode(response);
+    }
+
+    private <T> T validate(T param) {
+        Set<ConstraintViolation<T>> violations = validator.validate(param);
+        if (!violations.isEmpty()) {
+            String msg = violations.stream()
+                    .map(v -> v.getPropertyPath() + " " + v.getMessage())
+                    .collect(Collectors.joining("\n"));
+            throw new VerifyException("Arguments error: \n" + msg);
+        }
+        return param;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.close();
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -18,25 +18,40 @@
 
 package org.limbo.flowjob.broker.application.component;
 
-import lombok.AllArgsConstructor;
-import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.limbo.flowjob.broker.application.config.BrokerProperties;
 import org.limbo.flowjob.broker.core.domain.IDGenerator;
 import org.limbo.flowjob.broker.core.domain.IDType;
+import org.limbo.flowjob.broker.core.schedule.scheduler.NamedThreadFactory;
 import org.limbo.flowjob.broker.dao.entity.IdEntity;
 import org.limbo.flowjob.broker.dao.repositories.IdEntityRepo;
 import org.limbo.flowjob.common.constants.MsgConstants;
 import org.limbo.flowjob.common.utils.Verifies;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
-import javax.transaction.Transactional;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 /**
+ * 号段 ID 分配
+ * 每种类型持有当前号段和预取的下一个号段，分配时只做原子自增。当前号段剩余低于阈值时异步预取下一个号段，
+ * 用完后直接切换，只有预取未完成时才需要等待。号段步长根据消耗速度调整。
+ *
  * @author Devil
  * @since 2022/11/26
  */
@@ -44,85 +59,215 @@ import java.util.concurrent.atomic.AtomicLong;
 @Component
 public class IDGeneratorComponent implements IDGenerator {
 
-    private static final Map<IDType, ID> ID_MAP = new ConcurrentHashMap<>();
+    /**
+     * 获取号段的最大重试次数
+     */
+    private static final int MAX_RETRY = 10;
+
+    /**
+     * 等待号段加载的最长时间
+     */
+    private static final long MAX_WAIT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final Map<IDType, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+
+    private final ExecutorService prefetchExecutor = new ThreadPoolExecutor(0, IDType.values().length, 60, TimeUnit.SECONDS,
+            new SynchronousQueue<>(), NamedThreadFactory.newInstance("IdSegmentPrefetch"), new ThreadPoolExecutor.CallerRunsPolicy());
 
     @Setter(onMethod_ = @Inject)
     private IdEntityRepo idEntityRepo;
 
+    @Setter(onMethod_ = @Inject)
+    private BrokerProperties brokerProperties;
+
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 号段在独立事务中获取，避免调用方事务回滚后号段被重复分配
+     */
+    @Inject
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        prefetchExecutor.shutdown();
+    }
+
     @Override
-    @Transactional
     public String generateId(IDType type) {
-        Long randomAutoId = gainRandomAutoId(type);
-//        String id = randomAutoId + String.format("%2d", planId).replace(" ", "0") + String.format("%4d", jobId % 10000).replace(" ", "0");
-        return String.valueOf(randomAutoId);
+        Verifies.notNull(type, MsgConstants.UNKNOWN + " type: " + type);
+        return String.valueOf(nextId(buffers.computeIfAbsent(type, SegmentBuffer::new)));
     }
 
-    private Long gainRandomAutoId(final IDType type) {
-        ID id = ID_MAP.get(type);
-        if (id == null) {
-            id = getNewId(type);
-        }
+    private long nextId(SegmentBuffer buffer) {
+        long deadline = System.nanoTime() + MAX_WAIT_NANOS;
+        while (true) {
+            Segment segment = buffer.current.get();
+            long id = segment.next();
+            if (id > 0) {
+                if (segment.remaining(id) < segment.step * brokerProperties.getIdSegment().getPrefetchThreshold()) {
+                    prefetch(buffer);
+                }
+                return id;
+            }
+
+            // 当前号段用完 切换到预取的号段
+            Segment next = buffer.next.get();
+            if (next != null) {
+                if (buffer.current.compareAndSet(segment, next)) {
+                    buffer.next.compareAndSet(next, null);
+                }
+                continue;
+            }
 
-        int time = 0;
-        while (time < 10) {
-            long currentId = id.getCurrentId().incrementAndGet();
-            if (currentId >= id.getEndId()) {
-                id = getNewId(type);
+            // 没有预取中的号段 由当前线程加载，否则等待预取完成
+            if (buffer.loading.compareAndSet(false, true)) {
+                try {
+                    buffer.next.set(loadSegment(buffer));
+                } finally {
+                    buffer.loading.set(false);
+                }
+            } else if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException("The system is busy, Try again later!!!");
             } else {
-                return currentId;
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
             }
-            time++;
         }
-        throw new IllegalStateException("The system is busy, Try again later!!!");
     }
 
-    private synchronized ID getNewId(IDType type) {
-        Verifies.notNull(type, MsgConstants.UNKNOWN + " type: " + type);
-
-        // 防止并发情况下，重复执行后续代码
-        if (ID_MAP.containsKey(type)) {
-            return ID_MAP.get(type);
+    /**
+     * 异步预取下一个号段
+     */
+    private void prefetch(SegmentBuffer buffer) {
+        if (buffer.next.get() != null || !buffer.loading.compareAndSet(false, true)) {
+            return;
         }
+        try {
+            prefetchExecutor.execute(() -> {
+                try {
+                    buffer.next.set(loadSegment(buffer));
+                } catch (Exception e) {
+                    log.error("prefetch id segment fail type:{}", buffer.type, e);
+                } finally {
+                    buffer.loading.set(false);
+                }
+            });
+        } catch (Exception e) {
+            buffer.loading.set(false);
+            log.error("submit id segment prefetch fail type:{}", buffer.type, e);
+        }
+    }
 
-        String typeName = type.name();
-
-        int updateNum = 0; // 更新库存的条数
-        int time = 0; // 重试次数
-
-        long startId = 0;
-        long endId = 0;
-
-        while (updateNum <= 0 && time < 10) {
-            // 加锁 获取 类型
-            IdEntity idEntity = idEntityRepo.findById(typeName).orElse(null);
-            Verifies.notNull(idEntity, MsgConstants.UNKNOWN + " ID Type of " + typeName);
-            startId = idEntity.getCurrentId();
-            endId = idEntity.getCurrentId() + idEntity.getStep();
-            updateNum = idEntityRepo.casGainId(typeName, endId, startId);
-            try {
-                Thread.sleep(200);
-            } catch (InterruptedException e) {
-                log.error("thread sleep fail", e);
-                Thread.currentThread().interrupt();
+    /**
+     * 通过 CAS 更新 flowjob_id 获取号段，每次尝试使用独立事务以读取到最新的 currentId
+     */
+    private Segment loadSegment(SegmentBuffer buffer) {
+        String typeName = buffer.type.name();
+        for (int time = 0; time < MAX_RETRY; time++) {
+            Segment segment = transactionTemplate.execute(status -> {
+                IdEntity idEntity = idEntityRepo.findById(typeName).orElse(null);
+                Verifies.notNull(idEntity, MsgConstants.UNKNOWN + " ID Type of " + typeName);
+                int step = buffer.adaptStep(idEntity.getStep());
+                long startId = idEntity.getCurrentId();
+                long endId = startId + step;
+                if (idEntityRepo.casGainId(typeName, endId, startId) <= 0) {
+                    return null;
+                }
+                return new Segment(startId, endId, step);
+            });
+            if (segment != null) {
+                buffer.loadedAt = System.currentTimeMillis();
+                return segment;
             }
-            time++;
+            // 其它节点并发获取 短暂退避后重试
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(ThreadLocalRandom.current().nextInt(5, 50)));
         }
+        throw new IllegalStateException("The system is busy, Try again later!!!");
+    }
+
+    /**
+     * 一种类型的双号段缓冲
+     */
+    private class SegmentBuffer {
+
+        private final IDType type;
+
+        private final AtomicReference<Segment> current = new AtomicReference<>(Segment.EMPTY);
+
+        private final AtomicReference<Segment> next = new AtomicReference<>();
 
-        if (updateNum < 0) {
-            throw new IllegalStateException("The system is busy, Try again later!!!");
+        private final AtomicBoolean loading = new AtomicBoolean(false);
+
+        /**
+         * 当前步长，为 0 时使用库中配置的步长
+         */
+        private volatile int step;
+
+        /**
+         * 上次获取号段的时间
+         */
+        private volatile long loadedAt;
+
+        SegmentBuffer(IDType type) {
+            this.type = type;
         }
 
-        ID id = new ID(new AtomicLong(startId), endId);
-        ID_MAP.put(type, id);
-        return id;
+        /**
+         * 根据上个号段的使用时长调整步长
+         */
+        int adaptStep(int baseStep) {
+            BrokerProperties.IdSegment config = brokerProperties.getIdSegment();
+            int current = Math.max(step, baseStep);
+            if (loadedAt > 0) {
+                long duration = System.currentTimeMillis() - loadedAt;
+                long expect = config.getSegmentDuration().toMillis();
+                if (duration < expect) {
+                    current = Math.min(current * 2, Math.max(config.getMaxStep(), baseStep));
+                } else if (duration > expect * 2) {
+                    current = Math.max(current / 2, baseStep);
+                }
+            }
+            step = current;
+            return current;
+        }
     }
 
-    @Getter
-    @AllArgsConstructor
-    private static class ID {
-        private AtomicLong currentId;
+    /**
+     * 号段 (startId, endId]
+     */
+    private static class Segment {
 
-        private Long endId;
+        private static final Segment EMPTY = new Segment(0, 0, 0);
+
+        private final AtomicLong currentId;
+
+        private final long endId;
+
+        private final int step;
+
+        Segment(long startId, long endId, int step) {
+            this.currentId = new AtomicLong(startId);
+            this.endId = endId;
+            this.step = step;
+        }
+
+        /**
+         * @return 分配的 id，号段用完返回 -1
+         */
+        long next() {
+            if (currentId.get() >= endId) {
+                return -1;
+            }
+            long id = currentId.incrementAndGet();
+            return id <= endId ? id : -1;
+        }
+
+        long remaining(long id) {
+            return endId - id;
+        }
     }
 
 }
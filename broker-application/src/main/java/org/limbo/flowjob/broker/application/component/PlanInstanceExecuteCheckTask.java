@@ -33,6 +33,7 @@ import org.limbo.flowjob.common.constants.PlanStatus;
 import org.limbo.flowjob.common.utils.time.TimeUtils;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.time.Duration;
 import java.util.List;
@@ -65,6 +66,20 @@ public class PlanInstanceExecuteCheckTask extends FixDelayMetaTask {
         this.nodeManger = nodeManger;
     }
 
+    /**
+     * 获得新槽位时立即接管其中的实例，不等待下次检查
+     */
+    @PostConstruct
+    public void init() {
+        slotManager.subscribeGained(slots -> metaTaskScheduler.executor(getType()).execute(() -> {
+            try {
+                handoff(slotManager.planIds(slots));
+            } catch (Exception e) {
+                log.error("handoff plan instances of slots {} fail", slots, e);
+            }
+        }));
+    }
+
     @Override
     protected void executeTask() {
         // 判断自己是否存在 --- 可能由于心跳异常导致不存活
@@ -72,7 +87,13 @@ public class PlanInstanceExecuteCheckTask extends FixDelayMetaTask {
             return;
         }
 
-        List<String> planIds = slotManager.planIds();
+        recover(slotManager.planIds());
+    }
+
+    /**
+     * 重新调度 plan 下长时间处于 SCHEDULING 状态的实例
+     */
+    public void recover(List<String> planIds) {
         if (CollectionUtils.isEmpty(planIds)) {
             return;
         }
@@ -87,6 +108,24 @@ public class PlanInstanceExecuteCheckTask extends FixDelayMetaTask {
         }
     }
 
+    /**
+     * 接管新获得槽位下 plan 的 SCHEDULING 实例。原节点已失去槽位，不需要等待超时，已到触发时间的实例都重新调度
+     */
+    public void handoff(List<String> planIds) {
+        if (CollectionUtils.isEmpty(planIds)) {
+            return;
+        }
+
+        List<PlanInstanceEntity> list = planInstanceEntityRepo.findByPlanIdInAndTriggerAtLessThanEqualAndStatus(planIds, TimeUtils.currentLocalDateTime(), PlanStatus.SCHEDULING.status);
+        if (CollectionUtils.isEmpty(list)) {
+            return;
+        }
+        log.info("handoff {} plan instances", list.size());
+        for (PlanInstanceEntity entity : list) {
+            scheduleStrategy.schedulePlanInstance(entity.getPlanId(), entity.getPlanInstanceId(), entity.getTriggerAt());
+        }
+    }
+
     @Override
     public MetaTaskType getType() {
         return MetaTaskType.PLAN_EXECUTE_CHECK;
@@ -18,6 +18,7 @@
 
 package org.limbo.flowjob.broker.application.component;
 
+import com.google.common.collect.Lists;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
@@ -30,17 +31,19 @@ import org.limbo.flowjob.broker.core.schedule.scheduler.meta.PlanScheduleTask;
 import org.limbo.flowjob.broker.dao.converter.DomainConverter;
 import org.limbo.flowjob.broker.dao.entity.PlanEntity;
 import org.limbo.flowjob.broker.dao.repositories.PlanEntityRepo;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
 import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
 import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
  * 获取plan下发
- * 相比update的任务比较久
+ * 全量分页加载当前节点槽位下的 plan，仅在首次运行以及间隔 {@link #RELOAD_INTERVAL} 时执行，其余变更由 {@link UpdatedPlanLoadTask} 增量加载
+ * 槽位变化时只加载新获得槽位下的 plan，其中未完成调度的实例由 {@link PlanInstanceExecuteCheckTask#handoff} 在槽位变化时立即接管，失去的槽位由 {@link SlotManager} 取消调度
  * 此任务主要为防止 plan 调度中异常导致 在时间轮中丢失
  */
 @Slf4j
@@ -62,6 +65,26 @@ public class PlanLoadTask extends FixDelayMetaTask {
     @Setter(onMethod_ = @Inject)
     private NodeManger nodeManger;
 
+    /**
+     * 每页加载的 plan 数量
+     */
+    private static final int PAGE_SIZE = 500;
+
+    /**
+     * 槽位未变化时，全量加载的间隔
+     */
+    private static final Duration RELOAD_INTERVAL = Duration.ofMinutes(5);
+
+    /**
+     * 上次加载时的槽位
+     */
+    private List<Integer> loadedSlots;
+
+    /**
+     * 上次全量加载的时间
+     */
+    private LocalDateTime loadedAt;
+
     public PlanLoadTask(MetaTaskScheduler scheduler) {
         super(Duration.ofSeconds(1), scheduler);
     }
@@ -77,15 +100,37 @@ public class PlanLoadTask extends FixDelayMetaTask {
                 return;
             }
 
-            // 调度当前时间以及未来的任务
-            List<PlanScheduleTask> plans = loadTasks();
+            // 槽位未变化且未到全量加载时间的 由增量加载处理
+            List<Integer> slots = slotManager.slots();
+            LocalDateTime now = TimeUtils.currentLocalDateTime();
+            boolean reload = loadedAt == null || !now.isBefore(loadedAt.plus(RELOAD_INTERVAL));
+            if (!reload && slots.equals(loadedSlots)) {
+                return;
+            }
 
-            // 重新调度 新增/版本变更的plan
-            if (CollectionUtils.isNotEmpty(plans)) {
-                for (PlanScheduleTask plan : plans) {
-                    metaTaskScheduler.schedule(plan);
+            // 槽位变化 只加载新获得的槽位
+            if (!reload) {
+                List<Integer> gained = new ArrayList<>(slots);
+                gained.removeAll(loadedSlots);
+                if (!gained.isEmpty()) {
+                    List<String> planIds = slotManager.planIds(gained);
+                    for (List<String> page : Lists.partition(planIds, PAGE_SIZE)) {
+                        loadAndSchedule(page);
+                    }
                 }
+                loadedSlots = slots;
+                return;
             }
+
+            // 全量校对槽位缓存后 分页加载 调度当前时间以及未来的任务
+            slotManager.reconcile();
+            List<String> planIds = slotManager.planIds();
+            for (List<String> page : Lists.partition(planIds, PAGE_SIZE)) {
+                loadAndSchedule(page);
+            }
+
+            loadedSlots = slots;
+            loadedAt = now;
         } catch (Exception e) {
             log.error("{} load and schedule plan task fail", scheduleId(), e);
         }
@@ -93,22 +138,16 @@ public class PlanLoadTask extends FixDelayMetaTask {
 
 
     /**
-     * 加载触发时间在指定时间之前的 Plan。
+     * 加载一页 Plan 并调度，已经在调度中的不会重复调度
      */
-    private List<PlanScheduleTask> loadTasks() {
-        List<String> planIds = slotManager.planIds();
-        if (CollectionUtils.isEmpty(planIds)) {
-            return Collections.emptyList();
-        }
+    private void loadAndSchedule(List<String> planIds) {
         List<PlanEntity> planEntities = planEntityRepo.loadPlans(planIds);
         if (CollectionUtils.isEmpty(planEntities)) {
-            return Collections.emptyList();
+            return;
         }
-        List<PlanScheduleTask> plans = new ArrayList<>();
-        for (PlanEntity planEntity : planEntities) {
-            plans.add(domainConverter.toPlanScheduleTask(planEntity));
+        for (PlanScheduleTask plan : domainConverter.toPlanScheduleTasks(planEntities)) {
+            metaTaskScheduler.schedule(plan);
         }
-        return plans;
     }
 
 
@@ -0,0 +1,71 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.application.component;
+
+import lombok.Setter;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.DeferredMetaTask;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTask;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskLoader;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskType;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.PlanScheduleTask;
+import org.limbo.flowjob.broker.dao.converter.DomainConverter;
+import org.limbo.flowjob.broker.dao.entity.PlanEntity;
+import org.limbo.flowjob.broker.dao.repositories.PlanEntityRepo;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+import java.util.Objects;
+
+/**
+ * 触发时间临近时，将 plan 的压缩记录重新加载为 PlanScheduleTask
+ *
+ * @author Brozen
+ * @since 2023-02-20
+ */
+@Component
+public class PlanScheduleTaskLoader implements MetaTaskLoader {
+
+    @Setter(onMethod_ = @Inject)
+    private PlanEntityRepo planEntityRepo;
+
+    @Setter(onMethod_ = @Inject)
+    private DomainConverter domainConverter;
+
+    @Override
+    public MetaTaskType getType() {
+        return MetaTaskType.PLAN;
+    }
+
+    @Override
+    public MetaTask load(DeferredMetaTask task) {
+        // metaId 为 planId-version
+        String metaId = task.getMetaId();
+        String planId = PlanScheduleTask.parsePlanId(metaId);
+        String version = metaId.substring(planId.length() + 1);
+
+        // 版本变更或停用的 plan 无需加载，新版本由加载任务调度
+        PlanEntity planEntity = planEntityRepo.findById(planId).orElse(null);
+        if (planEntity == null || planEntity.isDeleted() || !planEntity.isEnabled()
+                || !Objects.equals(version, planEntity.getCurrentVersion())) {
+            return null;
+        }
+        return domainConverter.toPlanScheduleTask(planEntity);
+    }
+
+}
@@ -18,25 +18,42 @@
 
 package org.limbo.flowjob.broker.application.component;
 
+import com.google.common.hash.Hashing;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.limbo.flowjob.broker.core.cluster.BrokerConfig;
 import org.limbo.flowjob.broker.core.cluster.Node;
 import org.limbo.flowjob.broker.core.cluster.NodeManger;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskScheduler;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskType;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.PlanScheduleTask;
 import org.limbo.flowjob.broker.dao.entity.PlanSlotEntity;
 import org.limbo.flowjob.broker.dao.repositories.PlanSlotEntityRepo;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
+ * 槽位管理
+ * 当前节点拥有的槽位只在节点上下线时重新计算，并缓存槽位下的 planId，查询 planId 不访问 DB
+ * 调度中的 plan 按槽位分区，失去的槽位直接批量取消调度，新获得的槽位只加载对应槽位下的 plan
+ * 本节点创建的 plan 直接加入缓存，其它节点创建的 plan 按创建时间增量同步，并定期全量校对
+ *
  * @author Devil
  * @since 2022/8/22
  */
@@ -53,13 +70,68 @@ public class SlotManager {
     @Setter(onMethod_ = @Inject)
     private PlanSlotEntityRepo planSlotEntityRepo;
 
-    public static final int SLOT_SIZE = 64;
+    @Setter(onMethod_ = @Inject)
+    private MetaTaskScheduler metaTaskScheduler;
+
+    /**
+     * 当前节点拥有的槽位，不可变
+     */
+    private volatile SlotSnapshot snapshot;
+
+    /**
+     * 当前节点槽位下的 plan，planId -> slot
+     */
+    private final Map<String, Integer> planSlots = new ConcurrentHashMap<>();
+
+    /**
+     * 增量同步时往前重叠的时间。created_at 是插入时间而非提交时间，重叠时间内插入、之后才提交的 plan_slot 仍能同步到，
+     * 更晚提交的由全量校对兜底
+     */
+    private static final Duration SYNC_OVERLAP = Duration.ofMinutes(1);
+
+    /**
+     * 上次增量同步开始的时间
+     */
+    private LocalDateTime syncedAt;
+
+    /**
+     * 获得新槽位的监听，参数为新获得的槽位，槽位下的 plan 已加载到缓存
+     */
+    private final List<Consumer<List<Integer>>> gainedListeners = new CopyOnWriteArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        checkSlotSize();
+        metaTaskScheduler.registerPartitioner(MetaTaskType.PLAN, task -> planSlot(PlanScheduleTask.parsePlanId(task.getMetaId())));
+        nodeManger.subscribe(event -> refresh());
+    }
+
+    /**
+     * 已有 plan 的槽位不随 slot-size 变化迁移，减少槽位数量后超出范围的 plan 不会被任何节点调度，拒绝启动
+     */
+    private void checkSlotSize() {
+        Integer maxSlot = planSlotEntityRepo.findMaxSlot();
+        if (maxSlot != null && maxSlot >= brokerConfig.getSlotSize()) {
+            throw new IllegalStateException(String.format(
+                    "slot-size %d is less than existing plan slot %d in flowjob_plan_slot, slot-size can only be increased",
+                    brokerConfig.getSlotSize(), maxSlot
+            ));
+        }
+    }
 
     /**
-     * 计算槽位
+     * 计算槽位，使用稳定的 murmur3 哈希，不受 JVM 实现影响且结果非负
      */
     public int slot(String planId) {
-        return planId.hashCode() % SlotManager.SLOT_SIZE;
+        return Math.floorMod(Hashing.murmur3_32_fixed().hashString(planId, StandardCharsets.UTF_8).asInt(), brokerConfig.getSlotSize());
+    }
+
+    /**
+     * plan 所在槽位，优先使用已保存的槽位
+     */
+    private int planSlot(String planId) {
+        Integer slot = planSlots.get(planId);
+        return slot != null ? slot : slot(planId);
     }
 
     /**
@@ -68,48 +140,229 @@ public class SlotManager {
      * @return 当前机器对应的所有槽位
      */
     public List<Integer> slots() {
-        List<Node> sortedNodes = nodeManger.allAlive().stream().sorted(Comparator.comparing(Node::getHost).thenComparingInt(Node::getPort)).collect(Collectors.toList());
+        return snapshot().slots;
+    }
+
+    /**
+     * 当前节点是否拥有槽位
+     */
+    public boolean owns(int slot) {
+        boolean[] owned = snapshot().owned;
+        return slot >= 0 && slot < owned.length && owned[slot];
+    }
+
+    /**
+     * 当前节点是否负责此 plan 的调度
+     */
+    public boolean ownsPlan(String planId) {
+        if (planSlots.containsKey(planId)) {
+            return true;
+        }
+        // 可能是其它节点刚创建、还未同步的 plan
+        PlanSlotEntity slotEntity = planSlotEntityRepo.findByPlanId(planId);
+        if (slotEntity == null || !owns(slotEntity.getSlot())) {
+            return false;
+        }
+        planSlots.put(planId, slotEntity.getSlot());
+        return true;
+    }
+
+    /**
+     * 获取当前节点对应的planId
+     */
+    public List<String> planIds() {
+        snapshot();
+        return new ArrayList<>(planSlots.keySet());
+    }
+
+    /**
+     * 获取当前节点指定槽位下的planId
+     */
+    public List<String> planIds(Collection<Integer> slots) {
+        snapshot();
+        List<String> planIds = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : planSlots.entrySet()) {
+            if (slots.contains(entry.getValue())) {
+                planIds.add(entry.getKey());
+            }
+        }
+        return planIds;
+    }
+
+    /**
+     * 订阅获得新槽位的事件，在节点变更的通知线程中回调
+     */
+    public void subscribeGained(Consumer<List<Integer>> listener) {
+        gainedListeners.add(listener);
+    }
 
-        // 判断自己所在的id位置
-        int mark = -1;
-        for (int i = 0; i < sortedNodes.size(); i++) {
-            Node node = sortedNodes.get(i);
+    /**
+     * 新建 plan 后加入缓存，其它节点创建的 plan 通过 {@link #syncCreatedPlans()} 加入
+     */
+    public void addPlan(String planId, int slot) {
+        if (owns(slot)) {
+            planSlots.put(planId, slot);
+        }
+    }
+
+    private SlotSnapshot snapshot() {
+        SlotSnapshot current = snapshot;
+        if (current == null) {
+            refresh();
+            current = snapshot;
+        }
+        return current;
+    }
+
+    /**
+     * 增量同步其它节点新建的 plan，只查询重叠时间窗口内创建的 plan_slot
+     * @return 新加入缓存的 planId
+     */
+    public synchronized List<String> syncCreatedPlans() {
+        SlotSnapshot current = snapshot();
+        LocalDateTime now = TimeUtils.currentLocalDateTime();
+        LocalDateTime from = (syncedAt == null ? now : syncedAt).minus(SYNC_OVERLAP);
+        syncedAt = now;
+        if (CollectionUtils.isEmpty(current.slots)) {
+            return Collections.emptyList();
+        }
+        return cachePlanSlots(planSlotEntityRepo.findBySlotInAndCreatedAfter(current.slots, from));
+    }
+
+    /**
+     * 全量校对当前槽位下的 plan，兜底增量同步遗漏的 plan_slot
+     * @return 新加入缓存的 planId
+     */
+    public synchronized List<String> reconcile() {
+        SlotSnapshot current = snapshot();
+        if (CollectionUtils.isEmpty(current.slots)) {
+            return Collections.emptyList();
+        }
+        return cachePlanSlots(planSlotEntityRepo.findBySlotIn(current.slots));
+    }
+
+    /**
+     * 节点变更后重新计算槽位，失去的槽位立即取消调度，新获得的槽位立即加载其中的 plan
+     */
+    private synchronized void refresh() {
+        SlotSnapshot previous = snapshot;
+        SlotSnapshot current = new SlotSnapshot(computeSlots(), brokerConfig.getSlotSize());
+        snapshot = current;
+
+        if (previous == null) {
+            log.info("slots init to:{}", current.slots);
+            planSlots.clear();
+            if (CollectionUtils.isNotEmpty(current.slots)) {
+                cachePlanSlots(planSlotEntityRepo.findBySlotIn(current.slots));
+            }
+            return;
+        }
+        if (previous.slots.equals(current.slots)) {
+            return;
+        }
+
+        List<Integer> lost = new ArrayList<>(previous.slots);
+        lost.removeAll(current.slots);
+        List<Integer> gained = new ArrayList<>(current.slots);
+        gained.removeAll(previous.slots);
+        log.info("slots change to:{} lost:{} gained:{}", current.slots, lost, gained);
+
+        if (!lost.isEmpty()) {
+            metaTaskScheduler.unschedulePartitions(MetaTaskType.PLAN, lost);
+            planSlots.values().removeIf(lost::contains);
+        }
+        if (!gained.isEmpty()) {
+            cachePlanSlots(planSlotEntityRepo.findBySlotIn(gained));
+            for (Consumer<List<Integer>> listener : gainedListeners) {
+                try {
+                    listener.accept(gained);
+                } catch (Exception e) {
+                    log.error("slots gained listener error", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按最高随机权重（rendezvous hashing）分配槽位：每个槽位归属于与其哈希值最大的节点，
+     * 节点上下线时只有该节点对应的约 1/N 槽位发生迁移
+     */
+    private List<Integer> computeSlots() {
+        List<Node> nodes = new ArrayList<>(nodeManger.allAlive());
+        Node self = null;
+        for (Node node : nodes) {
             if (Objects.equals(brokerConfig.getHost(), node.getHost()) && Objects.equals(brokerConfig.getPort(), node.getPort())) {
-                mark = i;
+                self = node;
                 break;
             }
         }
 
-        if (mark < 0) {
+        if (self == null) {
             log.warn("can't find in alive nodes host:{} port:{}", brokerConfig.getHost(), brokerConfig.getPort());
             return Collections.emptyList();
         }
 
         List<Integer> slots = new ArrayList<>();
-        while (mark < SLOT_SIZE) {
-            slots.add(mark);
-            mark += sortedNodes.size();
+        for (int slot = 0; slot < brokerConfig.getSlotSize(); slot++) {
+            Node owner = null;
+            long maxWeight = Long.MIN_VALUE;
+            for (Node node : nodes) {
+                long weight = weight(node, slot);
+                if (owner == null || weight > maxWeight || (weight == maxWeight && compare(node, owner) < 0)) {
+                    owner = node;
+                    maxWeight = weight;
+                }
+            }
+            if (owner == self) {
+                slots.add(slot);
+            }
         }
-        log.info("find slots:{}", slots);
-        return slots;
+        return Collections.unmodifiableList(slots);
+    }
+
+    private long weight(Node node, int slot) {
+        return Hashing.murmur3_128().newHasher()
+                .putString(node.getHost(), StandardCharsets.UTF_8)
+                .putInt(node.getPort())
+                .putInt(slot)
+                .hash().asLong();
+    }
+
+    private int compare(Node n1, Node n2) {
+        int c = n1.getHost().compareTo(n2.getHost());
+        return c != 0 ? c : Integer.compare(n1.getPort(), n2.getPort());
     }
 
     /**
-     * 获取当前节点对应的planId
+     * 缓存当前节点槽位下的 plan
+     * @return 新加入缓存的 planId
      */
-    public List<String> planIds() {
-        List<Integer> slots = slots();
-        if (CollectionUtils.isEmpty(slots)) {
-            return Collections.emptyList();
-        }
-        List<PlanSlotEntity> slotEntities = planSlotEntityRepo.findBySlotIn(slots);
-        if (CollectionUtils.isEmpty(slotEntities)) {
-            return Collections.emptyList();
+    private List<String> cachePlanSlots(List<PlanSlotEntity> slotEntities) {
+        List<String> added = new ArrayList<>();
+        for (PlanSlotEntity slotEntity : slotEntities) {
+            if (owns(slotEntity.getSlot()) && planSlots.put(slotEntity.getPlanId(), slotEntity.getSlot()) == null) {
+                added.add(slotEntity.getPlanId());
+            }
         }
+        return added;
+    }
 
-        return slotEntities.stream()
-                .map(PlanSlotEntity::getPlanId)
-                .collect(Collectors.toList());
+    /**
+     * 当前节点拥有的槽位
+     */
+    private static class SlotSnapshot {
+
+        private final List<Integer> slots;
+
+        private final boolean[] owned;
+
+        SlotSnapshot(List<Integer> slots, int slotSize) {
+            this.slots = slots;
+            this.owned = new boolean[slotSize];
+            for (Integer slot : slots) {
+                owned[slot] = true;
+            }
+        }
     }
 
 }
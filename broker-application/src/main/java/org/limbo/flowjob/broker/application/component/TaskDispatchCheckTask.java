@@ -19,7 +19,9 @@
 package org.limbo.flowjob.broker.application.component;
 
 import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
+import org.limbo.flowjob.broker.application.component.schedule.ScheduleStrategyHelper;
 import org.limbo.flowjob.broker.core.cluster.BrokerConfig;
 import org.limbo.flowjob.broker.core.cluster.NodeManger;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.FixDelayMetaTask;
@@ -30,24 +32,31 @@ import org.limbo.flowjob.broker.dao.converter.DomainConverter;
 import org.limbo.flowjob.broker.dao.entity.TaskEntity;
 import org.limbo.flowjob.broker.dao.repositories.TaskEntityRepo;
 import org.limbo.flowjob.common.constants.TaskStatus;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
 import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
 import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
 /**
- * task 如果长时间执行中没有进行反馈 需要对其进行状态检查
- * 可能导致task没有完成的原因
- * 1. worker服务真实下线
- * 2. worker服务假死
- * 3. worker完成task调用broker的接口失败
+ * task 如果长时间下发中没有完成 需要对其进行状态检查，超时的 task 重置为调度中并重新下发
+ * 可能导致task停留在下发中的原因
+ * 1. 下发所在的broker宕机
+ * 2. 下发结果落库失败
  */
+@Slf4j
 @Component
 public class TaskDispatchCheckTask extends FixDelayMetaTask {
 
+    /**
+     * 下发超时时间，需大于下发重试、拉取模式排队及确认接收的最长耗时
+     */
+    private static final Duration DISPATCHING_TIMEOUT = Duration.ofMinutes(3);
+
     @Setter(onMethod_ = @Inject)
     private TaskEntityRepo taskEntityRepo;
 
@@ -63,6 +72,9 @@ public class TaskDispatchCheckTask extends FixDelayMetaTask {
     @Setter(onMethod_ = @Inject)
     private NodeManger nodeManger;
 
+    @Setter(onMethod_ = @Inject)
+    private ScheduleStrategyHelper scheduleStrategyHelper;
+
     public TaskDispatchCheckTask(MetaTaskScheduler metaTaskScheduler) {
         super(Duration.ofSeconds(1), metaTaskScheduler);
     }
@@ -74,26 +86,28 @@ public class TaskDispatchCheckTask extends FixDelayMetaTask {
             return;
         }
 
-        List<TaskScheduleTask> dispatchingTasks = loadDispatchingTasks();
-        if (CollectionUtils.isEmpty(dispatchingTasks)) {
+        List<String> planIds = slotManager.planIds();
+        if (CollectionUtils.isEmpty(planIds)) {
             return;
         }
-        if (CollectionUtils.isNotEmpty(dispatchingTasks)) {
-            for (TaskScheduleTask scheduleTask : dispatchingTasks) {
-                scheduleTask.execute();
-            }
+
+        LocalDateTime before = TimeUtils.currentLocalDateTime().minus(DISPATCHING_TIMEOUT);
+        int reset = scheduleStrategyHelper.resetDispatching(planIds, before);
+        if (reset > 0) {
+            log.warn("reset {} tasks dispatching before {}", reset, before);
+        }
+
+        List<TaskScheduleTask> timeoutTasks = loadTimeoutTasks(planIds, before);
+        for (TaskScheduleTask scheduleTask : timeoutTasks) {
+            scheduleTask.execute();
         }
     }
 
     /**
-     * 加载下发中的 task。
+     * 加载下发超时后重置为调度中的 task，startAt 为上次开始下发的时间，新建的 task 没有 startAt 不会被加载
      */
-    private List<TaskScheduleTask> loadDispatchingTasks() {
-        List<String> planIds = slotManager.planIds();
-        if (CollectionUtils.isEmpty(planIds)) {
-            return Collections.emptyList();
-        }
-        List<TaskEntity> taskEntities = taskEntityRepo.findByPlanIdInAndStatus(planIds, TaskStatus.DISPATCHING.status);
+    private List<TaskScheduleTask> loadTimeoutTasks(List<String> planIds, LocalDateTime before) {
+        List<TaskEntity> taskEntities = taskEntityRepo.findByPlanIdInAndStatusAndStartAtBefore(planIds, TaskStatus.SCHEDULING.status, before);
         if (CollectionUtils.isEmpty(taskEntities)) {
             return Collections.emptyList();
         }
@@ -22,6 +22,7 @@ import lombok.Setter;
 import org.apache.commons.collections4.CollectionUtils;
 import org.limbo.flowjob.broker.core.cluster.BrokerConfig;
 import org.limbo.flowjob.broker.core.cluster.NodeManger;
+import org.limbo.flowjob.broker.core.dispatch.WorkerInFlightTracker;
 import org.limbo.flowjob.broker.core.domain.task.Task;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.FixDelayMetaTask;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskScheduler;
@@ -73,6 +74,9 @@ public class TaskExecuteCheckTask extends FixDelayMetaTask {
     @Setter(onMethod_ = @Inject)
     private ITaskResultStrategy scheduleStrategy;
 
+    @Setter(onMethod_ = @Inject)
+    private WorkerInFlightTracker inFlightTracker;
+
     public TaskExecuteCheckTask(MetaTaskScheduler metaTaskScheduler) {
         super(Duration.ofSeconds(5), metaTaskScheduler);
     }
@@ -91,6 +95,7 @@ public class TaskExecuteCheckTask extends FixDelayMetaTask {
                 Task task = scheduleTask.getTask();
                 Worker worker = workerRepository.get(task.getWorkerId());
                 if (worker == null || !worker.isAlive()) {
+                    inFlightTracker.release(task.getTaskId());
                     scheduleStrategy.handleFail(task, String.format("worker %s is offline", task.getWorkerId()), "");
                 }
             }
@@ -18,6 +18,7 @@
 
 package org.limbo.flowjob.broker.application.component;
 
+import com.google.common.collect.Lists;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
@@ -39,12 +40,15 @@ import javax.inject.Inject;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * 获取更新的plan下发
  * 此任务间隔短 方便随时获取更新数据
+ * 以上次加载时间作为水位，只加载之后变更的 plan，版本变更、停用、删除的 plan 会立即取消旧版本的调度
+ * 其它节点新建、归属当前节点的 plan 同步到槽位缓存后立即加载
  */
 @Slf4j
 @Component
@@ -65,6 +69,11 @@ public class UpdatedPlanLoadTask extends FixDelayMetaTask {
     @Setter(onMethod_ = @Inject)
     private NodeManger nodeManger;
 
+    /**
+     * 每页查询的 plan 数量
+     */
+    private static final int PAGE_SIZE = 500;
+
     private LocalDateTime loadTimePoint = DateTimeUtils.parse("2000-01-01 00:00:00", Formatters.YMD_HMS);
 
     public UpdatedPlanLoadTask(MetaTaskScheduler scheduler) {
@@ -82,15 +91,26 @@ public class UpdatedPlanLoadTask extends FixDelayMetaTask {
                 return;
             }
 
-            // 调度当前时间以及未来的任务
-            List<PlanScheduleTask> plans = loadTasks();
+            // 查询前记录水位 updated_at 精度为秒 往前退一秒 重复加载的 plan 不会重复调度
+            LocalDateTime nextLoadTimePoint = TimeUtils.currentLocalDateTime().minusSeconds(1);
+
+            // 新同步的 plan 更新时间可能早于水位，直接加载
+            List<String> createdPlanIds = slotManager.syncCreatedPlans();
+            for (List<String> page : Lists.partition(createdPlanIds, PAGE_SIZE)) {
+                List<PlanEntity> planEntities = planEntityRepo.loadPlans(page);
+                if (CollectionUtils.isNotEmpty(planEntities)) {
+                    reschedule(planEntities);
+                }
+            }
 
-            // 重新调度 新增/版本变更的plan
-            if (CollectionUtils.isNotEmpty(plans)) {
-                for (PlanScheduleTask plan : plans) {
-                    metaTaskScheduler.schedule(plan);
+            List<String> planIds = slotManager.planIds();
+            for (List<String> page : Lists.partition(planIds, PAGE_SIZE)) {
+                List<PlanEntity> planEntities = planEntityRepo.loadChangedPlans(page, loadTimePoint);
+                if (CollectionUtils.isNotEmpty(planEntities)) {
+                    reschedule(planEntities);
                 }
             }
+            loadTimePoint = nextLoadTimePoint;
         } catch (Exception e) {
             log.error("{} load and schedule plan task fail", scheduleId(), e);
         }
@@ -98,23 +118,26 @@ public class UpdatedPlanLoadTask extends FixDelayMetaTask {
 
 
     /**
-     * 加载触发时间在指定时间之前的 Plan。
+     * 取消变更 plan 的旧版本调度，并调度新增/版本变更的 plan
      */
-    private List<PlanScheduleTask> loadTasks() {
-        List<String> planIds = slotManager.planIds();
-        if (CollectionUtils.isEmpty(planIds)) {
-            return Collections.emptyList();
-        }
-        List<PlanEntity> planEntities = planEntityRepo.loadUpdatedPlans(planIds, loadTimePoint);
-        loadTimePoint = TimeUtils.currentLocalDateTime();
-        if (CollectionUtils.isEmpty(planEntities)) {
-            return Collections.emptyList();
-        }
-        List<PlanScheduleTask> plans = new ArrayList<>();
+    private void reschedule(List<PlanEntity> planEntities) {
+        List<PlanEntity> enabledPlans = new ArrayList<>(planEntities.size());
+        Set<String> changedPlanIds = new HashSet<>();
+        Set<String> currentMetaIds = new HashSet<>();
         for (PlanEntity planEntity : planEntities) {
-            plans.add(domainConverter.toPlanScheduleTask(planEntity));
+            changedPlanIds.add(planEntity.getPlanId());
+            if (planEntity.isEnabled() && !planEntity.isDeleted()) {
+                enabledPlans.add(planEntity);
+                currentMetaIds.add(planEntity.getPlanId() + "-" + planEntity.getCurrentVersion());
+            }
+        }
+
+        metaTaskScheduler.unscheduleIf(MetaTaskType.PLAN, task -> !currentMetaIds.contains(task.getMetaId())
+                && changedPlanIds.contains(PlanScheduleTask.parsePlanId(task.getMetaId())));
+
+        for (PlanScheduleTask plan : domainConverter.toPlanScheduleTasks(enabledPlans)) {
+            metaTaskScheduler.schedule(plan);
         }
-        return plans;
     }
 
 
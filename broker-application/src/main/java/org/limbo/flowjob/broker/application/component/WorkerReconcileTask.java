@@ -0,0 +1,90 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.application.component;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.limbo.flowjob.broker.core.dispatch.WorkerInFlightTracker;
+import org.limbo.flowjob.broker.core.dispatcher.WorkerSelectorFactory;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.FixDelayMetaTask;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskScheduler;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskType;
+import org.limbo.flowjob.broker.dao.domain.WorkerRepo;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 定时同步本地 worker 快照，并下线心跳过期的 worker，清理下线 worker 在本节点的在途计数和资源预留
+ * 每次同步 worker 状态和指标，每隔 {@link #FULL_RECONCILE_TIMES} 次重新加载 tags、executors
+ *
+ * @author Brozen
+ * @since 2023-02-12
+ */
+@Slf4j
+@Component
+public class WorkerReconcileTask extends FixDelayMetaTask {
+
+    /**
+     * 全量同步的间隔次数
+     */
+    private static final int FULL_RECONCILE_TIMES = 30;
+
+    @Setter(onMethod_ = @Inject)
+    private WorkerRepo workerRepo;
+
+    @Setter(onMethod_ = @Inject)
+    private WorkerInFlightTracker inFlightTracker;
+
+    @Setter(onMethod_ = @Inject)
+    private WorkerSelectorFactory workerSelectorFactory;
+
+    private int times = 0;
+
+    public WorkerReconcileTask(MetaTaskScheduler metaTaskScheduler) {
+        super(Duration.ofSeconds(1), metaTaskScheduler);
+    }
+
+    @Override
+    protected void executeTask() {
+        try {
+            List<String> offlineIds = workerRepo.reconcile(times++ % FULL_RECONCILE_TIMES == 0);
+            // 下线的 worker 不再下发，清理在途计数、资源预留
+            for (String workerId : offlineIds) {
+                inFlightTracker.remove(workerId);
+                workerSelectorFactory.removeWorker(workerId);
+            }
+        } catch (Exception e) {
+            log.error("{} reconcile workers fail", scheduleId(), e);
+        }
+    }
+
+    @Override
+    public MetaTaskType getType() {
+        return MetaTaskType.WORKER_OFFLINE;
+    }
+
+    @Override
+    public String getMetaId() {
+        return "WorkerReconcileTask";
+    }
+
+}
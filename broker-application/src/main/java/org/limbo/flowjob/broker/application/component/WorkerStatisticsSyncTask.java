@@ -0,0 +1,74 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.application.component;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.limbo.flowjob.broker.application.config.BrokerProperties;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.FixDelayMetaTask;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskScheduler;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskType;
+import org.limbo.flowjob.broker.core.statistics.WorkerStatisticsRepository;
+import org.limbo.flowjob.broker.dao.domain.ClusterWorkerStatisticsRepo;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+
+/**
+ * 定时上报本节点的 worker 下发统计，并拉取其他 broker 的统计
+ *
+ * @author Brozen
+ * @since 2024-06-21
+ */
+@Slf4j
+@Component
+public class WorkerStatisticsSyncTask extends FixDelayMetaTask {
+
+    @Setter(onMethod_ = @Inject)
+    private WorkerStatisticsRepository statisticsRepository;
+
+    public WorkerStatisticsSyncTask(MetaTaskScheduler metaTaskScheduler, BrokerProperties brokerProperties) {
+        super(brokerProperties.getLbStatistics().getSyncInterval(), metaTaskScheduler);
+    }
+
+    @Override
+    protected void executeTask() {
+        // 单机统计无需同步
+        if (!(statisticsRepository instanceof ClusterWorkerStatisticsRepo)) {
+            return;
+        }
+
+        try {
+            ((ClusterWorkerStatisticsRepo) statisticsRepository).sync();
+        } catch (Exception e) {
+            log.error("{} sync worker statistics fail", scheduleId(), e);
+        }
+    }
+
+    @Override
+    public MetaTaskType getType() {
+        return MetaTaskType.WORKER_STATISTICS_SYNC;
+    }
+
+    @Override
+    public String getMetaId() {
+        return "WorkerStatisticsSyncTask";
+    }
+
+}
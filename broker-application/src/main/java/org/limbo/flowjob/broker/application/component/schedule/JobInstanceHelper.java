@@ -26,18 +26,15 @@ import org.limbo.flowjob.broker.core.domain.job.JobInstance;
 import org.limbo.flowjob.broker.core.domain.job.SingleJobInstance;
 import org.limbo.flowjob.broker.core.domain.job.WorkflowJobInfo;
 import org.limbo.flowjob.broker.core.domain.job.WorkflowJobInstance;
-import org.limbo.flowjob.broker.dao.converter.DomainConverter;
+import org.limbo.flowjob.broker.dao.domain.PlanInfoCache;
+import org.limbo.flowjob.broker.dao.domain.PlanVersion;
 import org.limbo.flowjob.broker.dao.entity.JobInstanceEntity;
-import org.limbo.flowjob.broker.dao.entity.PlanInfoEntity;
 import org.limbo.flowjob.broker.dao.repositories.JobInstanceEntityRepo;
-import org.limbo.flowjob.broker.dao.repositories.PlanInfoEntityRepo;
 import org.limbo.flowjob.common.constants.JobStatus;
 import org.limbo.flowjob.common.constants.MsgConstants;
 import org.limbo.flowjob.common.constants.PlanType;
 import org.limbo.flowjob.common.exception.VerifyException;
 import org.limbo.flowjob.common.utils.attribute.Attributes;
-import org.limbo.flowjob.common.utils.dag.DAG;
-import org.limbo.flowjob.common.utils.json.JacksonUtils;
 import org.limbo.flowjob.common.utils.time.TimeUtils;
 import org.springframework.stereotype.Component;
 
@@ -55,7 +52,7 @@ public class JobInstanceHelper {
     private JobInstanceEntityRepo jobInstanceEntityRepo;
 
     @Setter(onMethod_ = @Inject)
-    private PlanInfoEntityRepo planInfoEntityRepo;
+    private PlanInfoCache planInfoCache;
 
     @Setter(onMethod_ = @Inject)
     private IDGenerator idGenerator;
@@ -63,23 +60,16 @@ public class JobInstanceHelper {
     public JobInstance getJobInstance(String id) {
         JobInstanceEntity entity = jobInstanceEntityRepo.findById(id)
                 .orElseThrow(VerifyException.supplier(MsgConstants.CANT_FIND_JOB_INSTANCE + id));
-        PlanInfoEntity planInfoEntity = planInfoEntityRepo.findById(entity.getPlanInfoId())
-                .orElseThrow(VerifyException.supplier(MsgConstants.CANT_FIND_PLAN_INSTANCE + entity.getPlanId()));
+        PlanVersion planVersion = planInfoCache.get(entity.getPlanInfoId());
 
         JobInstance jobInstance;
-        PlanType planType = PlanType.parse(planInfoEntity.getPlanType());
-        if (PlanType.SINGLE == planType) {
-            JobInfo jobInfo = JacksonUtils.parseObject(planInfoEntity.getJobInfo(), JobInfo.class);
+        if (PlanType.SINGLE == planVersion.getPlanType()) {
             jobInstance = newSingleJobInstance(entity.getPlanId(), entity.getPlanInfoId(), entity.getPlanInstanceId(),
-                    new Attributes(entity.getContext()), jobInfo, entity.getTriggerAt());
-        } else if (PlanType.WORKFLOW == planType) {
-            DAG<WorkflowJobInfo> dag = DomainConverter.toJobDag(planInfoEntity.getJobInfo());
-            WorkflowJobInfo workflowJobInfo = dag.getNode(entity.getJobId());
+                    new Attributes(entity.getContext()), planVersion.getJobInfo(), entity.getTriggerAt());
+        } else {
+            WorkflowJobInfo workflowJobInfo = planVersion.getDag().getNode(entity.getJobId());
             jobInstance = newWorkflowJobInstance(entity.getPlanId(), entity.getPlanInfoId(), entity.getPlanInstanceId(),
                     new Attributes(entity.getContext()), workflowJobInfo, entity.getTriggerAt());
-
-        } else {
-            throw new IllegalArgumentException("Illegal PlanType in plan:" + planInfoEntity.getPlanId() + " version:" + planInfoEntity.getPlanInfoId());
         }
         jobInstance.setJobInstanceId(entity.getJobInstanceId());
         jobInstance.setStatus(JobStatus.parse(entity.getStatus()));
@@ -129,6 +119,7 @@ public class JobInstanceHelper {
         instance.setStatus(JobStatus.SCHEDULING);
         instance.setTriggerAt(triggerAt);
         instance.setContext(context == null ? new Attributes() : context);
-        instance.setJobAttributes(jobAttributes == null ? new Attributes() : jobAttributes);
+        // 作业信息来自缓存的 plan 版本 复制一份 避免修改共享数据
+        instance.setJobAttributes(jobAttributes == null ? new Attributes() : new Attributes(jobAttributes.toMap()));
     }
 }
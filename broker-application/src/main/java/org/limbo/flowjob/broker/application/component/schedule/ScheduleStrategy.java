@@ -21,7 +21,9 @@ package org.limbo.flowjob.broker.application.component.schedule;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.limbo.flowjob.broker.core.dispatch.TaskDispatcher;
 import org.limbo.flowjob.broker.core.domain.job.JobInfo;
 import org.limbo.flowjob.broker.core.domain.job.JobInstance;
 import org.limbo.flowjob.broker.core.domain.job.WorkflowJobInfo;
@@ -30,6 +32,7 @@ import org.limbo.flowjob.broker.core.domain.plan.SinglePlan;
 import org.limbo.flowjob.broker.core.domain.plan.WorkflowPlan;
 import org.limbo.flowjob.broker.core.domain.task.Task;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskScheduler;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskType;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.TaskScheduleTask;
 import org.limbo.flowjob.broker.core.schedule.strategy.IPlanScheduleStrategy;
 import org.limbo.flowjob.broker.core.schedule.strategy.ITaskResultStrategy;
@@ -52,6 +55,8 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 /**
@@ -77,6 +82,9 @@ public class ScheduleStrategy implements IPlanScheduleStrategy, ITaskScheduleStr
     @Setter(onMethod_ = @Inject)
     private ScheduleStrategyHelper scheduleStrategyHelper;
 
+    @Setter(onMethod_ = @Inject)
+    private TaskDispatcher taskDispatcher;
+
     @Override
     public void schedule(TriggerType triggerType, Plan plan, LocalDateTime triggerAt) {
         executeWithAspect(unused -> {
@@ -158,9 +166,35 @@ public class ScheduleStrategy implements IPlanScheduleStrategy, ITaskScheduleStr
         executeWithAspect(unused -> scheduleStrategyHelper.handleFail(task, errorMsg, errorStackTrace));
     }
 
+    /**
+     * 先在事务内将 task 置为下发中并提交，再异步下发，下发结果在 TASK 元任务线程池中以新的短事务落库
+     */
     @Override
     public void schedule(Task task) {
-        executeWithAspect(unused -> scheduleStrategyHelper.schedule(task));
+        AtomicBoolean dispatching = new AtomicBoolean();
+        executeWithAspect(unused -> dispatching.set(scheduleStrategyHelper.dispatching(task)));
+        if (!dispatching.get()) {
+            return;
+        }
+
+        CompletableFuture<Boolean> future;
+        try {
+            future = taskDispatcher.dispatchAsync(task);
+        } catch (Exception e) {
+            log.error("Task dispatch with error task={}", task, e);
+            future = CompletableFuture.completedFuture(false);
+        }
+        future.whenCompleteAsync((dispatched, e) -> {
+            if (e != null) {
+                log.error("Task dispatch with error task={}", task, e);
+            }
+            try {
+                executeWithAspect(unused -> scheduleStrategyHelper.dispatched(task, e == null && BooleanUtils.isTrue(dispatched)));
+            } catch (Exception ex) {
+                // 由task的状态检查任务去修复task的执行情况
+                log.error("task dispatch result update fail! task={}", task, ex);
+            }
+        }, metaTaskScheduler.executor(MetaTaskType.TASK));
     }
 
     public void executeWithAspect(Consumer<Void> consumer) {
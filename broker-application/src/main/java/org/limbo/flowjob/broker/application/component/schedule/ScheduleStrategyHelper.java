@@ -23,7 +23,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.BooleanUtils;
 import org.limbo.flowjob.broker.application.component.SlotManager;
-import org.limbo.flowjob.broker.core.dispatch.TaskDispatcher;
 import org.limbo.flowjob.broker.core.domain.IDGenerator;
 import org.limbo.flowjob.broker.core.domain.IDType;
 import org.limbo.flowjob.broker.core.domain.job.JobInfo;
@@ -34,17 +33,15 @@ import org.limbo.flowjob.broker.core.domain.task.Task;
 import org.limbo.flowjob.broker.core.domain.task.TaskFactory;
 import org.limbo.flowjob.broker.core.exceptions.JobException;
 import org.limbo.flowjob.broker.dao.converter.DomainConverter;
+import org.limbo.flowjob.broker.dao.domain.PlanInfoCache;
 import org.limbo.flowjob.broker.dao.entity.JobInstanceEntity;
 import org.limbo.flowjob.broker.dao.entity.PlanEntity;
 import org.limbo.flowjob.broker.dao.entity.PlanInfoEntity;
 import org.limbo.flowjob.broker.dao.entity.PlanInstanceEntity;
-import org.limbo.flowjob.broker.dao.entity.PlanSlotEntity;
 import org.limbo.flowjob.broker.dao.entity.TaskEntity;
 import org.limbo.flowjob.broker.dao.repositories.JobInstanceEntityRepo;
 import org.limbo.flowjob.broker.dao.repositories.PlanEntityRepo;
-import org.limbo.flowjob.broker.dao.repositories.PlanInfoEntityRepo;
 import org.limbo.flowjob.broker.dao.repositories.PlanInstanceEntityRepo;
-import org.limbo.flowjob.broker.dao.repositories.PlanSlotEntityRepo;
 import org.limbo.flowjob.broker.dao.repositories.TaskEntityRepo;
 import org.limbo.flowjob.common.constants.JobStatus;
 import org.limbo.flowjob.common.constants.MsgConstants;
@@ -54,7 +51,6 @@ import org.limbo.flowjob.common.constants.ScheduleType;
 import org.limbo.flowjob.common.constants.TaskStatus;
 import org.limbo.flowjob.common.constants.TaskType;
 import org.limbo.flowjob.common.constants.TriggerType;
-import org.limbo.flowjob.common.exception.VerifyException;
 import org.limbo.flowjob.common.utils.Verifies;
 import org.limbo.flowjob.common.utils.attribute.Attributes;
 import org.limbo.flowjob.common.utils.dag.DAG;
@@ -68,6 +64,7 @@ import javax.transaction.Transactional;
 import java.text.MessageFormat;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -105,17 +102,11 @@ public class ScheduleStrategyHelper {
     private JobInstanceEntityRepo jobInstanceEntityRepo;
 
     @Setter(onMethod_ = @Inject)
-    private PlanInfoEntityRepo planInfoEntityRepo;
-
-    @Setter(onMethod_ = @Inject)
-    private TaskDispatcher taskDispatcher;
+    private PlanInfoCache planInfoCache;
 
     @Setter(onMethod_ = @Inject)
     private SlotManager slotManager;
 
-    @Setter(onMethod_ = @Inject)
-    private PlanSlotEntityRepo planSlotEntityRepo;
-
     @Setter(onMethod_ = @Inject)
     private JobInstanceHelper jobInstanceHelper;
 
@@ -130,18 +121,14 @@ public class ScheduleStrategyHelper {
         // 比如 5s 执行一次 分别在 5s 10s 15s 在11s的时候内存里下次执行为 15s 此时修改为 2s 执行一次 那么重新加载plan后应该为 12s 14s 所以15s这次可以跳过
         Verifies.verify(Objects.equals(version, planEntity.getCurrentVersion()), MessageFormat.format("plan:{0} version {1} change to {2}", planId, version, planEntity.getCurrentVersion()));
 
-        PlanInfoEntity planInfoEntity = planInfoEntityRepo.findById(version).orElseThrow(VerifyException.supplier(MessageFormat.format("does not find {0} plan info by version {1}", planId, version)));
+        PlanInfoEntity planInfoEntity = planInfoCache.get(version).getPlanInfo();
 
         // 判断是否由当前节点执行
         if (TriggerType.API != triggerType) {
 
             Verifies.verify(planEntity.isEnabled(), "plan " + planId + " is not enabled");
 
-            List<Integer> slots = slotManager.slots();
-            Verifies.notEmpty(slots, "slots is empty");
-            PlanSlotEntity planSlotEntity = planSlotEntityRepo.findByPlanId(planId);
-            Verifies.notNull(planSlotEntity, "plan's slot is null id:" + planId);
-            Verifies.verify(slots.contains(planSlotEntity.getSlot()), MessageFormat.format("plan {0} is not in this broker", planId));
+            Verifies.verify(slotManager.ownsPlan(planId), MessageFormat.format("plan {0} is not in this broker", planId));
         }
 
         // 如果是 FIXED_DELAY 的需要判断是否有对应类型的已经在执行
@@ -179,10 +166,14 @@ public class ScheduleStrategyHelper {
         return jobInstance;
     }
 
+    /**
+     * 将 task 更新为下发中，事务提交后再发起下发，避免网络请求期间占用连接和行锁
+     * @return 是否需要下发
+     */
     @Transactional
-    public void schedule(Task task) {
+    public boolean dispatching(Task task) {
         if (task.getStatus() != TaskStatus.SCHEDULING) {
-            return;
+            return false;
         }
 
         // 根据job id 分组 取最新的 判断是否失败 如果已经有 job 失败且终止的，则直接返回失败
@@ -201,17 +192,23 @@ public class ScheduleStrategyHelper {
             }
         }
 
-        int num = taskEntityRepo.dispatching(task.getTaskId());
+        int num = taskEntityRepo.dispatching(task.getTaskId(), TimeUtils.currentLocalDateTime());
         if (num < 1) {
-            return; // 可能多个节点操作同个task
+            return false; // 可能多个节点操作同个task
         }
         task.setStatus(TaskStatus.DISPATCHING);
 
         // 下面两个可能会被其他task更新 但是这是正常的
         jobInstanceEntityRepo.executing(task.getJobInstanceId(), TimeUtils.currentLocalDateTime());
         planInstanceEntityRepo.executing(task.getPlanInstanceId(), TimeUtils.currentLocalDateTime());
+        return true;
+    }
 
-        boolean dispatched = taskDispatcher.dispatch(task);
+    /**
+     * 下发完成后更新 task 状态
+     */
+    @Transactional
+    public void dispatched(Task task, boolean dispatched) {
         if (dispatched) {
             // 下发成功
             taskEntityRepo.executing(task.getTaskId(), task.getWorkerId(), TimeUtils.currentLocalDateTime());
@@ -221,6 +218,20 @@ public class ScheduleStrategyHelper {
         }
     }
 
+    /**
+     * 下发中超时的 task 重置为调度中，由状态检查任务重新下发。下发所在节点宕机、下发结果落库失败时 task 会停留在下发中
+     * @param planIds 需要检查的 plan
+     * @param before 在此时间之前开始下发的视为超时
+     * @return 重置的数量
+     */
+    @Transactional
+    public int resetDispatching(List<String> planIds, LocalDateTime before) {
+        return taskEntityRepo.resetDispatching(planIds, before);
+    }
+
+    /**
+     * worker 的反馈可能早于下发结果落库，下发中的 task 也可以直接完成
+     */
     @Transactional
     public void handleSuccess(Task task, Object result) {
         int num = taskEntityRepo.success(task.getTaskId(), TimeUtils.currentLocalDateTime(),
@@ -275,7 +286,11 @@ public class ScheduleStrategyHelper {
 
     @Transactional
     public void handleFail(Task task, String errorMsg, String errorStackTrace) {
-        int num = taskEntityRepo.fail(task.getTaskId(), task.getStatus().status, TimeUtils.currentLocalDateTime(), errorMsg, errorStackTrace);
+        // 下发中与执行中可能并发转换，都可以直接失败
+        List<Byte> curStatus = task.getStatus() == TaskStatus.DISPATCHING || task.getStatus() == TaskStatus.EXECUTING
+                ? Arrays.asList(TaskStatus.DISPATCHING.status, TaskStatus.EXECUTING.status)
+                : Collections.singletonList(task.getStatus().status);
+        int num = taskEntityRepo.fail(task.getTaskId(), curStatus, TimeUtils.currentLocalDateTime(), errorMsg, errorStackTrace);
 
         if (num < 1) {
             return; // 并发更新过了 正常来说前面job更新成功 这个不可能会进来
@@ -357,9 +372,7 @@ public class ScheduleStrategyHelper {
             JobInfo jobInfo = jobInstance.getJobInfo();
             String jobId = jobInfo.getId();
 
-            PlanInfoEntity planInfoEntity = planInfoEntityRepo.findById(version).orElseThrow(VerifyException.supplier(MsgConstants.CANT_FIND_PLAN_INFO + version));
-
-            DAG<WorkflowJobInfo> dag = DomainConverter.toJobDag(planInfoEntity.getJobInfo());
+            DAG<WorkflowJobInfo> dag = planInfoCache.get(version).getDag();
             // 当前节点的子节点
             List<WorkflowJobInfo> subJobInfos = dag.subNodes(jobId);
 
@@ -28,15 +28,27 @@ import org.limbo.flowjob.broker.core.cluster.BrokerConfig;
 import org.limbo.flowjob.broker.core.cluster.NodeManger;
 import org.limbo.flowjob.broker.core.cluster.NodeRegistry;
 import org.limbo.flowjob.broker.core.dispatch.TaskDispatcher;
+import org.limbo.flowjob.broker.core.dispatch.TaskReadyQueues;
+import org.limbo.flowjob.broker.core.dispatch.TaskSendCoalescer;
+import org.limbo.flowjob.broker.core.dispatch.WorkerInFlightTracker;
 import org.limbo.flowjob.broker.core.dispatcher.WorkerSelectorFactory;
 import org.limbo.flowjob.broker.core.domain.IDGenerator;
 import org.limbo.flowjob.broker.core.domain.task.TaskFactory;
 import org.limbo.flowjob.broker.core.domain.task.TaskManager;
+import org.limbo.flowjob.broker.core.schedule.scheduler.NamedThreadFactory;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTask;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskLoader;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskScheduler;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskType;
+import org.limbo.flowjob.broker.core.statistics.WorkerStatisticsExchange;
 import org.limbo.flowjob.broker.core.statistics.WorkerStatisticsRepository;
 import org.limbo.flowjob.broker.core.worker.WorkerRepository;
+import org.limbo.flowjob.broker.core.worker.rpc.WorkerRpcFactory;
+import org.limbo.flowjob.broker.dao.domain.ClusterWorkerStatisticsRepo;
+import org.limbo.flowjob.broker.dao.domain.DBWorkerStatisticsExchange;
+import org.limbo.flowjob.broker.dao.domain.PlanInfoCache;
 import org.limbo.flowjob.broker.dao.domain.SingletonWorkerStatisticsRepo;
+import org.limbo.flowjob.broker.dao.repositories.PlanInfoEntityRepo;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -44,7 +56,9 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import javax.inject.Inject;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -69,11 +83,21 @@ public class BrokerConfiguration {
      * worker 管理，持久化等
      *
      * @param metaTasks 下面定义的MetaTask的bean
+     * @param metaTaskLoaders 元任务压缩记录的加载器
      */
     @Bean
     @ConditionalOnProperty(prefix = "flowjob.broker", value = "enabled", havingValue = "true", matchIfMissing = true)
-    public Broker brokerNode(NodeManger nodeManger, MetaTaskScheduler metaTaskScheduler, List<MetaTask> metaTasks) {
-        return new BrokerStarter(brokerProperties, brokerRegistry, nodeManger, metaTaskScheduler, metaTasks);
+    public Broker brokerNode(NodeManger nodeManger, MetaTaskScheduler metaTaskScheduler, List<MetaTask> metaTasks, List<MetaTaskLoader> metaTaskLoaders) {
+        return new BrokerStarter(brokerProperties, brokerRegistry, nodeManger, metaTaskScheduler, metaTasks, metaTaskLoaders);
+    }
+
+    /**
+     * plan 版本缓存
+     */
+    @Bean
+    public PlanInfoCache planInfoCache(PlanInfoEntityRepo planInfoEntityRepo) {
+        BrokerProperties.PlanCache planCache = brokerProperties.getPlanCache();
+        return new PlanInfoCache(planInfoEntityRepo, planCache.getMaximumSize(), planCache.getMaximumWeight(), planCache.getExpireAfterAccess());
     }
 
     @Bean
@@ -88,12 +112,38 @@ public class BrokerConfiguration {
 
 
     /**
-     * 如果未声明 WorkerStatisticsRepository 类型的 Bean，则使用基于内存统计的单机模式
+     * Worker RPC 工厂通过 SPI 加载，这里将客户端配置应用到加载的工厂上
+     */
+    @Bean
+    public WorkerRpcFactory workerRpcFactory() {
+        WorkerRpcFactory factory = WorkerRpcFactory.getInstance();
+        factory.configure(brokerProperties.getWorkerRpc());
+        return factory;
+    }
+
+
+    /**
+     * 如果未声明 WorkerStatisticsRepository 类型的 Bean，默认通过数据库在 broker 之间共享统计，关闭共享时使用基于内存统计的单机模式
      */
     @Bean
     @ConditionalOnMissingBean(WorkerStatisticsRepository.class)
-    public WorkerStatisticsRepository WorkerStatisticsRepository() {
-        return new SingletonWorkerStatisticsRepo();
+    public WorkerStatisticsRepository WorkerStatisticsRepository(WorkerStatisticsExchange statisticsExchange) {
+        BrokerProperties.LbStatistics statistics = brokerProperties.getLbStatistics();
+        if (!statistics.isShared()) {
+            return new SingletonWorkerStatisticsRepo(statistics.getMaxStatisticDuration(), statistics.getBucketDuration());
+        }
+        return new ClusterWorkerStatisticsRepo(brokerProperties.getName(), statisticsExchange,
+                statistics.getMaxStatisticDuration(), statistics.getBucketDuration());
+    }
+
+
+    /**
+     * broker 之间交换 worker 下发统计
+     */
+    @Bean
+    @ConditionalOnMissingBean(WorkerStatisticsExchange.class)
+    public WorkerStatisticsExchange workerStatisticsExchange() {
+        return new DBWorkerStatisticsExchange();
     }
 
 
@@ -101,9 +151,10 @@ public class BrokerConfiguration {
      * 用于生成 Worker 选择器，内部封装了 LB 算法的调用。
      */
     @Bean
-    public WorkerSelectorFactory workerSelectorFactory(WorkerStatisticsRepository statisticsRepository) {
+    public WorkerSelectorFactory workerSelectorFactory(WorkerStatisticsRepository statisticsRepository, WorkerInFlightTracker inFlightTracker) {
         WorkerSelectorFactory factory = new WorkerSelectorFactory();
         factory.setLbServerStatisticsProvider(statisticsRepository);
+        factory.setLbServerLoadProvider(inFlightTracker);
         return factory;
     }
 
@@ -112,38 +163,54 @@ public class BrokerConfiguration {
      * 用于分发任务
      */
     @Bean
-    public TaskDispatcher taskDispatcher(WorkerRepository workerRepository, WorkerSelectorFactory factory, WorkerStatisticsRepository statisticsRepository) {
-        return new TaskDispatcher(workerRepository, factory, statisticsRepository);
+    public TaskDispatcher taskDispatcher(WorkerRepository workerRepository, WorkerSelectorFactory factory, WorkerStatisticsRepository statisticsRepository,
+                                         TaskReadyQueues readyQueues, WorkerInFlightTracker inFlightTracker) {
+        BrokerProperties.DispatchBatch batch = brokerProperties.getDispatchBatch();
+        TaskSendCoalescer coalescer = new TaskSendCoalescer(batch.getMaxSize(), batch.getMaxDelay());
+        return new TaskDispatcher(workerRepository, factory, statisticsRepository, coalescer, readyQueues, inFlightTracker);
     }
 
     /**
-     * 元任务调度器
+     * worker 在途任务计数，名额用尽的 worker 不再下发
      */
-    @Bean
-    public MetaTaskScheduler metaTaskScheduler() {
-        return new MetaTaskScheduler();
+    @Bean(destroyMethod = "shutdown")
+    public WorkerInFlightTracker workerInFlightTracker() {
+        return new WorkerInFlightTracker(brokerProperties.getDispatchBackpressure().getMaxWait());
     }
 
-    @Bean
-    public ExecutorService planSchedulePool() {
-        return new ThreadPoolExecutor(
-                Runtime.getRuntime().availableProcessors() * 4,
-                Runtime.getRuntime().availableProcessors() * 4,
-                60,
-                TimeUnit.SECONDS,
-                new ArrayBlockingQueue<>(256),
-                new ThreadPoolExecutor.CallerRunsPolicy());
+    /**
+     * 拉取模式 worker 的任务就绪队列
+     */
+    @Bean(destroyMethod = "shutdown")
+    public TaskReadyQueues taskReadyQueues() {
+        BrokerProperties.DispatchPull pull = brokerProperties.getDispatchPull();
+        return new TaskReadyQueues(pull.getMaxWait(), pull.getMaxPollTimeout(), pull.getAckTimeout());
     }
 
+    /**
+     * 元任务调度器，时间轮只负责触发，元任务由对应类型的线程池执行
+     */
     @Bean
-    public ExecutorService taskSchedulePool() {
+    public MetaTaskScheduler metaTaskScheduler() {
+        Map<MetaTaskType, ExecutorService> pools = new EnumMap<>(MetaTaskType.class);
+        ExecutorService defaultPool = newSchedulePool("DefaultMetaTaskPool", brokerProperties.getDefaultSchedulePool());
+        for (MetaTaskType type : MetaTaskType.values()) {
+            BrokerProperties.SchedulePool config = brokerProperties.getSchedulePools().get(type);
+            pools.put(type, config == null ? defaultPool : newSchedulePool(type.name() + "MetaTaskPool", config));
+        }
+        BrokerProperties.Timer timer = brokerProperties.getTimer();
+        return new MetaTaskScheduler(timer.getTickDuration(), timer.getTicksPerWheel(), timer.isPrecise(), timer.getResidentWindow(), pools);
+    }
+
+    private ExecutorService newSchedulePool(String name, BrokerProperties.SchedulePool config) {
         return new ThreadPoolExecutor(
-                Runtime.getRuntime().availableProcessors() * 8,
-                Runtime.getRuntime().availableProcessors() * 8,
-                60,
+                config.getCoreSize(),
+                config.getMaxSize(),
+                config.getKeepAliveSeconds(),
                 TimeUnit.SECONDS,
-                new ArrayBlockingQueue<>(1024),
-                new ThreadPoolExecutor.CallerRunsPolicy());
+                new ArrayBlockingQueue<>(config.getQueueSize()),
+                NamedThreadFactory.newInstance(name),
+                config.getRejectedPolicy().handler());
     }
 
     @Bean
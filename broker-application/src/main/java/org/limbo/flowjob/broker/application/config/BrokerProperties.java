@@ -21,8 +21,21 @@ package org.limbo.flowjob.broker.application.config;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import org.limbo.flowjob.broker.core.cluster.BrokerConfig;
+import org.limbo.flowjob.broker.core.dispatch.TaskReadyQueues;
+import org.limbo.flowjob.broker.core.dispatch.TaskSendCoalescer;
+import org.limbo.flowjob.broker.core.dispatch.WorkerInFlightTracker;
+import org.limbo.flowjob.broker.core.schedule.scheduler.HashedWheelTimerScheduler;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskType;
+import org.limbo.flowjob.broker.core.worker.rpc.WorkerRpcOptions;
+import org.limbo.flowjob.broker.dao.domain.SingletonWorkerStatisticsRepo;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
 /**
  * @author Devil
  * @since 2021/7/30
@@ -37,4 +50,309 @@ public class BrokerProperties extends BrokerConfig {
      */
     private boolean enabled = true;
 
+    /**
+     * 元任务调度使用的时间轮配置
+     */
+    private Timer timer = new Timer();
+
+    /**
+     * 元任务执行线程池，按 {@link MetaTaskType} 配置，未配置的类型使用 {@link #defaultSchedulePool}
+     */
+    private Map<MetaTaskType, SchedulePool> schedulePools = defaultSchedulePools();
+
+    /**
+     * 未单独配置线程池的元任务使用的线程池
+     */
+    private SchedulePool defaultSchedulePool = new SchedulePool(4, 4, 256, RejectedPolicy.CALLER_RUNS);
+
+    /**
+     * plan 版本缓存配置
+     */
+    private PlanCache planCache = new PlanCache();
+
+    /**
+     * 号段 ID 分配配置
+     */
+    private IdSegment idSegment = new IdSegment();
+
+    /**
+     * 对 worker 提供 TCP 接口的端口，不大于 0 时不启动，worker 仍可通过 HTTP 接口通信
+     */
+    private int tcpPort = 0;
+
+    /**
+     * 任务批量下发配置
+     */
+    private DispatchBatch dispatchBatch = new DispatchBatch();
+
+    /**
+     * 拉取模式 worker 的任务排队配置
+     */
+    private DispatchPull dispatchPull = new DispatchPull();
+
+    /**
+     * worker 在途任务名额配置
+     */
+    private DispatchBackpressure dispatchBackpressure = new DispatchBackpressure();
+
+    /**
+     * worker 下发统计配置
+     */
+    private LbStatistics lbStatistics = new LbStatistics();
+
+    /**
+     * 调用 worker 的 RPC 客户端配置
+     */
+    private WorkerRpcOptions workerRpc = new WorkerRpcOptions();
+
+    private static Map<MetaTaskType, SchedulePool> defaultSchedulePools() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        Map<MetaTaskType, SchedulePool> pools = new EnumMap<>(MetaTaskType.class);
+        pools.put(MetaTaskType.PLAN, new SchedulePool(processors * 4, processors * 4, 256, RejectedPolicy.CALLER_RUNS));
+        pools.put(MetaTaskType.TASK, new SchedulePool(processors * 8, processors * 8, 1024, RejectedPolicy.CALLER_RUNS));
+        return pools;
+    }
+
+    /**
+     * 时间轮配置
+     */
+    @Data
+    public static class Timer {
+
+        /**
+         * tick 间隔，间隔越小触发越精确，但空转消耗越大
+         */
+        private Duration tickDuration = HashedWheelTimerScheduler.DEFAULT_TICK_DURATION;
+
+        /**
+         * 时间轮的槽位数
+         */
+        private int ticksPerWheel = HashedWheelTimerScheduler.DEFAULT_TICKS_PER_WHEEL;
+
+        /**
+         * 是否开启高精度模式，开启后临近触发的元任务由最小堆延迟队列按毫秒精度触发，不再受 tick 间隔影响
+         */
+        private boolean precise = false;
+
+        /**
+         * 常驻窗口，触发时间超出窗口的 plan 只在内存中保留压缩记录，进入窗口后再加载。为 0 则全部常驻时间轮
+         */
+        private Duration residentWindow = Duration.ofMinutes(5);
+
+    }
+
+    /**
+     * plan 版本缓存配置
+     */
+    @Data
+    public static class PlanCache {
+
+        /**
+         * 最多缓存的版本数量
+         */
+        private long maximumSize = 10000;
+
+        /**
+         * 最多缓存的作业信息 JSON 总长度，用于限制内存占用
+         */
+        private long maximumWeight = 64 * 1024 * 1024;
+
+        /**
+         * 多久未访问后淘汰
+         */
+        private Duration expireAfterAccess = Duration.ofHours(1);
+
+    }
+
+    /**
+     * 号段 ID 分配配置
+     */
+    @Data
+    public static class IdSegment {
+
+        /**
+         * 当前号段剩余比例低于此值时，异步预取下一个号段
+         */
+        private double prefetchThreshold = 0.2;
+
+        /**
+         * 号段的期望使用时长，消耗快于此时长步长翻倍，慢于两倍时长步长减半，但不低于库中配置的步长
+         */
+        private Duration segmentDuration = Duration.ofMinutes(15);
+
+        /**
+         * 最大步长
+         */
+        private int maxStep = 1_000_000;
+
+    }
+
+    /**
+     * 任务批量下发配置，同一 worker 的任务在窗口内合并为一次请求
+     */
+    @Data
+    public static class DispatchBatch {
+
+        /**
+         * 单批次最多任务数，不大于 1 时不合并
+         */
+        private int maxSize = TaskSendCoalescer.DEFAULT_MAX_BATCH_SIZE;
+
+        /**
+         * 合并窗口，窗口内到达的任务合并下发
+         */
+        private Duration maxDelay = TaskSendCoalescer.DEFAULT_MAX_DELAY;
+
+    }
+
+    /**
+     * 拉取模式下任务在 broker 排队的配置
+     */
+    @Data
+    public static class DispatchPull {
+
+        /**
+         * 任务最长排队时间，超时未被拉取视为下发失败
+         */
+        private Duration maxWait = TaskReadyQueues.DEFAULT_MAX_WAIT;
+
+        /**
+         * 单次拉取没有任务时最长挂起时间，需小于 HTTP 异步请求超时
+         */
+        private Duration maxPollTimeout = TaskReadyQueues.DEFAULT_MAX_POLL_TIMEOUT;
+
+        /**
+         * 任务被拉取后等待 worker 确认接收的时间，超时未确认的任务放回队列
+         */
+        private Duration ackTimeout = TaskReadyQueues.DEFAULT_ACK_TIMEOUT;
+
+    }
+
+    /**
+     * 按 worker 在途任务名额下发的配置
+     */
+    @Data
+    public static class DispatchBackpressure {
+
+        /**
+         * 所有 worker 名额已满时，等待名额释放的最长时间，超时视为下发失败
+         */
+        private Duration maxWait = WorkerInFlightTracker.DEFAULT_MAX_WAIT;
+
+    }
+
+    /**
+     * 负载均衡使用的 worker 下发统计配置
+     */
+    @Data
+    public static class LbStatistics {
+
+        /**
+         * 是否在 broker 之间共享统计，关闭后每个 broker 仅统计自己下发的任务
+         */
+        private boolean shared = true;
+
+        /**
+         * 与其他 broker 交换统计的间隔
+         */
+        private Duration syncInterval = Duration.ofSeconds(5);
+
+        /**
+         * 统计保留时长
+         */
+        private Duration maxStatisticDuration = SingletonWorkerStatisticsRepo.DEFAULT_MAX_STATISTIC_DURATION;
+
+        /**
+         * 统计时间段长度
+         */
+        private Duration bucketDuration = SingletonWorkerStatisticsRepo.DEFAULT_BUCKET_DURATION;
+
+    }
+
+    /**
+     * 元任务执行线程池配置
+     */
+    @Data
+    public static class SchedulePool {
+
+        /**
+         * 核心线程数
+         */
+        private int coreSize = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * 最大线程数
+         */
+        private int maxSize = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * 等待队列长度
+         */
+        private int queueSize = 256;
+
+        /**
+         * 非核心线程空闲存活时间，秒
+         */
+        private long keepAliveSeconds = 60;
+
+        /**
+         * 队列满后的拒绝策略
+         */
+        private RejectedPolicy rejectedPolicy = RejectedPolicy.CALLER_RUNS;
+
+        public SchedulePool() {
+        }
+
+        public SchedulePool(int coreSize, int maxSize, int queueSize, RejectedPolicy rejectedPolicy) {
+            this.coreSize = coreSize;
+            this.maxSize = maxSize;
+            this.queueSize = queueSize;
+            this.rejectedPolicy = rejectedPolicy;
+        }
+
+    }
+
+    /**
+     * 线程池拒绝策略
+     */
+    public enum RejectedPolicy {
+
+        /**
+         * 抛出异常，本次触发丢弃
+         */
+        ABORT,
+
+        /**
+         * 由时间轮线程执行，会阻塞后续触发
+         */
+        CALLER_RUNS,
+
+        /**
+         * 直接丢弃
+         */
+        DISCARD,
+
+        /**
+         * 丢弃队列中最早的任务
+         */
+        DISCARD_OLDEST,
+
+        ;
+
+        public RejectedExecutionHandler handler() {
+            switch (this) {
+                case ABORT:
+                    return new ThreadPoolExecutor.AbortPolicy();
+                case DISCARD:
+                    return new ThreadPoolExecutor.DiscardPolicy();
+                case DISCARD_OLDEST:
+                    return new ThreadPoolExecutor.DiscardOldestPolicy();
+                case CALLER_RUNS:
+                default:
+                    return new ThreadPoolExecutor.CallerRunsPolicy();
+            }
+        }
+
+    }
+
 }
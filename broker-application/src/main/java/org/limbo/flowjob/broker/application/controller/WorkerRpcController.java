@@ -23,7 +23,10 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.Setter;
 import org.limbo.flowjob.api.ResponseDTO;
 import org.limbo.flowjob.api.remote.dto.WorkerRegisterDTO;
+import org.limbo.flowjob.api.remote.param.TaskAckParam;
 import org.limbo.flowjob.api.remote.param.TaskFeedbackParam;
+import org.limbo.flowjob.api.remote.param.TaskPullParam;
+import org.limbo.flowjob.api.remote.param.TaskSubmitParam;
 import org.limbo.flowjob.api.remote.param.WorkerHeartbeatParam;
 import org.limbo.flowjob.api.remote.param.WorkerRegisterParam;
 import org.limbo.flowjob.broker.application.component.schedule.ScheduleStrategy;
@@ -47,6 +50,8 @@ import org.springframework.web.bind.annotation.RestController;
 import javax.inject.Inject;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author Brozen
@@ -91,6 +96,27 @@ public class WorkerRpcController {
         return ResponseDTO.<WorkerRegisterDTO>builder().ok(workerService.heartbeat(workerId, heartbeatOption)).build();
     }
 
+    /**
+     * 拉取模式的 worker 长轮询拉取任务
+     */
+    @Operation(summary = "worker拉取任务")
+    @PostMapping("/{workerId}/task/pull")
+    public CompletableFuture<ResponseDTO<List<TaskSubmitParam>>> pullTasks(@Validated @NotNull(message = "no workerId") @PathVariable("workerId") String workerId,
+                                                                           @Valid @RequestBody TaskPullParam param) {
+        return workerService.pullTasks(workerId, param)
+                .thenApply(tasks -> ResponseDTO.<List<TaskSubmitParam>>builder().ok(tasks).build());
+    }
+
+    /**
+     * 拉取模式的 worker 执行前确认接收拉取到的任务，返回确认成功的任务
+     */
+    @Operation(summary = "worker确认接收任务")
+    @PostMapping("/{workerId}/task/ack")
+    public ResponseDTO<List<String>> ackTasks(@Validated @NotNull(message = "no workerId") @PathVariable("workerId") String workerId,
+                                              @Valid @RequestBody TaskAckParam param) {
+        return ResponseDTO.<List<String>>builder().ok(workerService.ackTasks(workerId, param)).build();
+    }
+
     /**
      * api 触发对应plan
      */
@@ -129,6 +129,7 @@ public class PlanService {
             planSlotEntity.setSlot(slotManager.slot(planEntity.getPlanId()));
             planSlotEntity.setPlanId(planEntity.getPlanId());
             planSlotEntityRepo.saveAndFlush(planSlotEntity);
+            slotManager.addPlan(planSlotEntity.getPlanId(), planSlotEntity.getSlot());
         } else {
             // update
             planEntityRepo.findById(planId).orElseThrow(VerifyException.supplier(MsgConstants.CANT_FIND_PLAN + planId));
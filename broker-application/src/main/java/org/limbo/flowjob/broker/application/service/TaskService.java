@@ -21,6 +21,7 @@ package org.limbo.flowjob.broker.application.service;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.limbo.flowjob.api.remote.param.TaskFeedbackParam;
+import org.limbo.flowjob.broker.core.dispatch.WorkerInFlightTracker;
 import org.limbo.flowjob.broker.core.domain.task.Task;
 import org.limbo.flowjob.broker.core.schedule.strategy.ITaskResultStrategy;
 import org.limbo.flowjob.broker.dao.converter.DomainConverter;
@@ -47,6 +48,9 @@ public class TaskService {
     @Setter(onMethod_ = @Inject)
     private ITaskResultStrategy taskResultStrategy;
 
+    @Setter(onMethod_ = @Inject)
+    private WorkerInFlightTracker inFlightTracker;
+
     /**
      * Worker任务执行反馈
      *
@@ -59,6 +63,8 @@ public class TaskService {
             log.debug("receive task feedback id:{} result:{}", taskId, result);
         }
 
+        inFlightTracker.release(taskId);
+
         TaskEntity taskEntity = taskEntityRepo.findById(taskId).orElse(null);
         Verifies.notNull(taskEntity, "task is null id:" + taskId);
 
@@ -26,12 +26,16 @@ import org.limbo.flowjob.api.PageDTO;
 import org.limbo.flowjob.api.console.param.WorkerQueryParam;
 import org.limbo.flowjob.api.console.vo.WorkerVO;
 import org.limbo.flowjob.api.remote.dto.WorkerRegisterDTO;
+import org.limbo.flowjob.api.remote.param.TaskAckParam;
+import org.limbo.flowjob.api.remote.param.TaskPullParam;
+import org.limbo.flowjob.api.remote.param.TaskSubmitParam;
 import org.limbo.flowjob.api.remote.param.WorkerHeartbeatParam;
 import org.limbo.flowjob.api.remote.param.WorkerRegisterParam;
 import org.limbo.flowjob.broker.application.converter.WorkerConverter;
 import org.limbo.flowjob.broker.application.support.JpaHelper;
 import org.limbo.flowjob.broker.application.support.WorkerFactory;
 import org.limbo.flowjob.broker.core.cluster.NodeManger;
+import org.limbo.flowjob.broker.core.dispatch.TaskReadyQueues;
 import org.limbo.flowjob.broker.core.domain.IDGenerator;
 import org.limbo.flowjob.broker.core.domain.IDType;
 import org.limbo.flowjob.broker.core.worker.Worker;
@@ -50,9 +54,11 @@ import javax.inject.Inject;
 import javax.persistence.criteria.Order;
 import javax.persistence.criteria.Predicate;
 import javax.transaction.Transactional;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -77,6 +83,9 @@ public class WorkerService {
     @Setter(onMethod_ = @Inject)
     private IDGenerator idGenerator;
 
+    @Setter(onMethod_ = @Inject)
+    private TaskReadyQueues taskReadyQueues;
+
     /**
      * worker注册
      * @param options 注册参数
@@ -104,7 +113,8 @@ public class WorkerService {
                 options.getUrl(),
                 WorkerConverter.toWorkerTags(options),
                 WorkerConverter.toWorkerExecutors(options),
-                WorkerConverter.toWorkerMetric(options)
+                WorkerConverter.toWorkerMetric(options),
+                options.getDispatchMode()
         );
 
         // 保存 worker
@@ -124,8 +134,8 @@ public class WorkerService {
         Worker worker = workerRepository.get(workerId);
         Verifies.requireNotNull(worker, "worker不存在！");
 
-        // 更新metric
-        worker.heartbeat(WorkerConverter.toWorkerMetric(option));
+        // 更新metric，不修改快照中的 worker
+        worker = worker.withMetric(WorkerConverter.toWorkerMetric(option));
         workerRepository.saveMetric(worker);
 
         if (log.isDebugEnabled()) {
@@ -135,6 +145,35 @@ public class WorkerService {
         return WorkerConverter.toRegisterDTO(worker, nodeManger.allAlive());
     }
 
+    /**
+     * 拉取模式的 worker 拉取任务，没有任务时挂起直到有任务或超时，不占用请求线程
+     * @param workerId worker id
+     * @param param 拉取参数
+     * @return 拉取到的任务
+     */
+    public CompletableFuture<List<TaskSubmitParam>> pullTasks(String workerId, TaskPullParam param) {
+        Worker worker = workerRepository.get(workerId);
+        Verifies.requireNotNull(worker, "worker不存在！");
+        Verifies.verify(worker.isAlive() && worker.isEnabled(), "worker不可用：" + workerId);
+        Verifies.verify(worker.isPullMode(), "worker未使用拉取模式：" + workerId);
+
+        return taskReadyQueues.poll(worker, param.getLimit(), Duration.ofMillis(param.getTimeout()))
+                .thenApply(tasks -> tasks.stream()
+                        .map(org.limbo.flowjob.broker.core.worker.rpc.WorkerConverter::toTaskSubmitParam)
+                        .collect(Collectors.toList())
+                );
+    }
+
+    /**
+     * 拉取模式的 worker 执行前确认接收拉取到的任务，任务下发成功
+     * @param workerId worker id
+     * @param param 确认参数
+     * @return 确认成功的任务 ID，worker 只执行这些任务
+     */
+    public List<String> ackTasks(String workerId, TaskAckParam param) {
+        return taskReadyQueues.ack(workerId, param.getTaskIds());
+    }
+
     public PageDTO<WorkerVO> page(WorkerQueryParam param) {
         Specification<WorkerEntity> sf = (root, query, cb) -> {
             //用于添加所有查询条件
@@ -18,12 +18,17 @@
 
 package org.limbo.flowjob.broker.application.support;
 
+import lombok.extern.slf4j.Slf4j;
 import org.limbo.flowjob.broker.core.cluster.Node;
+import org.limbo.flowjob.broker.core.cluster.NodeEvent;
+import org.limbo.flowjob.broker.core.cluster.NodeListener;
 import org.limbo.flowjob.broker.core.cluster.NodeManger;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * 内存中缓存的 broker节点信息
@@ -31,18 +36,25 @@ import java.util.concurrent.ConcurrentHashMap;
  * @author Devil
  * @since 2022/7/20
  */
+@Slf4j
 public class NodeMangerImpl implements NodeManger {
 
     private static final Map<String, Node> map = new ConcurrentHashMap<>();
 
+    private final List<NodeListener> listeners = new CopyOnWriteArrayList<>();
+
     @Override
     public void online(Node node) {
-        map.putIfAbsent(node.getName(), node);
+        if (map.putIfAbsent(node.getName(), node) == null) {
+            notify(NodeEvent.Type.ONLINE, node);
+        }
     }
 
     @Override
     public void offline(Node node) {
-        map.remove(node.getName());
+        if (map.remove(node.getName()) != null) {
+            notify(NodeEvent.Type.OFFLINE, node);
+        }
     }
 
     @Override
@@ -55,4 +67,20 @@ public class NodeMangerImpl implements NodeManger {
         return map.values();
     }
 
+    @Override
+    public void subscribe(NodeListener listener) {
+        listeners.add(listener);
+    }
+
+    private void notify(NodeEvent.Type type, Node node) {
+        NodeEvent event = new NodeEvent(type, node.getName(), node.getHost(), node.getPort());
+        for (NodeListener listener : listeners) {
+            try {
+                listener.event(event);
+            } catch (Exception e) {
+                log.error("[NodeManger] notify {} event fail node:{}", type, node.getName(), e);
+            }
+        }
+    }
+
 }
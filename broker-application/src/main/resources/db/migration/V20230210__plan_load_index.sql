@@ -0,0 +1,8 @@
+-- 增量加载 plan 按更新时间查询
+ALTER TABLE `flowjob_plan`
+    ADD KEY `idx_updated_at` (`updated_at`);
+
+-- 批量查询 plan 最近一次触发/反馈时间
+ALTER TABLE `flowjob_plan_instance`
+    ADD KEY `idx_plan_trigger` (`plan_id`, `trigger_at`),
+    ADD KEY `idx_plan_feedback` (`plan_id`, `feedback_at`);
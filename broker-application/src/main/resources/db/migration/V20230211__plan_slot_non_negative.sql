@@ -0,0 +1,4 @@
+-- 旧版本使用 hashCode % 64 计算槽位，可能为负数，修正为非负的槽位
+UPDATE `flowjob_plan_slot`
+SET `slot` = `slot` + 64
+WHERE `slot` < 0;
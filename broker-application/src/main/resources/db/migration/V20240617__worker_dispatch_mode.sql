@@ -0,0 +1,3 @@
+-- worker 获取任务的方式：1-broker推送 2-worker拉取
+ALTER TABLE `flowjob_worker`
+    ADD COLUMN `dispatch_mode` tinyint NOT NULL DEFAULT 1 AFTER `status`;
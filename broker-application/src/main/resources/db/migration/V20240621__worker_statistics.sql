@@ -0,0 +1,16 @@
+-- broker 之间共享的 worker 下发统计，按时间段记录
+CREATE TABLE `flowjob_worker_statistics`
+(
+    `id`               bigint unsigned NOT NULL AUTO_INCREMENT,
+    `broker_name`      varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL DEFAULT '',
+    `worker_id`        varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL DEFAULT '',
+    `bucket`           bigint                                                 NOT NULL,
+    `dispatch_times`   bigint                                                 NOT NULL DEFAULT 0,
+    `last_dispatch_at` bigint                                                 NOT NULL DEFAULT 0,
+    `is_deleted`       bit(1)                                                 NOT NULL DEFAULT 0,
+    `created_at`       datetime                                               NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    `updated_at`       datetime                                               NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_broker_worker_bucket` (`broker_name`, `worker_id`, `bucket`),
+    KEY `idx_bucket` (`bucket`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_bin;
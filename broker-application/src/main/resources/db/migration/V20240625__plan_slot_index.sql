@@ -0,0 +1,4 @@
+-- 按槽位增量同步新建的 plan，按 planId 判断归属
+ALTER TABLE `flowjob_plan_slot`
+    ADD KEY `idx_slot_created` (`slot`, `created_at`),
+    ADD KEY `idx_plan_id` (`plan_id`);
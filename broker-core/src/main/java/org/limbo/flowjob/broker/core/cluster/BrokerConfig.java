@@ -27,6 +27,8 @@ import lombok.Data;
 @Data
 public class BrokerConfig {
 
+    public static final int DEFAULT_SLOT_SIZE = 64;
+
     /**
      * broker的唯一标识
      */
@@ -52,4 +54,10 @@ public class BrokerConfig {
      */
     protected long heartbeatTimeout = 10000;
 
+    /**
+     * plan 槽位数量，槽位越多 broker 间分配越均匀。
+     * 已有 plan 的槽位保存在 flowjob_plan_slot 中不随之迁移，只能调大，小于已有槽位时 broker 拒绝启动。所有 broker 需使用相同的值
+     */
+    protected int slotSize = DEFAULT_SLOT_SIZE;
+
 }
@@ -47,4 +47,9 @@ public interface NodeManger {
      */
     Collection<Node> allAlive();
 
+    /**
+     * 订阅节点变更，只有存活节点发生变化时才通知
+     */
+    void subscribe(NodeListener listener);
+
 }
@@ -33,11 +33,26 @@ public class SimpleWorkerSelectArguments implements WorkerSelectArgument {
 
     private final Task task;
 
+    /**
+     * 负载均衡参数，首次获取时生成，重试时复用
+     */
+    private Map<String, String> attributes;
+
     public SimpleWorkerSelectArguments(Task task) {
         this.task = task;
     }
 
 
+    /**
+     * {@inheritDoc}
+     * @return
+     */
+    @Override
+    public String getTaskId() {
+        return task.getTaskId();
+    }
+
+
     /**
      * {@inheritDoc}
      * @return
@@ -64,6 +79,14 @@ public class SimpleWorkerSelectArguments implements WorkerSelectArgument {
      */
     @Override
     public Map<String, String> getAttributes() {
+        if (attributes == null) {
+            attributes = buildAttributes();
+        }
+        return attributes;
+    }
+
+
+    private Map<String, String> buildAttributes() {
         Map<String, String> attr = new HashMap<>();
         putStringEntry(attr, task.getContext());
         putStringEntry(attr, task.getJobAttributes());
@@ -83,8 +106,13 @@ public class SimpleWorkerSelectArguments implements WorkerSelectArgument {
 
 
     private void putStringEntry(Map<String, String> attrMap, Attributes attr) {
-        attr.toMap().entrySet().stream()
-                .filter(entry -> entry.getValue() instanceof String)
-                .forEach(entry -> attrMap.put(entry.getKey(), (String) entry.getValue()));
+        if (attr == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> entry : attr.toMap().entrySet()) {
+            if (entry.getValue() instanceof String) {
+                attrMap.put(entry.getKey(), (String) entry.getValue());
+            }
+        }
     }
 }
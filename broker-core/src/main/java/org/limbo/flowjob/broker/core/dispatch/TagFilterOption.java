@@ -16,6 +16,9 @@
 package org.limbo.flowjob.broker.core.dispatch;
 
 import lombok.AccessLevel;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import lombok.Builder;
 import lombok.Setter;
 import org.apache.commons.collections4.CollectionUtils;
@@ -52,6 +55,21 @@ public class TagFilterOption {
      */
     public final TagFilterCondition condition;
 
+    /**
+     * 编译后的正则，按表达式缓存
+     */
+    private static final LoadingCache<String, Pattern> PATTERNS = CacheBuilder.newBuilder()
+            .maximumSize(1024)
+            .build(CacheLoader.from((String regex) -> Pattern.compile(regex)));
+
+
+    /**
+     * 标签值对应的正则
+     */
+    public Pattern pattern() {
+        return PATTERNS.getUnchecked(this.tagValue);
+    }
+
 
     /**
      * 过滤 Worker，判断是否符合条件。
@@ -75,7 +93,7 @@ public class TagFilterOption {
                     return CollectionUtils.isNotEmpty(values) && !values.contains(this.tagValue);
 
                 case MUST_MATCH_VALUE_REGEX:
-                    Pattern pattern = Pattern.compile(this.tagValue);
+                    Pattern pattern = pattern();
                     return CollectionUtils.isNotEmpty(values) && values.stream().anyMatch(s -> pattern.matcher(s).find());
 
                 default:
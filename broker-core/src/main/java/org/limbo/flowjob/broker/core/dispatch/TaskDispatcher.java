@@ -30,8 +30,12 @@ import org.limbo.flowjob.broker.core.worker.Worker;
 import org.limbo.flowjob.broker.core.worker.WorkerRepository;
 import org.limbo.flowjob.common.constants.TaskStatus;
 
+import java.time.Duration;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -47,17 +51,48 @@ public class TaskDispatcher {
 
     private final WorkerStatisticsRepository statisticsRepository;
 
-    public TaskDispatcher(WorkerRepository workerRepository, WorkerSelectorFactory workerSelectorFactory, WorkerStatisticsRepository statisticsRepository) {
+    private final TaskSendCoalescer sendCoalescer;
+
+    private final TaskReadyQueues readyQueues;
+
+    private final WorkerInFlightTracker inFlights;
+
+    /**
+     * 选择 worker 下发的最多尝试次数
+     */
+    private static final int MAX_DISPATCH_TIMES = 3;
+
+    /**
+     * 等待名额释放时，最长间隔多久重新检查一次 worker 心跳
+     */
+    private static final long CAPACITY_RECHECK_INTERVAL = 1000;
+
+    /**
+     * 就绪队列、在途计数持有计时线程，由调用方管理生命周期
+     */
+    public TaskDispatcher(WorkerRepository workerRepository, WorkerSelectorFactory workerSelectorFactory, WorkerStatisticsRepository statisticsRepository,
+                          TaskSendCoalescer sendCoalescer, TaskReadyQueues readyQueues, WorkerInFlightTracker inFlights) {
         this.workerRepository = workerRepository;
         this.workerSelectorFactory = workerSelectorFactory;
         this.statisticsRepository = statisticsRepository;
+        this.sendCoalescer = sendCoalescer;
+        this.readyQueues = readyQueues;
+        this.inFlights = inFlights;
     }
 
     /**
-     * 将任务下发给worker。
+     * 将任务下发给worker，阻塞等待下发结果。
      * task status -> EXECUTING or FAILED
      */
     public boolean dispatch(Task task) {
+        return dispatchAsync(task).join();
+    }
+
+    /**
+     * 异步将任务下发给worker，调用线程只负责选择 worker 并发起请求，不等待网络返回。
+     * task status -> EXECUTING or FAILED
+     */
+    public CompletableFuture<Boolean> dispatchAsync(Task task) {
         if (log.isDebugEnabled()) {
             log.debug("start dispatch task={}", task);
         }
@@ -66,75 +101,160 @@ public class TaskDispatcher {
             throw new JobDispatchException(task.getJobId(), task.getTaskId(), "Cannot startup context due to current status: " + task.getStatus());
         }
 
+        long waitDeadline = System.currentTimeMillis() + inFlights.getMaxWait().toMillis();
         if (StringUtils.isBlank(task.getWorkerId())) {
-            return dispatchWithWorkerSelect(task);
+            return dispatchWithWorkerSelect(task, waitDeadline);
         } else {
-            return dispatchWithWorkerId(task);
+            return dispatchWithWorkerId(task, waitDeadline);
         }
     }
 
     /**
      *  指定 worker 的任务
      */
-    private boolean dispatchWithWorkerId(Task task) {
+    private CompletableFuture<Boolean> dispatchWithWorkerId(Task task, long waitDeadline) {
         Worker worker = workerRepository.get(task.getWorkerId());
         if (worker == null || !worker.isAlive() || !worker.isEnabled()) {
-            return false;
+            return CompletableFuture.completedFuture(false);
+        }
+        if (worker.isPullMode()) {
+            return enqueue(task);
+        }
+        if (!inFlights.tryAcquire(worker, task)) {
+            // worker 名额已满，等待释放后重新下发
+            return awaitCapacity(task, waitDeadline, () -> dispatchWithWorkerId(task, waitDeadline));
         }
 
-        try {
-            // 发送任务到worker，根据worker返回结果，更新状态
-            boolean dispatched = worker.sendTask(task);
+        // 发送任务到worker，根据worker返回结果，更新状态
+        return send(task, worker).thenApply(dispatched -> {
             if (dispatched) {
                 onDispatchSucceed(task, worker);
                 return true;
-            } else {
-                onDispatchToWorkerFailed(task, worker);
             }
-        } catch (Exception e) {
-            log.error("Task dispatch with error task={}", task, e);
-        }
-
-        // 下发失败
-        onDispatchFailed(task);
-        return false;
+            onDispatchToWorkerFailed(task, worker);
+            // 下发失败
+            onDispatchFailed(task);
+            return false;
+        });
     }
 
     /**
      * 需要worker选择的任务
      */
-    private boolean dispatchWithWorkerSelect(Task task) {
+    private CompletableFuture<Boolean> dispatchWithWorkerSelect(Task task, long waitDeadline) {
         List<Worker> availableWorkers = workerRepository.listAvailableWorkers();
         if (CollectionUtils.isEmpty(availableWorkers)) {
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
         WorkerSelector workerSelector = workerSelectorFactory.newSelector(task.getDispatchOption().getLoadBalanceType());
-        for (int i = 0; i < 3; i++) {
-            try {
-                SimpleWorkerSelectArguments args = new SimpleWorkerSelectArguments(task);
-                Worker worker = workerSelector.select(args, availableWorkers);
-                if (worker == null) {
-                    return false;
-                }
-
-                // 发送任务到worker，根据worker返回结果，更新状态
-                boolean dispatched = worker.sendTask(task);
-                if (dispatched) {
-                    onDispatchSucceed(task, worker);
-                    return true;
-                } else {
-                    onDispatchToWorkerFailed(task, worker);
-                }
-
-                availableWorkers = availableWorkers.stream().filter(w -> !Objects.equals(w.getId(), worker.getId())).collect(Collectors.toList());
-            } catch (Exception e) {
-                log.error("Task dispatch with error task={}", task, e);
+        SimpleWorkerSelectArguments args = new SimpleWorkerSelectArguments(task);
+        return dispatchWithWorkerSelect(task, workerSelector, args, availableWorkers, new HashSet<>(), 0, waitDeadline);
+    }
+
+    /**
+     * 选择 worker 并下发，被拒绝时排除该 worker 后重新选择，最多尝试 {@link #MAX_DISPATCH_TIMES} 次。
+     * 名额已满的 worker 不参与选择，全部已满时等待名额释放，超过等待时间视为下发失败。
+     *
+     * @param rejected 已拒绝此任务的 worker
+     */
+    private CompletableFuture<Boolean> dispatchWithWorkerSelect(Task task, WorkerSelector workerSelector, SimpleWorkerSelectArguments args,
+                                                                List<Worker> availableWorkers, Set<String> rejected, int times, long waitDeadline) {
+        if (times >= MAX_DISPATCH_TIMES) {
+            // 下发失败
+            onDispatchFailed(task);
+            return CompletableFuture.completedFuture(false);
+        }
+
+        List<Worker> candidates = availableWorkers.stream()
+                .filter(w -> !rejected.contains(w.getId()))
+                .filter(w -> w.isPullMode() || inFlights.hasCapacity(w))
+                .collect(Collectors.toList());
+        if (candidates.isEmpty()) {
+            // 等待期间 worker 可能上报了新的心跳，重新查询 worker 后再选择
+            return awaitCapacity(task, waitDeadline, () -> dispatchWithWorkerSelect(
+                    task, workerSelector, args, workerRepository.listAvailableWorkers(), rejected, times, waitDeadline
+            ));
+        }
+
+        Worker worker;
+        try {
+            worker = workerSelector.select(args, candidates);
+        } catch (Exception e) {
+            log.error("Task dispatch with error task={}", task, e);
+            return dispatchWithWorkerSelect(task, workerSelector, args, availableWorkers, rejected, times + 1, waitDeadline);
+        }
+        if (worker == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        if (worker.isPullMode()) {
+            // 选中拉取模式的 worker 时任务进入就绪队列，由任一符合条件的拉取模式 worker 取走
+            return enqueue(task);
+        }
+        if (!inFlights.tryAcquire(worker, task)) {
+            // 名额被并发下发占满，不计入尝试次数，重新选择时会排除该 worker
+            workerSelectorFactory.releaseReservation(worker.getId(), task.getTaskId());
+            return dispatchWithWorkerSelect(task, workerSelector, args, availableWorkers, rejected, times, waitDeadline);
+        }
+
+        // 发送任务到worker，根据worker返回结果，更新状态
+        long sendAt = System.currentTimeMillis();
+        return send(task, worker).thenCompose(dispatched -> {
+            workerSelectorFactory.getDynamicWeights().recordDispatch(worker.getId(), dispatched, System.currentTimeMillis() - sendAt);
+            if (dispatched) {
+                onDispatchSucceed(task, worker);
+                return CompletableFuture.completedFuture(true);
+            }
+            onDispatchToWorkerFailed(task, worker);
+
+            rejected.add(worker.getId());
+            return dispatchWithWorkerSelect(task, workerSelector, args, availableWorkers, rejected, times + 1, waitDeadline);
+        });
+    }
+
+    /**
+     * 等待 worker 释放名额后重新下发，超过等待时间视为下发失败
+     */
+    private CompletableFuture<Boolean> awaitCapacity(Task task, long waitDeadline, Supplier<CompletableFuture<Boolean>> retry) {
+        long remains = waitDeadline - System.currentTimeMillis();
+        if (remains <= 0) {
+            if (log.isDebugEnabled()) {
+                log.debug("Task dispatch failed: no worker has capacity task={}", task.getTaskId());
             }
+            onDispatchFailed(task);
+            return CompletableFuture.completedFuture(false);
         }
+        return inFlights.awaitRelease(Duration.ofMillis(Math.min(remains, CAPACITY_RECHECK_INTERVAL))).thenCompose(v -> retry.get());
+    }
+
+    /**
+     * 任务进入就绪队列等待 worker 拉取，排队超时视为下发失败
+     */
+    private CompletableFuture<Boolean> enqueue(Task task) {
+        return readyQueues.offer(task).thenApply(worker -> {
+            if (worker != null) {
+                onDispatchSucceed(task, worker);
+                return true;
+            }
+            onDispatchFailed(task);
+            return false;
+        });
+    }
 
-        // 下发失败
-        onDispatchFailed(task);
-        return false;
+    /**
+     * 发送任务，异常视为 worker 拒绝
+     */
+    private CompletableFuture<Boolean> send(Task task, Worker worker) {
+        CompletableFuture<Boolean> future;
+        try {
+            future = sendCoalescer.send(worker, task);
+        } catch (Exception e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        return future.exceptionally(e -> {
+            log.error("Task dispatch with error task={}", task, e);
+            return false;
+        });
     }
 
 
@@ -159,6 +279,8 @@ public class TaskDispatcher {
      * 下发任务到 worker 失败时的流程
      */
     private void onDispatchToWorkerFailed(Task task, Worker worker) {
+        inFlights.release(task.getTaskId());
+        workerSelectorFactory.releaseReservation(worker.getId(), task.getTaskId());
         if (log.isDebugEnabled()) {
             log.debug("Task dispatch failed: task={} worker={}", task.getTaskId(), worker.getId());
         }
@@ -0,0 +1,440 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.broker.core.dispatch;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.limbo.flowjob.broker.core.domain.task.Task;
+import org.limbo.flowjob.broker.core.schedule.scheduler.NamedThreadFactory;
+import org.limbo.flowjob.broker.core.worker.Worker;
+import org.limbo.flowjob.broker.core.worker.executor.WorkerExecutor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 拉取模式下的任务就绪队列。下发给拉取模式 worker 的任务按执行器排队，worker 长轮询时取走符合自身执行器、标签的任务。
+ * 任务与等待中的拉取请求都通过 CAS 认领，同一任务只会交给一个 worker；超过最长排队时间仍未被取走的任务视为下发失败。
+ * 取走的任务需 worker 在执行前确认接收后才算下发成功，确认超时的任务放回队列，worker 只执行确认成功的任务。
+ *
+ * @author Brozen
+ * @since 2024-06-17
+ */
+@Slf4j
+public class TaskReadyQueues {
+
+    /**
+     * 默认最长排队时间
+     */
+    public static final Duration DEFAULT_MAX_WAIT = Duration.ofMinutes(1);
+
+    /**
+     * 默认单次拉取最长挂起时间，需小于 HTTP 异步请求超时
+     */
+    public static final Duration DEFAULT_MAX_POLL_TIMEOUT = Duration.ofSeconds(20);
+
+    /**
+     * 默认确认接收超时时间
+     */
+    public static final Duration DEFAULT_ACK_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * 取走任务后的确认状态：等待确认、已确认、确认超时或请求已完成而释放
+     */
+    private static final int LEASE_HOLDING = 0;
+
+    private static final int LEASE_ACKED = 1;
+
+    private static final int LEASE_RELEASED = 2;
+
+    private final long maxWaitMillis;
+
+    private final long maxPollTimeoutMillis;
+
+    private final long ackTimeoutMillis;
+
+    /**
+     * 执行器名称 -> 排队中的任务
+     */
+    private final ConcurrentHashMap<String, Queue<ReadyTask>> queues = new ConcurrentHashMap<>();
+
+    /**
+     * 执行器名称 -> 挂起等待任务的拉取请求
+     */
+    private final ConcurrentHashMap<String, Queue<PendingPoll>> polls = new ConcurrentHashMap<>();
+
+    /**
+     * taskId -> 已被 worker 取走、等待确认接收的任务
+     */
+    private final ConcurrentHashMap<String, ReadyTask> leased = new ConcurrentHashMap<>();
+
+    /**
+     * 排队超时、拉取超时检测
+     */
+    private final ScheduledThreadPoolExecutor timer;
+
+    public TaskReadyQueues() {
+        this(DEFAULT_MAX_WAIT, DEFAULT_MAX_POLL_TIMEOUT, DEFAULT_ACK_TIMEOUT);
+    }
+
+    public TaskReadyQueues(Duration maxWait, Duration maxPollTimeout) {
+        this(maxWait, maxPollTimeout, DEFAULT_ACK_TIMEOUT);
+    }
+
+    /**
+     * @param maxWait 任务最长排队时间
+     * @param maxPollTimeout 单次拉取最长挂起时间
+     * @param ackTimeout 任务被取走后等待 worker 确认接收的时间
+     */
+    public TaskReadyQueues(Duration maxWait, Duration maxPollTimeout, Duration ackTimeout) {
+        this.maxWaitMillis = maxWait.toMillis();
+        this.maxPollTimeoutMillis = maxPollTimeout.toMillis();
+        this.ackTimeoutMillis = ackTimeout.toMillis();
+        this.timer = new ScheduledThreadPoolExecutor(1, NamedThreadFactory.newInstance("TaskReadyQueues"));
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * 任务入队等待 worker 拉取
+     * @return 取走并确认接收任务的 worker，排队超时返回 null
+     */
+    public CompletableFuture<Worker> offer(Task task) {
+        ReadyTask ready = new ReadyTask(task, System.currentTimeMillis() + maxWaitMillis);
+        String executorName = task.getExecutorName();
+        ready.expiration = timer.schedule(() -> expire(ready), maxWaitMillis, TimeUnit.MILLISECONDS);
+        queues.computeIfAbsent(executorName, k -> new ConcurrentLinkedQueue<>()).offer(ready);
+
+        // 先入队再唤醒，与拉取方先挂起再检查队列配合，不会遗漏
+        wakeup(executorName);
+        return ready.future;
+    }
+
+    /**
+     * worker 拉取任务，没有任务时挂起直到有任务或超时
+     * @param worker 拉取任务的 worker
+     * @param limit 最多拉取数量
+     * @param timeout 最长挂起时间
+     * @return 拉取到的任务，超时返回空列表
+     */
+    public CompletableFuture<List<Task>> poll(Worker worker, int limit, Duration timeout) {
+        List<ReadyTask> drained = drain(worker, limit);
+        if (!drained.isEmpty() || timeout.isZero() || timeout.isNegative()) {
+            return CompletableFuture.completedFuture(deliver(worker, drained));
+        }
+
+        PendingPoll poll = new PendingPoll(worker, limit);
+        List<String> executorNames = executorNames(worker);
+        for (String executorName : executorNames) {
+            polls.computeIfAbsent(executorName, k -> new ConcurrentLinkedQueue<>()).offer(poll);
+        }
+        long timeoutMillis = Math.min(timeout.toMillis(), maxPollTimeoutMillis);
+        ScheduledFuture<?> expiration = timer.schedule(() -> poll.future.complete(Collections.emptyList()), timeoutMillis, TimeUnit.MILLISECONDS);
+        poll.future.whenComplete((r, e) -> {
+            expiration.cancel(false);
+            for (String executorName : executorNames) {
+                Queue<PendingPoll> pending = polls.get(executorName);
+                if (pending != null) {
+                    pending.remove(poll);
+                }
+            }
+        });
+
+        // 挂起后再检查一次，避免挂起前入队的任务没有唤醒此请求
+        fulfil(poll);
+        return poll.future;
+    }
+
+    /**
+     * worker 执行前确认接收拉取到的任务，任务下发成功。确认超时已放回队列的任务不再处理。
+     * 确认后的任务保留一个确认超时时间，worker 重试确认时仍返回确认成功
+     * @param workerId 拉取任务的 worker
+     * @param taskIds 拉取到的任务
+     * @return 确认成功的任务，worker 只能执行这些任务
+     */
+    public List<String> ack(String workerId, List<String> taskIds) {
+        List<String> acked = new ArrayList<>(taskIds.size());
+        for (String taskId : taskIds) {
+            ReadyTask ready = leased.get(taskId);
+            if (ready == null || !Objects.equals(workerId, ready.worker.getId())) {
+                log.warn("[TaskReadyQueues] ignore ack of task {} from worker {}, not leased or lease expired", taskId, workerId);
+                continue;
+            }
+
+            if (ready.lease.compareAndSet(LEASE_HOLDING, LEASE_ACKED)) {
+                ready.expiration.cancel(false);
+                ready.expiration = timer.schedule(() -> leased.remove(taskId, ready), ackTimeoutMillis, TimeUnit.MILLISECONDS);
+                ready.future.complete(ready.worker);
+            } else if (ready.lease.get() != LEASE_ACKED) {
+                log.warn("[TaskReadyQueues] ignore ack of task {} from worker {}, lease expired", taskId, workerId);
+                continue;
+            }
+            acked.add(taskId);
+        }
+        return acked;
+    }
+
+    /**
+     * 停止超时检测，挂起的拉取请求返回空列表。未确认的任务保持下发中，由下发检查恢复
+     */
+    public void shutdown() {
+        timer.shutdownNow();
+        for (Queue<PendingPoll> pending : polls.values()) {
+            for (PendingPoll poll : pending) {
+                poll.future.complete(Collections.emptyList());
+            }
+        }
+    }
+
+    /**
+     * 有新任务入队时，尝试满足挂起的拉取请求
+     */
+    private void wakeup(String executorName) {
+        Queue<PendingPoll> pending = polls.get(executorName);
+        if (pending == null) {
+            return;
+        }
+        for (PendingPoll poll : pending) {
+            fulfil(poll);
+        }
+    }
+
+    /**
+     * 为挂起的拉取请求取任务，请求已完成时归还取到的任务
+     * @return 是否取到了任务
+     */
+    private boolean fulfil(PendingPoll poll) {
+        if (poll.future.isDone()) {
+            return false;
+        }
+        List<ReadyTask> drained = drain(poll.worker, poll.limit);
+        if (drained.isEmpty()) {
+            return false;
+        }
+
+        // 先登记再响应，保证 worker 的确认不会早于登记
+        List<Task> tasks = deliver(poll.worker, drained);
+        if (poll.future.complete(tasks)) {
+            return true;
+        }
+
+        // 请求已超时或已被其他线程满足，撤销登记，任务放回队列
+        for (ReadyTask ready : drained) {
+            if (ready.lease.compareAndSet(LEASE_HOLDING, LEASE_RELEASED)) {
+                leased.remove(ready.task.getTaskId(), ready);
+                requeue(ready);
+            }
+        }
+        drained.stream().map(ready -> ready.task.getExecutorName()).distinct().forEach(this::wakeup);
+        return false;
+    }
+
+    /**
+     * 确认接收超时，worker 可能没有收到响应，任务放回队列
+     */
+    private void leaseExpired(ReadyTask ready) {
+        if (!ready.lease.compareAndSet(LEASE_HOLDING, LEASE_RELEASED)) {
+            return;
+        }
+        leased.remove(ready.task.getTaskId(), ready);
+        log.warn("[TaskReadyQueues] task {} not acked by worker {}, requeue", ready.task.getTaskId(), ready.worker.getId());
+        requeue(ready);
+        wakeup(ready.task.getExecutorName());
+    }
+
+    /**
+     * 排队超时，未被取走的任务视为下发失败
+     */
+    private void expire(ReadyTask ready) {
+        if (ready.claimed.compareAndSet(false, true)) {
+            Queue<ReadyTask> queue = queues.get(ready.task.getExecutorName());
+            if (queue != null) {
+                queue.remove(ready);
+            }
+            ready.future.complete(null);
+        }
+    }
+
+    /**
+     * 已认领的任务放回队列。认领期间可能已过排队截止时间，此时直接视为下发失败；
+     * 否则按剩余时间重新设置排队超时检测，认领期间触发过的检测不会处理已认领的任务
+     */
+    private void requeue(ReadyTask ready) {
+        long remaining = ready.deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            ready.future.complete(null);
+            return;
+        }
+
+        // 入队前设置好排队超时检测，入队后任务可能立即被其他请求取走
+        ready.expiration.cancel(false);
+        ready.claimed.set(false);
+        ready.expiration = timer.schedule(() -> expire(ready), remaining, TimeUnit.MILLISECONDS);
+        queues.computeIfAbsent(ready.task.getExecutorName(), k -> new ConcurrentLinkedQueue<>()).offer(ready);
+    }
+
+    /**
+     * 从 worker 支持的执行器队列中认领任务
+     */
+    private List<ReadyTask> drain(Worker worker, int limit) {
+        List<ReadyTask> drained = new ArrayList<>();
+        for (String executorName : executorNames(worker)) {
+            Queue<ReadyTask> queue = queues.get(executorName);
+            if (queue == null) {
+                continue;
+            }
+
+            Iterator<ReadyTask> iterator = queue.iterator();
+            while (iterator.hasNext() && drained.size() < limit) {
+                ReadyTask ready = iterator.next();
+                if (ready.claimed.get()) {
+                    // 已超时或被其他请求取走
+                    iterator.remove();
+                    continue;
+                }
+                if (!matches(worker, ready.task) || !ready.claimed.compareAndSet(false, true)) {
+                    continue;
+                }
+                iterator.remove();
+                drained.add(ready);
+            }
+            if (drained.size() >= limit) {
+                break;
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * 标记任务已被 worker 取走，等待 worker 确认接收
+     */
+    private List<Task> deliver(Worker worker, List<ReadyTask> drained) {
+        List<Task> tasks = new ArrayList<>(drained.size());
+        for (ReadyTask ready : drained) {
+            ready.expiration.cancel(false);
+            ready.worker = worker;
+            ready.lease.set(LEASE_HOLDING);
+            leased.put(ready.task.getTaskId(), ready);
+            ready.expiration = timer.schedule(() -> leaseExpired(ready), ackTimeoutMillis, TimeUnit.MILLISECONDS);
+            tasks.add(ready.task);
+        }
+        return tasks;
+    }
+
+    /**
+     * 指定了 worker 的任务只能由该 worker 取走，否则校验标签过滤条件
+     */
+    private boolean matches(Worker worker, Task task) {
+        if (StringUtils.isNotBlank(task.getWorkerId())) {
+            return Objects.equals(task.getWorkerId(), worker.getId());
+        }
+
+        DispatchOption dispatchOption = task.getDispatchOption();
+        if (dispatchOption == null || CollectionUtils.isEmpty(dispatchOption.getTagFilters())) {
+            return true;
+        }
+        for (TagFilterOption tagFilter : dispatchOption.getTagFilters()) {
+            if (!tagFilter.asPredicate().test(worker)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<String> executorNames(Worker worker) {
+        List<WorkerExecutor> executors = worker.getExecutors();
+        if (CollectionUtils.isEmpty(executors)) {
+            return Collections.emptyList();
+        }
+        List<String> names = new ArrayList<>(executors.size());
+        for (WorkerExecutor executor : executors) {
+            names.add(executor.getName());
+        }
+        return names;
+    }
+
+    /**
+     * 排队中的任务
+     */
+    private static class ReadyTask {
+
+        private final Task task;
+
+        /**
+         * 排队截止时间，毫秒时间戳
+         */
+        private final long deadline;
+
+        /**
+         * 被 worker 取走或排队超时后置为 true
+         */
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+
+        private final CompletableFuture<Worker> future = new CompletableFuture<>();
+
+        private volatile ScheduledFuture<?> expiration;
+
+        /**
+         * 取走任务、等待确认接收的 worker
+         */
+        private volatile Worker worker;
+
+        /**
+         * 本次取走的确认状态，等待确认时只会转为已确认或已释放中的一个
+         */
+        private final AtomicInteger lease = new AtomicInteger(LEASE_HOLDING);
+
+        ReadyTask(Task task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * 挂起中的拉取请求
+     */
+    private static class PendingPoll {
+
+        private final Worker worker;
+
+        private final int limit;
+
+        private final CompletableFuture<List<Task>> future = new CompletableFuture<>();
+
+        PendingPoll(Worker worker, int limit) {
+            this.worker = worker;
+            this.limit = limit;
+        }
+    }
+
+}
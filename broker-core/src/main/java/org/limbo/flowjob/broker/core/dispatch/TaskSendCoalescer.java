@@ -0,0 +1,212 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.broker.core.dispatch;
+
+import lombok.extern.slf4j.Slf4j;
+import org.limbo.flowjob.broker.core.domain.task.Task;
+import org.limbo.flowjob.broker.core.exceptions.WorkerApiUnsupportedException;
+import org.limbo.flowjob.broker.core.schedule.scheduler.NamedThreadFactory;
+import org.limbo.flowjob.broker.core.worker.Worker;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按 worker 合并下发请求。同一 worker 在一个时间窗口内的任务攒成一批，通过批量接口一次发送。
+ * 批次满时由使批次满的调用线程发起发送，否则窗口结束后由定时线程发起。发送过程异步，调用方通过返回的 future 获取本任务是否被接受。
+ *
+ * @author Brozen
+ * @since 2024-06-12
+ */
+@Slf4j
+public class TaskSendCoalescer {
+
+    /**
+     * 默认单批次最多任务数
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
+    /**
+     * 默认合并窗口
+     */
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofMillis(2);
+
+    private final int maxBatchSize;
+
+    private final long maxDelayNanos;
+
+    /**
+     * workerId -> 正在攒的批次
+     */
+    private final ConcurrentHashMap<String, Batch> batches = new ConcurrentHashMap<>();
+
+    /**
+     * 窗口到期后发起发送，只负责发起异步请求，不会被网络阻塞
+     */
+    private final ScheduledThreadPoolExecutor flusher;
+
+    public TaskSendCoalescer() {
+        this(DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * @param maxBatchSize 单批次最多任务数，不大于 1 时不合并
+     * @param maxDelay 合并窗口
+     */
+    public TaskSendCoalescer(int maxBatchSize, Duration maxDelay) {
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.flusher = new ScheduledThreadPoolExecutor(1, NamedThreadFactory.newInstance("TaskSendCoalescer"));
+        this.flusher.setKeepAliveTime(30, TimeUnit.SECONDS);
+        this.flusher.allowCoreThreadTimeOut(true);
+        this.flusher.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * 下发任务到 worker
+     * @return worker 是否接受了此任务
+     */
+    public CompletableFuture<Boolean> send(Worker worker, Task task) {
+        if (maxBatchSize <= 1 || maxDelayNanos <= 0) {
+            return worker.sendTaskAsync(task);
+        }
+
+        Pending pending = new Pending(task);
+        while (true) {
+            Batch batch = batches.computeIfAbsent(worker.getId(), id -> new Batch(worker));
+            boolean first;
+            boolean full;
+            synchronized (batch) {
+                if (batch.closed) {
+                    // 批次已被取走发送，重新获取
+                    continue;
+                }
+                batch.pendings.add(pending);
+                first = batch.pendings.size() == 1;
+                full = batch.pendings.size() >= maxBatchSize;
+            }
+
+            if (full) {
+                flushIfOpen(batch);
+            } else if (first) {
+                flusher.schedule(() -> flushIfOpen(batch), maxDelayNanos, TimeUnit.NANOSECONDS);
+            }
+            return pending.result;
+        }
+    }
+
+    private void flushIfOpen(Batch batch) {
+        synchronized (batch) {
+            if (batch.closed) {
+                return;
+            }
+            batch.closed = true;
+            batches.remove(batch.worker.getId(), batch);
+        }
+        try {
+            flush(batch);
+        } catch (Exception e) {
+            batch.pendings.forEach(pending -> pending.result.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * 发送批次。worker 未升级不支持批量接口时退化为逐个发送；其他失败时 worker 可能已经接受了任务（如读超时），
+     * 不能重发，整批视为失败，由调用方重新选择 worker。
+     */
+    private void flush(Batch batch) {
+        List<Pending> pendings = batch.pendings;
+        if (pendings.size() == 1) {
+            sendSingle(batch.worker, pendings.get(0));
+            return;
+        }
+
+        List<Task> tasks = new ArrayList<>(pendings.size());
+        for (Pending pending : pendings) {
+            tasks.add(pending.task);
+        }
+
+        batch.worker.sendTasksAsync(tasks).whenComplete((accepted, e) -> {
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                if (cause instanceof WorkerApiUnsupportedException) {
+                    log.warn("Batch dispatch unsupported, fallback to single dispatch worker={} size={}", batch.worker.getId(), tasks.size());
+                    pendings.forEach(pending -> sendSingle(batch.worker, pending));
+                } else {
+                    pendings.forEach(pending -> pending.result.completeExceptionally(cause));
+                }
+                return;
+            }
+
+            HashSet<String> acceptedIds = new HashSet<>(accepted);
+            for (Pending pending : pendings) {
+                pending.result.complete(acceptedIds.contains(pending.task.getTaskId()));
+            }
+        });
+    }
+
+    private void sendSingle(Worker worker, Pending pending) {
+        try {
+            worker.sendTaskAsync(pending.task).whenComplete((accepted, e) -> {
+                if (e != null) {
+                    pending.result.completeExceptionally(e);
+                } else {
+                    pending.result.complete(accepted);
+                }
+            });
+        } catch (Exception e) {
+            pending.result.completeExceptionally(e);
+        }
+    }
+
+    private static class Batch {
+
+        private final Worker worker;
+
+        private final List<Pending> pendings = new ArrayList<>();
+
+        private boolean closed = false;
+
+        private Batch(Worker worker) {
+            this.worker = worker;
+        }
+
+    }
+
+    private static class Pending {
+
+        private final Task task;
+
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private Pending(Task task) {
+            this.task = task;
+        }
+
+    }
+
+}
@@ -0,0 +1,337 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.dispatch;
+
+import org.limbo.flowjob.broker.core.domain.task.Task;
+import org.limbo.flowjob.broker.core.schedule.scheduler.NamedThreadFactory;
+import org.limbo.flowjob.broker.core.worker.Worker;
+import org.limbo.flowjob.broker.core.worker.metric.WorkerAvailableResource;
+import org.limbo.flowjob.broker.core.worker.metric.WorkerMetric;
+import org.limbo.flowjob.common.lb.LBServerLoadProvider;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * worker 在途任务计数。下发时占用一个名额，任务反馈或故障转移时释放，名额用尽的 worker 不再下发。
+ * 名额以 worker 心跳上报的队列剩余数为准：观察到新的心跳时，丢弃心跳之前下发的记录，用上报值减去心跳之后下发的在途任务重新校准。
+ * 只统计本节点下发的任务，其他节点下发或反馈到其他节点的任务在下一次心跳时校准。
+ *
+ * @author Brozen
+ * @since 2024-06-18
+ */
+public class WorkerInFlightTracker implements LBServerLoadProvider<Worker> {
+
+    /**
+     * 默认等待 worker 释放名额的最长时间
+     */
+    public static final Duration DEFAULT_MAX_WAIT = Duration.ofSeconds(5);
+
+    private final Duration maxWait;
+
+    /**
+     * worker id -> 在途任务
+     */
+    private final Map<String, InFlight> inFlights = new ConcurrentHashMap<>();
+
+    /**
+     * 在途任务 id -> worker id，释放时不依赖任务上记录的 worker
+     */
+    private final Map<String, String> taskWorkers = new ConcurrentHashMap<>();
+
+    /**
+     * 等待名额释放的下发流程
+     */
+    private final Queue<CompletableFuture<Void>> waiters = new ConcurrentLinkedQueue<>();
+
+    private final ScheduledThreadPoolExecutor timer;
+
+    public WorkerInFlightTracker() {
+        this(DEFAULT_MAX_WAIT);
+    }
+
+    /**
+     * @param maxWait 所有 worker 名额用尽时，下发等待名额释放的最长时间
+     */
+    public WorkerInFlightTracker(Duration maxWait) {
+        this.maxWait = maxWait;
+        this.timer = new ScheduledThreadPoolExecutor(1, NamedThreadFactory.newInstance("WorkerInFlightTracker"));
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * worker 是否还有可下发的名额
+     */
+    public boolean hasCapacity(Worker worker) {
+        return available(worker) > 0;
+    }
+
+    /**
+     * worker 剩余可下发的名额，没有上报资源的 worker 不限制
+     */
+    public int available(Worker worker) {
+        WorkerMetric metric = worker.getMetric();
+        if (metric == null || metric.getAvailableResource() == null) {
+            return Integer.MAX_VALUE;
+        }
+        return inFlight(worker.getId()).available(metric);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @param worker worker
+     * @return 本节点在 worker 最近一次心跳之后下发、尚未反馈的任务数
+     */
+    @Override
+    public int getInFlight(Worker worker) {
+        InFlight inFlight = inFlights.get(worker.getId());
+        if (inFlight == null) {
+            return 0;
+        }
+        WorkerMetric metric = worker.getMetric();
+        if (metric != null && metric.getAvailableResource() != null) {
+            inFlight.reconcile(metric);
+        }
+        return inFlight.tasks.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     * @param worker worker
+     * @return 最近一次心跳上报的可用 CPU
+     */
+    @Override
+    public float getAvailableCpu(Worker worker) {
+        WorkerMetric metric = worker.getMetric();
+        return metric == null || metric.getAvailableResource() == null ? 0 : metric.getAvailableResource().getAvailableCpu();
+    }
+
+    /**
+     * 下发前占用 worker 的名额
+     *
+     * @return 名额已用尽时返回 false
+     */
+    public boolean tryAcquire(Worker worker, Task task) {
+        WorkerMetric metric = worker.getMetric();
+        if (metric == null || metric.getAvailableResource() == null) {
+            return true;
+        }
+        return inFlight(worker.getId()).tryAcquire(metric, task.getTaskId());
+    }
+
+    /**
+     * 任务反馈、下发失败或故障转移时释放名额，按占用时记录的 worker 释放，重复释放无影响
+     */
+    public void release(String taskId) {
+        if (taskId == null) {
+            return;
+        }
+        String workerId = taskWorkers.remove(taskId);
+        if (workerId == null) {
+            return;
+        }
+        InFlight inFlight = inFlights.get(workerId);
+        if (inFlight != null && inFlight.release(taskId)) {
+            signal();
+        }
+    }
+
+    /**
+     * worker 下线后移除计数
+     */
+    public void remove(String workerId) {
+        InFlight inFlight = inFlights.remove(workerId);
+        if (inFlight != null) {
+            for (String taskId : inFlight.tasks.keySet()) {
+                taskWorkers.remove(taskId, workerId);
+            }
+        }
+    }
+
+    /**
+     * 等待任一 worker 释放名额
+     *
+     * @param timeout 最长等待时间
+     * @return 有名额释放或超时后完成
+     */
+    public CompletableFuture<Void> awaitRelease(Duration timeout) {
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiters.offer(waiter);
+        ScheduledFuture<?> expiration = timer.schedule(() -> {
+            waiters.remove(waiter);
+            waiter.complete(null);
+        }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+        waiter.whenComplete((r, e) -> expiration.cancel(false));
+        return waiter;
+    }
+
+    /**
+     * 停止计时线程，唤醒所有等待中的下发流程
+     */
+    public void shutdown() {
+        timer.shutdownNow();
+        CompletableFuture<Void> waiter;
+        while ((waiter = waiters.poll()) != null) {
+            waiter.complete(null);
+        }
+    }
+
+    /**
+     * 唤醒等待中的下发流程，在计时线程中继续下发，不占用反馈线程
+     */
+    private void signal() {
+        if (waiters.isEmpty()) {
+            return;
+        }
+        timer.execute(() -> {
+            CompletableFuture<Void> waiter;
+            while ((waiter = waiters.poll()) != null) {
+                waiter.complete(null);
+            }
+        });
+    }
+
+    private InFlight inFlight(String workerId) {
+        return inFlights.computeIfAbsent(workerId, InFlight::new);
+    }
+
+    /**
+     * 单个 worker 的在途任务。占用、释放并发执行，校准时独占。
+     */
+    private class InFlight {
+
+        private final String workerId;
+
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        /**
+         * 在途任务 id -> 下发时间
+         */
+        private final Map<String, LocalDateTime> tasks = new ConcurrentHashMap<>();
+
+        /**
+         * 剩余名额
+         */
+        private final AtomicInteger available = new AtomicInteger();
+
+        /**
+         * 上次校准所用心跳的时间，初始值保证首次使用时校准
+         */
+        private volatile LocalDateTime heartbeatAt = LocalDateTime.MIN;
+
+        InFlight(String workerId) {
+            this.workerId = workerId;
+        }
+
+        int available(WorkerMetric metric) {
+            reconcile(metric);
+            return available.get();
+        }
+
+        boolean tryAcquire(WorkerMetric metric, String taskId) {
+            reconcile(metric);
+            lock.readLock().lock();
+            try {
+                if (tasks.containsKey(taskId)) {
+                    return true;
+                }
+                int remains;
+                do {
+                    remains = available.get();
+                    if (remains <= 0) {
+                        return false;
+                    }
+                } while (!available.compareAndSet(remains, remains - 1));
+
+                if (tasks.putIfAbsent(taskId, TimeUtils.currentLocalDateTime()) != null) {
+                    available.incrementAndGet();
+                } else {
+                    taskWorkers.put(taskId, workerId);
+                }
+                return true;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        boolean release(String taskId) {
+            lock.readLock().lock();
+            try {
+                if (tasks.remove(taskId) == null) {
+                    return false;
+                }
+                available.incrementAndGet();
+                return true;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * 观察到新的心跳时校准：心跳上报的剩余数已经反映了心跳前下发的任务，丢弃这些记录，只扣除心跳之后下发的
+         */
+        void reconcile(WorkerMetric metric) {
+            LocalDateTime lastHeartbeatAt = metric.getLastHeartbeatAt();
+            if (Objects.equals(heartbeatAt, lastHeartbeatAt)) {
+                return;
+            }
+
+            lock.writeLock().lock();
+            try {
+                if (Objects.equals(heartbeatAt, lastHeartbeatAt)) {
+                    return;
+                }
+                WorkerAvailableResource resource = metric.getAvailableResource();
+                if (lastHeartbeatAt != null) {
+                    Iterator<Map.Entry<String, LocalDateTime>> iterator = tasks.entrySet().iterator();
+                    while (iterator.hasNext()) {
+                        Map.Entry<String, LocalDateTime> entry = iterator.next();
+                        if (entry.getValue().isBefore(lastHeartbeatAt)) {
+                            iterator.remove();
+                            taskWorkers.remove(entry.getKey(), workerId);
+                        }
+                    }
+                }
+                available.set(resource.getAvailableQueueLimit() - tasks.size());
+                heartbeatAt = lastHeartbeatAt;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+}
@@ -19,18 +19,15 @@
 package org.limbo.flowjob.broker.core.dispatcher;
 
 import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.limbo.flowjob.broker.core.dispatch.DispatchOption;
 import org.limbo.flowjob.broker.core.dispatch.TagFilterOption;
 import org.limbo.flowjob.broker.core.worker.Worker;
-import org.limbo.flowjob.broker.core.worker.executor.WorkerExecutor;
+import org.limbo.flowjob.common.lb.Invocation;
 import org.limbo.flowjob.common.lb.LBStrategy;
-import org.limbo.flowjob.common.lb.RPCInvocation;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 /**
  * @author Brozen
@@ -57,11 +54,8 @@ public class FilteringWorkerSelector implements WorkerSelector {
         }
 
         // 过滤 Worker
-        String executorName = args.getExecutorName();
-        List<Worker> availableWorkers = filterExecutor(executorName, workers);
         DispatchOption dispatchOption = args.getDispatchOption();
-        List<TagFilterOption> tagFilters = dispatchOption.getTagFilters();
-        availableWorkers = filterTags(tagFilters, availableWorkers);
+        List<Worker> availableWorkers = filter(args.getExecutorName(), dispatchOption.getTagFilters(), workers);
         if (CollectionUtils.isEmpty(availableWorkers)) {
             return null;
         }
@@ -71,48 +65,10 @@ public class FilteringWorkerSelector implements WorkerSelector {
     }
 
     /**
-     * filter by executor name
+     * filter by executor name and tags，通过 {@link WorkerIndex} 做位图交集
      */
-    protected List<Worker> filterExecutor(String executorName, List<Worker> workers) {
-        if (StringUtils.isBlank(executorName)) {
-            return Collections.emptyList();
-        }
-        return workers.stream()
-                .filter(worker -> {
-                    List<WorkerExecutor> executors = worker.getExecutors();
-                    if (CollectionUtils.isEmpty(executors)) {
-                        return false;
-                    }
-                    // 判断是否有对应的执行器
-                    for (WorkerExecutor executor : executors) {
-                        if (executor.getName().equals(executorName)) {
-                            return true;
-                        }
-                    }
-                    return false;
-                })
-                .collect(Collectors.toList());
-    }
-
-    /**
-     * filter by tags
-     */
-    protected List<Worker> filterTags(List<TagFilterOption> tagFilters, List<Worker> workers) {
-        if (CollectionUtils.isEmpty(tagFilters)) {
-            return workers;
-        }
-        List<Worker> availableWorkers = new ArrayList<>(workers);
-        for (TagFilterOption tagFilter : tagFilters) {
-            availableWorkers = availableWorkers.stream().filter(tagFilter.asPredicate()).collect(Collectors.toList());
-        }
-        return availableWorkers;
-    }
-
-    /**
-     * todo ??? filter by worker queue/CPU/memory
-     */
-    protected List<Worker> filterResources() {
-        return null;
+    protected List<Worker> filter(String executorName, List<TagFilterOption> tagFilters, List<Worker> workers) {
+        return WorkerIndex.of(workers).filter(executorName, tagFilters);
     }
 
 
@@ -124,11 +80,30 @@ public class FilteringWorkerSelector implements WorkerSelector {
      * @param workers 待下发上下文可用的worker
      */
     protected Worker doSelect(WorkerSelectArgument args, List<Worker> workers) {
-        RPCInvocation lbInvocation = RPCInvocation.builder()
-                .path(args.getExecutorName())
-                .lbParameters(args.getAttributes())
-                .build();
-        return strategy.select(workers, lbInvocation).orElse(null);
+        return strategy.select(workers, new LazyInvocation(args)).orElse(null);
+    }
+
+
+    /**
+     * 负载均衡参数只在策略需要时才生成
+     */
+    private static class LazyInvocation implements Invocation {
+
+        private final WorkerSelectArgument args;
+
+        LazyInvocation(WorkerSelectArgument args) {
+            this.args = args;
+        }
+
+        @Override
+        public String getInvokeTargetId() {
+            return args.getExecutorName();
+        }
+
+        @Override
+        public Map<String, String> getLBParameters() {
+            return Collections.unmodifiableMap(args.getAttributes());
+        }
     }
 
 }
@@ -0,0 +1,158 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.dispatcher;
+
+import org.apache.commons.collections4.CollectionUtils;
+import org.limbo.flowjob.broker.core.dispatch.DispatchOption;
+import org.limbo.flowjob.broker.core.worker.Worker;
+import org.limbo.flowjob.broker.core.worker.metric.WorkerAvailableResource;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 按资源选择 worker。过滤掉扣除预留后 CPU、内存或队列不足的 worker，
+ * 再按分配后的剩余资源排序：{@link Policy#BEST_FIT} 选择剩余最少的，{@link Policy#LEAST_LOADED} 选择剩余最多的。
+ * 选中后立即预留资源，直到 worker 下次心跳上报新的可用资源，下发失败时由 {@link WorkerSelectorFactory#releaseReservation} 释放。
+ *
+ * @author Brozen
+ * @since 2023-02-14
+ */
+public class ResourceAwareWorkerSelector implements WorkerSelector {
+
+    private final Policy policy;
+
+    private final WorkerResourceReservations reservations;
+
+    public ResourceAwareWorkerSelector(Policy policy, WorkerResourceReservations reservations) {
+        this.policy = policy;
+        this.reservations = reservations;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @param args worker 选择参数
+     * @param workers 待下发上下文可用的worker
+     * @return
+     */
+    @Override
+    public Worker select(WorkerSelectArgument args, List<Worker> workers) {
+        if (CollectionUtils.isEmpty(workers)) {
+            return null;
+        }
+
+        DispatchOption dispatchOption = args.getDispatchOption();
+        List<Worker> availableWorkers = WorkerIndex.of(workers).filter(args.getExecutorName(), dispatchOption.getTagFilters());
+        if (CollectionUtils.isEmpty(availableWorkers)) {
+            return null;
+        }
+
+        float cpu = requirement(dispatchOption.getCpuRequirement());
+        float ram = requirement(dispatchOption.getRamRequirement());
+        List<Candidate> candidates = filterResources(availableWorkers, cpu, ram);
+        candidates.sort(policy.comparator(candidates));
+
+        // 并发选择时资源可能已被预留，依次尝试
+        for (Candidate candidate : candidates) {
+            if (reservations.tryReserve(candidate.worker, args.getTaskId(), cpu, ram)) {
+                return candidate.worker;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * filter by worker queue/CPU/memory
+     */
+    protected List<Candidate> filterResources(List<Worker> workers, float cpu, float ram) {
+        List<Candidate> candidates = new ArrayList<>(workers.size());
+        for (Worker worker : workers) {
+            if (worker.getMetric() == null || worker.getMetric().getAvailableResource() == null) {
+                continue;
+            }
+            WorkerAvailableResource available = reservations.available(worker);
+            if (available.getAvailableQueueLimit() <= 0 || available.getAvailableCpu() < cpu || available.getAvailableRam() < ram) {
+                continue;
+            }
+            candidates.add(new Candidate(worker, available.getAvailableCpu() - cpu, available.getAvailableRam() - ram));
+        }
+        return candidates;
+    }
+
+    /**
+     * 小于等于 0 表示未定义需求
+     */
+    private float requirement(BigDecimal requirement) {
+        return requirement == null || requirement.signum() <= 0 ? 0 : requirement.floatValue();
+    }
+
+    /**
+     * 分配策略
+     */
+    public enum Policy {
+
+        /**
+         * 剩余资源最少的优先，尽量将作业集中，为大作业保留完整的资源
+         */
+        BEST_FIT,
+
+        /**
+         * 剩余资源最多的优先，尽量将作业分散
+         */
+        LEAST_LOADED,
+        ;
+
+        /**
+         * CPU、内存按候选中的最大剩余值归一化后求和比较
+         */
+        Comparator<Candidate> comparator(List<Candidate> candidates) {
+            float maxCpu = 0;
+            float maxRam = 0;
+            for (Candidate candidate : candidates) {
+                maxCpu = Math.max(maxCpu, candidate.cpuLeft);
+                maxRam = Math.max(maxRam, candidate.ramLeft);
+            }
+            float cpuScale = maxCpu > 0 ? maxCpu : 1;
+            float ramScale = maxRam > 0 ? maxRam : 1;
+            Comparator<Candidate> comparator = Comparator.comparingDouble(c -> c.cpuLeft / cpuScale + c.ramLeft / ramScale);
+            return this == BEST_FIT ? comparator : comparator.reversed();
+        }
+    }
+
+    /**
+     * 资源满足的 worker 以及分配后的剩余资源
+     */
+    protected static class Candidate {
+
+        private final Worker worker;
+
+        private final float cpuLeft;
+
+        private final float ramLeft;
+
+        Candidate(Worker worker, float cpuLeft, float ramLeft) {
+            this.worker = worker;
+            this.cpuLeft = cpuLeft;
+            this.ramLeft = ramLeft;
+        }
+    }
+
+}
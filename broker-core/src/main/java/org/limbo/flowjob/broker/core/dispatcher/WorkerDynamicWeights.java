@@ -0,0 +1,207 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.dispatcher;
+
+import org.limbo.flowjob.broker.core.worker.Worker;
+import org.limbo.flowjob.broker.core.worker.metric.WorkerAvailableResource;
+import org.limbo.flowjob.broker.core.worker.metric.WorkerMetric;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 根据 worker 近期的资源上报和下发结果计算动态权重，供加权轮询使用。
+ * 心跳上报的可用 CPU、内存以及下发成功率、下发耗时均按指数加权移动平均（EWMA）平滑，避免单次波动导致权重剧烈变化。
+ * 权重 = 资源占比 × 成功率 × 耗时系数，其中资源占比取 CPU、内存相对最大值的较小者，耗时系数为最快 worker 耗时与自身耗时之比。
+ *
+ * @author Brozen
+ * @since 2024-06-23
+ */
+public class WorkerDynamicWeights {
+
+    /**
+     * 权重最大值，其余 worker 按比例缩放，最小为 1
+     */
+    public static final int MAX_WEIGHT = 100;
+
+    /**
+     * 资源上报的平滑系数，越大越侧重最近的上报
+     */
+    private static final double METRIC_ALPHA = 0.3;
+
+    /**
+     * 下发结果的平滑系数
+     */
+    private static final double DISPATCH_ALPHA = 0.2;
+
+    /**
+     * 成功率、耗时系数的下限，避免 worker 权重降为 0 后再也无法被选中恢复
+     */
+    private static final double MIN_FACTOR = 0.05;
+
+    /**
+     * 超过此时间没有更新的 worker 数据会被清理
+     */
+    private static final long IDLE_MILLIS = Duration.ofMinutes(10).toMillis();
+
+    private final Map<String, Ewma> workers = new ConcurrentHashMap<>();
+
+    private volatile long nextEvictAt = System.currentTimeMillis() + IDLE_MILLIS;
+
+    /**
+     * 记录一次下发结果
+     *
+     * @param workerId worker ID
+     * @param success 是否下发成功
+     * @param latencyMillis 下发耗时，毫秒
+     */
+    public void recordDispatch(String workerId, boolean success, long latencyMillis) {
+        workers.computeIfAbsent(workerId, id -> new Ewma()).dispatched(success, latencyMillis);
+    }
+
+    /**
+     * 计算一组 worker 的权重，用于 {@link org.limbo.flowjob.common.lb.strategies.RoundRobinLBStrategy} 的权重函数
+     *
+     * @return worker ID 到权重的映射，权重范围 [1, {@link #MAX_WEIGHT}]
+     */
+    public Map<String, Integer> weights(List<Worker> servers) {
+        long now = System.currentTimeMillis();
+        evictIdle(now);
+
+        int size = servers.size();
+        double[] cpu = new double[size];
+        double[] ram = new double[size];
+        double[] success = new double[size];
+        double[] latency = new double[size];
+        double maxCpu = 0;
+        double maxRam = 0;
+        double minLatency = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            Worker worker = servers.get(i);
+            Ewma ewma = workers.computeIfAbsent(worker.getId(), id -> new Ewma());
+            synchronized (ewma) {
+                ewma.observe(worker.getMetric(), now);
+                cpu[i] = ewma.cpu;
+                ram[i] = ewma.ram;
+                success[i] = ewma.success;
+                latency[i] = ewma.latency;
+            }
+            maxCpu = Math.max(maxCpu, cpu[i]);
+            maxRam = Math.max(maxRam, ram[i]);
+            if (latency[i] > 0) {
+                minLatency = Math.min(minLatency, latency[i]);
+            }
+        }
+
+        double[] scores = new double[size];
+        double maxScore = 0;
+        for (int i = 0; i < size; i++) {
+            // 未上报资源的 worker 视为与最大者相同
+            double cpuShare = maxCpu > 0 && cpu[i] >= 0 ? cpu[i] / maxCpu : 1;
+            double ramShare = maxRam > 0 && ram[i] >= 0 ? ram[i] / maxRam : 1;
+            double latencyFactor = latency[i] > 0 ? minLatency / latency[i] : 1;
+            scores[i] = Math.max(Math.min(cpuShare, ramShare), MIN_FACTOR)
+                    * Math.max(success[i], MIN_FACTOR)
+                    * Math.max(latencyFactor, MIN_FACTOR);
+            maxScore = Math.max(maxScore, scores[i]);
+        }
+
+        Map<String, Integer> weights = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            int weight = (int) Math.round(MAX_WEIGHT * scores[i] / maxScore);
+            weights.put(servers.get(i).getId(), Math.max(weight, 1));
+        }
+        return weights;
+    }
+
+    /**
+     * 清理长时间未更新的 worker，多个线程同时清理不影响正确性
+     */
+    private void evictIdle(long now) {
+        if (now < nextEvictAt) {
+            return;
+        }
+        nextEvictAt = now + IDLE_MILLIS;
+        workers.values().removeIf(ewma -> now - ewma.updatedAt >= IDLE_MILLIS);
+    }
+
+    /**
+     * 单个 worker 的平滑数据，修改时需持有对象锁
+     */
+    private static class Ewma {
+
+        /**
+         * 可用 CPU、内存，-1 表示尚未上报
+         */
+        double cpu = -1;
+
+        double ram = -1;
+
+        /**
+         * 下发成功率
+         */
+        double success = 1;
+
+        /**
+         * 下发耗时，0 表示尚无数据
+         */
+        double latency = 0;
+
+        /**
+         * 已计入的最近一次心跳时间，同一次心跳只计入一次
+         */
+        LocalDateTime heartbeatAt;
+
+        long updatedAt = System.currentTimeMillis();
+
+        void observe(WorkerMetric metric, long now) {
+            WorkerAvailableResource resource = metric == null ? null : metric.getAvailableResource();
+            if (resource == null || metric.getLastHeartbeatAt() == null || metric.getLastHeartbeatAt().equals(heartbeatAt)) {
+                return;
+            }
+            heartbeatAt = metric.getLastHeartbeatAt();
+            // 队列已满的 worker 暂时没有可用资源
+            double availableCpu = resource.getAvailableQueueLimit() <= 0 ? 0 : resource.getAvailableCpu();
+            double availableRam = resource.getAvailableQueueLimit() <= 0 ? 0 : resource.getAvailableRam();
+            cpu = cpu < 0 ? availableCpu : ewma(cpu, availableCpu, METRIC_ALPHA);
+            ram = ram < 0 ? availableRam : ewma(ram, availableRam, METRIC_ALPHA);
+            updatedAt = now;
+        }
+
+        synchronized void dispatched(boolean succeed, long latencyMillis) {
+            success = ewma(success, succeed ? 1 : 0, DISPATCH_ALPHA);
+            // 失败的耗时通常是超时时间，不计入
+            if (succeed) {
+                double millis = Math.max(latencyMillis, 1);
+                latency = latency <= 0 ? millis : ewma(latency, millis, DISPATCH_ALPHA);
+            }
+            updatedAt = System.currentTimeMillis();
+        }
+
+        private static double ewma(double average, double value, double alpha) {
+            return average + alpha * (value - average);
+        }
+
+    }
+
+}
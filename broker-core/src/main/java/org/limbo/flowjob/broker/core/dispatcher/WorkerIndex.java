@@ -0,0 +1,233 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.dispatcher;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.limbo.flowjob.broker.core.dispatch.TagFilterOption;
+import org.limbo.flowjob.broker.core.worker.Worker;
+import org.limbo.flowjob.broker.core.worker.executor.WorkerExecutor;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+/**
+ * worker 倒排索引，执行器名称、标签 key、标签 (key, value) 分别映射到 worker 位图，过滤时做位图交集。
+ * 索引不可变，worker 列表变化时重新构建；过滤结果按 (执行器, 标签过滤条件) 短时间缓存。
+ *
+ * @author Brozen
+ * @since 2023-02-13
+ */
+public class WorkerIndex {
+
+    /**
+     * 过滤结果的缓存时间
+     */
+    private static final long RESULT_TTL_MILLIS = 1000;
+
+    /**
+     * 最近一次构建的索引，worker 列表未变化时复用
+     */
+    private static final AtomicReference<WorkerIndex> LATEST = new AtomicReference<>();
+
+    private final List<Worker> workers;
+
+    /**
+     * 执行器名称 -> worker
+     */
+    private final Map<String, BitSet> executors = new HashMap<>();
+
+    /**
+     * 标签 key -> worker
+     */
+    private final Map<String, BitSet> tagKeys = new HashMap<>();
+
+    /**
+     * 标签 key -> value -> worker
+     */
+    private final Map<String, Map<String, BitSet>> tagValues = new HashMap<>();
+
+    /**
+     * 过滤结果
+     */
+    private final Cache<String, List<Worker>> results = CacheBuilder.newBuilder()
+            .maximumSize(1024)
+            .expireAfterWrite(RESULT_TTL_MILLIS, TimeUnit.MILLISECONDS)
+            .build();
+
+    private WorkerIndex(List<Worker> workers) {
+        this.workers = Collections.unmodifiableList(new ArrayList<>(workers));
+        for (int i = 0; i < workers.size(); i++) {
+            Worker worker = workers.get(i);
+            List<WorkerExecutor> workerExecutors = worker.getExecutors();
+            if (workerExecutors != null) {
+                for (WorkerExecutor executor : workerExecutors) {
+                    executors.computeIfAbsent(executor.getName(), k -> new BitSet()).set(i);
+                }
+            }
+
+            Map<String, List<String>> tags = worker.getTags();
+            if (tags == null) {
+                continue;
+            }
+            for (Map.Entry<String, List<String>> tag : tags.entrySet()) {
+                if (CollectionUtils.isEmpty(tag.getValue())) {
+                    continue;
+                }
+                tagKeys.computeIfAbsent(tag.getKey(), k -> new BitSet()).set(i);
+                Map<String, BitSet> values = tagValues.computeIfAbsent(tag.getKey(), k -> new HashMap<>());
+                for (String value : tag.getValue()) {
+                    values.computeIfAbsent(value, v -> new BitSet()).set(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取 worker 列表的索引，与最近一次构建的 worker 列表相同时直接复用
+     */
+    public static WorkerIndex of(List<Worker> workers) {
+        WorkerIndex latest = LATEST.get();
+        if (latest != null && latest.indexes(workers)) {
+            return latest;
+        }
+        WorkerIndex index = new WorkerIndex(workers);
+        LATEST.set(index);
+        return index;
+    }
+
+    /**
+     * 是否为此 worker 列表的索引，按顺序比较 worker 实例
+     */
+    private boolean indexes(List<Worker> workers) {
+        if (this.workers.size() != workers.size()) {
+            return false;
+        }
+        for (int i = 0; i < workers.size(); i++) {
+            if (this.workers.get(i) != workers.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 过滤出有此执行器且满足所有标签条件的 worker
+     *
+     * @return 不可修改的 worker 列表
+     */
+    public List<Worker> filter(String executorName, List<TagFilterOption> tagFilters) {
+        if (StringUtils.isBlank(executorName)) {
+            return Collections.emptyList();
+        }
+
+        String key = resultKey(executorName, tagFilters);
+        List<Worker> result = results.getIfPresent(key);
+        if (result != null) {
+            return result;
+        }
+
+        BitSet bits = executors.get(executorName);
+        if (bits == null) {
+            result = Collections.emptyList();
+        } else {
+            bits = (BitSet) bits.clone();
+            if (tagFilters != null) {
+                for (TagFilterOption tagFilter : tagFilters) {
+                    applyTagFilter(bits, tagFilter);
+                }
+            }
+            result = toWorkers(bits);
+        }
+        results.put(key, result);
+        return result;
+    }
+
+    private void applyTagFilter(BitSet bits, TagFilterOption tagFilter) {
+        BitSet keyBits = tagKeys.getOrDefault(tagFilter.tagName, new BitSet());
+        Map<String, BitSet> values = tagValues.getOrDefault(tagFilter.tagName, Collections.emptyMap());
+        switch (tagFilter.condition) {
+            case EXISTS:
+                bits.and(keyBits);
+                break;
+
+            case NOT_EXISTS:
+                bits.andNot(keyBits);
+                break;
+
+            case MUST_MATCH_VALUE:
+                bits.and(values.getOrDefault(tagFilter.tagValue, new BitSet()));
+                break;
+
+            case MUST_NOT_MATCH_VALUE:
+                bits.and(keyBits);
+                BitSet valueBits = values.get(tagFilter.tagValue);
+                if (valueBits != null) {
+                    bits.andNot(valueBits);
+                }
+                break;
+
+            case MUST_MATCH_VALUE_REGEX:
+                // 只需匹配去重后的标签值
+                Pattern pattern = tagFilter.pattern();
+                BitSet matched = new BitSet();
+                for (Map.Entry<String, BitSet> value : values.entrySet()) {
+                    if (pattern.matcher(value.getKey()).find()) {
+                        matched.or(value.getValue());
+                    }
+                }
+                bits.and(matched);
+                break;
+
+            default:
+                bits.clear();
+        }
+    }
+
+    private List<Worker> toWorkers(BitSet bits) {
+        List<Worker> result = new ArrayList<>(bits.cardinality());
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            result.add(workers.get(i));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private String resultKey(String executorName, List<TagFilterOption> tagFilters) {
+        if (CollectionUtils.isEmpty(tagFilters)) {
+            return executorName;
+        }
+        StringBuilder key = new StringBuilder(executorName);
+        for (TagFilterOption tagFilter : tagFilters) {
+            key.append('\u0000').append(tagFilter.tagName)
+                    .append('\u0000').append(tagFilter.condition)
+                    .append('\u0000').append(tagFilter.tagValue);
+        }
+        return key.toString();
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.dispatcher;
+
+import org.limbo.flowjob.broker.core.worker.Worker;
+import org.limbo.flowjob.broker.core.worker.metric.WorkerAvailableResource;
+import org.limbo.flowjob.broker.core.worker.metric.WorkerMetric;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 两次心跳之间下发任务占用的 worker 资源。
+ * worker 上报的可用资源只在心跳时更新，心跳之后下发的任务需要从上报值中扣除，避免同一批资源被重复分配。
+ * 新的心跳到达后，之前的预留视为已经反映在上报值中，不再扣除。
+ *
+ * @author Brozen
+ * @since 2023-02-14
+ */
+public class WorkerResourceReservations {
+
+    /**
+     * 预留的最长保留时间，心跳中断时避免预留一直累积
+     */
+    private static final Duration RESERVATION_TTL = Duration.ofSeconds(30);
+
+    private final Map<String, Reservations> reservations = new ConcurrentHashMap<>();
+
+    /**
+     * worker 扣除预留后的可用资源
+     */
+    public WorkerAvailableResource available(Worker worker) {
+        return reservations(worker).available(worker.getMetric());
+    }
+
+    /**
+     * 资源充足时预留资源
+     *
+     * @return 是否预留成功
+     */
+    public boolean tryReserve(Worker worker, String taskId, float cpu, float ram) {
+        return reservations(worker).tryReserve(worker.getMetric(), taskId, cpu, ram);
+    }
+
+    /**
+     * 任务未下发到 worker 时释放预留，重复释放无影响
+     */
+    public void release(String workerId, String taskId) {
+        Reservations workerReservations = reservations.get(workerId);
+        if (workerReservations != null && taskId != null) {
+            workerReservations.release(taskId);
+        }
+    }
+
+    /**
+     * 移除 worker 的预留
+     */
+    public void remove(String workerId) {
+        reservations.remove(workerId);
+    }
+
+    private Reservations reservations(Worker worker) {
+        return reservations.computeIfAbsent(worker.getId(), id -> new Reservations());
+    }
+
+    /**
+     * 单个 worker 的预留记录
+     */
+    private static class Reservations {
+
+        private final Deque<Reservation> reservations = new ArrayDeque<>();
+
+        synchronized WorkerAvailableResource available(WorkerMetric metric) {
+            WorkerAvailableResource resource = metric.getAvailableResource();
+            float cpu = resource.getAvailableCpu();
+            float ram = resource.getAvailableRam();
+            int queue = resource.getAvailableQueueLimit();
+
+            prune(metric.getLastHeartbeatAt());
+            for (Reservation reservation : reservations) {
+                cpu -= reservation.cpu;
+                ram -= reservation.ram;
+                queue--;
+            }
+            return new WorkerAvailableResource(cpu, ram, queue);
+        }
+
+        synchronized boolean tryReserve(WorkerMetric metric, String taskId, float cpu, float ram) {
+            WorkerAvailableResource available = available(metric);
+            if (available.getAvailableQueueLimit() <= 0 || available.getAvailableCpu() < cpu || available.getAvailableRam() < ram) {
+                return false;
+            }
+            reservations.addLast(new Reservation(taskId, TimeUtils.currentLocalDateTime(), cpu, ram));
+            return true;
+        }
+
+        synchronized void release(String taskId) {
+            reservations.removeIf(reservation -> taskId.equals(reservation.taskId));
+        }
+
+        /**
+         * 移除心跳之前以及过期的预留
+         */
+        private void prune(LocalDateTime lastHeartbeatAt) {
+            LocalDateTime expireAt = TimeUtils.currentLocalDateTime().minus(RESERVATION_TTL);
+            Iterator<Reservation> iterator = reservations.iterator();
+            while (iterator.hasNext()) {
+                Reservation reservation = iterator.next();
+                if (reservation.reservedAt.isBefore(expireAt)
+                        || (lastHeartbeatAt != null && reservation.reservedAt.isBefore(lastHeartbeatAt))) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private static class Reservation {
+
+        private final String taskId;
+
+        private final LocalDateTime reservedAt;
+
+        private final float cpu;
+
+        private final float ram;
+
+        Reservation(String taskId, LocalDateTime reservedAt, float cpu, float ram) {
+            this.taskId = taskId;
+            this.reservedAt = reservedAt;
+            this.cpu = cpu;
+            this.ram = ram;
+        }
+    }
+
+}
@@ -26,6 +26,11 @@ import java.util.Map;
  */
 public interface WorkerSelectArgument {
 
+    /**
+     * 下发的任务 id，按资源选择时用于释放预留
+     */
+    String getTaskId();
+
     /**
      * 执行器名称
      */
@@ -31,6 +31,11 @@ import java.util.List;
  *     <li>{@link LoadBalanceType#LEAST_FREQUENTLY_USED}</li>
  *     <li>{@link LoadBalanceType#LEAST_RECENTLY_USED}</li>
  *     <li>{@link LoadBalanceType#CONSISTENT_HASH}</li>
+ *     <li>{@link LoadBalanceType#RESOURCE_BEST_FIT}</li>
+ *     <li>{@link LoadBalanceType#RESOURCE_LEAST_LOADED}</li>
+ *     <li>{@link LoadBalanceType#POWER_OF_TWO_CHOICES}</li>
+ *     <li>{@link LoadBalanceType#CONSISTENT_HASH_BOUNDED}</li>
+ *     <li>{@link LoadBalanceType#DYNAMIC_WEIGHTED_ROUND_ROBIN}</li>
  * </ul>
  *
  * @author Brozen
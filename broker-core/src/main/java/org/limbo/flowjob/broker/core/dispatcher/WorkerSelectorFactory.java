@@ -16,14 +16,19 @@
 
 package org.limbo.flowjob.broker.core.dispatcher;
 
+import lombok.Getter;
 import lombok.Setter;
+import org.limbo.flowjob.broker.core.worker.Worker;
+import org.limbo.flowjob.broker.core.worker.metric.WorkerMetric;
 import org.limbo.flowjob.common.constants.LoadBalanceType;
 import org.limbo.flowjob.common.constants.MsgConstants;
+import org.limbo.flowjob.common.lb.LBServerLoadProvider;
 import org.limbo.flowjob.common.lb.LBServerStatisticsProvider;
 import org.limbo.flowjob.common.lb.strategies.AppointLBStrategy;
 import org.limbo.flowjob.common.lb.strategies.ConsistentHashLBStrategy;
 import org.limbo.flowjob.common.lb.strategies.LFULBStrategy;
 import org.limbo.flowjob.common.lb.strategies.LRULBStrategy;
+import org.limbo.flowjob.common.lb.strategies.PowerOfChoicesLBStrategy;
 import org.limbo.flowjob.common.lb.strategies.RandomLBStrategy;
 import org.limbo.flowjob.common.lb.strategies.RoundRobinLBStrategy;
 
@@ -47,15 +52,51 @@ public class WorkerSelectorFactory {
     @Setter
     private LBServerStatisticsProvider lbServerStatisticsProvider = LBServerStatisticsProvider.EMPTY_PROVIDER;
 
+    /**
+     * 用于获取 worker 的实时负载，两次随机选择算法会用到。
+     * 未设置时在途作业数均视为 0，只按心跳上报的可用 CPU 选择
+     */
+    @Setter
+    private LBServerLoadProvider<Worker> lbServerLoadProvider = new MetricLoadProvider();
+
+    /**
+     * 按资源选择时，两次心跳之间已下发任务预留的资源
+     */
+    private final WorkerResourceReservations reservations = new WorkerResourceReservations();
+
+    /**
+     * 轮询、一致性哈希策略缓存了轮询序列、哈希环，所有选择器共用同一个实例
+     */
+    private final RoundRobinLBStrategy<Worker> roundRobin = new RoundRobinLBStrategy<>();
+
+    private final ConsistentHashLBStrategy<Worker> consistentHash = new ConsistentHashLBStrategy<>();
+
+    private final ConsistentHashLBStrategy<Worker> boundedConsistentHash = new ConsistentHashLBStrategy<>(
+            new DelegatingLoadProvider(), ConsistentHashLBStrategy.DEFAULT_LOAD_FACTOR
+    );
+
+    /**
+     * 动态权重，下发结果由 {@link org.limbo.flowjob.broker.core.dispatch.TaskDispatcher} 记录
+     */
+    @Getter
+    private final WorkerDynamicWeights dynamicWeights = new WorkerDynamicWeights();
+
+    private final RoundRobinLBStrategy<Worker> dynamicWeightedRoundRobin = new RoundRobinLBStrategy<>(dynamicWeights::weights);
+
     private final Map<LoadBalanceType, Supplier<WorkerSelector>> selectors = new EnumMap<>(LoadBalanceType.class);
 
     public WorkerSelectorFactory() {
-        selectors.put(LoadBalanceType.ROUND_ROBIN, () -> new FilteringWorkerSelector(new RoundRobinLBStrategy<>()));
+        selectors.put(LoadBalanceType.ROUND_ROBIN, () -> new FilteringWorkerSelector(roundRobin));
         selectors.put(LoadBalanceType.RANDOM, () -> new FilteringWorkerSelector(new RandomLBStrategy<>()));
         selectors.put(LoadBalanceType.LEAST_FREQUENTLY_USED, () -> new FilteringWorkerSelector(new LFULBStrategy<>(this.lbServerStatisticsProvider)));
         selectors.put(LoadBalanceType.LEAST_RECENTLY_USED, () -> new FilteringWorkerSelector(new LRULBStrategy<>(this.lbServerStatisticsProvider)));
         selectors.put(LoadBalanceType.APPOINT, () -> new FilteringWorkerSelector(new AppointLBStrategy<>()));
-        selectors.put(LoadBalanceType.CONSISTENT_HASH, () -> new FilteringWorkerSelector(new ConsistentHashLBStrategy<>()));
+        selectors.put(LoadBalanceType.CONSISTENT_HASH, () -> new FilteringWorkerSelector(consistentHash));
+        selectors.put(LoadBalanceType.RESOURCE_BEST_FIT, () -> new ResourceAwareWorkerSelector(ResourceAwareWorkerSelector.Policy.BEST_FIT, reservations));
+        selectors.put(LoadBalanceType.RESOURCE_LEAST_LOADED, () -> new ResourceAwareWorkerSelector(ResourceAwareWorkerSelector.Policy.LEAST_LOADED, reservations));
+        selectors.put(LoadBalanceType.POWER_OF_TWO_CHOICES, () -> new FilteringWorkerSelector(new PowerOfChoicesLBStrategy<>(this.lbServerLoadProvider)));
+        selectors.put(LoadBalanceType.CONSISTENT_HASH_BOUNDED, () -> new FilteringWorkerSelector(boundedConsistentHash));
+        selectors.put(LoadBalanceType.DYNAMIC_WEIGHTED_ROUND_ROBIN, () -> new FilteringWorkerSelector(dynamicWeightedRoundRobin));
     }
 
     /**
@@ -70,4 +111,51 @@ public class WorkerSelectorFactory {
                 .orElseThrow(() -> new IllegalArgumentException(MsgConstants.UNKNOWN + " load balance type: " + loadBalanceType));
     }
 
+    /**
+     * 任务没有下发到选中的 worker 时释放其资源预留
+     */
+    public void releaseReservation(String workerId, String taskId) {
+        reservations.release(workerId, taskId);
+    }
+
+    /**
+     * worker 下线后清理其资源预留
+     */
+    public void removeWorker(String workerId) {
+        reservations.remove(workerId);
+    }
+
+    /**
+     * 委托给当前设置的 {@link #lbServerLoadProvider}，供创建后一直复用的策略使用
+     */
+    private class DelegatingLoadProvider implements LBServerLoadProvider<Worker> {
+
+        @Override
+        public int getInFlight(Worker worker) {
+            return lbServerLoadProvider.getInFlight(worker);
+        }
+
+        @Override
+        public float getAvailableCpu(Worker worker) {
+            return lbServerLoadProvider.getAvailableCpu(worker);
+        }
+    }
+
+    /**
+     * 只使用心跳上报数据的负载
+     */
+    private static class MetricLoadProvider implements LBServerLoadProvider<Worker> {
+
+        @Override
+        public int getInFlight(Worker worker) {
+            return 0;
+        }
+
+        @Override
+        public float getAvailableCpu(Worker worker) {
+            WorkerMetric metric = worker.getMetric();
+            return metric == null || metric.getAvailableResource() == null ? 0 : metric.getAvailableResource().getAvailableCpu();
+        }
+    }
+
 }
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.limbo.flowjob.broker.core.exceptions;
+
+/**
+ * Worker 不支持调用的接口，通常是 worker 版本低于 broker
+ *
+ * @author Brozen
+ * @since 2024-06-12
+ */
+public class WorkerApiUnsupportedException extends WorkerException {
+
+    private static final long serialVersionUID = -3171538526712284901L;
+
+    public WorkerApiUnsupportedException(String workerId, String message) {
+        super(workerId, message);
+    }
+
+}
@@ -18,6 +18,7 @@ package org.limbo.flowjob.broker.core.schedule;
 
 import lombok.Setter;
 
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -65,4 +66,14 @@ public class DelegatedScheduleCalculator extends ScheduleCalculator {
     public Long doCalculate(Calculated calculated) {
         return Objects.requireNonNull(delegated, "delegated target").doCalculate(calculated);
     }
+
+    @Override
+    public List<Long> calculate(Calculated calculated, int count) {
+        return Objects.requireNonNull(delegated, "delegated target").calculate(calculated, count);
+    }
+
+    @Override
+    public List<Long> doCalculate(Calculated calculated, int count) {
+        return Objects.requireNonNull(delegated, "delegated target").doCalculate(calculated, count);
+    }
 }
@@ -24,6 +24,8 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * 调度时间计算策略，用于计算下次触发调度时间戳
@@ -77,6 +79,25 @@ public abstract class ScheduleCalculator {
 
     public abstract Long doCalculate(Calculated calculated);
 
+    /**
+     * 计算之后的多个触发调度时间戳，用于循环调度时预先计算。
+     * 默认只计算下一次，能够预测多次触发时间的策略可覆盖 {@link #doCalculate(Calculated, int)}。
+     * @param calculated 待调度对象
+     * @param count 最多计算的数量
+     * @return 之后的触发时间戳，按时间升序
+     */
+    public List<Long> calculate(Calculated calculated, int count) {
+        if (calculated.lastTriggerAt() == null) {
+            return Collections.singletonList(calculate(calculated));
+        }
+
+        return doCalculate(calculated, count);
+    }
+
+    public List<Long> doCalculate(Calculated calculated, int count) {
+        return Collections.singletonList(doCalculate(calculated));
+    }
+
     public ScheduleType getScheduleType() {
         return scheduleType;
     }
@@ -17,23 +17,32 @@
 package org.limbo.flowjob.broker.core.schedule.calculator;
 
 import com.cronutils.model.CronType;
-import com.cronutils.model.definition.CronDefinition;
 import com.cronutils.model.definition.CronDefinitionBuilder;
 import com.cronutils.model.time.ExecutionTime;
 import com.cronutils.parser.CronParser;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.limbo.flowjob.common.constants.ScheduleType;
 import org.limbo.flowjob.broker.core.schedule.Calculated;
 import org.limbo.flowjob.broker.core.schedule.ScheduleCalculator;
 import org.limbo.flowjob.broker.core.schedule.ScheduleOption;
-import org.limbo.flowjob.common.utils.time.TimeUtils;
 
-import java.time.Instant;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 /**
  * CRON调度时间计算器
+ * 解析后的CRON表达式会被缓存，相同表达式的 plan 共用同一个 {@link ExecutionTime}
  *
  * @author Brozen
  * @since 2021-05-21
@@ -41,6 +50,35 @@ import java.util.Optional;
 @Slf4j
 public class CronScheduleCalculator extends ScheduleCalculator {
 
+    /**
+     * 缓存的CRON表达式数量上限
+     */
+    private static final int MAX_CACHED_CRON = 10000;
+
+    /**
+     * 各类型CRON的解析器，解析器是线程安全的
+     */
+    private static final Map<CronType, CronParser> PARSERS = new EnumMap<>(CronType.class);
+
+    static {
+        for (CronType cronType : CronType.values()) {
+            PARSERS.put(cronType, new CronParser(CronDefinitionBuilder.instanceDefinitionFor(cronType)));
+        }
+    }
+
+    /**
+     * 解析后的CRON表达式，长时间未使用的会被淘汰
+     */
+    private static final LoadingCache<CronKey, ExecutionTime> EXECUTION_TIMES = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_CRON)
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build(new CacheLoader<CronKey, ExecutionTime>() {
+                @Override
+                public ExecutionTime load(CronKey key) {
+                    return ExecutionTime.forCron(PARSERS.get(CronType.valueOf(key.cronType)).parse(key.cron));
+                }
+            });
+
     protected CronScheduleCalculator() {
         super(ScheduleType.CRON);
     }
@@ -52,27 +90,57 @@ public class CronScheduleCalculator extends ScheduleCalculator {
      */
     @Override
     public Long doCalculate(Calculated calculated) {
+        List<Long> triggerAts = doCalculate(calculated, 1);
+        return triggerAts.isEmpty() ? ScheduleCalculator.NO_TRIGGER : triggerAts.get(0);
+    }
+
+    /**
+     * 一次计算之后的多个触发时间戳，避免循环调度时每次重新计算
+     * @param calculated 待调度对象
+     * @param count 计算的数量
+     * @return 之后的触发时间戳，按时间升序，没有触发时间时返回空列表
+     */
+    @Override
+    public List<Long> doCalculate(Calculated calculated, int count) {
         ScheduleOption scheduleOption = calculated.scheduleOption();
         // 计算下一次调度
         String cron = scheduleOption.getScheduleCron();
         String cronType = scheduleOption.getScheduleCronType();
         try {
-            // 校验CRON表达式
-            CronDefinition cronDefinition = CronDefinitionBuilder.instanceDefinitionFor(CronType.valueOf(cronType));
-            CronParser parser = new CronParser(cronDefinition);
-            ExecutionTime executionTime = ExecutionTime.forCron(parser.parse(cron));
-
-            // 解析下次触发时间
-            Optional<ZonedDateTime> nextSchedule = executionTime.nextExecution(ZonedDateTime.now());
-            if (!nextSchedule.isPresent()) {
+            ExecutionTime executionTime = EXECUTION_TIMES.getUnchecked(new CronKey(cron, cronType));
+
+            // 解析之后的触发时间
+            List<Long> triggerAts = new ArrayList<>(count);
+            ZonedDateTime from = ZonedDateTime.now();
+            for (int i = 0; i < count; i++) {
+                Optional<ZonedDateTime> nextSchedule = executionTime.nextExecution(from);
+                if (!nextSchedule.isPresent()) {
+                    break;
+                }
+                from = nextSchedule.get();
+                triggerAts.add(from.toInstant().toEpochMilli());
+            }
+
+            if (triggerAts.isEmpty()) {
                 log.error("cron expression {} {} next schedule is null", cron, cronType);
-                return ScheduleCalculator.NO_TRIGGER;
             }
-            return nextSchedule.get().toInstant().toEpochMilli();
+            return triggerAts;
         } catch (Exception e) {
             log.error("parse cron expression {} {} failed!", cron, cronType, e);
-            return ScheduleCalculator.NO_TRIGGER;
+            return Collections.emptyList();
         }
+    }
+
+    /**
+     * 缓存的key，解析结果只与表达式及其类型有关，与 plan 版本无关
+     */
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static class CronKey {
+
+        private final String cron;
+
+        private final String cronType;
 
     }
 
@@ -25,11 +25,19 @@ import org.limbo.flowjob.broker.core.schedule.Scheduled;
 import org.limbo.flowjob.common.utils.time.TimeUtils;
 
 import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
  * 基于Netty时间轮算法的作业执行器。一个作业申请执行后，会计算下次执行的间隔，并注册到时间轮上。
  * 当时间轮触发作业执行时，将进入作业下发流程，并将生成的实例分发给下游。
+ * 时间轮线程只负责触发，作业的执行交由 {@link #executor(Scheduled)} 返回的执行器处理，防止慢作业阻塞其他作业的触发。
+ * <p>
+ * 时间轮按 tick 推进，作业最多会延迟一个 tick 触发。开启高精度模式后，时间轮只负责较远的作业，
+ * 在距离触发时间两个 tick 内时，作业会被转移到基于最小堆的延迟队列中，按毫秒精度触发。
  *
  * @author Brozen
  * @since 2021-05-18
@@ -37,37 +45,146 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public abstract class HashedWheelTimerScheduler<T extends Scheduled> implements Scheduler<T> {
 
+    /**
+     * 默认 tick 间隔
+     */
+    public static final Duration DEFAULT_TICK_DURATION = Duration.ofMillis(100);
+
+    /**
+     * 默认时间轮的槽位数
+     */
+    public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
     /**
      * 依赖netty的时间轮算法进行作业调度
      */
     private final Timer timer;
 
     /**
-     * 使用指定执行器构造一个调度器，该调度器基于哈希时间轮算法。
+     * 高精度调度使用的延迟队列，未开启高精度模式时为 null
+     */
+    private final ScheduledExecutorService preciseTimer;
+
+    /**
+     * 距离触发时间在此范围内的作业，由 {@link #preciseTimer} 触发，毫秒
+     */
+    private final long preciseWindow;
+
+    /**
+     * 使用默认配置构造一个调度器，该调度器基于哈希时间轮算法。
      */
     protected HashedWheelTimerScheduler() {
-        this.timer = new HashedWheelTimer(NamedThreadFactory.newInstance(this.getClass().getSimpleName()));
+        this(DEFAULT_TICK_DURATION, DEFAULT_TICKS_PER_WHEEL, false);
+    }
+
+    /**
+     * 使用指定配置构造一个调度器，该调度器基于哈希时间轮算法。
+     *
+     * @param tickDuration 时间轮 tick 间隔
+     * @param ticksPerWheel 时间轮的槽位数
+     * @param precise 是否开启高精度模式
+     */
+    protected HashedWheelTimerScheduler(Duration tickDuration, int ticksPerWheel, boolean precise) {
+        long tick = Math.max(tickDuration.toMillis(), 1);
+        String name = this.getClass().getSimpleName();
+        this.timer = new HashedWheelTimer(NamedThreadFactory.newInstance(name), tick, TimeUnit.MILLISECONDS, ticksPerWheel);
+        this.preciseTimer = precise ? new ScheduledThreadPoolExecutor(1, NamedThreadFactory.newInstance(name + "Precise")) : null;
+        this.preciseWindow = tick * 2;
     }
 
     protected void calAndSchedule(T scheduled) {
+        long triggerAt = TimeUtils.toInstant(scheduled.scheduleAt()).toEpochMilli();
+        schedule(scheduled, triggerAt);
+    }
+
+    private void schedule(T scheduled, long triggerAt) {
         // 计算延迟时间
-        long delay = Duration.between(TimeUtils.currentLocalDateTime(), scheduled.scheduleAt()).toMillis();
+        long delay = triggerAt - TimeUtils.currentInstant().toEpochMilli();
         delay = delay < 0 ? 0 : delay;
 
-        // 在timer上调度作业执行
+        // 临近触发的作业直接放入延迟队列
+        if (preciseTimer != null && delay <= preciseWindow) {
+            preciseTimer.schedule(() -> trigger(scheduled), delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        // 在timer上调度作业执行，高精度模式下提前触发，再转移到延迟队列
+        long wheelDelay = preciseTimer == null ? delay : delay - preciseWindow;
         this.timer.newTimeout(timeout -> {
-            try {
-                // 已经取消调度了，则不再重新调度作业
-                if (!isScheduling(scheduled.scheduleId())) {
-                    return;
-                }
+            if (preciseTimer == null) {
+                trigger(scheduled);
+            } else {
+                schedule(scheduled, triggerAt);
+            }
+        }, wheelDelay, TimeUnit.MILLISECONDS);
+    }
 
-                scheduled.execute();
+    private void trigger(T scheduled) {
+        try {
+            // 已经取消调度了，则不再重新调度作业
+            if (!isScheduling(scheduled)) {
+                return;
+            }
 
-            } catch (Exception e) {
-                log.error("[HashedWheelTimerScheduler] schedule fail id:{}", scheduled.scheduleId(), e);
+            executor(scheduled).execute(() -> execute(scheduled));
+
+        } catch (RejectedExecutionException e) {
+            log.error("[HashedWheelTimerScheduler] schedule rejected id:{}", scheduled.scheduleId(), e);
+        } catch (Exception e) {
+            log.error("[HashedWheelTimerScheduler] schedule fail id:{}", scheduled.scheduleId(), e);
+        }
+    }
+
+    private void execute(T scheduled) {
+        try {
+            // 在线程池中排队期间可能已经被取消调度
+            if (!isScheduling(scheduled)) {
+                return;
             }
-        }, delay, TimeUnit.MILLISECONDS);
+
+            scheduled.execute();
+
+        } catch (Exception e) {
+            log.error("[HashedWheelTimerScheduler] execute fail id:{}", scheduled.scheduleId(), e);
+        }
+    }
+
+    /**
+     * 判断作业是否仍在调度中，默认根据 scheduleId 判断
+     *
+     * @param scheduled 时间轮中触发的作业
+     */
+    protected boolean isScheduling(T scheduled) {
+        return isScheduling(scheduled.scheduleId());
+    }
+
+    /**
+     * 在时间轮上延迟执行一个内部任务，任务将在时间轮线程中执行
+     *
+     * @param task 任务
+     * @param delay 延迟时间，毫秒
+     */
+    protected void delay(Runnable task, long delay) {
+        this.timer.newTimeout(timeout -> task.run(), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取作业的执行器，默认在触发线程中直接执行
+     *
+     * @param scheduled 待执行的作业
+     */
+    protected Executor executor(T scheduled) {
+        return Runnable::run;
+    }
+
+    /**
+     * 停止时间轮，未触发的作业将不再执行
+     */
+    public void stop() {
+        this.timer.stop();
+        if (preciseTimer != null) {
+            preciseTimer.shutdownNow();
+        }
     }
 
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.limbo.flowjob.broker.core.schedule.scheduler.meta;
+
+import lombok.Getter;
+import lombok.ToString;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+/**
+ * 触发时间较远的元任务的压缩记录，只保留重建元任务所需的标识和触发时间。
+ * 临近触发时由 {@link MetaTaskLoader} 重新加载为完整的元任务，在此之前不会放入时间轮。
+ *
+ * @author Brozen
+ * @since 2023-02-20
+ */
+@Getter
+@ToString
+public class DeferredMetaTask implements MetaTask, Comparable<DeferredMetaTask> {
+
+    private static final Comparator<DeferredMetaTask> COMPARATOR = Comparator
+            .comparingLong(DeferredMetaTask::getTriggerAt)
+            .thenComparing(DeferredMetaTask::scheduleId);
+
+    private final MetaTaskType type;
+
+    private final String metaId;
+
+    /**
+     * 触发时间戳，毫秒
+     */
+    private final long triggerAt;
+
+    public DeferredMetaTask(MetaTask task) {
+        this.type = task.getType();
+        this.metaId = task.getMetaId();
+        this.triggerAt = TimeUtils.toInstant(task.scheduleAt()).toEpochMilli();
+    }
+
+    /**
+     * 压缩记录不可直接执行，需要先加载为完整的元任务
+     */
+    @Override
+    public void execute() {
+        throw new UnsupportedOperationException("deferred meta task must be loaded before execute: " + scheduleId());
+    }
+
+    @Override
+    public LocalDateTime scheduleAt() {
+        return TimeUtils.toLocalDateTime(triggerAt);
+    }
+
+    @Override
+    public int compareTo(DeferredMetaTask o) {
+        return COMPARATOR.compare(this, o);
+    }
+
+}
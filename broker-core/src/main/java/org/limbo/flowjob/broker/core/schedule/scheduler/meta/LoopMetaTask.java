@@ -28,9 +28,12 @@ import org.limbo.flowjob.broker.core.schedule.Calculated;
 import org.limbo.flowjob.broker.core.schedule.ScheduleCalculator;
 import org.limbo.flowjob.broker.core.schedule.ScheduleOption;
 import org.limbo.flowjob.broker.core.schedule.calculator.ScheduleCalculatorFactory;
+import org.limbo.flowjob.common.constants.ScheduleType;
 import org.limbo.flowjob.common.utils.time.TimeUtils;
 
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 /**
  * 不断循环执行的任务
@@ -43,6 +46,11 @@ import java.time.LocalDateTime;
 @Getter
 public abstract class LoopMetaTask implements MetaTask, Calculated {
 
+    /**
+     * CRON 类型一次预先计算的触发时间数量
+     */
+    private static final int PRECOMPUTE_COUNT = 8;
+
     /**
      * 上次任务触发时间
      */
@@ -77,6 +85,15 @@ public abstract class LoopMetaTask implements MetaTask, Calculated {
     @ToString.Exclude
     protected MetaTaskScheduler metaTaskScheduler;
 
+    /**
+     * 预先计算好的之后的触发时间戳，CRON 类型使用
+     */
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private final Deque<Long> precomputedTriggerAts = new ArrayDeque<>(PRECOMPUTE_COUNT);
+
     protected LoopMetaTask(LocalDateTime lastTriggerAt, LocalDateTime lastFeedbackAt, ScheduleOption scheduleOption, MetaTaskScheduler metaTaskScheduler) {
         this.lastTriggerAt = lastTriggerAt;
         this.lastFeedbackAt = lastFeedbackAt;
@@ -103,14 +120,20 @@ public abstract class LoopMetaTask implements MetaTask, Calculated {
         }
     }
 
+    /**
+     * 下次触发时间在执行前按频率计算，执行结束后才放入时间轮。
+     * 执行超过间隔时下次立即触发，多线程执行器下同一元任务不会重叠执行
+     */
     protected void executeFixedRate() {
         lastTriggerAt = triggerAt;
         triggerAt = nextTriggerAt;
         nextTriggerAt = calNextTriggerAt();
-        metaTaskScheduler.unschedule(scheduleId());
-        metaTaskScheduler.schedule(this);
-        executeTask();
-        lastFeedbackAt = TimeUtils.currentLocalDateTime();
+        try {
+            executeTask();
+            lastFeedbackAt = TimeUtils.currentLocalDateTime();
+        } finally {
+            metaTaskScheduler.reschedule(this);
+        }
     }
 
     protected void executeFixedDelay() {
@@ -153,10 +176,30 @@ public abstract class LoopMetaTask implements MetaTask, Calculated {
      * 下次触发时间
      */
     public LocalDateTime calNextTriggerAt() {
+        if (triggerAt != null && scheduleOption.getScheduleType() == ScheduleType.CRON) {
+            return TimeUtils.toLocalDateTime(nextPrecomputedTriggerAt());
+        }
         Long calculate = lazyInitTriggerCalculator().calculate(this); // 这里获取到的是毫秒 转为秒
         return TimeUtils.toLocalDateTime(calculate);
     }
 
+    /**
+     * 从预先计算的触发时间中取出下一个晚于当前的时间，用完后再批量计算
+     */
+    private long nextPrecomputedTriggerAt() {
+        long now = TimeUtils.currentInstant().toEpochMilli();
+        Long next;
+        while ((next = precomputedTriggerAts.poll()) != null) {
+            if (next > now) {
+                return next;
+            }
+        }
+
+        precomputedTriggerAts.addAll(lazyInitTriggerCalculator().calculate(this, PRECOMPUTE_COUNT));
+        next = precomputedTriggerAts.poll();
+        return next == null ? ScheduleCalculator.NO_TRIGGER : next;
+    }
+
     @Override
     public LocalDateTime lastFeedbackAt() {
         return lastFeedbackAt;
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.limbo.flowjob.broker.core.schedule.scheduler.meta;
+
+/**
+ * 将 {@link DeferredMetaTask} 重新加载为完整的元任务
+ *
+ * @author Brozen
+ * @since 2023-02-20
+ */
+public interface MetaTaskLoader {
+
+    /**
+     * @return 加载的元任务类型
+     */
+    MetaTaskType getType();
+
+    /**
+     * 加载完整的元任务
+     *
+     * @param task 元任务的压缩记录
+     * @return 完整的元任务，scheduleId 需要与压缩记录一致；返回 null 表示元任务已失效，不再调度
+     */
+    MetaTask load(DeferredMetaTask task);
+
+}
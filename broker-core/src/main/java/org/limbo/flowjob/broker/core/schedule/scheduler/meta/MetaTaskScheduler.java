@@ -18,15 +18,31 @@ package org.limbo.flowjob.broker.core.schedule.scheduler.meta;
 
 import lombok.extern.slf4j.Slf4j;
 import org.limbo.flowjob.broker.core.schedule.scheduler.HashedWheelTimerScheduler;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 
 /**
+ * 元任务调度器，时间轮触发后，元任务会交由对应 {@link MetaTaskType} 的执行器执行，未指定执行器的类型在时间轮线程中执行。
+ * <p>
+ * 设置了常驻窗口后，注册了 {@link MetaTaskLoader} 的类型中触发时间超出窗口的元任务，只会以 {@link DeferredMetaTask}
+ * 的形式保存在按触发时间排序的溢出索引中，进入窗口后才重新加载为完整的元任务并放入时间轮，以减少常驻内存。
+ * <p>
+ * 注册了分区函数的类型，调度中的元任务会按分区建立索引，可以通过 {@link #unschedulePartitions} 按分区批量取消调度。
+ *
  * @author Brozen
  * @since 2022-10-11
  */
@@ -35,12 +51,88 @@ public class MetaTaskScheduler extends HashedWheelTimerScheduler<MetaTask> {
 
     private final Map<MetaTaskType, Map<String, MetaTask>> scheduling;
 
+    /**
+     * 各类型元任务的执行器
+     */
+    private final Map<MetaTaskType, Executor> executors;
+
+    /**
+     * 检查溢出索引的间隔，毫秒
+     */
+    private static final long PROMOTE_INTERVAL = 1000;
+
+    /**
+     * 常驻窗口，毫秒，小于等于 0 表示所有元任务都放入时间轮
+     */
+    private final long residentWindow;
+
+    /**
+     * 各类型压缩记录的加载器
+     */
+    private final Map<MetaTaskType, MetaTaskLoader> loaders;
+
+    /**
+     * 溢出索引，按触发时间排序
+     */
+    private final ConcurrentSkipListSet<DeferredMetaTask> deferred;
+
+    /**
+     * 各类型的分区函数
+     */
+    private final Map<MetaTaskType, ToIntFunction<MetaTask>> partitioners;
+
+    /**
+     * 分区索引 type -> partition -> scheduleIds
+     */
+    private final Map<MetaTaskType, Map<Integer, Set<String>>> partitions;
+
     public MetaTaskScheduler() {
-        super();
+        this(Collections.emptyMap());
+    }
+
+    public MetaTaskScheduler(Map<MetaTaskType, ? extends Executor> executors) {
+        this(DEFAULT_TICK_DURATION, DEFAULT_TICKS_PER_WHEEL, false, Duration.ZERO, executors);
+    }
+
+    /**
+     * @param tickDuration 时间轮 tick 间隔
+     * @param ticksPerWheel 时间轮的槽位数
+     * @param precise 是否开启高精度模式，开启后临近触发的元任务按毫秒精度触发
+     * @param residentWindow 常驻窗口，触发时间超出窗口的元任务以压缩记录保存，为 0 则不启用
+     * @param executors 各类型元任务的执行器
+     */
+    public MetaTaskScheduler(Duration tickDuration, int ticksPerWheel, boolean precise, Duration residentWindow,
+                             Map<MetaTaskType, ? extends Executor> executors) {
+        super(tickDuration, ticksPerWheel, precise);
         this.scheduling = new EnumMap<>(MetaTaskType.class);
         for (MetaTaskType type : MetaTaskType.values()) {
             this.scheduling.put(type, new ConcurrentHashMap<>());
         }
+        this.executors = new EnumMap<>(MetaTaskType.class);
+        this.executors.putAll(executors);
+        this.residentWindow = residentWindow == null ? 0 : residentWindow.toMillis();
+        this.loaders = new EnumMap<>(MetaTaskType.class);
+        this.deferred = new ConcurrentSkipListSet<>();
+        this.partitioners = new EnumMap<>(MetaTaskType.class);
+        this.partitions = new EnumMap<>(MetaTaskType.class);
+        if (this.residentWindow > 0) {
+            delay(this::promote, PROMOTE_INTERVAL);
+        }
+    }
+
+    /**
+     * 注册压缩记录的加载器，只有注册了加载器的类型才会被压缩
+     */
+    public void registerLoader(MetaTaskLoader loader) {
+        loaders.put(loader.getType(), loader);
+    }
+
+    /**
+     * 注册分区函数，同一元任务的分区需要保持不变
+     */
+    public void registerPartitioner(MetaTaskType type, ToIntFunction<MetaTask> partitioner) {
+        partitions.put(type, new ConcurrentHashMap<>());
+        partitioners.put(type, partitioner);
     }
 
     @Override
@@ -51,8 +143,19 @@ public class MetaTaskScheduler extends HashedWheelTimerScheduler<MetaTask> {
                 return;
             }
 
+            // 触发时间较远的，只保存压缩记录
+            if (shouldDefer(task)) {
+                DeferredMetaTask deferredTask = new DeferredMetaTask(task);
+                if (scheduling.get(task.getType()).putIfAbsent(scheduleId, deferredTask) == null) {
+                    deferred.add(deferredTask);
+                    addToPartition(deferredTask);
+                }
+                return;
+            }
+
             // 放入缓存
             scheduling.get(task.getType()).put(scheduleId, task);
+            addToPartition(task);
 
             calAndSchedule(task);
         } catch (Exception e) {
@@ -60,10 +163,167 @@ public class MetaTaskScheduler extends HashedWheelTimerScheduler<MetaTask> {
         }
     }
 
+    /**
+     * 执行结束的元任务按新的触发时间重新放入时间轮，执行期间已取消或被替换的不再调度
+     */
+    public void reschedule(MetaTask task) {
+        String scheduleId = task.scheduleId();
+        try {
+            if (!isScheduling(task)) {
+                return;
+            }
+
+            // 触发时间较远的，改为压缩记录
+            if (shouldDefer(task)) {
+                if (scheduling.get(task.getType()).remove(scheduleId, task)) {
+                    removeFromPartition(task);
+                    schedule(task);
+                }
+                return;
+            }
+
+            calAndSchedule(task);
+        } catch (Exception e) {
+            log.error("Meta task [{}] reschedule failed", scheduleId, e);
+        }
+    }
+
+    private boolean shouldDefer(MetaTask task) {
+        if (residentWindow <= 0 || !loaders.containsKey(task.getType()) || task.scheduleAt() == null) {
+            return false;
+        }
+        long triggerAt = TimeUtils.toInstant(task.scheduleAt()).toEpochMilli();
+        return triggerAt - TimeUtils.currentInstant().toEpochMilli() > residentWindow;
+    }
+
+    /**
+     * 将进入常驻窗口的压缩记录重新加载，并放入时间轮
+     */
+    private void promote() {
+        try {
+            long windowEnd = TimeUtils.currentInstant().toEpochMilli() + residentWindow;
+            // 只查看不取出，未到期的任务始终留在集合中，避免与 unschedule 并发时被取消的任务重新放回
+            for (DeferredMetaTask task : deferred) {
+                if (task.getTriggerAt() > windowEnd) {
+                    break;
+                }
+                // 移除失败说明已被取消调度
+                if (!deferred.remove(task)) {
+                    continue;
+                }
+
+                // 加载可能涉及IO，交由元任务执行器处理
+                executor(task).execute(() -> load(task));
+            }
+        } catch (Exception e) {
+            log.error("Meta task promote failed", e);
+        } finally {
+            delay(this::promote, PROMOTE_INTERVAL);
+        }
+    }
+
+    private void load(DeferredMetaTask task) {
+        String scheduleId = task.scheduleId();
+        Map<String, MetaTask> metaTaskMap = scheduling.get(task.getType());
+        try {
+            // 已经取消调度了
+            if (metaTaskMap.get(scheduleId) != task) {
+                return;
+            }
+
+            MetaTask loaded = loaders.get(task.getType()).load(task);
+            if (loaded == null) {
+                if (metaTaskMap.remove(scheduleId, task)) {
+                    removeFromPartition(task);
+                }
+                return;
+            }
+
+            if (metaTaskMap.replace(scheduleId, task, loaded)) {
+                calAndSchedule(loaded);
+            }
+        } catch (Exception e) {
+            // 加载失败的移除调度，由加载任务重新放入
+            if (metaTaskMap.remove(scheduleId, task)) {
+                removeFromPartition(task);
+            }
+            log.error("Meta task [{}] load failed", scheduleId, e);
+        }
+    }
+
     @Override
     public void unschedule(String id) {
         Map<String, MetaTask> metaTaskMap = scheduling.get(getType(id));
-        metaTaskMap.remove(id);
+        MetaTask removed = metaTaskMap.remove(id);
+        if (removed instanceof DeferredMetaTask) {
+            deferred.remove(removed);
+        }
+        if (removed != null) {
+            removeFromPartition(removed);
+        }
+    }
+
+    /**
+     * 批量取消指定分区下的调度
+     * @param type 元任务类型
+     * @param partitionIds 分区
+     */
+    public void unschedulePartitions(MetaTaskType type, Collection<Integer> partitionIds) {
+        Map<Integer, Set<String>> typePartitions = partitions.get(type);
+        if (typePartitions == null) {
+            return;
+        }
+        Map<String, MetaTask> metaTaskMap = scheduling.get(type);
+        for (Integer partitionId : partitionIds) {
+            Set<String> scheduleIds = typePartitions.remove(partitionId);
+            if (scheduleIds == null) {
+                continue;
+            }
+            for (String scheduleId : scheduleIds) {
+                MetaTask removed = metaTaskMap.remove(scheduleId);
+                if (removed instanceof DeferredMetaTask) {
+                    deferred.remove(removed);
+                }
+            }
+        }
+    }
+
+    private void addToPartition(MetaTask task) {
+        ToIntFunction<MetaTask> partitioner = partitioners.get(task.getType());
+        if (partitioner == null) {
+            return;
+        }
+        partitions.get(task.getType())
+                .computeIfAbsent(partitioner.applyAsInt(task), p -> ConcurrentHashMap.newKeySet())
+                .add(task.scheduleId());
+    }
+
+    private void removeFromPartition(MetaTask task) {
+        ToIntFunction<MetaTask> partitioner = partitioners.get(task.getType());
+        if (partitioner == null) {
+            return;
+        }
+        Set<String> scheduleIds = partitions.get(task.getType()).get(partitioner.applyAsInt(task));
+        if (scheduleIds != null) {
+            scheduleIds.remove(task.scheduleId());
+        }
+    }
+
+    /**
+     * 取消指定类型中满足条件的调度
+     * @param type 元任务类型
+     * @param predicate 判断是否需要取消调度
+     */
+    public void unscheduleIf(MetaTaskType type, Predicate<MetaTask> predicate) {
+        Map<String, MetaTask> metaTaskMap = scheduling.get(type);
+        for (MetaTask task : metaTaskMap.values()) {
+            if (predicate.test(task) && metaTaskMap.remove(task.scheduleId(), task)) {
+                if (task instanceof DeferredMetaTask) {
+                    deferred.remove(task);
+                }
+                removeFromPartition(task);
+            }
+        }
     }
 
     @Override
@@ -72,11 +332,45 @@ public class MetaTaskScheduler extends HashedWheelTimerScheduler<MetaTask> {
         return metaTaskMap.containsKey(id);
     }
 
+    /**
+     * 时间轮中的元任务只有仍是调度中的同一个对象时才执行，防止已被替换的元任务重复执行
+     */
+    @Override
+    protected boolean isScheduling(MetaTask task) {
+        return scheduling.get(task.getType()).get(task.scheduleId()) == task;
+    }
+
     private MetaTaskType getType(String scheduleId) {
         String[] split = scheduleId.split("-");
         return MetaTaskType.parse(split[0]);
     }
 
+    @Override
+    protected Executor executor(MetaTask task) {
+        Executor executor = executors.get(task.getType());
+        return executor == null ? super.executor(task) : executor;
+    }
+
+    /**
+     * 获取某类型元任务的执行器，未配置时在调用线程执行
+     */
+    public Executor executor(MetaTaskType type) {
+        Executor executor = executors.get(type);
+        return executor == null ? Runnable::run : executor;
+    }
+
+    /**
+     * 停止调度，并关闭各类型元任务的执行器
+     */
+    public void shutdown() {
+        stop();
+        for (Executor executor : executors.values()) {
+            if (executor instanceof ExecutorService) {
+                ((ExecutorService) executor).shutdown();
+            }
+        }
+    }
+
     /**
      * 返回调度中的数据
      */
@@ -42,6 +42,8 @@ public enum MetaTaskType {
 
     WORKER_OFFLINE,
 
+    WORKER_STATISTICS_SYNC,
+
     ;
 
     public static MetaTaskType parse(String value) {
@@ -77,4 +77,12 @@ public class PlanScheduleTask extends LoopMetaTask {
     public String getMetaId() {
         return plan.getPlanId() + "-" + plan.getVersion();
     }
+
+    /**
+     * 从 metaId 中解析 planId
+     * @param metaId planId-version
+     */
+    public static String parsePlanId(String metaId) {
+        return metaId.substring(0, metaId.lastIndexOf('-'));
+    }
 }
@@ -0,0 +1,136 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.statistics;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按时间分桶的下发次数计数，桶组成环形数组，超出保留时长的桶被新的时间段复用，内存占用与下发频率无关。
+ * 计数使用 {@link LongAdder}，最近下发时间使用 {@link LongAccumulator}，记录时无锁且并发竞争被分散。
+ * 查询时只累加时间窗口覆盖的桶，精度为一个桶的时长。
+ *
+ * @author Brozen
+ * @since 2024-06-20
+ */
+public class BucketedDispatchCounter {
+
+    private final long bucketMillis;
+
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    /**
+     * 最近一次下发的时间戳，毫秒，没有下发过为 0
+     */
+    private final LongAccumulator lastDispatchAt = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param retention 统计数据保留时长
+     * @param bucket 每个桶的时长
+     */
+    public BucketedDispatchCounter(Duration retention, Duration bucket) {
+        this.bucketMillis = Math.max(bucket.toMillis(), 1);
+        int size = (int) Math.max(1, (retention.toMillis() + bucketMillis - 1) / bucketMillis);
+        // 多一个桶，保证保留时长内的桶不会被当前时间段复用
+        this.buckets = new AtomicReferenceArray<>(size + 1);
+    }
+
+    /**
+     * 记录一次下发
+     *
+     * @param now 下发时间戳，毫秒
+     */
+    public void record(long now) {
+        long epoch = now / bucketMillis;
+        int slot = (int) (epoch % buckets.length());
+        Bucket bucket = buckets.get(slot);
+        while (bucket == null || bucket.epoch < epoch) {
+            Bucket fresh = new Bucket(epoch);
+            if (buckets.compareAndSet(slot, bucket, fresh)) {
+                bucket = fresh;
+                break;
+            }
+            bucket = buckets.get(slot);
+        }
+
+        // 时钟回拨或记录线程落后时，旧时间段的桶已被复用，计入当前桶
+        bucket.count.increment();
+        lastDispatchAt.accumulate(now);
+    }
+
+    /**
+     * 统计时间段内的下发次数，起止时间所在的桶整体计入
+     *
+     * @param from 起始时间戳，毫秒
+     * @param to 截止时间戳，毫秒
+     */
+    public long count(long from, long to) {
+        long toEpoch = to / bucketMillis;
+        long fromEpoch = Math.max(from / bucketMillis, toEpoch - buckets.length() + 1);
+        long count = 0;
+        for (long epoch = fromEpoch; epoch <= toEpoch; epoch++) {
+            Bucket bucket = buckets.get((int) (epoch % buckets.length()));
+            if (bucket != null && bucket.epoch == epoch) {
+                count += bucket.count.sum();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 单个桶内的下发次数，桶已被复用时返回 0
+     *
+     * @param bucket 时间段序号，见 {@link #bucketOf(long)}
+     */
+    public long countOf(long bucket) {
+        Bucket b = buckets.get((int) (bucket % buckets.length()));
+        return b != null && b.epoch == bucket ? b.count.sum() : 0;
+    }
+
+    /**
+     * 时间戳所在的时间段序号
+     */
+    public long bucketOf(long time) {
+        return time / bucketMillis;
+    }
+
+    /**
+     * 最近一次下发的时间戳，毫秒，没有下发过返回 0
+     */
+    public long lastDispatchAt() {
+        return lastDispatchAt.get();
+    }
+
+    private static class Bucket {
+
+        /**
+         * 桶对应的时间段序号，时间戳除以桶时长
+         */
+        private final long epoch;
+
+        private final LongAdder count = new LongAdder();
+
+        Bucket(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+
+}
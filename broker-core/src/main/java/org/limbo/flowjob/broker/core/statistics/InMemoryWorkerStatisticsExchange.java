@@ -0,0 +1,59 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.statistics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 进程内的统计交换存储，多个 broker 实例共享同一个对象时等同于共享数据库，用于测试或单进程部署。
+ *
+ * @author Brozen
+ * @since 2024-06-21
+ */
+public class InMemoryWorkerStatisticsExchange implements WorkerStatisticsExchange {
+
+    /**
+     * broker/worker/时间段 -> 统计
+     */
+    private final Map<String, WorkerDispatchSummary> summaries = new ConcurrentHashMap<>();
+
+    @Override
+    public void save(List<WorkerDispatchSummary> summaries) {
+        for (WorkerDispatchSummary summary : summaries) {
+            this.summaries.put(summary.getBrokerName() + "/" + summary.getWorkerId() + "/" + summary.getBucket(), summary);
+        }
+    }
+
+    @Override
+    public List<WorkerDispatchSummary> listOthers(String brokerName, long fromBucket) {
+        return summaries.values().stream()
+                .filter(s -> !Objects.equals(s.getBrokerName(), brokerName) && s.getBucket() >= fromBucket)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void deleteBefore(long bucket) {
+        summaries.values().removeIf(s -> s.getBucket() < bucket);
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.statistics;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 某个 broker 在一个时间段内下发给某个 worker 的任务统计，用于在 broker 之间交换统计数据。
+ *
+ * @author Brozen
+ * @since 2024-06-21
+ */
+@Data
+@AllArgsConstructor
+public class WorkerDispatchSummary {
+
+    /**
+     * 下发任务的 broker
+     */
+    private final String brokerName;
+
+    /**
+     * Worker ID
+     */
+    private final String workerId;
+
+    /**
+     * 时间段序号，时间戳除以桶时长
+     */
+    private final long bucket;
+
+    /**
+     * 时间段内的下发次数，为累计值而非增量，重复写入结果不变
+     */
+    private final long dispatchTimes;
+
+    /**
+     * 该 broker 最近一次下发给 worker 的时间戳，毫秒
+     */
+    private final long lastDispatchAt;
+
+}
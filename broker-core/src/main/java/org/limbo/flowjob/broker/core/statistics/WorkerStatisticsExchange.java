@@ -0,0 +1,53 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.statistics;
+
+import java.util.List;
+
+/**
+ * broker 之间交换下发统计数据的共享存储
+ *
+ * @author Brozen
+ * @since 2024-06-21
+ */
+public interface WorkerStatisticsExchange {
+
+    /**
+     * 写入当前 broker 的统计，相同 broker、worker、时间段的记录覆盖
+     *
+     * @param summaries 统计数据
+     */
+    void save(List<WorkerDispatchSummary> summaries);
+
+    /**
+     * 查询其他 broker 在某个时间段及之后的统计
+     *
+     * @param brokerName 当前 broker，不返回其数据
+     * @param fromBucket 起始时间段序号
+     */
+    List<WorkerDispatchSummary> listOthers(String brokerName, long fromBucket);
+
+    /**
+     * 删除某个时间段之前的统计
+     *
+     * @param bucket 时间段序号，不包含
+     */
+    void deleteBefore(long bucket);
+
+}
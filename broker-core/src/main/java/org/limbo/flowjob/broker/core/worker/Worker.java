@@ -26,6 +26,7 @@ import org.limbo.flowjob.broker.core.worker.executor.WorkerExecutor;
 import org.limbo.flowjob.broker.core.worker.metric.WorkerMetric;
 import org.limbo.flowjob.broker.core.worker.rpc.WorkerRpc;
 import org.limbo.flowjob.broker.core.worker.rpc.WorkerRpcFactory;
+import org.limbo.flowjob.common.constants.DispatchMode;
 import org.limbo.flowjob.common.constants.WorkerStatus;
 import org.limbo.flowjob.common.lb.LBServer;
 
@@ -100,6 +101,11 @@ public class Worker implements WorkerRpc, LBServer {
      */
     private boolean enabled;
 
+    /**
+     * 获取任务的方式，为空时按 {@link DispatchMode#PUSH} 处理
+     */
+    private DispatchMode dispatchMode;
+
     public void setId(String id) {
         this.id = id;
     }
@@ -126,15 +132,32 @@ public class Worker implements WorkerRpc, LBServer {
     }
 
 
+    /**
+     * 是否由 worker 主动拉取任务
+     */
+    public boolean isPullMode() {
+        return dispatchMode == DispatchMode.PULL;
+    }
+
+
     /**
      * 更新 worker 的注册信息
      */
     public void register(URL rpcBaseUrl, Map<String, List<String>> tags,
-                         List<WorkerExecutor> executors, WorkerMetric metric) {
+                         List<WorkerExecutor> executors, WorkerMetric metric, DispatchMode dispatchMode) {
+        URL oldUrl = this.rpcBaseUrl;
+        if (!Objects.equals(oldUrl, rpcBaseUrl)) {
+            // 地址变化后关闭原地址的 RPC 并重新获取
+            this.rpc = null;
+            if (oldUrl != null) {
+                WorkerRpcFactory.getInstance().release(id, oldUrl);
+            }
+        }
         this.rpcBaseUrl = Objects.requireNonNull(rpcBaseUrl, "rpcBaseUrl");
         setTags(tags);
         setExecutors(executors);
         setMetric(metric);
+        this.dispatchMode = dispatchMode == null ? DispatchMode.PUSH : dispatchMode;
 
         this.status = WorkerStatus.RUNNING;
     }
@@ -149,6 +172,27 @@ public class Worker implements WorkerRpc, LBServer {
     }
 
 
+    /**
+     * 复制一个使用新指标的 worker，快照中的 worker 不修改，通过替换实例更新
+     * @param metric 统计数据
+     */
+    public Worker withMetric(WorkerMetric metric) {
+        return Worker.builder()
+                .id(id)
+                .name(name)
+                .rpcBaseUrl(rpcBaseUrl)
+                .status(status)
+                .isEnabled(isEnabled)
+                .rpc(rpc)
+                .executors(executors)
+                .tags(tags)
+                .metric(metric)
+                .enabled(enabled)
+                .dispatchMode(dispatchMode)
+                .build();
+    }
+
+
     /**
      * 更新 worker tag 信息
      */
@@ -164,13 +208,15 @@ public class Worker implements WorkerRpc, LBServer {
      * 懒加载 Worker RPC 模块
      */
     @Delegate(types = WorkerRpc.class)
-    private synchronized WorkerRpc getRPC() {
-        if (this.rpc == null) {
-            WorkerRpcFactory factory = WorkerRpcFactory.getInstance();
-            this.rpc = factory.createRPC(this);
+    private WorkerRpc getRPC() {
+        WorkerRpc rpc = this.rpc;
+        if (rpc == null) {
+            // 工厂按 worker id + URL 缓存实例，并发初始化拿到的是同一个，无需加锁
+            rpc = WorkerRpcFactory.getInstance().createRPC(this);
+            this.rpc = rpc;
         }
 
-        return this.rpc;
+        return rpc;
     }
 
 }
@@ -16,19 +16,138 @@
 
 package org.limbo.flowjob.broker.core.worker.rpc;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
 import org.limbo.flowjob.common.constants.Protocol;
 import org.limbo.flowjob.broker.core.worker.Worker;
+import org.limbo.flowjob.common.rpc.TcpRpcClient;
+import retrofit2.Converter;
+import retrofit2.converter.gson.GsonConverterFactory;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.URL;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 默认的 Worker RPC 协议工厂，先在这里写死，后面提取到独立的模块中，通过 SPI 加载。
+ * 所有 Worker 共享同一个 HTTP 客户端（连接池、调度线程），RPC 实例按 worker id + URL 缓存复用，淘汰时关闭持有连接的实例。
+ * 客户端参数见 {@link WorkerRpcOptions}，由 broker 启动时通过 {@link #configure(WorkerRpcOptions)} 设置。
  *
  * @author Brozen
  * @since 2022-08-12
  */
+@Slf4j
 public class DefaultWorkerRpcFactory implements WorkerRpcFactory {
 
+    /**
+     * RPC 实例闲置多久后淘汰，worker 下线后对应实例随之释放
+     */
+    private static final Duration RPC_EXPIRE_AFTER_ACCESS = Duration.ofMinutes(30);
+
+    private final Converter.Factory converterFactory;
+
+    /**
+     * workerId + URL -> RPC，URL 变化后生成新的实例
+     */
+    private final Cache<String, WorkerRpc> rpcs;
+
+    private volatile WorkerRpcOptions options;
+
+    /**
+     * HTTPS 及未开启 h2c 时使用的客户端
+     */
+    private volatile OkHttpClient client;
+
+    /**
+     * 明文 HTTP 使用的客户端，开启 h2c 时与 {@link #client} 共享连接池和调度线程
+     */
+    private volatile OkHttpClient plainClient;
+
+    public DefaultWorkerRpcFactory() {
+        this(new WorkerRpcOptions());
+    }
+
+    public DefaultWorkerRpcFactory(WorkerRpcOptions options) {
+        this.converterFactory = GsonConverterFactory.create();
+        this.rpcs = CacheBuilder.newBuilder()
+                .expireAfterAccess(RPC_EXPIRE_AFTER_ACCESS.toMillis(), TimeUnit.MILLISECONDS)
+                .removalListener(DefaultWorkerRpcFactory::onRemoval)
+                .build();
+        configure(options);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 重新创建共享的客户端，已创建的 RPC 实例被丢弃，之后按新配置创建。
+     * @param options 客户端配置
+     */
+    @Override
+    public synchronized void configure(WorkerRpcOptions options) {
+        OkHttpClient old = this.client;
+        this.options = options;
+        this.client = newClient(options);
+        this.plainClient = options.isH2c()
+                ? client.newBuilder().protocols(Collections.singletonList(okhttp3.Protocol.H2_PRIOR_KNOWLEDGE)).build()
+                : client;
+        rpcs.invalidateAll();
+        if (old != null) {
+            old.connectionPool().evictAll();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @param workerId worker id
+     * @param rpcBaseUrl worker 原来的地址
+     */
+    @Override
+    public void release(String workerId, URL rpcBaseUrl) {
+        rpcs.invalidate(key(workerId, rpcBaseUrl));
+    }
+
+    /**
+     * 淘汰的 RPC 持有长连接时关闭
+     */
+    private static void onRemoval(RemovalNotification<String, WorkerRpc> notification) {
+        WorkerRpc rpc = notification.getValue();
+        if (rpc instanceof Closeable) {
+            try {
+                ((Closeable) rpc).close();
+            } catch (IOException e) {
+                log.warn("close worker rpc fail key={}", notification.getKey(), e);
+            }
+        }
+    }
+
+    private static String key(String workerId, URL rpcBaseUrl) {
+        return workerId + "@" + rpcBaseUrl;
+    }
+
+    /**
+     * 共享的 HTTP 客户端。HTTPS 下通过 ALPN 协商 HTTP/2，单连接多路复用；响应的 gzip 压缩由 OkHttp 透明处理。
+     */
+    private static OkHttpClient newClient(WorkerRpcOptions options) {
+        OkHttpClient client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(options.getMaxIdleConnections(), options.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS))
+                .connectTimeout(options.getConnectTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .readTimeout(options.getReadTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .writeTimeout(options.getWriteTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(true)
+                .build();
+        client.dispatcher().setMaxRequests(options.getMaxRequests());
+        client.dispatcher().setMaxRequestsPerHost(options.getMaxRequestsPerHost());
+        return client;
+    }
+
 
     /**
      * {@inheritDoc}
@@ -42,7 +161,21 @@ public class DefaultWorkerRpcFactory implements WorkerRpcFactory {
         switch (protocol) {
             case HTTP:
             case HTTPS:
-                return new RetrofitHttpWorkerRpc(worker);
+                try {
+                    OkHttpClient httpClient = protocol == Protocol.HTTP ? plainClient : client;
+                    return rpcs.get(key(worker.getId(), rpcBaseUrl), () -> new RetrofitHttpWorkerRpc(worker, httpClient, converterFactory));
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("创建 Worker RPC 失败：" + worker.getId(), e.getCause());
+                }
+            case TCP:
+                try {
+                    // 每个 worker 一条长连接，worker 下线后连接随之断开
+                    return rpcs.get(key(worker.getId(), rpcBaseUrl), () -> new TcpWorkerRpc(worker, new TcpRpcClient(
+                            new InetSocketAddress(rpcBaseUrl.getHost(), rpcBaseUrl.getPort()), options.getTcpConnectTimeout(), options.getTcpRequestTimeout()
+                    )));
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("创建 Worker RPC 失败：" + worker.getId(), e.getCause());
+                }
             default:
                 throw new IllegalArgumentException("不支持的 Worker 通信协议：" + rpcBaseUrl.getProtocol());
         }
@@ -16,20 +16,29 @@
 
 package org.limbo.flowjob.broker.core.worker.rpc;
 
+import okhttp3.OkHttpClient;
 import org.apache.commons.lang3.BooleanUtils;
 import org.limbo.flowjob.api.remote.constants.HttpWorkerApi;
 import org.limbo.flowjob.api.ResponseDTO;
 import org.limbo.flowjob.api.remote.param.TaskSubmitParam;
 import org.limbo.flowjob.broker.core.domain.task.Task;
+import org.limbo.flowjob.broker.core.exceptions.WorkerApiUnsupportedException;
 import org.limbo.flowjob.broker.core.exceptions.WorkerException;
 import org.limbo.flowjob.broker.core.worker.Worker;
 import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Converter;
+import retrofit2.Response;
 import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
 import retrofit2.http.Body;
 import retrofit2.http.Headers;
 import retrofit2.http.POST;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @author Brozen
  * @since 2022-08-26
@@ -38,11 +47,16 @@ public class RetrofitHttpWorkerRpc extends HttpWorkerRpc {
 
     private final RetrofitWorkerApi api;
 
-    public RetrofitHttpWorkerRpc(Worker worker) {
+    /**
+     * @param client 共享的 HTTP 客户端
+     * @param converterFactory 共享的序列化工厂
+     */
+    public RetrofitHttpWorkerRpc(Worker worker, OkHttpClient client, Converter.Factory converterFactory) {
         super(worker);
         this.api = new Retrofit.Builder()
                 .baseUrl(getBaseUrl())
-                .addConverterFactory(GsonConverterFactory.create())
+                .client(client)
+                .addConverterFactory(converterFactory)
                 .build().create(RetrofitWorkerApi.class);
     }
 
@@ -58,14 +72,94 @@ public class RetrofitHttpWorkerRpc extends HttpWorkerRpc {
         return BooleanUtils.isTrue(result);
     }
 
-    private <T> T send(Call<ResponseDTO<T>> call) {
-        return getResponseData(() -> {
-            try {
-                return call.execute().body();
-            } catch (Exception e) {
-                throw new WorkerException(workerId(), "http api execute error", e);
+    /**
+     * {@inheritDoc}
+     *
+     * @param tasks 作业实例
+     * @return
+     */
+    @Override
+    public List<String> sendTasks(List<Task> tasks) {
+        List<TaskSubmitParam> params = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            params.add(WorkerConverter.toTaskSubmitParam(task));
+        }
+        List<String> accepted = send(api.sendTasks(params));
+        return accepted == null ? Collections.emptyList() : accepted;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @param task 作业实例
+     * @return
+     */
+    @Override
+    public CompletableFuture<Boolean> sendTaskAsync(Task task) {
+        return sendAsync(api.sendTask(WorkerConverter.toTaskSubmitParam(task))).thenApply(BooleanUtils::isTrue);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @param tasks 作业实例
+     * @return
+     */
+    @Override
+    public CompletableFuture<List<String>> sendTasksAsync(List<Task> tasks) {
+        List<TaskSubmitParam> params = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            params.add(WorkerConverter.toTaskSubmitParam(task));
+        }
+        return sendAsync(api.sendTasks(params)).thenApply(accepted -> accepted == null ? Collections.emptyList() : accepted);
+    }
+
+    /**
+     * 通过 OkHttp 的异步调度发送请求，响应在 OkHttp 的回调线程中完成
+     */
+    private <T> CompletableFuture<T> sendAsync(Call<ResponseDTO<T>> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        call.enqueue(new Callback<ResponseDTO<T>>() {
+            @Override
+            public void onResponse(Call<ResponseDTO<T>> call, Response<ResponseDTO<T>> response) {
+                if (isUnsupported(response)) {
+                    future.completeExceptionally(new WorkerApiUnsupportedException(workerId(), "http api unsupported, code:" + response.code()));
+                    return;
+                }
+                try {
+                    future.complete(getResponseData(response::body));
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Call<ResponseDTO<T>> call, Throwable t) {
+                future.completeExceptionally(new WorkerException(workerId(), "http api execute error", t));
             }
         });
+        return future;
+    }
+
+    private <T> T send(Call<ResponseDTO<T>> call) {
+        Response<ResponseDTO<T>> response;
+        try {
+            response = call.execute();
+        } catch (Exception e) {
+            throw new WorkerException(workerId(), "http api execute error", e);
+        }
+        if (isUnsupported(response)) {
+            throw new WorkerApiUnsupportedException(workerId(), "http api unsupported, code:" + response.code());
+        }
+        return getResponseData(response::body);
+    }
+
+    /**
+     * worker 没有此接口，请求未被处理
+     */
+    private boolean isUnsupported(Response<?> response) {
+        int code = response.code();
+        return code == 404 || code == 405 || code == 501;
     }
 
 
@@ -80,6 +174,12 @@ public class RetrofitHttpWorkerRpc extends HttpWorkerRpc {
         @POST(HttpWorkerApi.API_SEND_TASK)
         Call<ResponseDTO<Boolean>> sendTask(@Body TaskSubmitParam param);
 
+        @Headers(
+                "Content-Type: application/json"
+        )
+        @POST(HttpWorkerApi.API_SEND_TASKS)
+        Call<ResponseDTO<List<String>>> sendTasks(@Body List<TaskSubmitParam> params);
+
     }
 
 }
@@ -0,0 +1,140 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.broker.core.worker.rpc;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.apache.commons.lang3.BooleanUtils;
+import org.limbo.flowjob.api.ResponseDTO;
+import org.limbo.flowjob.api.remote.constants.TcpRpcApi;
+import org.limbo.flowjob.api.remote.param.TaskSubmitParam;
+import org.limbo.flowjob.broker.core.domain.task.Task;
+import org.limbo.flowjob.broker.core.exceptions.WorkerException;
+import org.limbo.flowjob.broker.core.worker.Worker;
+import org.limbo.flowjob.common.rpc.RpcCodec;
+import org.limbo.flowjob.common.rpc.TcpRpcClient;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 基于 TCP 长连接的 worker 通信，连接由 {@link DefaultWorkerRpcFactory} 按地址共享，实例淘汰时关闭
+ *
+ * @author Brozen
+ * @since 2024-06-14
+ */
+public class TcpWorkerRpc extends AbstractWorkerRpc implements Closeable {
+
+    private static final TypeReference<ResponseDTO<Boolean>> BOOLEAN_RESPONSE = new TypeReference<ResponseDTO<Boolean>>() {
+    };
+
+    private static final TypeReference<ResponseDTO<List<String>>> IDS_RESPONSE = new TypeReference<ResponseDTO<List<String>>>() {
+    };
+
+    private final TcpRpcClient client;
+
+    public TcpWorkerRpc(Worker worker, TcpRpcClient client) {
+        super(worker);
+        this.client = client;
+    }
+
+    /**
+     * 关闭长连接，未完成的请求以异常结束
+     */
+    @Override
+    public void close() {
+        client.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @param task 作业实例
+     * @return
+     */
+    @Override
+    public boolean sendTask(Task task) {
+        return join(sendTaskAsync(task));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @param tasks 作业实例
+     * @return
+     */
+    @Override
+    public List<String> sendTasks(List<Task> tasks) {
+        return join(sendTasksAsync(tasks));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @param task 作业实例
+     * @return
+     */
+    @Override
+    public CompletableFuture<Boolean> sendTaskAsync(Task task) {
+        return call(TcpRpcApi.WORKER_SEND_TASK, WorkerConverter.toTaskSubmitParam(task), BOOLEAN_RESPONSE)
+                .thenApply(BooleanUtils::isTrue);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @param tasks 作业实例
+     * @return
+     */
+    @Override
+    public CompletableFuture<List<String>> sendTasksAsync(List<Task> tasks) {
+        List<TaskSubmitParam> params = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            params.add(WorkerConverter.toTaskSubmitParam(task));
+        }
+        return call(TcpRpcApi.WORKER_SEND_TASKS, params, IDS_RESPONSE)
+                .thenApply(accepted -> accepted == null ? Collections.<String>emptyList() : accepted);
+    }
+
+    private <T> CompletableFuture<T> call(String method, Object param, TypeReference<ResponseDTO<T>> type) {
+        return client.call(method, null, RpcCodec.encode(param))
+                .handle((bytes, e) -> {
+                    if (e != null) {
+                        throw new WorkerException(workerId(), "tcp rpc execute error", e);
+                    }
+                    return getResponseData(() -> RpcCodec.decode(bytes, type));
+                });
+    }
+
+    private <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+}
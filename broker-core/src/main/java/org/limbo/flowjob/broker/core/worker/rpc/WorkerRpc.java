@@ -21,6 +21,9 @@ import org.limbo.flowjob.common.constants.WorkerStatus;
 import org.limbo.flowjob.broker.core.domain.task.Task;
 import org.limbo.flowjob.broker.core.worker.metric.WorkerMetric;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Worker 通信接口
  *
@@ -36,6 +39,27 @@ public interface WorkerRpc {
      */
     boolean sendTask(Task task);
 
+    /**
+     * 批量发送作业到worker执行，worker 逐个判断是否接受
+     * @param tasks 作业实例
+     * @return worker接受的作业ID
+     */
+    List<String> sendTasks(List<Task> tasks);
+
+    /**
+     * 异步发送一个作业到worker执行，不阻塞调用线程
+     * @param task 作业实例
+     * @return worker是否接受task
+     */
+    CompletableFuture<Boolean> sendTaskAsync(Task task);
+
+    /**
+     * 异步批量发送作业到worker执行，不阻塞调用线程
+     * @param tasks 作业实例
+     * @return worker接受的作业ID
+     */
+    CompletableFuture<List<String>> sendTasksAsync(List<Task> tasks);
+
     String workerId();
 
     Protocol protocol();
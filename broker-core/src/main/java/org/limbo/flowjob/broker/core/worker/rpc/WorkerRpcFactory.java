@@ -18,6 +18,8 @@ package org.limbo.flowjob.broker.core.worker.rpc;
 
 import org.limbo.flowjob.broker.core.worker.Worker;
 
+import java.net.URL;
+
 /**
  * @author Brozen
  * @since 2022-08-12
@@ -40,5 +42,19 @@ public interface WorkerRpcFactory {
     WorkerRpc createRPC(Worker worker);
 
 
+    /**
+     * 设置 RPC 客户端参数，默认忽略。
+     */
+    default void configure(WorkerRpcOptions options) {
+    }
+
+
+    /**
+     * 释放 worker 在指定地址上的 RPC，worker 地址变化后调用，默认忽略。
+     */
+    default void release(String workerId, URL rpcBaseUrl) {
+    }
+
+
 
 }
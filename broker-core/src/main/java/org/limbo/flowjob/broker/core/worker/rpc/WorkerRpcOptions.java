@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.limbo.flowjob.broker.core.worker.rpc;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * Worker RPC 客户端配置，所有 worker 共享同一个 HTTP 客户端
+ *
+ * @author Brozen
+ * @since 2024-06-15
+ */
+@Data
+public class WorkerRpcOptions {
+
+    /**
+     * HTTP 连接池最大空闲连接数
+     */
+    private int maxIdleConnections = 64;
+
+    /**
+     * HTTP 空闲连接保活时长
+     */
+    private Duration keepAlive = Duration.ofMinutes(5);
+
+    /**
+     * 同时进行的 HTTP 请求总数上限
+     */
+    private int maxRequests = 64;
+
+    /**
+     * 同时请求单个 worker 的最大并发数
+     */
+    private int maxRequestsPerHost = 64;
+
+    /**
+     * HTTP 建立连接超时
+     */
+    private Duration connectTimeout = Duration.ofSeconds(3);
+
+    /**
+     * HTTP 读超时
+     */
+    private Duration readTimeout = Duration.ofSeconds(10);
+
+    /**
+     * HTTP 写超时
+     */
+    private Duration writeTimeout = Duration.ofSeconds(10);
+
+    /**
+     * 明文 HTTP 的 worker 是否直接使用 HTTP/2（h2c prior knowledge），需要 worker 的 HTTP 服务支持 h2c。
+     * HTTPS 的 worker 始终通过 ALPN 协商。
+     */
+    private boolean h2c = false;
+
+    /**
+     * TCP 建立连接超时
+     */
+    private Duration tcpConnectTimeout = Duration.ofSeconds(3);
+
+    /**
+     * TCP 单个请求超时
+     */
+    private Duration tcpRequestTimeout = Duration.ofSeconds(10);
+
+}
@@ -20,6 +20,8 @@ package org.limbo.flowjob.broker.dao.converter;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
 import org.limbo.flowjob.broker.core.dispatch.DispatchOption;
 import org.limbo.flowjob.broker.core.domain.job.JobInfo;
 import org.limbo.flowjob.broker.core.domain.job.JobInstance;
@@ -34,12 +36,13 @@ import org.limbo.flowjob.broker.core.schedule.scheduler.meta.PlanScheduleTask;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.TaskScheduleTask;
 import org.limbo.flowjob.broker.core.schedule.strategy.IPlanScheduleStrategy;
 import org.limbo.flowjob.broker.core.schedule.strategy.ITaskScheduleStrategy;
+import org.limbo.flowjob.broker.dao.domain.PlanInfoCache;
+import org.limbo.flowjob.broker.dao.domain.PlanVersion;
 import org.limbo.flowjob.broker.dao.entity.JobInstanceEntity;
 import org.limbo.flowjob.broker.dao.entity.PlanEntity;
 import org.limbo.flowjob.broker.dao.entity.PlanInfoEntity;
 import org.limbo.flowjob.broker.dao.entity.PlanInstanceEntity;
 import org.limbo.flowjob.broker.dao.entity.TaskEntity;
-import org.limbo.flowjob.broker.dao.repositories.PlanInfoEntityRepo;
 import org.limbo.flowjob.broker.dao.repositories.PlanInstanceEntityRepo;
 import org.limbo.flowjob.common.constants.PlanType;
 import org.limbo.flowjob.common.constants.ScheduleType;
@@ -56,7 +59,11 @@ import org.springframework.stereotype.Component;
 import javax.inject.Inject;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 基础信息转换 静态方法
@@ -64,11 +71,12 @@ import java.util.List;
  * @author Devil
  * @since 2022/8/11
  */
+@Slf4j
 @Component
 public class DomainConverter {
 
     @Setter(onMethod_ = @Inject)
-    private PlanInfoEntityRepo planInfoEntityRepo;
+    private PlanInfoCache planInfoCache;
 
     @Setter(onMethod_ = @Inject)
     private PlanInstanceEntityRepo planInstanceEntityRepo;
@@ -98,31 +106,77 @@ public class DomainConverter {
 
     }
 
+    /**
+     * 批量转换，版本信息以及最近一次触发/反馈时间都通过一次查询获取
+     */
+    public List<PlanScheduleTask> toPlanScheduleTasks(List<PlanEntity> entities) {
+        if (CollectionUtils.isEmpty(entities)) {
+            return Collections.emptyList();
+        }
+
+        List<String> planIds = new ArrayList<>(entities.size());
+        List<String> versions = new ArrayList<>(entities.size());
+        for (PlanEntity entity : entities) {
+            planIds.add(entity.getPlanId());
+            versions.add(entity.getCurrentVersion());
+        }
+
+        Map<String, PlanVersion> planVersions = planInfoCache.getAll(versions);
+
+        // [planId, triggerAt, feedbackAt]
+        Map<String, Object[]> latelyTimes = new HashMap<>();
+        for (Object[] row : planInstanceEntityRepo.findLatelyTriggerAndFeedback(planIds)) {
+            latelyTimes.put((String) row[0], row);
+        }
+
+        List<PlanScheduleTask> tasks = new ArrayList<>(entities.size());
+        for (PlanEntity entity : entities) {
+            try {
+                PlanVersion planVersion = planVersions.get(entity.getCurrentVersion());
+                Verifies.notNull(planVersion, "does not find " + entity.getPlanId() + " plan's info by version--" + entity.getCurrentVersion() + "");
+                Plan plan = toPlan(planVersion);
+                Object[] times = latelyTimes.get(entity.getPlanId());
+                tasks.add(new PlanScheduleTask(
+                        plan,
+                        times == null ? null : (LocalDateTime) times[1],
+                        times == null ? null : (LocalDateTime) times[2],
+                        planScheduleStrategy,
+                        metaTaskScheduler
+                ));
+            } catch (Exception e) {
+                log.error("convert plan {} version {} fail", entity.getPlanId(), entity.getCurrentVersion(), e);
+            }
+        }
+        return tasks;
+    }
+
     public Plan toPlan(PlanEntity entity) {
         // 获取plan 的当前版本
-        PlanInfoEntity planInfoEntity = planInfoEntityRepo.findById(entity.getCurrentVersion()).orElse(null);
-        Verifies.notNull(planInfoEntity, "does not find " + entity.getPlanId() + " plan's info by version--" + entity.getCurrentVersion() + "");
+        return toPlan(planInfoCache.get(entity.getCurrentVersion()));
+    }
 
+    /**
+     * 版本中的作业信息为共享对象，Plan 只读取不修改
+     */
+    public Plan toPlan(PlanVersion planVersion) {
+        PlanInfoEntity planInfoEntity = planVersion.getPlanInfo();
         Plan plan;
-        PlanType planType = PlanType.parse(planInfoEntity.getPlanType());
-        if (PlanType.SINGLE == planType) {
+        if (PlanType.SINGLE == planVersion.getPlanType()) {
             plan = new SinglePlan(
                     planInfoEntity.getPlanId(),
                     planInfoEntity.getPlanInfoId(),
                     TriggerType.parse(planInfoEntity.getTriggerType()),
                     toScheduleOption(planInfoEntity),
-                    JacksonUtils.parseObject(planInfoEntity.getJobInfo(), JobInfo.class)
+                    planVersion.getJobInfo()
             );
-        } else if (PlanType.WORKFLOW == planType) {
+        } else {
             plan = new WorkflowPlan(
                     planInfoEntity.getPlanId(),
                     planInfoEntity.getPlanInfoId(),
                     TriggerType.parse(planInfoEntity.getTriggerType()),
                     toScheduleOption(planInfoEntity),
-                    toJobDag(planInfoEntity.getJobInfo())
+                    planVersion.getDag()
             );
-        } else {
-            throw new IllegalArgumentException("Illegal PlanType in plan:" + entity.getPlanId() + " version:" + entity.getCurrentVersion());
         }
         return plan;
     }
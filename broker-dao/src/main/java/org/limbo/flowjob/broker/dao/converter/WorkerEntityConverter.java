@@ -32,7 +32,9 @@ import org.limbo.flowjob.broker.dao.entity.WorkerEntity;
 import org.limbo.flowjob.broker.dao.entity.WorkerExecutorEntity;
 import org.limbo.flowjob.broker.dao.entity.WorkerMetricEntity;
 import org.limbo.flowjob.broker.dao.entity.WorkerTagEntity;
+import org.limbo.flowjob.common.constants.DispatchMode;
 import org.limbo.flowjob.common.constants.WorkerStatus;
+import org.limbo.flowjob.common.rpc.RpcURLs;
 import org.limbo.flowjob.common.utils.json.JacksonUtils;
 import org.springframework.stereotype.Component;
 
@@ -74,6 +76,7 @@ public class WorkerEntityConverter {
                 .rpcBaseUrl(workerRpcBaseUrl(po))
                 .status(WorkerStatus.parse(po.getStatus()))
                 .enabled(po.isEnabled())
+                .dispatchMode(DispatchMode.parse(po.getDispatchMode()))
                 .tags(tags)
                 .executors(executors)
                 .metric(metric)
@@ -87,7 +90,7 @@ public class WorkerEntityConverter {
     @Nonnull
     private URL workerRpcBaseUrl(WorkerEntity po) {
         try {
-            return new URL(po.getProtocol(), po.getHost(), po.getPort(), "");
+            return RpcURLs.of(po.getProtocol(), po.getHost(), po.getPort());
         } catch (Exception e) {
             throw new IllegalStateException("parse worker rpc info error", e);
         }
@@ -107,6 +110,7 @@ public class WorkerEntityConverter {
         po.setHost(worker.getRpcBaseUrl().getHost());
         po.setPort(worker.getRpcBaseUrl().getPort());
         po.setStatus(worker.getStatus().status);
+        po.setDispatchMode(worker.isPullMode() ? DispatchMode.PULL.mode : DispatchMode.PUSH.mode);
         po.setAppId(""); // todo
         po.setEnabled(true);
         po.setDeleted(false);
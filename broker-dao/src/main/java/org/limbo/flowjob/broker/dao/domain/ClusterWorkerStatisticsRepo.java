@@ -0,0 +1,231 @@
+/*
+ * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.limbo.flowjob.broker.dao.domain;
+
+import org.limbo.flowjob.broker.core.domain.task.Task;
+import org.limbo.flowjob.broker.core.statistics.BucketedDispatchCounter;
+import org.limbo.flowjob.broker.core.statistics.WorkerDispatchSummary;
+import org.limbo.flowjob.broker.core.statistics.WorkerLBStatistics;
+import org.limbo.flowjob.broker.core.statistics.WorkerStatisticsExchange;
+import org.limbo.flowjob.broker.core.statistics.WorkerStatisticsRepository;
+import org.limbo.flowjob.broker.core.worker.Worker;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 集群模式的 Worker 统计数据。本节点的下发记录在内存分桶计数，查询时与其他 broker 的统计合并，
+ * 使 LFU、LRU 按整个集群的下发情况选择 worker。
+ * 统计通过 {@link WorkerStatisticsExchange} 在 broker 之间交换，由定时任务调用 {@link #sync()} 上传本节点变化的桶、拉取其他节点的桶，
+ * 记录和查询都只访问内存，不受交换存储的影响。
+ *
+ * @author Brozen
+ * @since 2024-06-21
+ */
+public class ClusterWorkerStatisticsRepo implements WorkerStatisticsRepository {
+
+    /**
+     * 每同步多少次清理一次过期的统计
+     */
+    private static final int CLEAN_TIMES = 60;
+
+    private final String brokerName;
+
+    private final WorkerStatisticsExchange exchange;
+
+    private final Duration maxStatisticDuration;
+
+    private final Duration bucketDuration;
+
+    private final long bucketMillis;
+
+    private final int retentionBuckets;
+
+    /**
+     * Worker ID -> 本节点的下发计数
+     */
+    private final Map<String, BucketedDispatchCounter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Worker ID -> broker -> 其他节点的下发计数
+     */
+    private final Map<String, Map<String, RemoteCounter>> remotes = new ConcurrentHashMap<>();
+
+    /**
+     * 上次同步时所在的时间段，未同步过为 -1
+     */
+    private long syncedBucket = -1;
+
+    private int syncTimes = 0;
+
+
+    public ClusterWorkerStatisticsRepo(String brokerName, WorkerStatisticsExchange exchange) {
+        this(brokerName, exchange, SingletonWorkerStatisticsRepo.DEFAULT_MAX_STATISTIC_DURATION, SingletonWorkerStatisticsRepo.DEFAULT_BUCKET_DURATION);
+    }
+
+
+    /**
+     * @param brokerName 当前 broker 名称
+     * @param exchange 统计交换存储
+     * @param maxStatisticDuration 最久统计多长时间的数据
+     * @param bucketDuration 每个统计桶的时长，即统计的精度
+     */
+    public ClusterWorkerStatisticsRepo(String brokerName, WorkerStatisticsExchange exchange, Duration maxStatisticDuration, Duration bucketDuration) {
+        this.brokerName = brokerName;
+        this.exchange = exchange;
+        this.maxStatisticDuration = maxStatisticDuration;
+        this.bucketDuration = bucketDuration;
+        this.bucketMillis = Math.max(bucketDuration.toMillis(), 1);
+        this.retentionBuckets = (int) Math.max(1, (maxStatisticDuration.toMillis() + bucketMillis - 1) / bucketMillis);
+    }
+
+
+    /**
+     * 记录任务被下发
+     */
+    @Override
+    public void recordTaskDispatched(Task task, Worker worker) {
+        BucketedDispatchCounter counter = counters.get(worker.getId());
+        if (counter == null) {
+            counter = counters.computeIfAbsent(worker.getId(), id -> new BucketedDispatchCounter(maxStatisticDuration, bucketDuration));
+        }
+        counter.record(System.currentTimeMillis());
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * @param workerIds Worker ID 集合
+     * @param limit 查询时间点
+     * @return
+     */
+    @Override
+    public List<WorkerLBStatistics> list(Set<String> workerIds, Instant limit) {
+        long now = System.currentTimeMillis();
+        long from = limit.toEpochMilli();
+        List<WorkerLBStatistics> statistics = new ArrayList<>(workerIds.size());
+        for (String workerId : workerIds) {
+            long lastDispatchAt = 0;
+            long dispatchTimes = 0;
+
+            BucketedDispatchCounter counter = counters.get(workerId);
+            if (counter != null) {
+                lastDispatchAt = counter.lastDispatchAt();
+                dispatchTimes = counter.count(from, now);
+            }
+            Map<String, RemoteCounter> brokerCounters = remotes.get(workerId);
+            if (brokerCounters != null) {
+                for (RemoteCounter remote : brokerCounters.values()) {
+                    lastDispatchAt = Math.max(lastDispatchAt, remote.lastDispatchAt);
+                    dispatchTimes += remote.count(from / bucketMillis, now / bucketMillis);
+                }
+            }
+
+            // 只返回时间点之后有下发记录的 Worker
+            if (lastDispatchAt <= from || dispatchTimes <= 0) {
+                continue;
+            }
+            statistics.add(new WorkerLBStatistics(workerId, Instant.ofEpochMilli(lastDispatchAt), (int) Math.min(dispatchTimes, Integer.MAX_VALUE)));
+        }
+        return statistics;
+    }
+
+
+    /**
+     * 上传本节点上次同步以来变化的桶，并合并其他节点变化的桶。首次同步时交换保留时长内的全部数据。
+     */
+    public synchronized void sync() {
+        long nowBucket = System.currentTimeMillis() / bucketMillis;
+        long retentionStart = nowBucket - retentionBuckets + 1;
+        // 上次同步所在的桶之后可能还有下发，需要重新上传
+        long fromBucket = syncedBucket < 0 ? retentionStart : Math.max(syncedBucket, retentionStart);
+
+        List<WorkerDispatchSummary> summaries = new ArrayList<>();
+        counters.forEach((workerId, counter) -> {
+            for (long bucket = fromBucket; bucket <= nowBucket; bucket++) {
+                long dispatchTimes = counter.countOf(bucket);
+                if (dispatchTimes > 0) {
+                    summaries.add(new WorkerDispatchSummary(brokerName, workerId, bucket, dispatchTimes, counter.lastDispatchAt()));
+                }
+            }
+        });
+        if (!summaries.isEmpty()) {
+            exchange.save(summaries);
+        }
+
+        // 其他节点可能晚于本节点同步，多拉取一个桶，避免遗漏其跨桶后才上传的数据
+        long fetchFrom = syncedBucket < 0 ? retentionStart : Math.max(syncedBucket - 1, retentionStart);
+        for (WorkerDispatchSummary summary : exchange.listOthers(brokerName, fetchFrom)) {
+            remotes.computeIfAbsent(summary.getWorkerId(), id -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(summary.getBrokerName(), b -> new RemoteCounter(retentionBuckets + 1))
+                    .update(summary.getBucket(), summary.getDispatchTimes(), summary.getLastDispatchAt());
+        }
+        syncedBucket = nowBucket;
+
+        if (syncTimes++ % CLEAN_TIMES == 0) {
+            exchange.deleteBefore(retentionStart);
+        }
+    }
+
+
+    /**
+     * 其他节点下发给某个 worker 的计数，只由同步线程写入。桶内次数是累计值，直接覆盖。
+     */
+    private static class RemoteCounter {
+
+        /**
+         * 环形数组，元素为 [时间段序号, 下发次数]
+         */
+        private final AtomicReferenceArray<long[]> buckets;
+
+        private volatile long lastDispatchAt;
+
+        RemoteCounter(int size) {
+            this.buckets = new AtomicReferenceArray<>(size);
+        }
+
+        void update(long bucket, long dispatchTimes, long lastDispatchAt) {
+            int slot = (int) (bucket % buckets.length());
+            long[] current = buckets.get(slot);
+            if (current == null || current[0] <= bucket) {
+                buckets.set(slot, new long[]{bucket, dispatchTimes});
+            }
+            if (lastDispatchAt > this.lastDispatchAt) {
+                this.lastDispatchAt = lastDispatchAt;
+            }
+        }
+
+        long count(long fromBucket, long toBucket) {
+            long from = Math.max(fromBucket, toBucket - buckets.length() + 1);
+            long count = 0;
+            for (long bucket = from; bucket <= toBucket; bucket++) {
+                long[] b = buckets.get((int) (bucket % buckets.length()));
+                if (b != null && b[0] == bucket) {
+                    count += b[1];
+                }
+            }
+            return count;
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.limbo.flowjob.broker.dao.domain;
+
+import lombok.Setter;
+import org.limbo.flowjob.broker.core.statistics.WorkerDispatchSummary;
+import org.limbo.flowjob.broker.core.statistics.WorkerStatisticsExchange;
+import org.limbo.flowjob.broker.dao.entity.WorkerStatisticsEntity;
+import org.limbo.flowjob.broker.dao.repositories.WorkerStatisticsEntityRepo;
+
+import javax.inject.Inject;
+import javax.transaction.Transactional;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 通过数据库在 broker 之间交换下发统计
+ *
+ * @author Brozen
+ * @since 2024-06-21
+ */
+public class DBWorkerStatisticsExchange implements WorkerStatisticsExchange {
+
+    @Setter(onMethod_ = @Inject)
+    private WorkerStatisticsEntityRepo statisticsEntityRepo;
+
+    @Override
+    @Transactional
+    public void save(List<WorkerDispatchSummary> summaries) {
+        for (WorkerDispatchSummary summary : summaries) {
+            statisticsEntityRepo.upsert(summary.getBrokerName(), summary.getWorkerId(), summary.getBucket(),
+                    summary.getDispatchTimes(), summary.getLastDispatchAt());
+        }
+    }
+
+    @Override
+    public List<WorkerDispatchSummary> listOthers(String brokerName, long fromBucket) {
+        return statisticsEntityRepo.findByBrokerNameNotAndBucketGreaterThanEqual(brokerName, fromBucket).stream()
+                .map(this::toSummary)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    @Transactional
+    public void deleteBefore(long bucket) {
+        statisticsEntityRepo.deleteByBucketLessThan(bucket);
+    }
+
+    private WorkerDispatchSummary toSummary(WorkerStatisticsEntity entity) {
+        return new WorkerDispatchSummary(entity.getBrokerName(), entity.getWorkerId(), entity.getBucket(),
+                entity.getDispatchTimes(), entity.getLastDispatchAt());
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.limbo.flowjob.broker.dao.domain;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.limbo.flowjob.broker.dao.entity.PlanInfoEntity;
+import org.limbo.flowjob.broker.dao.repositories.PlanInfoEntityRepo;
+import org.limbo.flowjob.common.constants.MsgConstants;
+import org.limbo.flowjob.common.exception.VerifyException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * plan 版本缓存，plan_info 按版本不可变，以版本号为 key 缓存解析后的 {@link PlanVersion}。
+ * 按数量与估算的内存占用淘汰最近最少使用的版本。
+ *
+ * @author Brozen
+ * @since 2023-02-10
+ */
+@Slf4j
+public class PlanInfoCache {
+
+    private final PlanInfoEntityRepo planInfoEntityRepo;
+
+    private final Cache<String, PlanVersion> versions;
+
+    /**
+     * @param maximumSize 最多缓存的版本数量
+     * @param maximumWeight 最多缓存的作业信息 JSON 总长度
+     * @param expireAfterAccess 多久未访问后淘汰
+     */
+    public PlanInfoCache(PlanInfoEntityRepo planInfoEntityRepo, long maximumSize, long maximumWeight, Duration expireAfterAccess) {
+        this.planInfoEntityRepo = planInfoEntityRepo;
+        // guava 不支持同时限制数量和权重，数量限制通过最小权重折算
+        long minWeight = Math.max(1, maximumWeight / Math.max(1, maximumSize));
+        this.versions = CacheBuilder.newBuilder()
+                .maximumWeight(maximumWeight)
+                .<String, PlanVersion>weigher((version, planVersion) -> (int) Math.max(minWeight, planVersion.weight()))
+                .expireAfterAccess(expireAfterAccess.toMillis(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 获取 plan 版本，不存在时抛出 {@link VerifyException}
+     * @param version plan_info_id
+     */
+    public PlanVersion get(String version) {
+        PlanVersion planVersion = versions.getIfPresent(version);
+        if (planVersion != null) {
+            return planVersion;
+        }
+
+        // 不存在的版本不缓存，可能是还未提交的新版本
+        PlanInfoEntity planInfoEntity = planInfoEntityRepo.findById(version)
+                .orElseThrow(VerifyException.supplier(MsgConstants.CANT_FIND_PLAN_INFO + version));
+        planVersion = new PlanVersion(planInfoEntity);
+        versions.put(version, planVersion);
+        return planVersion;
+    }
+
+    /**
+     * 批量获取 plan 版本，未缓存的通过一次查询加载，不存在的版本不会返回
+     * @return plan_info_id -> PlanVersion
+     */
+    public Map<String, PlanVersion> getAll(Collection<String> versionIds) {
+        Map<String, PlanVersion> result = new HashMap<>(versionIds.size());
+        List<String> missed = new ArrayList<>();
+        for (String version : versionIds) {
+            PlanVersion planVersion = versions.getIfPresent(version);
+            if (planVersion == null) {
+                missed.add(version);
+            } else {
+                result.put(version, planVersion);
+            }
+        }
+
+        if (!missed.isEmpty()) {
+            for (PlanInfoEntity planInfoEntity : planInfoEntityRepo.findAllById(missed)) {
+                try {
+                    PlanVersion planVersion = new PlanVersion(planInfoEntity);
+                    versions.put(planInfoEntity.getPlanInfoId(), planVersion);
+                    result.put(planInfoEntity.getPlanInfoId(), planVersion);
+                } catch (Exception e) {
+                    log.error("parse plan {} version {} fail", planInfoEntity.getPlanId(), planInfoEntity.getPlanInfoId(), e);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 命中率等统计数据
+     */
+    public CacheStats stats() {
+        return versions.stats();
+    }
+
+    /**
+     * 当前缓存的版本数量
+     */
+    public long size() {
+        return versions.size();
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.limbo.flowjob.broker.dao.domain;
+
+import lombok.Getter;
+import org.limbo.flowjob.broker.core.domain.job.JobInfo;
+import org.limbo.flowjob.broker.core.domain.job.WorkflowJobInfo;
+import org.limbo.flowjob.broker.dao.converter.DomainConverter;
+import org.limbo.flowjob.broker.dao.entity.PlanInfoEntity;
+import org.limbo.flowjob.common.constants.PlanType;
+import org.limbo.flowjob.common.utils.dag.DAG;
+import org.limbo.flowjob.common.utils.json.JacksonUtils;
+
+/**
+ * plan 的一个版本，版本数据不会变更，解析后的作业信息可以共用。
+ * 缓存中的对象为多个线程共享，使用方不能修改其中的数据。
+ *
+ * @author Brozen
+ * @since 2023-02-10
+ */
+@Getter
+public class PlanVersion {
+
+    private final PlanInfoEntity planInfo;
+
+    private final PlanType planType;
+
+    /**
+     * 单任务 plan 的作业信息
+     */
+    private final JobInfo jobInfo;
+
+    /**
+     * 工作流 plan 的作业 DAG
+     */
+    private final DAG<WorkflowJobInfo> dag;
+
+    public PlanVersion(PlanInfoEntity planInfo) {
+        this.planInfo = planInfo;
+        this.planType = PlanType.parse(planInfo.getPlanType());
+        if (PlanType.SINGLE == planType) {
+            this.jobInfo = JacksonUtils.parseObject(planInfo.getJobInfo(), JobInfo.class);
+            this.dag = null;
+        } else if (PlanType.WORKFLOW == planType) {
+            this.jobInfo = null;
+            this.dag = DomainConverter.toJobDag(planInfo.getJobInfo());
+        } else {
+            throw new IllegalArgumentException("Illegal PlanType in plan:" + planInfo.getPlanId() + " version:" + planInfo.getPlanInfoId());
+        }
+    }
+
+    /**
+     * 估算占用的内存，以作业信息 JSON 的长度为准
+     */
+    int weight() {
+        String json = planInfo.getJobInfo();
+        return 256 + (json == null ? 0 : json.length());
+    }
+
+}
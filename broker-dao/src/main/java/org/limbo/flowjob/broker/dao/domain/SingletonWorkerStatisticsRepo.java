@@ -16,41 +16,61 @@
 
 package org.limbo.flowjob.broker.dao.domain;
 
-import lombok.AllArgsConstructor;
-import lombok.Setter;
 import org.limbo.flowjob.broker.core.domain.task.Task;
+import org.limbo.flowjob.broker.core.statistics.BucketedDispatchCounter;
 import org.limbo.flowjob.broker.core.statistics.WorkerLBStatistics;
 import org.limbo.flowjob.broker.core.statistics.WorkerStatisticsRepository;
 import org.limbo.flowjob.broker.core.worker.Worker;
-import org.limbo.flowjob.common.utils.concurrent.Lockable;
 
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * 单机内存存储 Worker 统计数据
+ * 单机内存存储 Worker 统计数据。每个 Worker 一个按时间分桶的环形计数器，
+ * 下发时无锁计数，查询次数和最近下发时间的耗时只与时间窗口覆盖的桶数有关。
  *
  * @author Brozen
  * @since 2022-12-21
  */
-public class SingletonWorkerStatisticsRepo extends Lockable<List<SingletonWorkerStatisticsRepo.WorkerDispatchRecord>> implements WorkerStatisticsRepository {
+public class SingletonWorkerStatisticsRepo implements WorkerStatisticsRepository {
 
     /**
-     * 最久统计多长时间的数据，默认 12H。
+     * 默认最久统计多长时间的数据
      */
-    @Setter
-    private Duration maxStatisticDuration = Duration.ofHours(12);
+    public static final Duration DEFAULT_MAX_STATISTIC_DURATION = Duration.ofHours(12);
+
+    /**
+     * 默认每个统计桶的时长
+     */
+    public static final Duration DEFAULT_BUCKET_DURATION = Duration.ofMinutes(1);
+
+    private final Duration maxStatisticDuration;
+
+    private final Duration bucketDuration;
+
+    /**
+     * Worker ID -> 下发计数
+     */
+    private final Map<String, BucketedDispatchCounter> counters = new ConcurrentHashMap<>();
 
 
     public SingletonWorkerStatisticsRepo() {
-        super(new ArrayList<>());
+        this(DEFAULT_MAX_STATISTIC_DURATION, DEFAULT_BUCKET_DURATION);
+    }
+
+
+    /**
+     * @param maxStatisticDuration 最久统计多长时间的数据
+     * @param bucketDuration 每个统计桶的时长，即统计的精度
+     */
+    public SingletonWorkerStatisticsRepo(Duration maxStatisticDuration, Duration bucketDuration) {
+        this.maxStatisticDuration = maxStatisticDuration;
+        this.bucketDuration = bucketDuration;
     }
 
 
@@ -59,29 +79,11 @@ public class SingletonWorkerStatisticsRepo extends Lockable<List<SingletonWorker
      */
     @Override
     public void recordTaskDispatched(Task task, Worker worker) {
-        runInWriteLock(records -> {
-            // 新增记录
-            records.add(new WorkerDispatchRecord(
-                    task.getWorkerId(), Instant.now()
-            ));
-
-            // 同时检测头部 10 条记录是否过时，如过时需要移除
-            int maxDetectItems = 10;
-            Instant expiresLimit = Instant.now().plusSeconds(-maxStatisticDuration.getSeconds());
-            Iterator<WorkerDispatchRecord> iterator = records.iterator();
-            for (int i = 0; i < maxDetectItems; i++) {
-                if (!iterator.hasNext()) {
-                    break;
-                }
-
-                WorkerDispatchRecord r = iterator.next();
-                if (r.dispatchAt.isBefore(expiresLimit)) {
-                    iterator.remove();
-                } else {
-                    break;
-                }
-            }
-        });
+        BucketedDispatchCounter counter = counters.get(worker.getId());
+        if (counter == null) {
+            counter = counters.computeIfAbsent(worker.getId(), id -> new BucketedDispatchCounter(maxStatisticDuration, bucketDuration));
+        }
+        counter.record(System.currentTimeMillis());
     }
 
 
@@ -93,58 +95,24 @@ public class SingletonWorkerStatisticsRepo extends Lockable<List<SingletonWorker
      */
     @Override
     public List<WorkerLBStatistics> list(Set<String> workerIds, Instant limit) {
-        // 读取所有统计数据
-        Map<String, MutableWorkerLBStatistics> statistics = new HashMap<>();
-        runInReadLock(records -> {
-            for (int i = records.size() - 1; i >= 0; i--) {
-                WorkerDispatchRecord record = records.get(i);
-                if (workerIds.contains(record.workerId)
-                        && record.dispatchAt.isAfter(limit)) {
-                    MutableWorkerLBStatistics s = statistics.computeIfAbsent(
-                            record.workerId,
-                            MutableWorkerLBStatistics::new
-                    );
-                    s.statisticRecord(record);
-                }
+        long now = System.currentTimeMillis();
+        long from = limit.toEpochMilli();
+        List<WorkerLBStatistics> statistics = new ArrayList<>(workerIds.size());
+        for (String workerId : workerIds) {
+            BucketedDispatchCounter counter = counters.get(workerId);
+            if (counter == null) {
+                continue;
             }
-        });
 
-        return statistics.values().stream()
-                .map(s -> new WorkerLBStatistics(s.workerId, s.lastDispatchTaskAt, s.dispatchTimes))
-                .collect(Collectors.toList());
-    }
-
-
-
-    public static class MutableWorkerLBStatistics {
-        private final String workerId;
-        private Instant lastDispatchTaskAt;
-        private int dispatchTimes;
-
-        MutableWorkerLBStatistics(String workerId) {
-            this.workerId = workerId;
-        }
-
-        void statisticRecord(WorkerDispatchRecord record) {
-            if (this.lastDispatchTaskAt == null
-                    || this.lastDispatchTaskAt.isBefore(record.dispatchAt)) {
-                this.lastDispatchTaskAt = record.dispatchAt;
+            // 只返回时间点之后有下发记录的 Worker
+            long lastDispatchAt = counter.lastDispatchAt();
+            long dispatchTimes = counter.count(from, now);
+            if (lastDispatchAt <= from || dispatchTimes <= 0) {
+                continue;
             }
-
-            this.dispatchTimes++;
+            statistics.add(new WorkerLBStatistics(workerId, Instant.ofEpochMilli(lastDispatchAt), (int) Math.min(dispatchTimes, Integer.MAX_VALUE)));
         }
-
-    }
-
-
-
-    @AllArgsConstructor
-    public static class WorkerDispatchRecord {
-
-        public final String workerId;
-
-        public final Instant dispatchAt;
-
+        return statistics;
     }
 
 }
@@ -19,10 +19,12 @@
 package org.limbo.flowjob.broker.dao.domain;
 
 import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.limbo.flowjob.broker.core.worker.Worker;
 import org.limbo.flowjob.broker.core.worker.WorkerRepository;
+import org.limbo.flowjob.broker.core.worker.executor.WorkerExecutor;
 import org.limbo.flowjob.broker.core.worker.metric.WorkerMetric;
 import org.limbo.flowjob.broker.dao.converter.WorkerEntityConverter;
 import org.limbo.flowjob.broker.dao.entity.WorkerEntity;
@@ -39,15 +41,27 @@ import org.springframework.stereotype.Repository;
 
 import javax.inject.Inject;
 import javax.transaction.Transactional;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
+ * worker 在 broker 本地维护一份写时复制的快照，注册、心跳时更新，并由 {@link #reconcile(boolean)} 定时与 DB 同步。
+ * 读取不加锁，只有快照中不存在时才查询 DB。
+ *
  * @author Brozen
  * @since 2021-06-02
  */
+@Slf4j
 @Repository
 public class WorkerRepo implements WorkerRepository {
 
@@ -71,6 +85,11 @@ public class WorkerRepo implements WorkerRepository {
      */
     public static final Long HEARTBEAT_EXPIRE_INTERVAL = 3L;
 
+    /**
+     * 未删除的 worker 快照，不可变，修改时整体替换
+     */
+    private volatile WorkerSnapshot snapshot = WorkerSnapshot.EMPTY;
+
     /**
      * {@inheritDoc}
      *
@@ -106,6 +125,8 @@ public class WorkerRepo implements WorkerRepository {
             tagEntityRepo.saveAll(tagPos);
             tagEntityRepo.flush();
         }
+
+        cache(worker);
     }
 
 
@@ -120,6 +141,12 @@ public class WorkerRepo implements WorkerRepository {
         WorkerMetric metric = worker.getMetric();
         WorkerMetricEntity metricPo = converter.toMetricEntity(worker.getId(), metric);
         metricEntityRepo.saveAndFlush(Objects.requireNonNull(metricPo));
+
+        // 快照中的 worker 可能正在被读取，替换为新实例而不是修改
+        synchronized (this) {
+            Worker cached = snapshot.byId.get(worker.getId());
+            cache(cached == null || cached == worker ? worker : cached.withMetric(metric));
+        }
     }
 
 
@@ -134,9 +161,17 @@ public class WorkerRepo implements WorkerRepository {
         if (StringUtils.isBlank(id)) {
             return null;
         }
-        return workerEntityRepo.findByWorkerIdAndDeleted(id, false)
+        Worker worker = snapshot.byId.get(id);
+        if (worker != null) {
+            return worker;
+        }
+        worker = workerEntityRepo.findByWorkerIdAndDeleted(id, false)
                 .map(this::toWorkerWithLazyInit)
                 .orElse(null);
+        if (worker != null) {
+            cache(worker);
+        }
+        return worker;
     }
 
     @Override
@@ -144,33 +179,125 @@ public class WorkerRepo implements WorkerRepository {
         if (StringUtils.isBlank(name)) {
             return null;
         }
-
-        return workerEntityRepo.findByNameAndDeleted(name, false)
+        Worker worker = snapshot.byName.get(name);
+        if (worker != null) {
+            return worker;
+        }
+        worker = workerEntityRepo.findByNameAndDeleted(name, false)
                 .map(this::toWorkerWithLazyInit)
                 .orElse(null);
+        if (worker != null) {
+            cache(worker);
+        }
+        return worker;
     }
 
 
     /**
      * {@inheritDoc}
+     * 从快照中过滤，心跳过期的 worker 由 {@link #reconcile(boolean)} 更新状态
      *
      * @return
      */
     @Override
     public List<Worker> listAvailableWorkers() {
-        return workerEntityRepo.findByStatusAndEnabledAndDeleted(WorkerStatus.RUNNING.status, true, false)
-                .stream()
-                .map(this::toWorkerWithLazyInit)
-                .filter(worker -> {
-                    // 处理心跳过期的
-                    if (worker.getMetric().getLastHeartbeatAt().isBefore(TimeUtils.currentLocalDateTime().plusSeconds(-HEARTBEAT_EXPIRE_INTERVAL))) {
-                        workerEntityRepo.updateStatus(worker.getId(), WorkerStatus.RUNNING.status, WorkerStatus.TERMINATED.status);
-                        return false;
-                    } else {
-                        return true;
-                    }
-                })
-                .collect(Collectors.toList());
+        LocalDateTime expireAt = TimeUtils.currentLocalDateTime().plusSeconds(-HEARTBEAT_EXPIRE_INTERVAL);
+        List<Worker> workers = snapshot.workers;
+        List<Worker> availableWorkers = new ArrayList<>(workers.size());
+        for (Worker worker : workers) {
+            if (worker.isAlive() && worker.isEnabled() && !isExpired(worker, expireAt)) {
+                availableWorkers.add(worker);
+            }
+        }
+        return availableWorkers;
+    }
+
+
+    /**
+     * 与 DB 同步快照，并将心跳过期的 worker 置为下线。
+     * 每次同步 worker 及指标，tags、executors 只在 worker 新增、变化或 full 时批量加载。
+     *
+     * @param full 是否重新加载所有 worker 的 tags、executors
+     * @return 本次同步中下线或被删除的 worker id
+     */
+    @Transactional
+    public synchronized List<String> reconcile(boolean full) {
+        Map<String, Worker> cached = snapshot.byId;
+        List<WorkerEntity> entities = workerEntityRepo.findByDeleted(false);
+        Map<String, WorkerMetricEntity> metrics = metricEntityRepo.findAll().stream()
+                .collect(Collectors.toMap(WorkerMetricEntity::getWorkerId, m -> m, (m1, m2) -> m1));
+
+        // 需要重新加载 tags、executors 的 worker
+        List<String> reloadIds = new ArrayList<>();
+        for (WorkerEntity entity : entities) {
+            Worker worker = cached.get(entity.getWorkerId());
+            if (full || worker == null || changed(worker, entity)) {
+                reloadIds.add(entity.getWorkerId());
+            }
+        }
+        Map<String, List<WorkerTagEntity>> tags = Collections.emptyMap();
+        Map<String, List<WorkerExecutorEntity>> executors = Collections.emptyMap();
+        if (!reloadIds.isEmpty()) {
+            tags = tagEntityRepo.findByWorkerIdIn(reloadIds).stream()
+                    .collect(Collectors.groupingBy(WorkerTagEntity::getWorkerId));
+            executors = executorEntityRepo.findByWorkerIdIn(reloadIds).stream()
+                    .collect(Collectors.groupingBy(WorkerExecutorEntity::getWorkerId));
+        }
+
+        LocalDateTime expireAt = TimeUtils.currentLocalDateTime().plusSeconds(-HEARTBEAT_EXPIRE_INTERVAL);
+        List<Worker> workers = new ArrayList<>(entities.size());
+        Set<String> aliveIds = new HashSet<>();
+        for (WorkerEntity entity : entities) {
+            String workerId = entity.getWorkerId();
+            WorkerMetricEntity metricEntity = metrics.get(workerId);
+            if (metricEntity == null) {
+                continue;
+            }
+
+            Worker worker = cached.get(workerId);
+            if (worker == null || reloadIds.contains(workerId)) {
+                Map<String, List<String>> workerTags = converter.toTags(tags.getOrDefault(workerId, Collections.emptyList()));
+                List<WorkerExecutor> workerExecutors = converter.toExecutors(executors.getOrDefault(workerId, Collections.emptyList()));
+                worker = converter.toWorker(entity, workerTags, workerExecutors, converter.toMetric(metricEntity));
+            } else if (worker.getMetric() == null
+                    || !Objects.equals(worker.getMetric().getLastHeartbeatAt(), metricEntity.getLastHeartbeatAt())) {
+                // 心跳在其它 broker 上报
+                worker = worker.withMetric(converter.toMetric(metricEntity));
+            }
+
+            // 处理心跳过期的
+            if (worker.isAlive() && isExpired(worker, expireAt)) {
+                workerEntityRepo.updateStatus(workerId, WorkerStatus.RUNNING.status, WorkerStatus.TERMINATED.status);
+                log.info("worker heartbeat expired, terminated id:{} name:{}", workerId, worker.getName());
+            } else if (worker.isAlive()) {
+                aliveIds.add(workerId);
+            }
+            workers.add(worker);
+        }
+        snapshot = new WorkerSnapshot(workers);
+
+        List<String> offlineIds = new ArrayList<>();
+        for (Worker worker : cached.values()) {
+            if (worker.isAlive() && !aliveIds.contains(worker.getId())) {
+                offlineIds.add(worker.getId());
+            }
+        }
+        return offlineIds;
+    }
+
+
+    private boolean changed(Worker worker, WorkerEntity entity) {
+        return worker.getStatus() != WorkerStatus.parse(entity.getStatus())
+                || worker.isEnabled() != entity.isEnabled()
+                || !Objects.equals(worker.getUrl().getProtocol(), entity.getProtocol())
+                || !Objects.equals(worker.getUrl().getHost(), entity.getHost())
+                || !Objects.equals(worker.getUrl().getPort(), entity.getPort());
+    }
+
+
+    private boolean isExpired(Worker worker, LocalDateTime expireAt) {
+        WorkerMetric metric = worker.getMetric();
+        return metric == null || metric.getLastHeartbeatAt() == null || metric.getLastHeartbeatAt().isBefore(expireAt);
     }
 
 
@@ -203,6 +330,57 @@ public class WorkerRepo implements WorkerRepository {
             workerEntity.setDeleted(true);
             workerEntityRepo.saveAndFlush(workerEntity);
         }
+        evict(id);
+    }
+
+
+    /**
+     * 放入快照，替换同 id 的 worker
+     */
+    private synchronized void cache(Worker worker) {
+        List<Worker> workers = new ArrayList<>(snapshot.workers.size() + 1);
+        for (Worker w : snapshot.workers) {
+            if (!Objects.equals(w.getId(), worker.getId())) {
+                workers.add(w);
+            }
+        }
+        workers.add(worker);
+        snapshot = new WorkerSnapshot(workers);
+    }
+
+
+    private synchronized void evict(String id) {
+        List<Worker> workers = snapshot.workers.stream()
+                .filter(w -> !Objects.equals(w.getId(), id))
+                .collect(Collectors.toList());
+        snapshot = new WorkerSnapshot(workers);
+    }
+
+
+    /**
+     * worker 快照
+     */
+    private static class WorkerSnapshot {
+
+        private static final WorkerSnapshot EMPTY = new WorkerSnapshot(Collections.emptyList());
+
+        private final List<Worker> workers;
+
+        private final Map<String, Worker> byId;
+
+        private final Map<String, Worker> byName;
+
+        WorkerSnapshot(Collection<Worker> workers) {
+            Map<String, Worker> byId = new HashMap<>();
+            Map<String, Worker> byName = new HashMap<>();
+            for (Worker worker : workers) {
+                byId.put(worker.getId(), worker);
+                byName.put(worker.getName(), worker);
+            }
+            this.workers = Collections.unmodifiableList(new ArrayList<>(workers));
+            this.byId = byId;
+            this.byName = byName;
+        }
     }
 
 }
@@ -20,6 +20,7 @@ import lombok.Getter;
 import lombok.Setter;
 import org.hibernate.annotations.DynamicInsert;
 import org.hibernate.annotations.DynamicUpdate;
+import org.limbo.flowjob.common.constants.DispatchMode;
 import org.limbo.flowjob.common.constants.WorkerStatus;
 
 import javax.persistence.Column;
@@ -82,6 +83,12 @@ public class WorkerEntity extends BaseEntity {
      */
     private Byte status;
 
+    /**
+     * worker 获取任务的方式
+     * @see DispatchMode
+     */
+    private Byte dispatchMode;
+
     /**
      * 是否启用 不启用则不会进行任务下发
      */
@@ -0,0 +1,78 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.dao.entity;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.DynamicInsert;
+import org.hibernate.annotations.DynamicUpdate;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * broker 在一个时间段内下发给 worker 的任务统计
+ *
+ * @author Brozen
+ * @since 2024-06-21
+ */
+@Setter
+@Getter
+@Table(name = "flowjob_worker_statistics")
+@Entity
+@DynamicInsert
+@DynamicUpdate
+public class WorkerStatisticsEntity extends BaseEntity {
+
+    private static final long serialVersionUID = 2863093402913174856L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * 下发任务的 broker
+     */
+    private String brokerName;
+
+    private String workerId;
+
+    /**
+     * 时间段序号，时间戳除以统计桶时长
+     */
+    private Long bucket;
+
+    /**
+     * 时间段内的下发次数
+     */
+    private Long dispatchTimes;
+
+    /**
+     * 最近一次下发的时间戳，毫秒
+     */
+    private Long lastDispatchAt;
+
+    @Override
+    public Object getUid() {
+        return id;
+    }
+}
@@ -47,6 +47,12 @@ public interface PlanEntityRepo extends JpaRepository<PlanEntity, String>, JpaSp
     @Query(value = "select * from flowjob_plan where plan_id in :planIds and updated_at >= :updatedAt and is_enabled = true and is_deleted = false", nativeQuery = true)
     List<PlanEntity> loadUpdatedPlans(@Param("planIds") List<String> planIds, @Param("updatedAt") LocalDateTime updatedAt);
 
+    /**
+     * 修改过的plan 包含停用和删除的
+     */
+    @Query(value = "select * from flowjob_plan where plan_id in :planIds and updated_at >= :updatedAt", nativeQuery = true)
+    List<PlanEntity> loadChangedPlans(@Param("planIds") List<String> planIds, @Param("updatedAt") LocalDateTime updatedAt);
+
     @Modifying(clearAutomatically = true)
     @Query(value = "update PlanEntity set currentVersion = :newCurrentVersion, recentlyVersion = :newRecentlyVersion, name = :name" +
             " where planId = :planId and currentVersion = :currentVersion and recentlyVersion = :recentlyVersion")
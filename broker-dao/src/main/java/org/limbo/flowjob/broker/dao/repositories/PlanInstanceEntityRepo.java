@@ -50,6 +50,13 @@ public interface PlanInstanceEntityRepo extends JpaRepository<PlanInstanceEntity
     @Query(value = "select * from flowjob_plan_instance where plan_id = :planId order by feedback_at desc limit 1", nativeQuery = true)
     PlanInstanceEntity findLatelyFeedback(@Param("planId") String planId);
 
+    /**
+     * 批量查询 plan 最近一次触发时间和最近一次反馈时间
+     * @return [planId, triggerAt, feedbackAt]
+     */
+    @Query(value = "select planId, max(triggerAt), max(feedbackAt) from PlanInstanceEntity where planId in :planIds group by planId")
+    List<Object[]> findLatelyTriggerAndFeedback(@Param("planIds") List<String> planIds);
+
     @Modifying(clearAutomatically = true)
     @Query(value = "update PlanInstanceEntity set status = " + ConstantsPool.SCHEDULE_STATUS_EXECUTING + ", startAt = :startAt " +
             " where planInstanceId = :planInstanceId and status = " + ConstantsPool.SCHEDULE_STATUS_SCHEDULING)
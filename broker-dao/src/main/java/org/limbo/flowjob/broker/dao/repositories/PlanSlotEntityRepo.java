@@ -20,7 +20,10 @@ package org.limbo.flowjob.broker.dao.repositories;
 
 import org.limbo.flowjob.broker.dao.entity.PlanSlotEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -33,4 +36,16 @@ public interface PlanSlotEntityRepo extends JpaRepository<PlanSlotEntity, Long>
 
     PlanSlotEntity findByPlanId(String planId);
 
+    /**
+     * 已使用的最大槽位，没有 plan 时返回 null
+     */
+    @Query("select max(e.slot) from PlanSlotEntity e")
+    Integer findMaxSlot();
+
+    /**
+     * 查询槽位下在指定时间之后创建的 plan_slot
+     */
+    @Query(value = "select * from flowjob_plan_slot where slot in :slots and created_at >= :createdAt", nativeQuery = true)
+    List<PlanSlotEntity> findBySlotInAndCreatedAfter(@Param("slots") List<Integer> slots, @Param("createdAt") LocalDateTime createdAt);
+
 }
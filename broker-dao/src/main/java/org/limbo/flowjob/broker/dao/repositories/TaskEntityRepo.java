@@ -26,6 +26,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -38,11 +39,22 @@ public interface TaskEntityRepo extends JpaRepository<TaskEntity, String> {
 
     List<TaskEntity> findByPlanIdInAndStatus(List<String> planIds, Byte status);
 
+    List<TaskEntity> findByPlanIdInAndStatusAndStartAtBefore(List<String> planIds, Byte status, LocalDateTime startAt);
+
     @Modifying(clearAutomatically = true)
     @Query(value = "update TaskEntity " +
-            " set status = " + ConstantsPool.SCHEDULE_STATUS_DISPATCHING +
+            " set status = " + ConstantsPool.SCHEDULE_STATUS_DISPATCHING + ", startAt = :dispatchAt " +
             " where taskId = :taskId and status = " + ConstantsPool.SCHEDULE_STATUS_SCHEDULING)
-    int dispatching(@Param("taskId") String taskId);
+    int dispatching(@Param("taskId") String taskId, @Param("dispatchAt") LocalDateTime dispatchAt);
+
+    /**
+     * 下发中超时的 task 重置为调度中，startAt 为开始下发的时间
+     */
+    @Modifying(clearAutomatically = true)
+    @Query(value = "update TaskEntity " +
+            " set status = " + ConstantsPool.SCHEDULE_STATUS_SCHEDULING +
+            " where planId in :planIds and status = " + ConstantsPool.SCHEDULE_STATUS_DISPATCHING + " and startAt < :before")
+    int resetDispatching(@Param("planIds") List<String> planIds, @Param("before") LocalDateTime before);
 
     @Modifying(clearAutomatically = true)
     @Query(value = "update TaskEntity " +
@@ -53,12 +65,12 @@ public interface TaskEntityRepo extends JpaRepository<TaskEntity, String> {
     @Modifying(clearAutomatically = true)
     @Query(value = "update TaskEntity " +
             " set status = " + ConstantsPool.SCHEDULE_STATUS_EXECUTE_SUCCEED + ", context =:context, jobAttributes =:jobAttributes, result =:result, endAt = :endAt " +
-            " where taskId = :taskId and status = " + ConstantsPool.SCHEDULE_STATUS_EXECUTING)
+            " where taskId = :taskId and status in (" + ConstantsPool.SCHEDULE_STATUS_DISPATCHING + ", " + ConstantsPool.SCHEDULE_STATUS_EXECUTING + ")")
     int success(@Param("taskId") String taskId, @Param("endAt") LocalDateTime endAt, @Param("context") String context, @Param("jobAttributes") String jobAttributes, @Param("result") String result);
 
     @Modifying(clearAutomatically = true)
     @Query(value = "update TaskEntity " +
             " set status = " + ConstantsPool.SCHEDULE_STATUS_EXECUTE_FAILED + ", errorMsg = :errorMsg, errorStackTrace = :errorStack, endAt = :endAt " +
-            " where taskId = :taskId and status = :curStatus")
-    int fail(@Param("taskId") String taskId, @Param("curStatus") Byte curStatus, @Param("endAt") LocalDateTime endAt, @Param("errorMsg") String errorMsg, @Param("errorStack") String errorStack);
+            " where taskId = :taskId and status in :curStatus")
+    int fail(@Param("taskId") String taskId, @Param("curStatus") Collection<Byte> curStatus, @Param("endAt") LocalDateTime endAt, @Param("errorMsg") String errorMsg, @Param("errorStack") String errorStack);
 }
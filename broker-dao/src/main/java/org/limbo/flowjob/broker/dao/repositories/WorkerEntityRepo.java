@@ -43,6 +43,8 @@ public interface WorkerEntityRepo extends JpaRepository<WorkerEntity, String>, J
      */
     List<WorkerEntity> findByStatusAndEnabledAndDeleted(Byte status, boolean enabled, boolean deleted);
 
+    List<WorkerEntity> findByDeleted(boolean deleted);
+
     @Modifying(clearAutomatically = true)
     @Query(value = "update WorkerEntity set status = :newStatus where workerId = :workerId and status = :oldStatus ")
     int updateStatus(@Param("workerId") String workerId, @Param("oldStatus") Byte oldStatus, @Param("newStatus") Byte newStatus);
@@ -0,0 +1,51 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.dao.repositories;
+
+import org.limbo.flowjob.broker.dao.entity.WorkerStatisticsEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+/**
+ * @author Brozen
+ * @since 2024-06-21
+ */
+public interface WorkerStatisticsEntityRepo extends JpaRepository<WorkerStatisticsEntity, Long> {
+
+    /**
+     * 写入统计，相同 broker、worker、时间段的记录覆盖
+     */
+    @Modifying(clearAutomatically = true)
+    @Query(value = "insert into flowjob_worker_statistics (broker_name, worker_id, bucket, dispatch_times, last_dispatch_at) " +
+            "values (:brokerName, :workerId, :bucket, :dispatchTimes, :lastDispatchAt) " +
+            "on duplicate key update dispatch_times = values(dispatch_times), last_dispatch_at = values(last_dispatch_at)", nativeQuery = true)
+    int upsert(@Param("brokerName") String brokerName, @Param("workerId") String workerId, @Param("bucket") long bucket,
+               @Param("dispatchTimes") long dispatchTimes, @Param("lastDispatchAt") long lastDispatchAt);
+
+    List<WorkerStatisticsEntity> findByBrokerNameNotAndBucketGreaterThanEqual(String brokerName, Long bucket);
+
+    @Modifying(clearAutomatically = true)
+    @Query("delete from WorkerStatisticsEntity where bucket < :bucket")
+    int deleteByBucketLessThan(@Param("bucket") Long bucket);
+
+}
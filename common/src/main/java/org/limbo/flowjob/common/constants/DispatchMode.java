@@ -0,0 +1,72 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.common.constants;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * Worker 获取任务的方式
+ *
+ * @author Brozen
+ * @since 2024-06-17
+ */
+public enum DispatchMode {
+
+    /**
+     * broker 选择 worker 后推送任务，worker 拒绝视为下发失败
+     */
+    PUSH(1),
+
+    /**
+     * worker 按自身队列余量向 broker 长轮询拉取任务，任务在 broker 排队等待
+     */
+    PULL(2),
+
+    ;
+
+    @JsonValue
+    public final byte mode;
+
+    DispatchMode(int mode) {
+        this(((byte) mode));
+    }
+
+    DispatchMode(byte mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * 解析任务获取方式，未知时返回 null
+     */
+    @JsonCreator
+    public static DispatchMode parse(Number mode) {
+        if (mode == null) {
+            return null;
+        }
+
+        for (DispatchMode modeEnum : values()) {
+            if (mode.byteValue() == modeEnum.mode) {
+                return modeEnum;
+            }
+        }
+
+        return null;
+    }
+}
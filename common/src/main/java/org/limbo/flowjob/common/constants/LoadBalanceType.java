@@ -31,6 +31,11 @@ import lombok.Getter;
  *     <li>{@linkplain LoadBalanceType#LEAST_FREQUENTLY_USED 最不经常使用}</li>
  *     <li>{@linkplain LoadBalanceType#LEAST_RECENTLY_USED 最近最少使用}</li>
  *     <li>{@linkplain LoadBalanceType#CONSISTENT_HASH 一致性hash}</li>
+ *     <li>{@linkplain LoadBalanceType#RESOURCE_BEST_FIT 资源最佳适配}</li>
+ *     <li>{@linkplain LoadBalanceType#RESOURCE_LEAST_LOADED 资源最少负载}</li>
+ *     <li>{@linkplain LoadBalanceType#POWER_OF_TWO_CHOICES 两次随机选择}</li>
+ *     <li>{@linkplain LoadBalanceType#CONSISTENT_HASH_BOUNDED 有界负载一致性hash}</li>
+ *     <li>{@linkplain LoadBalanceType#DYNAMIC_WEIGHTED_ROUND_ROBIN 动态权重轮询}</li>
  * </ul>
  *
  * @author Brozen
@@ -69,6 +74,31 @@ public enum LoadBalanceType {
      */
     CONSISTENT_HASH(6, "一致性hash"),
 
+    /**
+     * 资源最佳适配。在满足作业 CPU、内存需求的 worker 中，选择分配后剩余资源最少的，尽量将作业集中。
+     */
+    RESOURCE_BEST_FIT(7, "资源最佳适配"),
+
+    /**
+     * 资源最少负载。在满足作业 CPU、内存需求的 worker 中，选择分配后剩余资源最多的，尽量将作业分散。
+     */
+    RESOURCE_LEAST_LOADED(8, "资源最少负载"),
+
+    /**
+     * 两次随机选择。随机选取两个worker，下发给在途作业更少的，在途作业相同时选择可用CPU更多的。
+     */
+    POWER_OF_TWO_CHOICES(9, "两次随机选择"),
+
+    /**
+     * 有界负载一致性hash。同样参数的作业优先下发给同一台机器，该机器在途作业超过平均值一定比例时顺延到哈希环上的下一台。
+     */
+    CONSISTENT_HASH_BOUNDED(10, "有界负载一致性hash"),
+
+    /**
+     * 动态权重轮询。根据worker近期上报的可用资源、下发成功率和耗时计算权重，按权重轮询。
+     */
+    DYNAMIC_WEIGHTED_ROUND_ROBIN(11, "动态权重轮询"),
+
     ;
 
     @JsonValue
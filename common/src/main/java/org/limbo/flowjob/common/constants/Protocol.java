@@ -38,6 +38,11 @@ public enum Protocol {
      */
     HTTPS("https", 443),
 
+    /**
+     * 基于长连接的二进制协议
+     */
+    TCP("tcp", 9870),
+
     ;
 
     /**
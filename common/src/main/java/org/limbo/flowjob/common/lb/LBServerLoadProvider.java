@@ -0,0 +1,39 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.common.lb;
+
+/**
+ * 提供服务当前的负载，用于按实时负载选择服务。每次选择都会调用，实现需要是 O(1) 且无阻塞的。
+ *
+ * @author Brozen
+ * @since 2024-06-19
+ */
+public interface LBServerLoadProvider<S extends LBServer> {
+
+    /**
+     * 服务上执行中、尚未完成的请求数
+     */
+    int getInFlight(S server);
+
+    /**
+     * 服务上报的可用 CPU 核数，无上报数据时返回 0
+     */
+    float getAvailableCpu(S server);
+
+}
@@ -18,21 +18,28 @@
 
 package org.limbo.flowjob.common.lb.strategies;
 
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.limbo.flowjob.common.lb.AbstractLBStrategy;
 import org.limbo.flowjob.common.lb.Invocation;
 import org.limbo.flowjob.common.lb.LBServer;
-import org.limbo.flowjob.common.utils.MD5Utils;
+import org.limbo.flowjob.common.lb.LBServerLoadProvider;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * 一致性哈希，相同参数的调用总是选择同一个服务，服务增减时只有少部分参数的选择结果会变化。
+ * 设置负载后使用有界负载模式（Consistent Hashing with Bounded Loads），单个服务的在途请求数不超过平均值的 (1 + ε) 倍，
+ * 超过时沿哈希环选择下一个服务。
+ *
  * @author Brozen
  * @since 2022-09-02
  */
@@ -44,14 +51,49 @@ public class ConsistentHashLBStrategy<S extends LBServer> extends AbstractLBStra
      */
     public static final String HASH_PARAM_NAME = "consistentHash.hashParamName";
 
+    /**
+     * 有界负载模式下，默认允许超出平均负载的比例
+     */
+    public static final double DEFAULT_LOAD_FACTOR = 0.25;
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
     /**
      * 一致性哈希算法中，计算 LBServer 虚拟节点时的分片数量。默认 160。
      */
     @Setter
     private int replicas = 160;
 
+    /**
+     * 服务负载，为空时不限制负载
+     */
+    private final LBServerLoadProvider<? super S> loadProvider;
 
-    private final ConcurrentHashMap<String, ConsistentHashSelector<S>> selectors = new ConcurrentHashMap<>();
+    /**
+     * 允许超出平均负载的比例 ε
+     */
+    private final double loadFactor;
+
+    /**
+     * 每个调用目标的哈希环，服务列表变化时整体替换
+     */
+    private final ConcurrentHashMap<String, HashRing> rings = new ConcurrentHashMap<>();
+
+    public ConsistentHashLBStrategy() {
+        this(null, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * @param loadProvider 服务负载，用于有界负载模式
+     * @param loadFactor 允许超出平均负载的比例，不小于 0
+     */
+    public ConsistentHashLBStrategy(LBServerLoadProvider<? super S> loadProvider, double loadFactor) {
+        if (loadFactor < 0) {
+            throw new IllegalArgumentException("loadFactor must not be negative: " + loadFactor);
+        }
+        this.loadProvider = loadProvider;
+        this.loadFactor = loadFactor;
+    }
 
 
     /**
@@ -63,71 +105,179 @@ public class ConsistentHashLBStrategy<S extends LBServer> extends AbstractLBStra
     @Override
     protected Optional<S> doSelect(List<S> servers, Invocation invocation) {
         String targetId = invocation.getInvokeTargetId();
-        ConsistentHashSelector<S> selector = selectors.get(targetId);
-        int serversHashcode = servers.hashCode();
-        if (selector == null || selector.serversHashCode != serversHashcode) {
-            selector = new ConsistentHashSelector<>(servers, serversHashcode);
-            this.selectors.putIfAbsent(targetId, selector);
+        long fingerprint = fingerprint(servers);
+        HashRing ring = rings.get(targetId);
+        if (ring == null || ring.fingerprint != fingerprint || ring.size != servers.size() || ring.replicas != replicas) {
+            ring = new HashRing(servers, fingerprint, replicas);
+            rings.put(targetId, ring);
         }
 
-        return selector.select(invocation);
+        int point = ring.locate(hash(invocation));
+        if (loadProvider == null || servers.size() == 1) {
+            return Optional.of(ring.serverAt(servers, point));
+        }
+        return Optional.of(selectBounded(servers, ring, point));
     }
 
 
     /**
-     * 一致性哈希选择器，将一组服务传递给此选择器，选择器将为每个服务生成 {@link ConsistentHashLBStrategy#replicas} 个虚拟节点。
-     * 选择时，根据 {@link Invocation#hashCode()} 选择一个虚拟节点。
+     * 从哈希位置开始沿环查找，跳过在途请求数达到上限的服务，每个服务只检查一次。
+     * 上限为 ceil((1 + ε) * (在途总数 + 1) / 服务数)；负载在查找过程中变化导致全部达到上限时，选择其中负载最小的。
      */
-    class ConsistentHashSelector<SERVER extends LBServer> {
+    private S selectBounded(List<S> servers, HashRing ring, int point) {
+        long total = 0;
+        for (S server : servers) {
+            total += loadProvider.getInFlight(server);
+        }
+        long capacity = (long) Math.ceil((1 + loadFactor) * (total + 1) / servers.size());
 
-        private final TreeMap<Long, SERVER> virtualServers;
+        int size = servers.size();
+        boolean[] checked = new boolean[size];
+        int distinct = 0;
+        S leastLoaded = null;
+        int leastInFlight = Integer.MAX_VALUE;
+        int points = ring.points.length;
+        for (int i = 0; i < points && distinct < size; i++) {
+            int slot = (point + i) % points;
+            int owner = ring.owners[slot];
+            if (checked[owner]) {
+                continue;
+            }
+            checked[owner] = true;
+            distinct++;
+
+            S server = ring.serverAt(servers, slot);
+            int inFlight = loadProvider.getInFlight(server);
+            if (inFlight < capacity) {
+                return server;
+            }
+            if (inFlight < leastInFlight) {
+                leastInFlight = inFlight;
+                leastLoaded = server;
+            }
+        }
+        return leastLoaded != null ? leastLoaded : ring.serverAt(servers, point);
+    }
 
-        private final int serversHashCode;
 
-        public ConsistentHashSelector(List<SERVER> servers, int serversHashCode) {
-            this.virtualServers = new TreeMap<>();
-            this.serversHashCode = serversHashCode;
+    /**
+     * 优先使用指定参数计算哈希，未指定时使用 {@link Invocation#hashCode()}
+     */
+    private long hash(Invocation invocation) {
+        Map<String, String> parameters = invocation.getLBParameters();
+        String paramName = parameters.get(HASH_PARAM_NAME);
+        String hashValue = StringUtils.isNotBlank(paramName) ? parameters.get(paramName) : null;
+        if (hashValue != null) {
+            return HASH.hashString(hashValue, StandardCharsets.UTF_8).asLong();
+        }
+        return HASH.hashInt(invocation.hashCode()).asLong();
+    }
 
-            for (SERVER server : servers) {
-                // MD5 签名结果，每 32 位作为一组计算 slot，32 位对应 4 个字节，因此除以 4
-                String sid = server.getServerId();
-                for (int i = 0; i < replicas / 4; i++) {
-                    byte[] digest = MD5Utils.bytes(sid + i);
-                    for (int j = 0; j < 4; j++) {
-                        long slot = hash(digest, j);
-                        this.virtualServers.put(slot, server);
-                    }
-                }
-            }
+
+    /**
+     * 与顺序无关的服务列表指纹，只依赖服务 ID，列表中服务对象替换不会导致重建
+     */
+    private long fingerprint(List<S> servers) {
+        long sum = 0;
+        long xor = 0;
+        for (S server : servers) {
+            long h = mix(server.getServerId().hashCode());
+            sum += h;
+            xor ^= h;
         }
+        return sum * 31 + xor;
+    }
 
 
+    private static long mix(long h) {
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+
+    /**
+     * 哈希环，虚拟节点的哈希值升序保存在数组中，通过二分查找定位。构建后不再修改。
+     */
+    private static class HashRing {
+
+        private final long fingerprint;
+
+        private final int size;
+
+        private final int replicas;
+
         /**
-         * 选择一个服务，根据入参 Invocation 的 hashcode 计算。
+         * 虚拟节点哈希值，升序
          */
-        public Optional<SERVER> select(Invocation invocation) {
-            Map<String, String> parameters = invocation.getLBParameters();
-            String paramName = parameters.get(HASH_PARAM_NAME);
-            Object hashObj = StringUtils.isNotBlank(paramName) ? parameters.get(paramName) : null;
-            hashObj = hashObj == null ? invocation : hashObj;
-
-            long hashcode = hashObj.hashCode();
-            Map.Entry<Long, SERVER> entry = virtualServers.ceilingEntry(hashcode);
-            if (entry == null) {
-                entry = virtualServers.firstEntry();
+        private final long[] points;
+
+        /**
+         * 虚拟节点对应的服务在构建时列表中的下标
+         */
+        private final int[] owners;
+
+        /**
+         * 构建时的服务 ID，列表顺序变化时用于重新定位服务
+         */
+        private final String[] serverIds;
+
+        HashRing(List<? extends LBServer> servers, long fingerprint, int replicas) {
+            this.fingerprint = fingerprint;
+            this.size = servers.size();
+            this.replicas = Math.max(replicas, 1);
+            this.serverIds = new String[size];
+
+            int total = size * this.replicas;
+            long[] hashes = new long[total];
+            Integer[] order = new Integer[total];
+            for (int i = 0; i < size; i++) {
+                String sid = servers.get(i).getServerId();
+                serverIds[i] = sid;
+                for (int j = 0; j < this.replicas; j++) {
+                    int idx = i * this.replicas + j;
+                    hashes[idx] = HASH.hashString(sid + "#" + j, StandardCharsets.UTF_8).asLong();
+                    order[idx] = idx;
+                }
             }
+            Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
 
-            return Optional.ofNullable(entry.getValue());
+            this.points = new long[total];
+            this.owners = new int[total];
+            for (int i = 0; i < total; i++) {
+                points[i] = hashes[order[i]];
+                owners[i] = order[i] / this.replicas;
+            }
         }
 
+        /**
+         * 第一个哈希值不小于 hash 的虚拟节点，超过最大值时回到环首
+         */
+        int locate(long hash) {
+            int idx = Arrays.binarySearch(points, hash);
+            if (idx < 0) {
+                idx = -idx - 1;
+            }
+            return idx == points.length ? 0 : idx;
+        }
 
-
-        private long hash(byte[] digest, int number) {
-            return (((long) (digest[3 + number * 4] & 0xFF) << 24)
-                    | ((long) (digest[2 + number * 4] & 0xFF) << 16)
-                    | ((long) (digest[1 + number * 4] & 0xFF) << 8)
-                    | (digest[number * 4] & 0xFF))
-                    & 0xFFFFFFFFL;
+        /**
+         * 虚拟节点对应的服务，返回当前列表中的对象
+         */
+        <S extends LBServer> S serverAt(List<S> servers, int point) {
+            int owner = owners[point];
+            String sid = serverIds[owner];
+            S server = servers.get(owner);
+            if (sid.equals(server.getServerId())) {
+                return server;
+            }
+            for (S s : servers) {
+                if (sid.equals(s.getServerId())) {
+                    return s;
+                }
+            }
+            // 指纹相同但服务不同，极小概率的哈希冲突，直接使用下标对应的服务
+            return server;
         }
 
     }
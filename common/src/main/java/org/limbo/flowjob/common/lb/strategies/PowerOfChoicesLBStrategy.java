@@ -0,0 +1,117 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.common.lb.strategies;
+
+import org.limbo.flowjob.common.lb.AbstractLBStrategy;
+import org.limbo.flowjob.common.lb.Invocation;
+import org.limbo.flowjob.common.lb.LBServer;
+import org.limbo.flowjob.common.lb.LBServerLoadProvider;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 随机采样若干个服务，选择其中负载最小的（Power of Two Choices）。
+ * 先比较在途请求数，相同时选择可用 CPU 更多的。每次选择只采样固定个数的服务，与服务总数无关。
+ *
+ * @author Brozen
+ * @since 2024-06-19
+ */
+public class PowerOfChoicesLBStrategy<S extends LBServer> extends AbstractLBStrategy<S> {
+
+    /**
+     * 默认采样数
+     */
+    public static final int DEFAULT_CHOICES = 2;
+
+    private final LBServerLoadProvider<? super S> loadProvider;
+
+    private final int choices;
+
+    public PowerOfChoicesLBStrategy(LBServerLoadProvider<? super S> loadProvider) {
+        this(loadProvider, DEFAULT_CHOICES);
+    }
+
+    /**
+     * @param loadProvider 服务负载
+     * @param choices 每次选择采样的服务数，不小于 1
+     */
+    public PowerOfChoicesLBStrategy(LBServerLoadProvider<? super S> loadProvider, int choices) {
+        if (choices < 1) {
+            throw new IllegalArgumentException("choices must be positive: " + choices);
+        }
+        this.loadProvider = Objects.requireNonNull(loadProvider);
+        this.choices = choices;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @param servers 被负载的服务列表，可以保证非空。
+     * @param invocation 本次调用的上下文信息
+     * @return
+     */
+    @Override
+    protected Optional<S> doSelect(List<S> servers, Invocation invocation) {
+        int size = servers.size();
+        if (size == 1) {
+            return Optional.of(servers.get(0));
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (choices == 2) {
+            // 不重复地采样两个下标
+            int first = random.nextInt(size);
+            int second = random.nextInt(size - 1);
+            if (second >= first) {
+                second++;
+            }
+            return Optional.of(lessLoaded(servers.get(first), servers.get(second)));
+        }
+
+        // 采样数不少于服务数时退化为全部比较；否则有放回地采样，采样数很小，重复的影响可以忽略
+        S selected;
+        if (choices >= size) {
+            selected = servers.get(0);
+            for (int i = 1; i < size; i++) {
+                selected = lessLoaded(selected, servers.get(i));
+            }
+        } else {
+            selected = servers.get(random.nextInt(size));
+            for (int i = 1; i < choices; i++) {
+                selected = lessLoaded(selected, servers.get(random.nextInt(size)));
+            }
+        }
+        return Optional.of(selected);
+    }
+
+    /**
+     * 两者负载相同时返回 a
+     */
+    private S lessLoaded(S a, S b) {
+        int inFlightA = loadProvider.getInFlight(a);
+        int inFlightB = loadProvider.getInFlight(b);
+        if (inFlightA != inFlightB) {
+            return inFlightA < inFlightB ? a : b;
+        }
+        return loadProvider.getAvailableCpu(b) > loadProvider.getAvailableCpu(a) ? b : a;
+    }
+
+}
@@ -23,16 +23,19 @@ import org.limbo.flowjob.common.lb.AbstractLBStrategy;
 import org.limbo.flowjob.common.lb.Invocation;
 import org.limbo.flowjob.common.lb.LBServer;
 
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 /**
- * FIX 如果多次进入，server 列表不同，且权重并未改变，会根据 indexers 记录的权重变化来选择下一个节点。
+ * 平滑加权轮询。服务列表或权重变化时，预先计算一个权重比例均匀交错的选择序列，每次选择只需递增一次计数器。
+ * 选择时只遍历服务 ID 计算列表指纹，不会创建对象；长时间未使用的调用目标会被清理。
  *
  * @author Brozen
  * @since 2022-09-02
@@ -41,24 +44,66 @@ import java.util.stream.Collectors;
 public class RoundRobinLBStrategy<S extends LBServer> extends AbstractLBStrategy<S> {
 
     /**
-     * 用于计算权重的函数，如果不考虑权重，仅轮训，则为所有服务返回权重 1 即可。
+     * 默认的权重刷新间隔，服务列表不变时，每隔此时间重新计算一次权重
+     */
+    public static final Duration DEFAULT_WEIGHT_REFRESH_INTERVAL = Duration.ofSeconds(1);
+
+    /**
+     * 调用目标超过此时间未被选择时清理其轮询序列
+     */
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(10);
+
+    /**
+     * 选择序列的最大长度，权重之和超过时按比例缩小权重
+     */
+    static final int MAX_SEQUENCE_LENGTH = 1 << 16;
+
+    /**
+     * 用于计算权重的函数，为 null 时所有服务权重相同，仅轮询。
      */
     private final Function<List<S>, Map<String, Integer>> weightSupplier;
 
     /**
-     * 记录轮询索引
+     * 权重刷新间隔，毫秒
+     */
+    private final long weightRefreshMillis;
+
+    /**
+     * 空闲清理时间，毫秒
+     */
+    private final long idleTimeoutMillis;
+
+    /**
+     * 每个调用目标的轮询序列，服务列表或权重变化时整体替换
+     */
+    private final ConcurrentHashMap<String, Schedule> schedules;
+
+    /**
+     * 下次清理空闲调用目标的时间
      */
-    private final ConcurrentHashMap<String, Map<String, RoundRobinIndexer>> indexers;
+    private volatile long nextEvictAt;
 
 
     public RoundRobinLBStrategy() {
-        this(s -> s.stream().collect(Collectors.toMap(LBServer::getServerId, a -> 1)));
+        this(null, DEFAULT_WEIGHT_REFRESH_INTERVAL);
     }
 
 
     public RoundRobinLBStrategy(Function<List<S>, Map<String, Integer>> weightSupplier) {
+        this(weightSupplier, DEFAULT_WEIGHT_REFRESH_INTERVAL);
+    }
+
+
+    /**
+     * @param weightSupplier 用于计算权重的函数，只在服务列表变化或达到刷新间隔时调用
+     * @param weightRefreshInterval 权重刷新间隔
+     */
+    public RoundRobinLBStrategy(Function<List<S>, Map<String, Integer>> weightSupplier, Duration weightRefreshInterval) {
         this.weightSupplier = weightSupplier;
-        this.indexers = new ConcurrentHashMap<>();
+        this.weightRefreshMillis = weightRefreshInterval.toMillis();
+        this.idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT.toMillis();
+        this.schedules = new ConcurrentHashMap<>();
+        this.nextEvictAt = System.currentTimeMillis() + idleTimeoutMillis;
     }
 
 
@@ -70,66 +115,209 @@ public class RoundRobinLBStrategy<S extends LBServer> extends AbstractLBStrategy
      */
     @Override
     protected Optional<S> doSelect(List<S> servers, Invocation invocation) {
+        long now = System.currentTimeMillis();
+        evictIdle(now);
 
         String targetId = invocation.getInvokeTargetId();
-        Map<String, RoundRobinIndexer> indexerMap =
-                this.indexers.computeIfAbsent(targetId, _k -> new ConcurrentHashMap<>());
+        long fingerprint = fingerprint(servers);
+        Schedule schedule = schedules.get(targetId);
+        if (schedule == null || !schedule.matches(fingerprint, servers.size())
+                || (weightSupplier != null && now - schedule.builtAt >= weightRefreshMillis)) {
+            schedule = rebuild(targetId, servers, fingerprint, now, schedule);
+        }
 
-        long now = System.currentTimeMillis();
-        Map<String, Integer> weights = weightSupplier.apply(servers);
+        schedule.accessedAt = now;
+        S server = schedule.next(servers);
+        if (server == null) {
+            // 指纹相同但服务不同，极小概率的哈希冲突，按当前列表重建
+            schedule = rebuild(targetId, servers, fingerprint, now, schedule);
+            server = schedule.next(servers);
+        }
+        return Optional.of(server);
+    }
 
-        long maxWeight = Long.MIN_VALUE;
-        long allWeight = 0;
-        S selected = null;
-        RoundRobinIndexer selectedIndexer = null;
-        for (S server : servers) {
-            int weight = Math.max(weights.getOrDefault(server.getServerId(), 0), 0);
-            RoundRobinIndexer indexer = indexerMap
-                    .computeIfAbsent(server.getServerId(), _sid -> new RoundRobinIndexer(weight));
 
-            if (indexer.weight != weight) {
-                indexer.weight = weight;
-            }
+    /**
+     * 按当前服务列表重建轮询序列。并发重建时保留最后写入的序列，沿用原计数器使轮询位置连续
+     */
+    private Schedule rebuild(String targetId, List<S> servers, long fingerprint, long now, Schedule previous) {
+        Schedule schedule = new Schedule(servers, weights(servers), fingerprint, now, previous == null ? 0 : previous.counter.get());
+        schedules.put(targetId, schedule);
+        return schedule;
+    }
 
-            long curr = indexer.stepForward();
-            if (curr > maxWeight) {
-                maxWeight = curr;
-                selected = server;
-                selectedIndexer = indexer;
-            }
 
-            indexer.updatedAt = now;
-            allWeight += weight;
+    /**
+     * 清理空闲的调用目标，多个线程同时清理不影响正确性
+     */
+    private void evictIdle(long now) {
+        if (now < nextEvictAt) {
+            return;
         }
+        nextEvictAt = now + idleTimeoutMillis;
+        schedules.values().removeIf(schedule -> now - schedule.accessedAt >= idleTimeoutMillis);
+    }
+
 
-        if (selected != null) {
-            selectedIndexer.reset(allWeight);
-            return Optional.of(selected);
+    /**
+     * 服务的权重，负数视为 0；全部为 0 时视为权重相同
+     */
+    private int[] weights(List<S> servers) {
+        int[] weights = new int[servers.size()];
+        Map<String, Integer> weightMap = weightSupplier == null ? null : weightSupplier.apply(servers);
+        boolean allZero = true;
+        for (int i = 0; i < weights.length; i++) {
+            Integer weight = weightMap == null ? Integer.valueOf(1) : weightMap.get(servers.get(i).getServerId());
+            weights[i] = weight == null ? 0 : Math.max(weight, 0);
+            allZero &= weights[i] == 0;
         }
+        if (allZero) {
+            log.warn("All server weights are zero, fallback to equal weights");
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = 1;
+            }
+        }
+        return weights;
+    }
+
 
-        return Optional.of(servers.get(0));
+    /**
+     * 与顺序无关的服务列表指纹，只依赖服务 ID
+     */
+    private long fingerprint(List<S> servers) {
+        long sum = 0;
+        long xor = 0;
+        for (S server : servers) {
+            long h = server.getServerId().hashCode() * 0x9E3779B97F4A7C15L;
+            h ^= h >>> 32;
+            sum += h;
+            xor ^= h;
+        }
+        return sum * 31 + xor;
     }
 
 
+    /**
+     * 一组服务和权重对应的轮询序列，构建后除计数器和访问时间外不再修改。
+     */
+    static class Schedule {
+
+        final long fingerprint;
+
+        final int size;
+
+        final long builtAt;
 
-    static class RoundRobinIndexer {
+        /**
+         * 构建时的服务 ID，列表顺序变化时用于重新定位服务
+         */
+        final String[] serverIds;
 
-        int weight;
+        /**
+         * 选择序列，元素为服务在构建时列表中的下标
+         */
+        final int[] sequence;
 
-        AtomicLong current = new AtomicLong(0);
+        final AtomicLong counter;
 
-        long updatedAt = 0;
+        volatile long accessedAt;
 
-        public RoundRobinIndexer(int weight) {
-            this.weight = weight;
+        Schedule(List<? extends LBServer> servers, int[] weights, long fingerprint, long now, long counter) {
+            this.fingerprint = fingerprint;
+            this.size = servers.size();
+            this.builtAt = now;
+            this.accessedAt = now;
+            this.counter = new AtomicLong(counter);
+            this.serverIds = new String[size];
+            for (int i = 0; i < size; i++) {
+                serverIds[i] = servers.get(i).getServerId();
+            }
+            this.sequence = sequence(reduce(weights));
+        }
+
+        boolean matches(long fingerprint, int size) {
+            return this.fingerprint == fingerprint && this.size == size;
         }
 
-        long stepForward() {
-            return current.addAndGet(weight);
+        /**
+         * @return 下一个服务，构建时的服务不在当前列表中时返回 null
+         */
+        <S extends LBServer> S next(List<S> servers) {
+            long n = counter.getAndIncrement() & Long.MAX_VALUE;
+            int index = sequence[(int) (n % sequence.length)];
+            String sid = serverIds[index];
+            S server = servers.get(index);
+            if (sid.equals(server.getServerId())) {
+                return server;
+            }
+            for (S s : servers) {
+                if (sid.equals(s.getServerId())) {
+                    return s;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 除以最大公约数，权重之和超过 {@link #MAX_SEQUENCE_LENGTH} 时按比例缩小，权重为正的服务至少保留 1
+         */
+        static int[] reduce(int[] weights) {
+            int gcd = 0;
+            long total = 0;
+            for (int weight : weights) {
+                gcd = gcd(gcd, weight);
+                total += weight;
+            }
+            int[] reduced = new int[weights.length];
+            double scale = total / gcd > MAX_SEQUENCE_LENGTH ? (double) MAX_SEQUENCE_LENGTH / total : 1.0 / gcd;
+            for (int i = 0; i < weights.length; i++) {
+                reduced[i] = weights[i] == 0 ? 0 : Math.max(1, (int) (weights[i] * scale));
+            }
+            return reduced;
         }
 
-        void reset(long step) {
-            current.addAndGet(-step);
+        /**
+         * 步长调度生成序列：权重为 w 的服务每隔 1/w 出现一次，按出现时刻排序。
+         * 权重相同的服务起始相位在一个周期内均匀错开，避免扎堆，效果与平滑加权轮询一致；权重全部相同时即按列表顺序轮询。
+         */
+        static int[] sequence(int[] weights) {
+            // 每种权重的服务数
+            Map<Integer, int[]> sameWeights = new HashMap<>();
+            for (int weight : weights) {
+                sameWeights.computeIfAbsent(weight, w -> new int[2])[0]++;
+            }
+
+            int length = 0;
+            PriorityQueue<double[]> queue = new PriorityQueue<>(Math.max(weights.length, 1),
+                    (a, b) -> a[0] != b[0] ? Double.compare(a[0], b[0]) : Double.compare(a[1], b[1]));
+            for (int i = 0; i < weights.length; i++) {
+                if (weights[i] > 0) {
+                    length += weights[i];
+                    // 同权重的第 j 个服务，起始于周期的 (j + 0.5) / m 处
+                    int[] same = sameWeights.get(weights[i]);
+                    double phase = (same[1]++ + 0.5) / same[0];
+                    queue.add(new double[]{phase / weights[i], i});
+                }
+            }
+
+            int[] sequence = new int[length];
+            for (int i = 0; i < length; i++) {
+                double[] pass = queue.poll();
+                int index = (int) pass[1];
+                sequence[i] = index;
+                pass[0] += 1.0 / weights[index];
+                queue.add(pass);
+            }
+            return sequence;
+        }
+
+        private static int gcd(int a, int b) {
+            while (b != 0) {
+                int t = a % b;
+                a = b;
+                b = t;
+            }
+            return a;
         }
 
     }
@@ -0,0 +1,41 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.common.rpc;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * TCP RPC 服务端的异步方法处理器，用于长轮询等需要挂起请求的场景，挂起期间不占用处理线程
+ *
+ * @author Brozen
+ * @since 2024-06-17
+ */
+@FunctionalInterface
+public interface AsyncRpcHandler {
+
+    /**
+     * 处理请求
+     * @param key 路径参数，未传时为空字符串
+     * @param payload 请求体
+     * @return 响应体
+     */
+    CompletableFuture<byte[]> handle(String key, byte[] payload) throws Exception;
+
+}
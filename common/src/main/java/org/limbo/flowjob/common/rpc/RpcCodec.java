@@ -0,0 +1,62 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.common.rpc;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.limbo.flowjob.common.utils.json.JacksonUtils;
+
+import java.io.IOException;
+
+/**
+ * 帧内请求体、响应体的编解码，沿用 HTTP 接口的 JSON 结构，参数与响应类型两种传输方式通用
+ *
+ * @author Brozen
+ * @since 2024-06-14
+ */
+public final class RpcCodec {
+
+    private RpcCodec() {
+    }
+
+    public static byte[] encode(Object value) {
+        try {
+            return JacksonUtils.mapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new RpcException("Encode rpc payload failed", e);
+        }
+    }
+
+    public static <T> T decode(byte[] bytes, Class<T> type) {
+        try {
+            return JacksonUtils.mapper.readValue(bytes, type);
+        } catch (IOException e) {
+            throw new RpcException("Decode rpc payload failed", e);
+        }
+    }
+
+    public static <T> T decode(byte[] bytes, TypeReference<T> type) {
+        try {
+            return JacksonUtils.mapper.readValue(bytes, type);
+        } catch (IOException e) {
+            throw new RpcException("Decode rpc payload failed", e);
+        }
+    }
+
+}
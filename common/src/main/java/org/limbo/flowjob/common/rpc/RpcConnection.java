@@ -0,0 +1,165 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.common.rpc;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一条长连接。读、写各一个线程：写线程把队列中积压的帧一起写出后再 flush，高并发时多个帧合并为一次系统调用。
+ *
+ * @author Brozen
+ * @since 2024-06-14
+ */
+@Slf4j
+class RpcConnection implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 写线程退出标记
+     */
+    private static final RpcFrame POISON = RpcFrame.error(-1, null);
+
+    private final Socket socket;
+
+    private final String name;
+
+    private final Listener listener;
+
+    private final BlockingQueue<RpcFrame> outbound = new LinkedBlockingQueue<>();
+
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    RpcConnection(Socket socket, String name, Listener listener) throws IOException {
+        this.socket = socket;
+        this.name = name;
+        this.listener = listener;
+        socket.setTcpNoDelay(true);
+        socket.setKeepAlive(true);
+    }
+
+    void start() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+
+        Thread reader = new Thread(() -> read(in), name + "-reader");
+        reader.setDaemon(true);
+        Thread writer = new Thread(() -> write(out), name + "-writer");
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+    }
+
+    /**
+     * 发送一帧，连接已关闭时返回 false
+     */
+    boolean send(RpcFrame frame) {
+        if (closed.get()) {
+            return false;
+        }
+        outbound.offer(frame);
+        return true;
+    }
+
+    boolean isOpen() {
+        return !closed.get();
+    }
+
+    private void read(DataInputStream in) {
+        try {
+            while (!closed.get()) {
+                listener.onFrame(this, RpcFrame.readFrom(in));
+            }
+        } catch (Exception e) {
+            if (!closed.get()) {
+                log.debug("Connection {} read failed", name, e);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private void write(DataOutputStream out) {
+        try {
+            while (true) {
+                RpcFrame frame = outbound.take();
+                // 把已积压的帧一起写出
+                while (frame != null) {
+                    if (frame == POISON) {
+                        return;
+                    }
+                    frame.writeTo(out);
+                    frame = outbound.poll();
+                }
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            if (!closed.get()) {
+                log.debug("Connection {} write failed", name, e);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        outbound.offer(POISON);
+        try {
+            socket.close();
+        } catch (IOException ignore) {
+            // ignore
+        }
+        listener.onClosed(this);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * 连接事件回调，在读线程中执行，不应阻塞
+     */
+    interface Listener {
+
+        void onFrame(RpcConnection connection, RpcFrame frame);
+
+        void onClosed(RpcConnection connection);
+
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.common.rpc;
+
+import lombok.Getter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * TCP 传输的二进制帧，长度前缀 + 定长头 + 变长字段：
+ * <pre>
+ * | length(4) | magic(2) | type(1) | id(8) | methodLen(2) | method | keyLen(2) | key | payloadLen(4) | payload |
+ * </pre>
+ * length 不包含自身。请求通过 id 与响应对应，同一连接上可以并发多个请求。
+ *
+ * @author Brozen
+ * @since 2024-06-14
+ */
+@Getter
+public class RpcFrame {
+
+    public static final byte REQUEST = 1;
+
+    public static final byte RESPONSE = 2;
+
+    public static final byte ERROR = 3;
+
+    /**
+     * 单帧最大长度，超出认为数据错乱
+     */
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    private static final short MAGIC = (short) 0xF10B;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final byte type;
+
+    private final long id;
+
+    /**
+     * 请求的方法，响应帧为空
+     */
+    private final String method;
+
+    /**
+     * 请求的路径参数，如 workerId、taskId，可以为空
+     */
+    private final String key;
+
+    private final byte[] payload;
+
+    private RpcFrame(byte type, long id, String method, String key, byte[] payload) {
+        this.type = type;
+        this.id = id;
+        this.method = method == null ? "" : method;
+        this.key = key == null ? "" : key;
+        this.payload = payload == null ? EMPTY : payload;
+    }
+
+    public static RpcFrame request(long id, String method, String key, byte[] payload) {
+        return new RpcFrame(REQUEST, id, method, key, payload);
+    }
+
+    public static RpcFrame response(long id, byte[] payload) {
+        return new RpcFrame(RESPONSE, id, null, null, payload);
+    }
+
+    public static RpcFrame error(long id, String message) {
+        return new RpcFrame(ERROR, id, null, null, message == null ? null : message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 错误帧中的错误信息
+     */
+    public String errorMessage() {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 写入帧，不会 flush
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        byte[] methodBytes = method.getBytes(StandardCharsets.UTF_8);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int length = 2 + 1 + 8 + 2 + methodBytes.length + 2 + keyBytes.length + 4 + payload.length;
+        out.writeInt(length);
+        out.writeShort(MAGIC);
+        out.writeByte(type);
+        out.writeLong(id);
+        out.writeShort(methodBytes.length);
+        out.write(methodBytes);
+        out.writeShort(keyBytes.length);
+        out.write(keyBytes);
+        out.writeInt(payload.length);
+        out.write(payload);
+    }
+
+    /**
+     * 读取一帧，阻塞到读完整帧
+     */
+    public static RpcFrame readFrom(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length <= 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Illegal frame length " + length);
+        }
+        short magic = in.readShort();
+        if (magic != MAGIC) {
+            throw new IOException("Illegal frame magic " + magic);
+        }
+        byte type = in.readByte();
+        long id = in.readLong();
+        String method = new String(readBytes(in, in.readUnsignedShort()), StandardCharsets.UTF_8);
+        String key = new String(readBytes(in, in.readUnsignedShort()), StandardCharsets.UTF_8);
+        int payloadLength = in.readInt();
+        if (payloadLength < 0 || payloadLength > length) {
+            throw new IOException("Illegal payload length " + payloadLength);
+        }
+        return new RpcFrame(type, id, method, key, readBytes(in, payloadLength));
+    }
+
+    private static byte[] readBytes(DataInputStream in, int length) throws IOException {
+        if (length == 0) {
+            return EMPTY;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+}
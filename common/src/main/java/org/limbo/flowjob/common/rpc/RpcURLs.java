@@ -0,0 +1,73 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.common.rpc;
+
+import org.limbo.flowjob.common.constants.Protocol;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+
+/**
+ * 构造通信地址。JDK 不认识 tcp 协议，直接 new URL 会抛出 unknown protocol，这里为 tcp 地址指定一个只用于承载地址的 handler。
+ *
+ * @author Brozen
+ * @since 2024-06-14
+ */
+public final class RpcURLs {
+
+    private static final URLStreamHandler TCP_HANDLER = new URLStreamHandler() {
+        @Override
+        protected URLConnection openConnection(URL u) throws IOException {
+            throw new IOException("tcp url can't open connection: " + u);
+        }
+
+        @Override
+        protected int getDefaultPort() {
+            return Protocol.TCP.port;
+        }
+    };
+
+    private RpcURLs() {
+    }
+
+    /**
+     * 按协议、host、端口构造地址
+     */
+    public static URL of(String protocol, String host, int port) throws MalformedURLException {
+        if (Protocol.TCP.is(protocol)) {
+            return new URL(Protocol.TCP.protocol, host, port, "", TCP_HANDLER);
+        }
+        return new URL(protocol, host, port, "");
+    }
+
+    /**
+     * 解析地址字符串
+     */
+    public static URL parse(String spec) throws MalformedURLException {
+        if (spec != null && spec.regionMatches(true, 0, Protocol.TCP.protocol + ":", 0, Protocol.TCP.protocol.length() + 1)) {
+            return new URL(null, spec, TCP_HANDLER);
+        }
+        return new URL(spec);
+    }
+
+}
@@ -0,0 +1,210 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.common.rpc;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TCP RPC 客户端，与一个服务端保持一条长连接，多个请求通过帧 id 在同一连接上并发。
+ * 连接断开后，未完成的请求失败，下一次请求时重新建立连接。响应回调在连接的读线程中执行。
+ *
+ * @author Brozen
+ * @since 2024-06-14
+ */
+@Slf4j
+public class TcpRpcClient implements Closeable {
+
+    /**
+     * 请求超时检测，所有客户端共享
+     */
+    private static final ScheduledThreadPoolExecutor TIMER;
+
+    static {
+        TIMER = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "TcpRpcClientTimer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final InetSocketAddress address;
+
+    private final int connectTimeout;
+
+    private final long requestTimeout;
+
+    private final AtomicLong ids = new AtomicLong();
+
+    private volatile Session session;
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param address 服务端地址
+     * @param connectTimeout 建立连接超时
+     * @param requestTimeout 单个请求超时
+     */
+    public TcpRpcClient(InetSocketAddress address, Duration connectTimeout, Duration requestTimeout) {
+        this.address = address;
+        this.connectTimeout = (int) connectTimeout.toMillis();
+        this.requestTimeout = requestTimeout.toMillis();
+    }
+
+    /**
+     * 发起请求，不阻塞等待响应
+     * @param method 方法
+     * @param key 路径参数，可以为 null
+     * @param payload 请求体
+     * @return 响应体
+     */
+    public CompletableFuture<byte[]> call(String method, String key, byte[] payload) {
+        return call(method, key, payload, requestTimeout);
+    }
+
+    /**
+     * 发起请求，使用单独指定的超时时间，用于长轮询等耗时较长的请求
+     * @param method 方法
+     * @param key 路径参数，可以为 null
+     * @param payload 请求体
+     * @param timeout 请求超时
+     * @return 响应体
+     */
+    public CompletableFuture<byte[]> call(String method, String key, byte[] payload, Duration timeout) {
+        return call(method, key, payload, timeout.toMillis());
+    }
+
+    private CompletableFuture<byte[]> call(String method, String key, byte[] payload, long timeoutMillis) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        Session session;
+        try {
+            session = session();
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        long id = ids.incrementAndGet();
+        session.pending.put(id, future);
+        ScheduledFuture<?> timeout = TIMER.schedule(() -> {
+            if (session.pending.remove(id) != null) {
+                future.completeExceptionally(new RpcException("Request " + method + " to " + address + " timeout"));
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        future.whenComplete((r, e) -> timeout.cancel(false));
+
+        if (!session.connection.send(RpcFrame.request(id, method, key, payload)) && session.pending.remove(id) != null) {
+            future.completeExceptionally(new RpcException("Connection to " + address + " closed"));
+        }
+        return future;
+    }
+
+    /**
+     * 获取可用连接，断开后重连
+     */
+    private Session session() throws IOException {
+        Session session = this.session;
+        if (session != null && session.connection.isOpen()) {
+            return session;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                throw new RpcException("Client to " + address + " closed");
+            }
+            session = this.session;
+            if (session != null && session.connection.isOpen()) {
+                return session;
+            }
+
+            Socket socket = new Socket();
+            try {
+                socket.connect(address, connectTimeout);
+            } catch (IOException e) {
+                socket.close();
+                throw new RpcException("Connect to " + address + " failed", e);
+            }
+            Session created = new Session();
+            created.connection = new RpcConnection(socket, "TcpRpcClient-" + address, created);
+            created.connection.start();
+            this.session = created;
+            return created;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Session session = this.session;
+        if (session != null) {
+            session.connection.close();
+        }
+    }
+
+    /**
+     * 一条连接及其上未完成的请求
+     */
+    private static class Session implements RpcConnection.Listener {
+
+        private RpcConnection connection;
+
+        private final Map<Long, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>();
+
+        @Override
+        public void onFrame(RpcConnection connection, RpcFrame frame) {
+            CompletableFuture<byte[]> future = pending.remove(frame.getId());
+            if (future == null) {
+                // 已超时
+                return;
+            }
+            if (frame.getType() == RpcFrame.RESPONSE) {
+                future.complete(frame.getPayload());
+            } else {
+                future.completeExceptionally(new RpcException(frame.errorMessage()));
+            }
+        }
+
+        @Override
+        public void onClosed(RpcConnection connection) {
+            RpcException ex = new RpcException("Connection " + connection + " closed");
+            for (Long id : pending.keySet()) {
+                CompletableFuture<byte[]> future = pending.remove(id);
+                if (future != null) {
+                    future.completeExceptionally(ex);
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.common.rpc;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TCP RPC 服务端，每个客户端一条长连接，请求按方法名分发到处理器，处理器在指定的线程池中执行。
+ *
+ * @author Brozen
+ * @since 2024-06-14
+ */
+@Slf4j
+public class TcpRpcServer implements Closeable {
+
+    private final int port;
+
+    private final Executor executor;
+
+    private final Map<String, AsyncRpcHandler> handlers = new ConcurrentHashMap<>();
+
+    private final Set<RpcConnection> connections = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger connectionNumber = new AtomicInteger();
+
+    private volatile ServerSocket serverSocket;
+
+    /**
+     * @param port 监听端口，为 0 时随机分配
+     * @param executor 处理器执行线程池
+     */
+    public TcpRpcServer(int port, Executor executor) {
+        this.port = port;
+        this.executor = executor;
+    }
+
+    /**
+     * 注册方法的处理器
+     */
+    public TcpRpcServer register(String method, RpcHandler handler) {
+        handlers.put(method, (key, payload) -> CompletableFuture.completedFuture(handler.handle(key, payload)));
+        return this;
+    }
+
+    /**
+     * 注册方法的异步处理器，返回的 future 完成时发送响应
+     */
+    public TcpRpcServer registerAsync(String method, AsyncRpcHandler handler) {
+        handlers.put(method, handler);
+        return this;
+    }
+
+    /**
+     * 绑定端口并开始接收连接
+     */
+    public void start() throws IOException {
+        ServerSocket serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port));
+        this.serverSocket = serverSocket;
+
+        Thread acceptor = new Thread(this::accept, "TcpRpcServer-" + getPort() + "-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("Tcp rpc server started at port {}", getPort());
+    }
+
+    /**
+     * 实际监听的端口
+     */
+    public int getPort() {
+        ServerSocket serverSocket = this.serverSocket;
+        return serverSocket == null ? port : serverSocket.getLocalPort();
+    }
+
+    private void accept() {
+        ServerSocket serverSocket = this.serverSocket;
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                RpcConnection connection = new RpcConnection(socket,
+                        "TcpRpcServer-" + getPort() + "-" + connectionNumber.incrementAndGet(), new Dispatcher());
+                connections.add(connection);
+                connection.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    log.warn("Tcp rpc server accept failed", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        ServerSocket serverSocket = this.serverSocket;
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException ignore) {
+                // ignore
+            }
+        }
+        connections.forEach(RpcConnection::close);
+    }
+
+    /**
+     * 请求分发，读线程只负责把请求交给线程池
+     */
+    private class Dispatcher implements RpcConnection.Listener {
+
+        @Override
+        public void onFrame(RpcConnection connection, RpcFrame frame) {
+            if (frame.getType() != RpcFrame.REQUEST) {
+                return;
+            }
+
+            AsyncRpcHandler handler = handlers.get(frame.getMethod());
+            if (handler == null) {
+                connection.send(RpcFrame.error(frame.getId(), "Unknown method " + frame.getMethod()));
+                return;
+            }
+
+            try {
+                executor.execute(() -> {
+                    try {
+                        handler.handle(frame.getKey(), frame.getPayload()).whenComplete((result, e) -> {
+                            if (e == null) {
+                                connection.send(RpcFrame.response(frame.getId(), result));
+                            } else {
+                                onError(connection, frame, e);
+                            }
+                        });
+                    } catch (Exception e) {
+                        onError(connection, frame, e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                connection.send(RpcFrame.error(frame.getId(), "Server busy"));
+            }
+        }
+
+        @Override
+        public void onClosed(RpcConnection connection) {
+            connections.remove(connection);
+        }
+
+        private void onError(RpcConnection connection, RpcFrame frame, Throwable e) {
+            if (e instanceof CompletionException && e.getCause() != null) {
+                e = e.getCause();
+            }
+            log.error("Tcp rpc handle {} failed", frame.getMethod(), e);
+            connection.send(RpcFrame.error(frame.getId(), e.getMessage()));
+        }
+
+    }
+
+}
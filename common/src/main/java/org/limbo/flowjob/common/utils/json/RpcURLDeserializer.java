@@ -0,0 +1,44 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.common.utils.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import org.limbo.flowjob.common.rpc.RpcURLs;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * 通信地址的反序列化，支持 tcp 协议的地址
+ *
+ * @author Brozen
+ * @since 2024-06-14
+ */
+public class RpcURLDeserializer extends JsonDeserializer<URL> {
+
+    @Override
+    public URL deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException {
+        String spec = jsonParser.getValueAsString();
+        return spec == null ? null : RpcURLs.parse(spec);
+    }
+
+}
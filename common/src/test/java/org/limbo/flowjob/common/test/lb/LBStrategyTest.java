@@ -2,11 +2,18 @@ package org.limbo.flowjob.common.test.lb;
 
 import com.google.common.collect.Maps;
 import org.junit.Before;
+import org.junit.Assert;
 import org.junit.Test;
+import org.limbo.flowjob.common.lb.LBServerLoadProvider;
 import org.limbo.flowjob.common.lb.RPCInvocation;
+import org.limbo.flowjob.common.lb.strategies.ConsistentHashLBStrategy;
+import org.limbo.flowjob.common.lb.strategies.PowerOfChoicesLBStrategy;
 import org.limbo.flowjob.common.lb.strategies.RoundRobinLBStrategy;
 
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -56,5 +63,172 @@ public class LBStrategyTest {
     }
 
 
+    @Test
+    public void testSmoothWeightedRoundRobin() {
+        // 权重 5:1:1，权重最大的服务最多连续出现 3 次
+        List<IntegerLBServer> weighted = servers.subList(0, 3);
+        RoundRobinLBStrategy<IntegerLBServer> strategy = new RoundRobinLBStrategy<>(
+                servers -> servers.stream().collect(Collectors.toMap(IntegerLBServer::getServerId, s -> s.getValue() == 0 ? 5 : 1))
+        );
+
+        int[] selected = new int[weighted.size()];
+        int continuous = 0;
+        for (int i = 0; i < 700; i++) {
+            int value = strategy.select(weighted, new RPCInvocation("test", Maps.newHashMap())).get().getValue();
+            selected[value]++;
+            continuous = value == 0 ? continuous + 1 : 0;
+            Assert.assertTrue(continuous <= 3);
+        }
+        Assert.assertArrayEquals(new int[]{500, 100, 100}, selected);
+
+        // 服务列表变化后按新列表轮询
+        List<IntegerLBServer> others = servers.subList(3, 5);
+        int[] others1 = new int[servers.size()];
+        for (int i = 0; i < 12; i++) {
+            others1[strategy.select(others, new RPCInvocation("test", Maps.newHashMap())).get().getValue()]++;
+        }
+        Assert.assertEquals(6, others1[3]);
+        Assert.assertEquals(6, others1[4]);
+    }
+
+
+    @Test
+    public void testRoundRobinFingerprintCollision() {
+        // "Aa" 与 "BB" 的 hashCode 相同，两个列表的指纹相同，按新列表的权重 1:1 轮询
+        IntegerLBServer aa = namedServer(0, "Aa");
+        IntegerLBServer x = namedServer(1, "x");
+        IntegerLBServer bb = namedServer(2, "BB");
+        RoundRobinLBStrategy<IntegerLBServer> strategy = new RoundRobinLBStrategy<>(
+                servers -> servers.stream().collect(Collectors.toMap(IntegerLBServer::getServerId, s -> s == aa ? 3 : 1)),
+                Duration.ofHours(1)
+        );
+        for (int i = 0; i < 4; i++) {
+            strategy.select(Arrays.asList(aa, x), new RPCInvocation("test", Maps.newHashMap()));
+        }
+
+        int[] selected = new int[3];
+        for (int i = 0; i < 8; i++) {
+            selected[strategy.select(Arrays.asList(bb, x), new RPCInvocation("test", Maps.newHashMap())).get().getValue()]++;
+        }
+        Assert.assertArrayEquals(new int[]{0, 4, 4}, selected);
+    }
+
+
+    private IntegerLBServer namedServer(int value, String serverId) {
+        return new IntegerLBServer(value) {
+            @Override
+            public String getServerId() {
+                return serverId;
+            }
+        };
+    }
+
+
+    @Test
+    public void testPowerOfChoices() {
+        // 在途请求数等于 value，负载最高的服务在两两比较中不会被选中
+        LBServerLoadProvider<IntegerLBServer> loadProvider = new LBServerLoadProvider<IntegerLBServer>() {
+            @Override
+            public int getInFlight(IntegerLBServer server) {
+                return server.getValue();
+            }
+
+            @Override
+            public float getAvailableCpu(IntegerLBServer server) {
+                return 0;
+            }
+        };
+        PowerOfChoicesLBStrategy<IntegerLBServer> strategy = new PowerOfChoicesLBStrategy<>(loadProvider);
+
+        int[] selected = new int[servers.size()];
+        for (int i = 0; i < 10000; i++) {
+            strategy.select(servers, new RPCInvocation("test", Maps.newHashMap()))
+                    .ifPresent(server -> selected[server.getValue()]++);
+        }
+        Assert.assertEquals(0, selected[servers.size() - 1]);
+        Assert.assertTrue(selected[0] > selected[servers.size() - 2]);
+
+        // 采样数不少于服务数时总是选择负载最小的
+        PowerOfChoicesLBStrategy<IntegerLBServer> all = new PowerOfChoicesLBStrategy<>(loadProvider, servers.size());
+        Assert.assertEquals(0, all.select(servers, new RPCInvocation("test", Maps.newHashMap())).get().getValue());
+    }
+
+
+    @Test
+    public void testConsistentHash() {
+        ConsistentHashLBStrategy<IntegerLBServer> strategy = new ConsistentHashLBStrategy<>();
+        int keys = 10000;
+        int[] selected = new int[keys];
+        int[] counts = new int[servers.size()];
+        for (int i = 0; i < keys; i++) {
+            selected[i] = strategy.select(servers, hashInvocation(i)).get().getValue();
+            counts[selected[i]]++;
+        }
+        // 160 个虚拟节点时每个服务分到的参数数量偏差不大
+        for (int count : counts) {
+            Assert.assertTrue(count > keys / servers.size() / 2 && count < keys / servers.size() * 2);
+        }
+
+        // 移除一个服务，只有原本选择它的参数会改变选择结果
+        List<IntegerLBServer> remains = servers.stream().filter(s -> s.getValue() != 3).collect(Collectors.toList());
+        for (int i = 0; i < keys; i++) {
+            int value = strategy.select(remains, hashInvocation(i)).get().getValue();
+            if (selected[i] == 3) {
+                Assert.assertNotEquals(3, value);
+            } else {
+                Assert.assertEquals(selected[i], value);
+            }
+        }
+    }
+
+
+    @Test
+    public void testBoundedConsistentHash() {
+        int[] inFlight = new int[servers.size()];
+        LBServerLoadProvider<IntegerLBServer> loadProvider = new LBServerLoadProvider<IntegerLBServer>() {
+            @Override
+            public int getInFlight(IntegerLBServer server) {
+                return inFlight[server.getValue()];
+            }
+
+            @Override
+            public float getAvailableCpu(IntegerLBServer server) {
+                return 0;
+            }
+        };
+        ConsistentHashLBStrategy<IntegerLBServer> strategy = new ConsistentHashLBStrategy<>(loadProvider, 0.25);
+
+        // 同一个参数持续选择，负载达到平均值的 1.25 倍后顺延到其他服务
+        int times = 100;
+        for (int i = 0; i < times; i++) {
+            inFlight[strategy.select(servers, hashInvocation(0)).get().getValue()]++;
+        }
+        int max = IntStream.of(inFlight).max().getAsInt();
+        Assert.assertTrue(max <= Math.ceil(1.25 * times / servers.size()));
+
+        // 汇总负载后各服务负载上涨（模拟并发下发），全部达到上限时每个服务只检查一次，选择负载最小的
+        int[] lookups = new int[1];
+        ConsistentHashLBStrategy<IntegerLBServer> racing = new ConsistentHashLBStrategy<>(new LBServerLoadProvider<IntegerLBServer>() {
+            @Override
+            public int getInFlight(IntegerLBServer server) {
+                return lookups[0]++ < servers.size() ? 0 : 1 + server.getValue();
+            }
+
+            @Override
+            public float getAvailableCpu(IntegerLBServer server) {
+                return 0;
+            }
+        }, 0);
+        Assert.assertEquals(0, racing.select(servers, hashInvocation(0)).get().getValue());
+        Assert.assertEquals(servers.size() * 2, lookups[0]);
+    }
+
+
+    private RPCInvocation hashInvocation(int key) {
+        Map<String, String> parameters = Maps.newHashMap();
+        parameters.put(ConsistentHashLBStrategy.HASH_PARAM_NAME, "key");
+        parameters.put("key", String.valueOf(key));
+        return new RPCInvocation("test", parameters);
+    }
 
 }
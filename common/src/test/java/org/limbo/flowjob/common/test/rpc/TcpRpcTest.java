@@ -0,0 +1,105 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.common.test.rpc;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.limbo.flowjob.common.rpc.RpcException;
+import org.limbo.flowjob.common.rpc.TcpRpcClient;
+import org.limbo.flowjob.common.rpc.TcpRpcServer;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Brozen
+ * @since 2024-06-14
+ */
+public class TcpRpcTest {
+
+    private ExecutorService executor;
+
+    private TcpRpcServer server;
+
+    private TcpRpcClient client;
+
+    @Before
+    public void init() throws Exception {
+        executor = Executors.newFixedThreadPool(4);
+        server = new TcpRpcServer(0, executor)
+                .register("echo", (key, payload) -> (key + ":" + new String(payload, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8))
+                .register("fail", (key, payload) -> {
+                    throw new IllegalStateException("boom");
+                });
+        server.start();
+        client = new TcpRpcClient(new InetSocketAddress("127.0.0.1", server.getPort()), Duration.ofSeconds(1), Duration.ofSeconds(3));
+    }
+
+    @After
+    public void destroy() {
+        client.close();
+        server.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testMultiplexing() throws Exception {
+        int count = 1000;
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            futures.add(client.call("echo", "k" + i, String.valueOf(i).getBytes(StandardCharsets.UTF_8)));
+        }
+        for (int i = 0; i < count; i++) {
+            byte[] result = futures.get(i).get(3, TimeUnit.SECONDS);
+            Assert.assertEquals("k" + i + ":" + i, new String(result, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testError() throws Exception {
+        assertRpcError(client.call("fail", null, new byte[0]), "boom");
+        assertRpcError(client.call("missing", null, new byte[0]), "missing");
+
+        // 出错后连接仍然可用
+        byte[] result = client.call("echo", "k", "v".getBytes(StandardCharsets.UTF_8)).get(3, TimeUnit.SECONDS);
+        Assert.assertEquals("k:v", new String(result, StandardCharsets.UTF_8));
+    }
+
+    private void assertRpcError(CompletableFuture<byte[]> future, String message) throws Exception {
+        try {
+            future.get(3, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RpcException);
+            Assert.assertTrue(e.getCause().getMessage().contains(message));
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.benchmark;
+
+import com.cronutils.model.CronType;
+import com.cronutils.model.definition.CronDefinitionBuilder;
+import com.cronutils.model.time.ExecutionTime;
+import com.cronutils.parser.CronParser;
+import lombok.AllArgsConstructor;
+import org.limbo.flowjob.broker.core.schedule.Calculated;
+import org.limbo.flowjob.broker.core.schedule.ScheduleCalculator;
+import org.limbo.flowjob.broker.core.schedule.ScheduleOption;
+import org.limbo.flowjob.broker.core.schedule.calculator.ScheduleCalculatorFactory;
+import org.limbo.flowjob.common.constants.ScheduleType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CRON 触发时间计算的基准测试，10万个 plan 轮流计算下次触发时间。
+ * 不同表达式数量分别为 5000（多数 plan 共用表达式）以及 10万（每个 plan 一个表达式，超出缓存上限）。
+ * <ul>
+ *     <li>uncompiled：每次计算都重新构建 CronDefinition、CronParser 并解析表达式（缓存前的实现）</li>
+ *     <li>cached：使用 CronScheduleCalculator 缓存的 ExecutionTime</li>
+ *     <li>cachedBatch：一次计算之后多个触发时间，按单次触发折算吞吐</li>
+ * </ul>
+ * 直接运行 main 方法即可，结果单位为每秒计算次数。
+ *
+ * @author Brozen
+ * @since 2023-02-10
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CronScheduleCalculatorBenchmark {
+
+    private static final int PLAN_COUNT = 100_000;
+
+    /**
+     * 不同的CRON表达式数量，多个 plan 可能使用相同的表达式
+     */
+    @Param({"5000", "100000"})
+    private int cronCount;
+
+    private static final int BATCH = 8;
+
+    private Plan[] plans;
+
+    private ScheduleCalculator calculator;
+
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        LocalDateTime now = LocalDateTime.now();
+        plans = new Plan[PLAN_COUNT];
+        for (int i = 0; i < PLAN_COUNT; i++) {
+            int c = i % cronCount;
+            String cron = String.format("%d %d %d/%d %d/1 * ?", c % 60, (c / 60) % 60, c % 24, 1 + (c / 3600) % 12, 1 + (c / 43200) % 28);
+            ScheduleOption option = new ScheduleOption(ScheduleType.CRON, null, null, null, cron, CronType.QUARTZ.name());
+            plans[i] = new Plan(option, now);
+        }
+        calculator = ScheduleCalculatorFactory.create(ScheduleType.CRON);
+    }
+
+    private Plan nextPlan() {
+        Plan plan = plans[cursor];
+        cursor = (cursor + 1) % PLAN_COUNT;
+        return plan;
+    }
+
+    @Benchmark
+    public long uncompiled() {
+        ScheduleOption option = nextPlan().scheduleOption();
+        CronParser parser = new CronParser(CronDefinitionBuilder.instanceDefinitionFor(CronType.valueOf(option.getScheduleCronType())));
+        ExecutionTime executionTime = ExecutionTime.forCron(parser.parse(option.getScheduleCron()));
+        return executionTime.nextExecution(ZonedDateTime.now())
+                .map(t -> t.toInstant().toEpochMilli())
+                .orElse(ScheduleCalculator.NO_TRIGGER);
+    }
+
+    @Benchmark
+    public Long cached() {
+        return calculator.calculate(nextPlan());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<Long> cachedBatch() {
+        return calculator.calculate(nextPlan(), BATCH);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CronScheduleCalculatorBenchmark.class.getSimpleName())
+                .build()
+        ).run();
+    }
+
+    @AllArgsConstructor
+    private static class Plan implements Calculated {
+
+        private final ScheduleOption scheduleOption;
+
+        private final LocalDateTime lastTriggerAt;
+
+        @Override
+        public ScheduleOption scheduleOption() {
+            return scheduleOption;
+        }
+
+        @Override
+        public LocalDateTime lastTriggerAt() {
+            return lastTriggerAt;
+        }
+
+        @Override
+        public LocalDateTime lastFeedbackAt() {
+            return lastTriggerAt;
+        }
+    }
+
+}
@@ -0,0 +1,231 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.benchmark;
+
+import org.limbo.flowjob.common.lb.Invocation;
+import org.limbo.flowjob.common.lb.LBServer;
+import org.limbo.flowjob.common.lb.LBServerLoadProvider;
+import org.limbo.flowjob.common.lb.LBServerStatistics;
+import org.limbo.flowjob.common.lb.LBStrategy;
+import org.limbo.flowjob.common.lb.RPCInvocation;
+import org.limbo.flowjob.common.lb.strategies.ConsistentHashLBStrategy;
+import org.limbo.flowjob.common.lb.strategies.LFULBStrategy;
+import org.limbo.flowjob.common.lb.strategies.PowerOfChoicesLBStrategy;
+import org.limbo.flowjob.common.lb.strategies.RoundRobinLBStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 负载均衡策略单次选择耗时的基准测试。
+ * <ul>
+ *     <li>roundRobin：平滑加权轮询，序列预先计算，每次只遍历服务 ID 校验列表是否变化</li>
+ *     <li>lfu：最不经常使用，每次查询全部服务的统计数据，统计数据在内存中</li>
+ *     <li>powerOfTwoChoices：两次随机选择，每次只读取两个服务的负载</li>
+ *     <li>consistentHash：一致性哈希，哈希环缓存后每次只做一次二分查找</li>
+ *     <li>boundedConsistentHash：有界负载一致性哈希，每次汇总全部服务的在途请求数</li>
+ * </ul>
+ * 直接运行 main 方法即可，结果单位为每次选择的纳秒数。
+ *
+ * @author Brozen
+ * @since 2024-06-19
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LBStrategyBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int serverCount;
+
+    private List<Server> servers;
+
+    private Invocation invocation;
+
+    private LBStrategy<Server> roundRobin;
+
+    private LBStrategy<Server> lfu;
+
+    private LBStrategy<Server> powerOfTwoChoices;
+
+    private LBStrategy<Server> consistentHash;
+
+    private LBStrategy<Server> boundedConsistentHash;
+
+    private Invocation[] hashInvocations;
+
+    private int hashIndex;
+
+    @Setup
+    public void setup() {
+        servers = new ArrayList<>(serverCount);
+        for (int i = 0; i < serverCount; i++) {
+            servers.add(new Server(i));
+        }
+        invocation = new RPCInvocation("benchmark", new HashMap<>());
+
+        roundRobin = new RoundRobinLBStrategy<>();
+        lfu = new LFULBStrategy<>((serverIds, interval) -> servers.stream()
+                .filter(s -> serverIds.contains(s.getServerId()))
+                .collect(Collectors.toList()));
+        LBServerLoadProvider<Server> loadProvider = new LBServerLoadProvider<Server>() {
+            @Override
+            public int getInFlight(Server server) {
+                return server.inFlight.get();
+            }
+
+            @Override
+            public float getAvailableCpu(Server server) {
+                return 0;
+            }
+        };
+        powerOfTwoChoices = new PowerOfChoicesLBStrategy<>(loadProvider);
+        consistentHash = new ConsistentHashLBStrategy<>();
+        boundedConsistentHash = new ConsistentHashLBStrategy<>(loadProvider, ConsistentHashLBStrategy.DEFAULT_LOAD_FACTOR);
+
+        // 预先生成参数不同的调用，避免基准测试中构造参数的开销
+        hashInvocations = new Invocation[1024];
+        for (int i = 0; i < hashInvocations.length; i++) {
+            Map<String, String> parameters = new HashMap<>();
+            parameters.put(ConsistentHashLBStrategy.HASH_PARAM_NAME, "key");
+            parameters.put("key", "key-" + i);
+            hashInvocations[i] = new RPCInvocation("benchmark", parameters);
+        }
+    }
+
+    @Benchmark
+    public Server roundRobin() {
+        return select(roundRobin);
+    }
+
+    @Benchmark
+    public Server lfu() {
+        return select(lfu);
+    }
+
+    @Benchmark
+    public Server powerOfTwoChoices() {
+        return select(powerOfTwoChoices);
+    }
+
+    @Benchmark
+    public Server consistentHash() {
+        return select(consistentHash, nextHashInvocation());
+    }
+
+    @Benchmark
+    public Server boundedConsistentHash() {
+        return select(boundedConsistentHash, nextHashInvocation());
+    }
+
+    private Invocation nextHashInvocation() {
+        return hashInvocations[hashIndex++ & (hashInvocations.length - 1)];
+    }
+
+    /**
+     * 选中的服务计数加一，使各策略的负载数据持续变化
+     */
+    private Server select(LBStrategy<Server> strategy) {
+        return select(strategy, invocation);
+    }
+
+    private Server select(LBStrategy<Server> strategy, Invocation invocation) {
+        Server server = strategy.select(servers, invocation).orElse(null);
+        if (server != null) {
+            server.inFlight.incrementAndGet();
+        }
+        return server;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LBStrategyBenchmark.class.getSimpleName())
+                .build()
+        ).run();
+    }
+
+    private static class Server implements LBServer, LBServerStatistics {
+
+        private final String id;
+
+        private final URL url;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        Server(int index) {
+            this.id = String.valueOf(index);
+            try {
+                this.url = new URL("http://127.0.0.1:" + (10000 + index));
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        @Override
+        public String getServerId() {
+            return id;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return true;
+        }
+
+        @Override
+        public URL getUrl() {
+            return url;
+        }
+
+        @Override
+        public Instant getLatestAccessAt() {
+            return Instant.EPOCH;
+        }
+
+        @Override
+        public int getAccessTimes() {
+            return inFlight.get();
+        }
+    }
+
+}
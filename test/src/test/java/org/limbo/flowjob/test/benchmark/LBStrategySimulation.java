@@ -0,0 +1,252 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.benchmark;
+
+import org.limbo.flowjob.common.lb.Invocation;
+import org.limbo.flowjob.common.lb.LBServer;
+import org.limbo.flowjob.common.lb.LBServerLoadProvider;
+import org.limbo.flowjob.common.lb.LBServerStatistics;
+import org.limbo.flowjob.common.lb.LBStrategy;
+import org.limbo.flowjob.common.lb.RPCInvocation;
+import org.limbo.flowjob.common.lb.strategies.LFULBStrategy;
+import org.limbo.flowjob.common.lb.strategies.PowerOfChoicesLBStrategy;
+import org.limbo.flowjob.common.lb.strategies.RoundRobinLBStrategy;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * 负载均衡策略的尾延迟模拟。离散事件模拟若干 worker，每个 worker 同时执行固定数量的任务，其余任务排队；
+ * 任务按泊松过程到达，执行时间服从指数分布，统计任务从到达到完成的耗时分位数。
+ * <ul>
+ *     <li>同构：所有 worker 执行速度相同</li>
+ *     <li>异构：一半 worker 执行速度是另一半的三倍</li>
+ * </ul>
+ * 直接运行 main 方法即可，时间为模拟时间，与机器性能无关。
+ *
+ * @author Brozen
+ * @since 2024-06-19
+ */
+public class LBStrategySimulation {
+
+    private static final int WORKERS = 20;
+
+    /**
+     * 每个 worker 同时执行的任务数
+     */
+    private static final int SLOTS = 4;
+
+    private static final int TASKS = 200_000;
+
+    /**
+     * 到达速率占集群总处理能力的比例
+     */
+    private static final double UTILIZATION = 0.8;
+
+    public static void main(String[] args) {
+        double[] homogeneous = new double[WORKERS];
+        double[] heterogeneous = new double[WORKERS];
+        for (int i = 0; i < WORKERS; i++) {
+            homogeneous[i] = 100;
+            heterogeneous[i] = i % 2 == 0 ? 50 : 150;
+        }
+
+        System.out.printf("%d workers x %d slots, %d tasks, utilization %.0f%%%n", WORKERS, SLOTS, TASKS, UTILIZATION * 100);
+        simulate("homogeneous (100ms)", homogeneous);
+        simulate("heterogeneous (50ms / 150ms)", heterogeneous);
+    }
+
+    private static void simulate(String scenario, double[] meanServiceMillis) {
+        System.out.printf("%n%s%n", scenario);
+        System.out.printf("%-22s %10s %10s %10s %10s %10s%n", "strategy", "p50(ms)", "p90(ms)", "p99(ms)", "p999(ms)", "max(ms)");
+        run("RoundRobin", meanServiceMillis, load -> new RoundRobinLBStrategy<>());
+        run("LFU", meanServiceMillis, load -> new LFULBStrategy<>((serverIds, interval) -> new ArrayList<>(load)));
+        run("PowerOfTwoChoices", meanServiceMillis, load -> new PowerOfChoicesLBStrategy<>(new InFlightProvider()));
+    }
+
+    private static void run(String name, double[] meanServiceMillis, Function<List<SimWorker>, LBStrategy<SimWorker>> strategyFactory) {
+        Random random = new Random(42);
+        List<SimWorker> workers = new ArrayList<>(WORKERS);
+        double capacity = 0;
+        for (int i = 0; i < WORKERS; i++) {
+            workers.add(new SimWorker(i, meanServiceMillis[i]));
+            capacity += SLOTS / meanServiceMillis[i];
+        }
+        double meanInterArrival = 1 / (capacity * UTILIZATION);
+
+        LBStrategy<SimWorker> strategy = strategyFactory.apply(workers);
+        Invocation invocation = new RPCInvocation("simulation", new HashMap<>());
+        PriorityQueue<Completion> completions = new PriorityQueue<>();
+        double[] latencies = new double[TASKS];
+        int completed = 0;
+
+        double now = 0;
+        for (int i = 0; i < TASKS; i++) {
+            now += exponential(random, meanInterArrival);
+            while (!completions.isEmpty() && completions.peek().at <= now) {
+                Completion completion = completions.poll();
+                latencies[completed++] = completion.at - completion.arrivedAt;
+                completion.worker.complete(completion.at, completions, random);
+            }
+
+            SimWorker worker = strategy.select(workers, invocation).orElseThrow(IllegalStateException::new);
+            worker.dispatched++;
+            worker.submit(now, completions, random);
+        }
+        while (!completions.isEmpty()) {
+            Completion completion = completions.poll();
+            latencies[completed++] = completion.at - completion.arrivedAt;
+            completion.worker.complete(completion.at, completions, random);
+        }
+
+        Arrays.sort(latencies);
+        System.out.printf("%-22s %10.1f %10.1f %10.1f %10.1f %10.1f%n", name,
+                percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), latencies[latencies.length - 1]);
+    }
+
+    private static double exponential(Random random, double mean) {
+        return -mean * Math.log(1 - random.nextDouble());
+    }
+
+    private static double percentile(double[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    /**
+     * 在途任务数为排队与执行中的任务之和
+     */
+    private static class InFlightProvider implements LBServerLoadProvider<SimWorker> {
+
+        @Override
+        public int getInFlight(SimWorker worker) {
+            return worker.running + worker.queue.size();
+        }
+
+        @Override
+        public float getAvailableCpu(SimWorker worker) {
+            return 0;
+        }
+    }
+
+    private static class Completion implements Comparable<Completion> {
+
+        private final double at;
+
+        private final double arrivedAt;
+
+        private final SimWorker worker;
+
+        Completion(double at, double arrivedAt, SimWorker worker) {
+            this.at = at;
+            this.arrivedAt = arrivedAt;
+            this.worker = worker;
+        }
+
+        @Override
+        public int compareTo(Completion o) {
+            return Double.compare(at, o.at);
+        }
+    }
+
+    private static class SimWorker implements LBServer, LBServerStatistics {
+
+        private final String id;
+
+        private final URL url;
+
+        private final double meanServiceMillis;
+
+        /**
+         * 排队任务的到达时间
+         */
+        private final Queue<Double> queue = new ArrayDeque<>();
+
+        private int running;
+
+        private int dispatched;
+
+        SimWorker(int index, double meanServiceMillis) {
+            this.id = String.valueOf(index);
+            this.meanServiceMillis = meanServiceMillis;
+            try {
+                this.url = new URL("http://127.0.0.1:" + (10000 + index));
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        void submit(double now, PriorityQueue<Completion> completions, Random random) {
+            if (running < SLOTS) {
+                start(now, now, completions, random);
+            } else {
+                queue.offer(now);
+            }
+        }
+
+        void complete(double now, PriorityQueue<Completion> completions, Random random) {
+            running--;
+            Double arrivedAt = queue.poll();
+            if (arrivedAt != null) {
+                start(now, arrivedAt, completions, random);
+            }
+        }
+
+        private void start(double now, double arrivedAt, PriorityQueue<Completion> completions, Random random) {
+            running++;
+            completions.offer(new Completion(now + exponential(random, meanServiceMillis), arrivedAt, this));
+        }
+
+        @Override
+        public String getServerId() {
+            return id;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return true;
+        }
+
+        @Override
+        public URL getUrl() {
+            return url;
+        }
+
+        @Override
+        public Instant getLatestAccessAt() {
+            return Instant.EPOCH;
+        }
+
+        @Override
+        public int getAccessTimes() {
+            return dispatched;
+        }
+    }
+
+}
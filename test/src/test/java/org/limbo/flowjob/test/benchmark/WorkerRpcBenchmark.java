@@ -0,0 +1,201 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.test.benchmark;
+
+import com.sun.net.httpserver.HttpServer;
+import org.limbo.flowjob.api.ResponseDTO;
+import org.limbo.flowjob.api.remote.constants.HttpWorkerApi;
+import org.limbo.flowjob.api.remote.constants.TcpRpcApi;
+import org.limbo.flowjob.broker.core.domain.task.Task;
+import org.limbo.flowjob.broker.core.worker.Worker;
+import org.limbo.flowjob.broker.core.worker.rpc.DefaultWorkerRpcFactory;
+import org.limbo.flowjob.broker.core.worker.rpc.WorkerRpc;
+import org.limbo.flowjob.common.constants.Protocol;
+import org.limbo.flowjob.common.constants.TaskType;
+import org.limbo.flowjob.common.rpc.RpcCodec;
+import org.limbo.flowjob.common.rpc.RpcURLs;
+import org.limbo.flowjob.common.rpc.TcpRpcServer;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * broker 向 worker 下发任务的通信基准测试，对比 HTTP 与 TCP 长连接两种协议。
+ * <ul>
+ *     <li>本地启动一个只做应答的 worker，分别监听 HTTP、TCP 端口</li>
+ *     <li>开环压测：按固定速率（默认 1w/s）发出 sendTaskAsync，不等待上一个请求返回</li>
+ *     <li>延迟从计划发送时间开始计算，避免压测端自身卡顿掩盖排队延迟</li>
+ * </ul>
+ * 开环场景 JMH 不好表达，直接运行 main 方法，可通过参数指定速率和持续秒数，如 {@code 10000 10}。
+ *
+ * @author Brozen
+ * @since 2024-06-14
+ */
+public class WorkerRpcBenchmark {
+
+    private static final int DEFAULT_RATE = 10_000;
+
+    private static final int DEFAULT_SECONDS = 10;
+
+    private static final int WARMUP_SECONDS = 3;
+
+    private static final byte[] ACCEPTED = RpcCodec.encode(ResponseDTO.<Boolean>builder().ok(true).build());
+
+    public static void main(String[] args) throws Exception {
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_RATE;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SECONDS;
+
+        ExecutorService handlers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress(0), 1024);
+        httpServer.setExecutor(handlers);
+        httpServer.createContext(HttpWorkerApi.API_SEND_TASK, exchange -> {
+            try (InputStream in = exchange.getRequestBody(); OutputStream out = exchange.getResponseBody()) {
+                byte[] buffer = new byte[4096];
+                while (in.read(buffer) >= 0) {
+                    // 读完请求体
+                }
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, ACCEPTED.length);
+                out.write(ACCEPTED);
+            }
+        });
+        httpServer.start();
+
+        TcpRpcServer tcpServer = new TcpRpcServer(0, handlers);
+        tcpServer.register(TcpRpcApi.WORKER_SEND_TASK, (key, payload) -> ACCEPTED);
+        tcpServer.start();
+
+        DefaultWorkerRpcFactory factory = new DefaultWorkerRpcFactory();
+        try {
+            WorkerRpc http = factory.createRPC(worker("http-worker",
+                    RpcURLs.of(Protocol.HTTP.protocol, "127.0.0.1", httpServer.getAddress().getPort())));
+            WorkerRpc tcp = factory.createRPC(worker("tcp-worker",
+                    RpcURLs.of(Protocol.TCP.protocol, "127.0.0.1", tcpServer.getPort())));
+
+            run("http", http, rate, WARMUP_SECONDS);
+            report("http", run("http", http, rate, seconds));
+            run("tcp", tcp, rate, WARMUP_SECONDS);
+            report("tcp", run("tcp", tcp, rate, seconds));
+        } finally {
+            httpServer.stop(0);
+            tcpServer.close();
+            handlers.shutdownNow();
+        }
+    }
+
+    private static Worker worker(String id, URL url) {
+        return Worker.builder().id(id).rpcBaseUrl(url).build();
+    }
+
+    private static Result run(String name, WorkerRpc rpc, int rate, int seconds) throws InterruptedException {
+        int total = rate * seconds;
+        long[] latencies = new long[total];
+        AtomicInteger failed = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(total);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            long scheduledAt = start + i * intervalNanos;
+            long wait;
+            while ((wait = scheduledAt - System.nanoTime()) > 0) {
+                if (wait > 100_000) {
+                    TimeUnit.NANOSECONDS.sleep(wait - 50_000);
+                } else {
+                    Thread.yield();
+                }
+            }
+
+            int index = i;
+            CompletableFuture<Boolean> future;
+            try {
+                future = rpc.sendTaskAsync(task(name, i));
+            } catch (Exception e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            future.whenComplete((accepted, e) -> {
+                latencies[index] = System.nanoTime() - scheduledAt;
+                if (e != null || !Boolean.TRUE.equals(accepted)) {
+                    failed.incrementAndGet();
+                }
+                done.countDown();
+            });
+        }
+        boolean finished = done.await(seconds + 30L, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - start;
+        return new Result(total, finished ? failed.get() : (int) (failed.get() + done.getCount()), elapsed, latencies);
+    }
+
+    private static Task task(String prefix, int i) {
+        Task task = new Task();
+        task.setTaskId(prefix + "-" + i);
+        task.setPlanId("plan");
+        task.setPlanInstanceId("plan-instance");
+        task.setJobId("job");
+        task.setJobInstanceId("job-instance");
+        task.setType(TaskType.NORMAL);
+        task.setExecutorName("benchmark");
+        return task;
+    }
+
+    private static void report(String name, Result result) {
+        long[] sorted = Arrays.copyOf(result.latencies, result.latencies.length);
+        Arrays.sort(sorted);
+        System.out.printf("%-5s sent=%d failed=%d throughput=%.0f/s p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms%n",
+                name, result.total, result.failed,
+                result.total / (result.elapsedNanos / 1e9),
+                percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+
+    private static class Result {
+
+        private final int total;
+
+        private final int failed;
+
+        private final long elapsedNanos;
+
+        private final long[] latencies;
+
+        private Result(int total, int failed, long elapsedNanos, long[] latencies) {
+            this.total = total;
+            this.failed = failed;
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies;
+        }
+    }
+
+}
@@ -0,0 +1,214 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.core.cluster;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.broker.application.component.SlotManager;
+import org.limbo.flowjob.broker.core.cluster.BrokerConfig;
+import org.limbo.flowjob.broker.core.cluster.Node;
+import org.limbo.flowjob.broker.core.cluster.NodeListener;
+import org.limbo.flowjob.broker.core.cluster.NodeManger;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskScheduler;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskType;
+import org.limbo.flowjob.broker.dao.entity.PlanSlotEntity;
+import org.limbo.flowjob.broker.dao.repositories.PlanSlotEntityRepo;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Brozen
+ * @since 2023-02-11
+ */
+public class SlotManagerTest {
+
+    private static final int SLOT_SIZE = 1024;
+
+    @Test
+    public void testSlotRange() {
+        SlotManager slotManager = slotManager(new Node("b0", "127.0.0.1", 8080), new ArrayList<>());
+        for (int i = 0; i < 10000; i++) {
+            int slot = slotManager.slot("plan-" + i);
+            Assertions.assertTrue(slot >= 0 && slot < SLOT_SIZE);
+        }
+    }
+
+    /**
+     * 增加一个节点，只有新节点分到的槽位会迁移，其它槽位归属不变
+     */
+    @Test
+    public void testRebalance() {
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            nodes.add(new Node("b" + i, "127.0.0.1", 8080 + i));
+        }
+        Map<Integer, String> before = owners(nodes);
+        Assertions.assertEquals(SLOT_SIZE, before.size());
+
+        nodes.add(new Node("b4", "127.0.0.1", 8084));
+        Map<Integer, String> after = owners(nodes);
+        Assertions.assertEquals(SLOT_SIZE, after.size());
+
+        int moved = 0;
+        for (Map.Entry<Integer, String> entry : after.entrySet()) {
+            if (!entry.getValue().equals(before.get(entry.getKey()))) {
+                Assertions.assertEquals("b4", entry.getValue());
+                moved++;
+            }
+        }
+        // 期望迁移 1/5 的槽位
+        Assertions.assertTrue(moved > SLOT_SIZE / 10 && moved < SLOT_SIZE * 3 / 10, "moved " + moved);
+    }
+
+    /**
+     * 槽位数量小于已有 plan 的槽位时拒绝启动，调大时正常启动
+     */
+    @Test
+    public void testRejectShrinkSlotSize() {
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(new Node("b0", "127.0.0.1", 8080));
+        SlotManager slotManager = slotManager(nodes.get(0), nodes);
+        slotManager.setMetaTaskScheduler(Mockito.mock(MetaTaskScheduler.class));
+        PlanSlotEntityRepo repo = Mockito.mock(PlanSlotEntityRepo.class);
+        slotManager.setPlanSlotEntityRepo(repo);
+
+        Mockito.when(repo.findMaxSlot()).thenReturn(SLOT_SIZE);
+        Assertions.assertThrows(IllegalStateException.class, slotManager::init);
+
+        Mockito.when(repo.findMaxSlot()).thenReturn(SLOT_SIZE - 1);
+        slotManager.init();
+    }
+
+    /**
+     * 新节点加入后，原节点失去的槽位批量取消调度
+     */
+    @Test
+    public void testUnscheduleLostSlots() {
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(new Node("b0", "127.0.0.1", 8080));
+        SlotManager slotManager = slotManager(nodes.get(0), nodes);
+        NodeManger nodeManger = Mockito.mock(NodeManger.class);
+        Mockito.when(nodeManger.allAlive()).thenReturn(nodes);
+        slotManager.setNodeManger(nodeManger);
+        MetaTaskScheduler scheduler = Mockito.mock(MetaTaskScheduler.class);
+        slotManager.setMetaTaskScheduler(scheduler);
+        slotManager.init();
+
+        ArgumentCaptor<NodeListener> listener = ArgumentCaptor.forClass(NodeListener.class);
+        Mockito.verify(nodeManger).subscribe(listener.capture());
+        List<Integer> before = new ArrayList<>(slotManager.slots());
+        Assertions.assertEquals(SLOT_SIZE, before.size());
+
+        nodes.add(new Node("b1", "127.0.0.1", 8081));
+        listener.getValue().event(null);
+        List<Integer> lost = new ArrayList<>(before);
+        lost.removeAll(slotManager.slots());
+        Assertions.assertFalse(lost.isEmpty());
+        Mockito.verify(scheduler).unschedulePartitions(MetaTaskType.PLAN, lost);
+    }
+
+    /**
+     * 节点下线后，接管节点获得槽位时立即通知监听，不等待下次加载
+     */
+    @Test
+    public void testNotifyGainedSlots() {
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(new Node("b0", "127.0.0.1", 8080));
+        nodes.add(new Node("b1", "127.0.0.1", 8081));
+        SlotManager slotManager = slotManager(nodes.get(1), nodes);
+        NodeManger nodeManger = Mockito.mock(NodeManger.class);
+        Mockito.when(nodeManger.allAlive()).thenReturn(nodes);
+        slotManager.setNodeManger(nodeManger);
+        slotManager.setMetaTaskScheduler(Mockito.mock(MetaTaskScheduler.class));
+        slotManager.init();
+        List<List<Integer>> notified = new ArrayList<>();
+        slotManager.subscribeGained(notified::add);
+
+        ArgumentCaptor<NodeListener> listener = ArgumentCaptor.forClass(NodeListener.class);
+        Mockito.verify(nodeManger).subscribe(listener.capture());
+        List<Integer> before = new ArrayList<>(slotManager.slots());
+
+        nodes.remove(0);
+        listener.getValue().event(null);
+        List<Integer> gained = new ArrayList<>(slotManager.slots());
+        gained.removeAll(before);
+        Assertions.assertFalse(gained.isEmpty());
+        Assertions.assertEquals(Collections.singletonList(gained), notified);
+    }
+
+    /**
+     * 按创建时间增量同步其它节点新建的 plan，查询 planId 不访问 DB
+     */
+    @Test
+    public void testSyncCreatedPlans() {
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(new Node("b0", "127.0.0.1", 8080));
+        SlotManager slotManager = slotManager(nodes.get(0), nodes);
+        PlanSlotEntityRepo repo = Mockito.mock(PlanSlotEntityRepo.class);
+        slotManager.setPlanSlotEntityRepo(repo);
+        Assertions.assertTrue(slotManager.planIds().isEmpty());
+
+        PlanSlotEntity created = new PlanSlotEntity();
+        created.setPlanId("p1");
+        created.setSlot(slotManager.slot("p1"));
+        Mockito.when(repo.findBySlotInAndCreatedAfter(Mockito.anyList(), Mockito.any())).thenReturn(Collections.singletonList(created));
+        Assertions.assertEquals(Collections.singletonList("p1"), slotManager.syncCreatedPlans());
+        // 重叠窗口内再次查到的 plan 不重复返回
+        Assertions.assertTrue(slotManager.syncCreatedPlans().isEmpty());
+
+        Mockito.clearInvocations(repo);
+        Assertions.assertEquals(Collections.singletonList("p1"), slotManager.planIds());
+        Assertions.assertTrue(slotManager.ownsPlan("p1"));
+        Mockito.verifyNoInteractions(repo);
+    }
+
+    private Map<Integer, String> owners(List<Node> nodes) {
+        Map<Integer, String> owners = new HashMap<>();
+        for (Node node : nodes) {
+            for (Integer slot : slotManager(node, nodes).slots()) {
+                Assertions.assertNull(owners.put(slot, node.getName()), "slot " + slot + " has multi owner");
+            }
+        }
+        return owners;
+    }
+
+    private SlotManager slotManager(Node self, List<Node> nodes) {
+        BrokerConfig config = new BrokerConfig();
+        config.setName(self.getName());
+        config.setHost(self.getHost());
+        config.setPort(self.getPort());
+        config.setSlotSize(SLOT_SIZE);
+
+        NodeManger nodeManger = Mockito.mock(NodeManger.class);
+        Mockito.when(nodeManger.allAlive()).thenReturn(nodes);
+
+        SlotManager slotManager = new SlotManager();
+        slotManager.setBrokerConfig(config);
+        slotManager.setNodeManger(nodeManger);
+        slotManager.setPlanSlotEntityRepo(Mockito.mock(PlanSlotEntityRepo.class));
+        return slotManager;
+    }
+
+}
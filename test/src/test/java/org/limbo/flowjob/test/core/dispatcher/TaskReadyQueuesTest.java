@@ -0,0 +1,175 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.test.core.dispatcher;
+
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.broker.core.dispatch.DispatchOption;
+import org.limbo.flowjob.broker.core.dispatch.TagFilterOption;
+import org.limbo.flowjob.broker.core.dispatch.TaskReadyQueues;
+import org.limbo.flowjob.broker.core.domain.task.Task;
+import org.limbo.flowjob.broker.core.worker.Worker;
+import org.limbo.flowjob.broker.core.worker.executor.WorkerExecutor;
+import org.limbo.flowjob.common.constants.DispatchMode;
+import org.limbo.flowjob.common.constants.TagFilterCondition;
+import org.limbo.flowjob.common.constants.WorkerStatus;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Brozen
+ * @since 2024-06-17
+ */
+public class TaskReadyQueuesTest {
+
+    @Test
+    public void testPollQueuedTasks() throws Exception {
+        TaskReadyQueues queues = new TaskReadyQueues(Duration.ofSeconds(10), Duration.ofSeconds(10));
+        Worker worker = worker("w1", Collections.emptyMap());
+
+        CompletableFuture<Worker> t1 = queues.offer(task("t1", "hello", null));
+        CompletableFuture<Worker> t2 = queues.offer(task("t2", "hello", null));
+        CompletableFuture<Worker> other = queues.offer(task("t3", "other", null));
+
+        List<Task> pulled = queues.poll(worker, 10, Duration.ZERO).get(1, TimeUnit.SECONDS);
+        Assertions.assertEquals(2, pulled.size());
+
+        // worker 确认接收后才算下发成功
+        Assertions.assertFalse(t1.isDone());
+        Assertions.assertEquals(Lists.newArrayList("t1", "t2"), queues.ack("w1", Lists.newArrayList("t1", "t2")));
+        Assertions.assertSame(worker, t1.get(1, TimeUnit.SECONDS));
+
+        // 重复确认仍返回确认成功，其他 worker 不能确认
+        Assertions.assertEquals(Lists.newArrayList("t1"), queues.ack("w1", Lists.newArrayList("t1")));
+        Assertions.assertTrue(queues.ack("w2", Lists.newArrayList("t2")).isEmpty());
+        Assertions.assertSame(worker, t2.get(1, TimeUnit.SECONDS));
+        Assertions.assertFalse(other.isDone());
+
+        // 已被取走的任务不会重复下发
+        Assertions.assertTrue(queues.poll(worker, 10, Duration.ZERO).get(1, TimeUnit.SECONDS).isEmpty());
+    }
+
+    @Test
+    public void testLongPollWakeup() throws Exception {
+        TaskReadyQueues queues = new TaskReadyQueues(Duration.ofSeconds(10), Duration.ofSeconds(10));
+        Map<String, List<String>> tags = new HashMap<>();
+        tags.put("region", Lists.newArrayList("hz"));
+        Worker matched = worker("w1", tags);
+        Worker unmatched = worker("w2", Collections.emptyMap());
+
+        CompletableFuture<List<Task>> unmatchedPoll = queues.poll(unmatched, 10, Duration.ofSeconds(5));
+        CompletableFuture<List<Task>> matchedPoll = queues.poll(matched, 10, Duration.ofSeconds(5));
+        Assertions.assertFalse(matchedPoll.isDone());
+
+        TagFilterOption filter = TagFilterOption.builder()
+                .tagName("region").tagValue("hz").condition(TagFilterCondition.MUST_MATCH_VALUE)
+                .build();
+        CompletableFuture<Worker> dispatched = queues.offer(task("t1", "hello", Lists.newArrayList(filter)));
+
+        Assertions.assertEquals("t1", matchedPoll.get(1, TimeUnit.SECONDS).get(0).getTaskId());
+        queues.ack("w1", Lists.newArrayList("t1"));
+        Assertions.assertSame(matched, dispatched.get(1, TimeUnit.SECONDS));
+        Assertions.assertFalse(unmatchedPoll.isDone());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        TaskReadyQueues queues = new TaskReadyQueues(Duration.ofMillis(100), Duration.ofMillis(100));
+        Worker worker = worker("w1", Collections.emptyMap());
+
+        // 拉取超时返回空列表，挂起时间不超过 broker 的限制
+        Assertions.assertTrue(queues.poll(worker, 10, Duration.ofMinutes(1)).get(1, TimeUnit.SECONDS).isEmpty());
+
+        // 排队超时视为下发失败
+        Task task = task("t1", "hello", null);
+        task.setWorkerId("w2");
+        Assertions.assertNull(queues.offer(task).get(1, TimeUnit.SECONDS));
+        Assertions.assertTrue(queues.poll(worker, 10, Duration.ZERO).get(1, TimeUnit.SECONDS).isEmpty());
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        TaskReadyQueues queues = new TaskReadyQueues(Duration.ofSeconds(10), Duration.ofSeconds(10));
+        Worker worker = worker("w1", Collections.emptyMap());
+
+        // 关闭后挂起的拉取请求立即返回
+        CompletableFuture<List<Task>> poll = queues.poll(worker, 10, Duration.ofSeconds(10));
+        Assertions.assertFalse(poll.isDone());
+        queues.shutdown();
+        Assertions.assertTrue(poll.get(1, TimeUnit.SECONDS).isEmpty());
+    }
+
+    @Test
+    public void testAckTimeout() throws Exception {
+        TaskReadyQueues queues = new TaskReadyQueues(Duration.ofSeconds(10), Duration.ofSeconds(10), Duration.ofMillis(100));
+        Worker w1 = worker("w1", Collections.emptyMap());
+        Worker w2 = worker("w2", Collections.emptyMap());
+
+        CompletableFuture<Worker> dispatched = queues.offer(task("t1", "hello", null));
+        Assertions.assertEquals(1, queues.poll(w1, 10, Duration.ZERO).get(1, TimeUnit.SECONDS).size());
+
+        // 未确认的任务超时后放回队列，可被其他 worker 拉取，过期的确认被忽略
+        Assertions.assertEquals("t1", queues.poll(w2, 10, Duration.ofSeconds(5)).get(1, TimeUnit.SECONDS).get(0).getTaskId());
+        Assertions.assertTrue(queues.ack("w1", Lists.newArrayList("t1")).isEmpty());
+        Assertions.assertFalse(dispatched.isDone());
+        Assertions.assertEquals(Lists.newArrayList("t1"), queues.ack("w2", Lists.newArrayList("t1")));
+        Assertions.assertSame(w2, dispatched.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAckTimeoutAfterDeadline() throws Exception {
+        TaskReadyQueues queues = new TaskReadyQueues(Duration.ofMillis(100), Duration.ofSeconds(10), Duration.ofMillis(300));
+        Worker worker = worker("w1", Collections.emptyMap());
+
+        // 确认超时时已过排队截止时间，视为下发失败，不再放回队列
+        CompletableFuture<Worker> dispatched = queues.offer(task("t1", "hello", null));
+        Assertions.assertEquals(1, queues.poll(worker, 10, Duration.ZERO).get(1, TimeUnit.SECONDS).size());
+        Assertions.assertNull(dispatched.get(1, TimeUnit.SECONDS));
+        Assertions.assertTrue(queues.poll(worker, 10, Duration.ZERO).get(1, TimeUnit.SECONDS).isEmpty());
+    }
+
+    private Worker worker(String id, Map<String, List<String>> tags) {
+        return Worker.builder()
+                .id(id)
+                .name(id)
+                .status(WorkerStatus.RUNNING)
+                .enabled(true)
+                .dispatchMode(DispatchMode.PULL)
+                .executors(Lists.newArrayList(WorkerExecutor.builder().name("hello").build()))
+                .tags(tags)
+                .build();
+    }
+
+    private Task task(String taskId, String executorName, List<TagFilterOption> tagFilters) {
+        Task task = new Task();
+        task.setTaskId(taskId);
+        task.setExecutorName(executorName);
+        task.setDispatchOption(DispatchOption.builder().tagFilters(tagFilters).build());
+        return task;
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.test.core.dispatcher;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.broker.core.dispatch.TaskSendCoalescer;
+import org.limbo.flowjob.broker.core.domain.task.Task;
+import org.limbo.flowjob.broker.core.exceptions.WorkerApiUnsupportedException;
+import org.limbo.flowjob.broker.core.exceptions.WorkerException;
+import org.limbo.flowjob.broker.core.worker.Worker;
+import org.mockito.Mockito;
+
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * @author Brozen
+ * @since 2024-06-12
+ */
+public class TaskSendCoalescerTest {
+
+    @Test
+    public void testBatchAcceptance() throws Exception {
+        AtomicInteger batches = new AtomicInteger();
+        AtomicInteger sent = new AtomicInteger();
+        Worker worker = Mockito.mock(Worker.class);
+        Mockito.when(worker.getId()).thenReturn("w1");
+        Mockito.when(worker.sendTaskAsync(Mockito.any())).thenAnswer(invocation -> {
+            sent.incrementAndGet();
+            Task task = invocation.getArgument(0);
+            return CompletableFuture.completedFuture(accept(task.getTaskId()));
+        });
+        Mockito.when(worker.sendTasksAsync(Mockito.anyList())).thenAnswer(invocation -> {
+            batches.incrementAndGet();
+            List<Task> tasks = invocation.getArgument(0);
+            sent.addAndGet(tasks.size());
+            return CompletableFuture.completedFuture(tasks.stream().map(Task::getTaskId).filter(TaskSendCoalescerTest::accept).collect(Collectors.toList()));
+        });
+
+        TaskSendCoalescer coalescer = new TaskSendCoalescer(16, Duration.ofMillis(20));
+        int count = 64;
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Task task = new Task();
+            task.setTaskId(String.valueOf(i));
+            futures.add(coalescer.send(worker, task));
+        }
+        for (int i = 0; i < count; i++) {
+            Assertions.assertEquals(accept(String.valueOf(i)), futures.get(i).get(1, TimeUnit.SECONDS));
+        }
+
+        Assertions.assertEquals(count, sent.get());
+        Assertions.assertTrue(batches.get() > 0 && batches.get() < count);
+    }
+
+    @Test
+    public void testFallbackToSingle() throws Exception {
+        Worker worker = Mockito.mock(Worker.class);
+        Mockito.when(worker.getId()).thenReturn("w1");
+        CompletableFuture<List<String>> unsupported = new CompletableFuture<>();
+        unsupported.completeExceptionally(new WorkerApiUnsupportedException("w1", "http api unsupported, code:404"));
+        Mockito.when(worker.sendTasksAsync(Mockito.anyList())).thenReturn(unsupported);
+        Mockito.when(worker.sendTaskAsync(Mockito.any())).thenReturn(CompletableFuture.completedFuture(true));
+
+        TaskSendCoalescer coalescer = new TaskSendCoalescer(16, Duration.ofMillis(5));
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Task task = new Task();
+            task.setTaskId(String.valueOf(i));
+            futures.add(coalescer.send(worker, task));
+        }
+        for (CompletableFuture<Boolean> future : futures) {
+            Assertions.assertTrue(future.get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testBatchFailureNotResent() throws Exception {
+        // 读超时等失败时 worker 可能已经接受了任务，不能再逐个重发
+        Worker worker = Mockito.mock(Worker.class);
+        Mockito.when(worker.getId()).thenReturn("w1");
+        CompletableFuture<List<String>> timeout = new CompletableFuture<>();
+        timeout.completeExceptionally(new WorkerException("w1", "http api execute error", new SocketTimeoutException()));
+        Mockito.when(worker.sendTasksAsync(Mockito.anyList())).thenReturn(timeout);
+
+        TaskSendCoalescer coalescer = new TaskSendCoalescer(16, Duration.ofMillis(5));
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Task task = new Task();
+            task.setTaskId(String.valueOf(i));
+            futures.add(coalescer.send(worker, task));
+        }
+        for (CompletableFuture<Boolean> future : futures) {
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.SECONDS));
+            Assertions.assertTrue(e.getCause() instanceof WorkerException);
+        }
+        Mockito.verify(worker, Mockito.never()).sendTaskAsync(Mockito.any());
+    }
+
+    private static boolean accept(String taskId) {
+        return Integer.parseInt(taskId) % 3 != 0;
+    }
+
+}
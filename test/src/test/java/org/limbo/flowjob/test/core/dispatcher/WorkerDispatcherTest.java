@@ -23,16 +23,23 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.limbo.flowjob.broker.core.dispatch.DispatchOption;
+import org.limbo.flowjob.broker.core.dispatch.TagFilterOption;
 import org.limbo.flowjob.broker.core.dispatcher.FilteringWorkerSelector;
+import org.limbo.flowjob.broker.core.dispatcher.WorkerDynamicWeights;
+import org.limbo.flowjob.broker.core.dispatcher.ResourceAwareWorkerSelector;
+import org.limbo.flowjob.broker.core.dispatcher.WorkerIndex;
+import org.limbo.flowjob.broker.core.dispatcher.WorkerResourceReservations;
 import org.limbo.flowjob.broker.core.dispatcher.WorkerSelectArgument;
 import org.limbo.flowjob.broker.core.worker.Worker;
 import org.limbo.flowjob.broker.core.worker.executor.WorkerExecutor;
 import org.limbo.flowjob.broker.core.worker.metric.WorkerAvailableResource;
 import org.limbo.flowjob.broker.core.worker.metric.WorkerMetric;
+import org.limbo.flowjob.common.constants.TagFilterCondition;
 import org.limbo.flowjob.common.constants.WorkerStatus;
 import org.limbo.flowjob.common.lb.LBServerStatistics;
 import org.limbo.flowjob.common.lb.LBServerStatisticsProvider;
@@ -44,6 +51,7 @@ import org.limbo.flowjob.common.lb.strategies.RandomLBStrategy;
 import org.limbo.flowjob.common.lb.strategies.RoundRobinLBStrategy;
 import org.limbo.flowjob.common.utils.time.TimeUtils;
 
+import java.math.BigDecimal;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.time.Duration;
@@ -53,6 +61,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * @author Brozen
@@ -178,15 +187,115 @@ public class WorkerDispatcherTest {
     }
 
 
+    @Test
+    public void testDynamicWeights() throws MalformedURLException {
+        Worker small = generateMockWorker("Small");
+        small.setMetric(new WorkerMetric(Lists.newArrayList(), new WorkerAvailableResource(8f, 16f, 10), TimeUtils.currentLocalDateTime()));
+        Worker big = generateMockWorker("Big");
+        big.setMetric(new WorkerMetric(Lists.newArrayList(), new WorkerAvailableResource(64f, 128f, 10), TimeUtils.currentLocalDateTime()));
+        List<Worker> weightedWorkers = Lists.newArrayList(small, big);
+
+        // 按可用资源分配权重 8 核与 64 核约为 1:8
+        WorkerDynamicWeights dynamicWeights = new WorkerDynamicWeights();
+        FilteringWorkerSelector selector = new FilteringWorkerSelector(new RoundRobinLBStrategy<>(dynamicWeights::weights));
+        Map<String, Integer> selected = new HashMap<>();
+        for (int i = 0; i < 113; i++) {
+            selected.merge(selector.select(new MockWorkerSelectArgument(), weightedWorkers).getId(), 1, Integer::sum);
+        }
+        Assertions.assertEquals(13, selected.get("Small"));
+        Assertions.assertEquals(100, selected.get("Big"));
+
+        // 下发持续失败的 worker 权重降低
+        for (int i = 0; i < 10; i++) {
+            dynamicWeights.recordDispatch("Big", false, 1000);
+        }
+        Map<String, Integer> weights = dynamicWeights.weights(weightedWorkers);
+        Assertions.assertTrue(weights.get("Big") < weights.get("Small"));
+    }
+
+
+    @Test
+    public void testResourceAware() throws MalformedURLException {
+        Worker small = generateMockWorker("Small");
+        small.setMetric(new WorkerMetric(Lists.newArrayList(), new WorkerAvailableResource(2f, 4f, 10), TimeUtils.currentLocalDateTime()));
+        Worker big = generateMockWorker("Big");
+        big.setMetric(new WorkerMetric(Lists.newArrayList(), new WorkerAvailableResource(8f, 16f, 10), TimeUtils.currentLocalDateTime()));
+        List<Worker> resourceWorkers = Lists.newArrayList(small, big);
+
+        MockWorkerSelectArgument args = new MockWorkerSelectArgument();
+        args.setDispatchOption(DispatchOption.builder().cpuRequirement(new BigDecimal(2)).ramRequirement(new BigDecimal(1)).build());
+
+        // 最佳适配 预留后资源不足的不再选择
+        WorkerResourceReservations reservations = new WorkerResourceReservations();
+        ResourceAwareWorkerSelector bestFit = new ResourceAwareWorkerSelector(ResourceAwareWorkerSelector.Policy.BEST_FIT, reservations);
+        Assertions.assertEquals("Small", bestFit.select(args, resourceWorkers).getId());
+        Assertions.assertEquals("Big", bestFit.select(args, resourceWorkers).getId());
+
+        // 下发失败释放预留后可再次选择
+        reservations.release("Small", "t1");
+        Assertions.assertEquals("Small", bestFit.select(args, resourceWorkers).getId());
+
+        // 最少负载
+        ResourceAwareWorkerSelector leastLoaded = new ResourceAwareWorkerSelector(ResourceAwareWorkerSelector.Policy.LEAST_LOADED, new WorkerResourceReservations());
+        Assertions.assertEquals("Big", leastLoaded.select(args, resourceWorkers).getId());
+
+        // 没有满足需求的 worker
+        args.setDispatchOption(DispatchOption.builder().cpuRequirement(new BigDecimal(16)).build());
+        Assertions.assertNull(bestFit.select(args, resourceWorkers));
+    }
+
+
+    /**
+     * 索引过滤结果与逐个 worker 判断一致
+     */
+    @Test
+    public void testIndexTagFilter() throws MalformedURLException {
+        List<Worker> tagged = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Worker worker = generateMockWorker("TagWorker" + i);
+            worker.getTags().put("zone", Lists.newArrayList("zone-" + (i % 3)));
+            if (i % 2 == 0) {
+                worker.getTags().put("gpu", Lists.newArrayList("v100", "a100-" + i));
+            }
+            tagged.add(worker);
+        }
+
+        List<TagFilterOption> filters = Lists.newArrayList(
+                TagFilterOption.builder().tagName("gpu").condition(TagFilterCondition.EXISTS).build(),
+                TagFilterOption.builder().tagName("gpu").condition(TagFilterCondition.NOT_EXISTS).build(),
+                TagFilterOption.builder().tagName("zone").tagValue("zone-1").condition(TagFilterCondition.MUST_MATCH_VALUE).build(),
+                TagFilterOption.builder().tagName("zone").tagValue("zone-1").condition(TagFilterCondition.MUST_NOT_MATCH_VALUE).build(),
+                TagFilterOption.builder().tagName("gpu").tagValue("^a100-1").condition(TagFilterCondition.MUST_MATCH_VALUE_REGEX).build()
+        );
+        for (TagFilterOption filter : filters) {
+            List<Worker> expect = tagged.stream().filter(filter.asPredicate()).collect(Collectors.toList());
+            List<Worker> actual = WorkerIndex.of(tagged).filter("hello", Lists.newArrayList(filter));
+            Assertions.assertEquals(expect, actual, filter.condition.name());
+        }
+
+        // 多个条件取交集
+        List<Worker> expect = tagged.stream().filter(filters.get(0).asPredicate().and(filters.get(3).asPredicate())).collect(Collectors.toList());
+        Assertions.assertEquals(expect, WorkerIndex.of(tagged).filter("hello", Lists.newArrayList(filters.get(0), filters.get(3))));
+        Assertions.assertTrue(WorkerIndex.of(tagged).filter("unknown", null).isEmpty());
+    }
+
+
     @Setter
     static class MockWorkerSelectArgument implements WorkerSelectArgument {
 
+        private String taskId = "t1";
+
         private String executorName = "hello";
 
         private DispatchOption dispatchOption = DispatchOption.builder().build();
 
         private Map<String, String> attributes = new HashMap<>();
 
+        @Override
+        public String getTaskId() {
+            return taskId;
+        }
+
         @Override
         public String getExecutorName() {
             return executorName;
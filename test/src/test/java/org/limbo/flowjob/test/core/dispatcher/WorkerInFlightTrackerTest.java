@@ -0,0 +1,139 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.core.dispatcher;
+
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.broker.core.dispatch.WorkerInFlightTracker;
+import org.limbo.flowjob.broker.core.domain.task.Task;
+import org.limbo.flowjob.broker.core.worker.Worker;
+import org.limbo.flowjob.broker.core.worker.metric.WorkerAvailableResource;
+import org.limbo.flowjob.broker.core.worker.metric.WorkerMetric;
+import org.limbo.flowjob.common.constants.WorkerStatus;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Brozen
+ * @since 2024-06-18
+ */
+public class WorkerInFlightTrackerTest {
+
+    @Test
+    public void testAcquireAndRelease() {
+        WorkerInFlightTracker tracker = new WorkerInFlightTracker();
+        Worker worker = worker("w1", 2, TimeUtils.currentLocalDateTime().minusSeconds(1));
+
+        Assertions.assertTrue(tracker.tryAcquire(worker, task("t1")));
+        // 重复占用不重复扣减
+        Assertions.assertTrue(tracker.tryAcquire(worker, task("t1")));
+        Assertions.assertTrue(tracker.tryAcquire(worker, task("t2")));
+        Assertions.assertFalse(tracker.hasCapacity(worker));
+        Assertions.assertFalse(tracker.tryAcquire(worker, task("t3")));
+
+        // 重复释放只归还一个名额
+        tracker.release("t1");
+        tracker.release("t1");
+        Assertions.assertEquals(1, tracker.available(worker));
+        Assertions.assertTrue(tracker.tryAcquire(worker, task("t3")));
+        Assertions.assertFalse(tracker.hasCapacity(worker));
+    }
+
+    @Test
+    public void testReconcileWithHeartbeat() {
+        WorkerInFlightTracker tracker = new WorkerInFlightTracker();
+        Worker worker = worker("w1", 2, TimeUtils.currentLocalDateTime().minusSeconds(10));
+        Assertions.assertTrue(tracker.tryAcquire(worker, task("t1")));
+        Assertions.assertTrue(tracker.tryAcquire(worker, task("t2")));
+        Assertions.assertFalse(tracker.hasCapacity(worker));
+
+        Assertions.assertEquals(2, tracker.getInFlight(worker));
+
+        // 新心跳上报的剩余数已包含心跳前下发的任务，丢弃心跳前的记录
+        worker.setMetric(metric(3, TimeUtils.currentLocalDateTime().plusSeconds(1)));
+        Assertions.assertEquals(3, tracker.available(worker));
+        Assertions.assertEquals(0, tracker.getInFlight(worker));
+
+        // 心跳前下发的任务在其它节点反馈或在本节点反馈，都以心跳值为准
+        tracker.release("t1");
+        Assertions.assertEquals(3, tracker.available(worker));
+
+        // 下发晚于心跳的在途任务在校准时扣除
+        Assertions.assertTrue(tracker.tryAcquire(worker, task("t3")));
+        worker.setMetric(metric(3, TimeUtils.currentLocalDateTime().minusDays(1)));
+        Assertions.assertEquals(2, tracker.available(worker));
+        Assertions.assertEquals(1, tracker.getInFlight(worker));
+    }
+
+    @Test
+    public void testRemoveWorker() {
+        WorkerInFlightTracker tracker = new WorkerInFlightTracker();
+        Worker worker = worker("w1", 1, TimeUtils.currentLocalDateTime().minusSeconds(1));
+        Assertions.assertTrue(tracker.tryAcquire(worker, task("t1")));
+        Assertions.assertFalse(tracker.hasCapacity(worker));
+
+        // worker 下线后重新上线，计数从心跳值开始
+        tracker.remove("w1");
+        tracker.release("t1");
+        Assertions.assertEquals(0, tracker.getInFlight(worker));
+        Assertions.assertEquals(1, tracker.available(worker));
+    }
+
+    @Test
+    public void testAwaitRelease() throws Exception {
+        WorkerInFlightTracker tracker = new WorkerInFlightTracker();
+        Worker worker = worker("w1", 1, TimeUtils.currentLocalDateTime().minusSeconds(1));
+        Assertions.assertTrue(tracker.tryAcquire(worker, task("t1")));
+
+        CompletableFuture<Void> released = tracker.awaitRelease(Duration.ofSeconds(10));
+        Assertions.assertFalse(released.isDone());
+        tracker.release("t1");
+        released.get(1, TimeUnit.SECONDS);
+        Assertions.assertTrue(tracker.hasCapacity(worker));
+
+        // 没有名额释放时超时完成
+        tracker.awaitRelease(Duration.ofMillis(50)).get(1, TimeUnit.SECONDS);
+    }
+
+    private Worker worker(String id, int queueLimit, LocalDateTime heartbeatAt) {
+        return Worker.builder()
+                .id(id)
+                .name(id)
+                .status(WorkerStatus.RUNNING)
+                .enabled(true)
+                .metric(metric(queueLimit, heartbeatAt))
+                .build();
+    }
+
+    private WorkerMetric metric(int queueLimit, LocalDateTime heartbeatAt) {
+        return new WorkerMetric(Lists.newArrayList(), new WorkerAvailableResource(4f, 8f, queueLimit), heartbeatAt);
+    }
+
+    private Task task(String taskId) {
+        Task task = new Task();
+        task.setTaskId(taskId);
+        return task;
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.core.id;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.broker.application.component.IDGeneratorComponent;
+import org.limbo.flowjob.broker.application.config.BrokerProperties;
+import org.limbo.flowjob.broker.core.domain.IDType;
+import org.limbo.flowjob.broker.dao.entity.IdEntity;
+import org.limbo.flowjob.broker.dao.repositories.IdEntityRepo;
+import org.mockito.Mockito;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Devil
+ * @since 2023-02-12
+ */
+public class IDGeneratorComponentTest {
+
+    @Test
+    public void testConcurrentUnique() throws Exception {
+        AtomicLong currentId = new AtomicLong(100000);
+        AtomicInteger segments = new AtomicInteger();
+        IdEntityRepo repo = Mockito.mock(IdEntityRepo.class);
+        Mockito.when(repo.findById(Mockito.anyString())).thenAnswer(invocation -> {
+            IdEntity entity = new IdEntity();
+            entity.setType(invocation.getArgument(0));
+            entity.setCurrentId(currentId.get());
+            entity.setStep(100);
+            return Optional.of(entity);
+        });
+        Mockito.when(repo.casGainId(Mockito.anyString(), Mockito.anyLong(), Mockito.anyLong())).thenAnswer(invocation -> {
+            long newId = invocation.getArgument(1);
+            long oldId = invocation.getArgument(2);
+            if (currentId.compareAndSet(oldId, newId)) {
+                segments.incrementAndGet();
+                return 1;
+            }
+            return 0;
+        });
+
+        IDGeneratorComponent generator = new IDGeneratorComponent();
+        generator.setIdEntityRepo(repo);
+        generator.setBrokerProperties(new BrokerProperties());
+        generator.setTransactionManager(Mockito.mock(PlatformTransactionManager.class));
+
+        int threads = 8;
+        int perThread = 20000;
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < perThread; j++) {
+                    Assertions.assertTrue(ids.add(generator.generateId(IDType.TASK)));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        generator.destroy();
+
+        Assertions.assertEquals(threads * perThread, ids.size());
+        // 消耗很快 步长持续翻倍 号段数量远小于固定步长所需
+        Assertions.assertTrue(segments.get() < threads * perThread / 100 / 10, "segments " + segments.get());
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.core.statistics;
+
+import com.google.common.collect.Sets;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.broker.core.domain.task.Task;
+import org.limbo.flowjob.broker.core.statistics.BucketedDispatchCounter;
+import org.limbo.flowjob.broker.core.statistics.InMemoryWorkerStatisticsExchange;
+import org.limbo.flowjob.broker.core.statistics.WorkerLBStatistics;
+import org.limbo.flowjob.broker.core.worker.Worker;
+import org.limbo.flowjob.broker.dao.domain.ClusterWorkerStatisticsRepo;
+import org.limbo.flowjob.broker.dao.domain.SingletonWorkerStatisticsRepo;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Brozen
+ * @since 2024-06-20
+ */
+public class WorkerStatisticsTest {
+
+    private static final long MINUTE = 60_000;
+
+    @Test
+    public void testCountWindow() {
+        BucketedDispatchCounter counter = new BucketedDispatchCounter(Duration.ofMinutes(10), Duration.ofMinutes(1));
+        long start = 1_000 * MINUTE;
+        for (int i = 0; i < 10; i++) {
+            // 每分钟下发 i + 1 次
+            for (int j = 0; j <= i; j++) {
+                counter.record(start + i * MINUTE + j);
+            }
+        }
+
+        long now = start + 9 * MINUTE;
+        Assertions.assertEquals(55, counter.count(start, now));
+        Assertions.assertEquals(10 + 9 + 8, counter.count(now - 2 * MINUTE, now));
+        Assertions.assertEquals(start + 9 * MINUTE + 9, counter.lastDispatchAt());
+
+        // 超过保留时长的桶被新的时间段复用，查询时不再计入
+        counter.record(start + 12 * MINUTE);
+        Assertions.assertEquals(0, counter.count(start + MINUTE, start + MINUTE));
+        Assertions.assertEquals(52 + 1, counter.count(start, start + 12 * MINUTE));
+        Assertions.assertEquals(1 + 10 + 9 + 8, counter.count(start + 7 * MINUTE, start + 12 * MINUTE));
+    }
+
+    @Test
+    public void testConcurrentRecord() throws Exception {
+        BucketedDispatchCounter counter = new BucketedDispatchCounter(Duration.ofMinutes(10), Duration.ofMinutes(1));
+        int threads = 8;
+        int times = 10000;
+        long now = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch latch = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            pool.execute(() -> {
+                for (int j = 0; j < times; j++) {
+                    counter.record(now);
+                }
+                latch.countDown();
+            });
+        }
+        Assertions.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        pool.shutdown();
+
+        Assertions.assertEquals(threads * times, counter.count(now - MINUTE, now));
+    }
+
+    @Test
+    public void testRepoList() {
+        SingletonWorkerStatisticsRepo repo = new SingletonWorkerStatisticsRepo();
+        Worker w1 = Worker.builder().id("w1").build();
+        Worker w2 = Worker.builder().id("w2").build();
+        repo.recordTaskDispatched(new Task(), w1);
+        repo.recordTaskDispatched(new Task(), w1);
+        repo.recordTaskDispatched(new Task(), w2);
+
+        Instant limit = Instant.now().minusSeconds(60);
+        List<WorkerLBStatistics> statistics = repo.list(Sets.newHashSet("w1", "w3"), limit);
+        Assertions.assertEquals(1, statistics.size());
+        Assertions.assertEquals("w1", statistics.get(0).getWorkerId());
+        Assertions.assertEquals(2, statistics.get(0).getDispatchTimes());
+        Assertions.assertFalse(statistics.get(0).getLastDispatchTaskAt().isBefore(limit));
+
+        // 时间点之后没有下发的不返回
+        Assertions.assertTrue(repo.list(Sets.newHashSet("w1", "w2"), Instant.now().plusSeconds(1)).isEmpty());
+    }
+
+    @Test
+    public void testClusterRepoSync() {
+        InMemoryWorkerStatisticsExchange exchange = new InMemoryWorkerStatisticsExchange();
+        ClusterWorkerStatisticsRepo repo1 = new ClusterWorkerStatisticsRepo("b1", exchange);
+        ClusterWorkerStatisticsRepo repo2 = new ClusterWorkerStatisticsRepo("b2", exchange);
+        Worker w1 = Worker.builder().id("w1").build();
+        Worker w2 = Worker.builder().id("w2").build();
+        repo1.recordTaskDispatched(new Task(), w1);
+        repo1.recordTaskDispatched(new Task(), w1);
+        repo2.recordTaskDispatched(new Task(), w1);
+        repo2.recordTaskDispatched(new Task(), w2);
+
+        Instant limit = Instant.now().minusSeconds(60);
+        // 同步前只能看到本节点的下发
+        Assertions.assertEquals(2, repo1.list(Sets.newHashSet("w1"), limit).get(0).getDispatchTimes());
+        Assertions.assertTrue(repo1.list(Sets.newHashSet("w2"), limit).isEmpty());
+
+        repo1.sync();
+        repo2.sync();
+        repo1.sync();
+        Assertions.assertEquals(3, repo1.list(Sets.newHashSet("w1"), limit).get(0).getDispatchTimes());
+        Assertions.assertEquals(1, repo1.list(Sets.newHashSet("w2"), limit).get(0).getDispatchTimes());
+        Assertions.assertEquals(3, repo2.list(Sets.newHashSet("w1"), limit).get(0).getDispatchTimes());
+
+        // 重复同步不会重复累加
+        repo2.sync();
+        repo1.sync();
+        Assertions.assertEquals(3, repo1.list(Sets.newHashSet("w1"), limit).get(0).getDispatchTimes());
+    }
+
+}
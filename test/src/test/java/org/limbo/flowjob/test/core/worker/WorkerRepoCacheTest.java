@@ -0,0 +1,139 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.core.worker;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.broker.core.worker.Worker;
+import org.limbo.flowjob.broker.core.worker.metric.WorkerAvailableResource;
+import org.limbo.flowjob.broker.core.worker.metric.WorkerMetric;
+import org.limbo.flowjob.broker.dao.converter.WorkerEntityConverter;
+import org.limbo.flowjob.broker.dao.domain.WorkerRepo;
+import org.limbo.flowjob.broker.dao.entity.WorkerEntity;
+import org.limbo.flowjob.broker.dao.entity.WorkerMetricEntity;
+import org.limbo.flowjob.broker.dao.repositories.WorkerEntityRepo;
+import org.limbo.flowjob.broker.dao.repositories.WorkerExecutorEntityRepo;
+import org.limbo.flowjob.broker.dao.repositories.WorkerMetricEntityRepo;
+import org.limbo.flowjob.broker.dao.repositories.WorkerTagEntityRepo;
+import org.limbo.flowjob.common.constants.WorkerStatus;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
+import org.mockito.Mockito;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Brozen
+ * @since 2023-02-12
+ */
+public class WorkerRepoCacheTest {
+
+    private WorkerRepo workerRepo;
+
+    private WorkerEntityRepo workerEntityRepo;
+
+    private WorkerTagEntityRepo tagEntityRepo;
+
+    private final List<WorkerEntity> workers = new ArrayList<>();
+
+    private final List<WorkerMetricEntity> metrics = new ArrayList<>();
+
+    @BeforeEach
+    public void before() {
+        workerEntityRepo = Mockito.mock(WorkerEntityRepo.class);
+        WorkerMetricEntityRepo metricEntityRepo = Mockito.mock(WorkerMetricEntityRepo.class);
+        WorkerExecutorEntityRepo executorEntityRepo = Mockito.mock(WorkerExecutorEntityRepo.class);
+        tagEntityRepo = Mockito.mock(WorkerTagEntityRepo.class);
+        Mockito.when(workerEntityRepo.findByDeleted(false)).thenReturn(workers);
+        Mockito.when(metricEntityRepo.findAll()).thenReturn(metrics);
+
+        workerRepo = new WorkerRepo();
+        workerRepo.setWorkerEntityRepo(workerEntityRepo);
+        workerRepo.setMetricEntityRepo(metricEntityRepo);
+        workerRepo.setExecutorEntityRepo(executorEntityRepo);
+        workerRepo.setTagEntityRepo(tagEntityRepo);
+        workerRepo.setConverter(new WorkerEntityConverter());
+    }
+
+    @Test
+    public void testReconcile() {
+        LocalDateTime now = TimeUtils.currentLocalDateTime();
+        addWorker("w1", now);
+        addWorker("w2", now.minusSeconds(10));
+
+        workerRepo.reconcile(true);
+        List<Worker> available = workerRepo.listAvailableWorkers();
+        Assertions.assertEquals(1, available.size());
+        Assertions.assertEquals("w1", available.get(0).getId());
+        Mockito.verify(workerEntityRepo).updateStatus("w2", WorkerStatus.RUNNING.status, WorkerStatus.TERMINATED.status);
+
+        // 读取不查询 DB
+        Assertions.assertSame(available.get(0), workerRepo.get("w1"));
+        Mockito.verify(workerEntityRepo, Mockito.never()).findByWorkerIdAndDeleted(Mockito.anyString(), Mockito.anyBoolean());
+
+        // 未变化的 worker 不重新加载 tags
+        workerRepo.reconcile(false);
+        Mockito.verify(tagEntityRepo, Mockito.times(1)).findByWorkerIdIn(Mockito.anyCollection());
+
+        // 心跳过期的 worker 作为下线返回
+        metrics.get(0).setLastHeartbeatAt(now.minusSeconds(10));
+        Assertions.assertTrue(workerRepo.reconcile(false).contains("w1"));
+    }
+
+    @Test
+    public void testSaveMetric() {
+        LocalDateTime now = TimeUtils.currentLocalDateTime();
+        addWorker("w1", now);
+        workerRepo.reconcile(true);
+        Worker cached = workerRepo.get("w1");
+        WorkerMetric metric = cached.getMetric();
+
+        // 已发布的 worker 不被修改，读取到新实例
+        WorkerMetric updated = new WorkerMetric(Collections.emptyList(), new WorkerAvailableResource(2F, 4F, 10), now.plusSeconds(1));
+        workerRepo.saveMetric(cached.withMetric(updated));
+        Assertions.assertSame(metric, cached.getMetric());
+        Assertions.assertNotSame(cached, workerRepo.get("w1"));
+        Assertions.assertSame(updated, workerRepo.get("w1").getMetric());
+    }
+
+    private void addWorker(String workerId, LocalDateTime heartbeatAt) {
+        WorkerEntity worker = new WorkerEntity();
+        worker.setWorkerId(workerId);
+        worker.setName(workerId);
+        worker.setProtocol("http");
+        worker.setHost("127.0.0.1");
+        worker.setPort(8080);
+        worker.setStatus(WorkerStatus.RUNNING.status);
+        worker.setEnabled(true);
+        workers.add(worker);
+
+        WorkerMetricEntity metric = new WorkerMetricEntity();
+        metric.setWorkerId(workerId);
+        metric.setExecutingJobs(Collections.emptyList().toString());
+        metric.setAvailableCpu(4F);
+        metric.setAvailableRam(8F);
+        metric.setAvailableQueueLimit(100);
+        metric.setLastHeartbeatAt(heartbeatAt);
+        metrics.add(metric);
+    }
+
+}
@@ -29,6 +29,7 @@ import org.limbo.flowjob.api.remote.param.TaskSubmitParam;
 import org.limbo.flowjob.broker.application.component.SlotManager;
 import org.limbo.flowjob.broker.application.controller.WorkerRpcController;
 import org.limbo.flowjob.broker.application.service.PlanService;
+import org.limbo.flowjob.broker.core.cluster.BrokerConfig;
 import org.limbo.flowjob.broker.core.dispatch.TaskDispatcher;
 import org.limbo.flowjob.broker.core.domain.job.WorkflowJobInfo;
 import org.limbo.flowjob.broker.core.domain.plan.Plan;
@@ -66,6 +67,7 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author ~OttO~
@@ -138,24 +140,25 @@ public class ScheduleTest {
 
         // mock slot
         List<Integer> slots = new ArrayList<>();
-        for (int i = 0; i < SlotManager.SLOT_SIZE; i++) {
+        for (int i = 0; i < BrokerConfig.DEFAULT_SLOT_SIZE; i++) {
             slots.add(i);
         }
         Mockito.when(slotManager.slots()).thenReturn(slots);
+        Mockito.when(slotManager.ownsPlan(Mockito.anyString())).thenReturn(true);
 
         // mock task dispatcher
-        Mockito.doAnswer(new Answer<Boolean>() {
+        Mockito.doAnswer(new Answer<CompletableFuture<Boolean>>() {
             @Override
-            public Boolean answer(InvocationOnMock invocationOnMock) {
+            public CompletableFuture<Boolean> answer(InvocationOnMock invocationOnMock) {
                 Object[] arguments = invocationOnMock.getArguments();
                 Task task = (Task) arguments[0];
                 task.setWorkerId("123");
 
                 TaskSubmitParam taskSubmitParam = WorkerConverter.toTaskSubmitParam(task);
                 workerService.receive(taskSubmitParam);
-                return true;
+                return CompletableFuture.completedFuture(true);
             }
-        }).when(taskDispatcher).dispatch(Mockito.any(Task.class));
+        }).when(taskDispatcher).dispatchAsync(Mockito.any(Task.class));
 
         // mock scheduler
         Mockito.doAnswer(new Answer<Void>() {
@@ -18,11 +18,16 @@
 
 package org.limbo.flowjob.test.util;
 
+import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.time.DateFormatUtils;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.DeferredMetaTask;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.FixDelayMetaTask;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.FixRateMetaTask;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTask;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskLoader;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskScheduler;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskType;
 import org.limbo.flowjob.common.utils.time.TimeUtils;
@@ -30,6 +35,13 @@ import org.limbo.flowjob.common.utils.time.TimeUtils;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Devil
@@ -113,4 +125,137 @@ class MetaTaskTest {
 
         Thread.sleep(30000);
     }
+
+    @Test
+    void testFixRateNoOverlap() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        MetaTaskScheduler metaTaskScheduler = new MetaTaskScheduler(Duration.ofMillis(10), 512, true, Duration.ZERO,
+                Collections.singletonMap(MetaTaskType.PLAN, pool));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger times = new AtomicInteger();
+        metaTaskScheduler.schedule(new FixRateMetaTask(Duration.ofMillis(50), metaTaskScheduler) {
+
+            @Override
+            protected void executeTask() {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                times.incrementAndGet();
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+            }
+
+            @Override
+            public MetaTaskType getType() {
+                return MetaTaskType.PLAN;
+            }
+
+            @Override
+            public String getMetaId() {
+                return "no-overlap";
+            }
+        });
+
+        // 执行时间超过间隔，多线程执行器下也不会重叠执行，结束后立即触发下一次
+        Thread.sleep(1100);
+        metaTaskScheduler.shutdown();
+        Assertions.assertEquals(1, maxRunning.get());
+        Assertions.assertTrue(times.get() >= 4, "times " + times.get());
+    }
+
+    @Test
+    void testPrecise() throws InterruptedException {
+        MetaTaskScheduler metaTaskScheduler = new MetaTaskScheduler(Duration.ofMillis(100), 512, true, Duration.ZERO, Collections.emptyMap());
+        LocalDateTime triggerAt = TimeUtils.currentLocalDateTime().plus(Duration.ofMillis(350));
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicLong late = new AtomicLong();
+        metaTaskScheduler.schedule(new MetaTask() {
+
+            @Override
+            public void execute() {
+                late.set(Duration.between(triggerAt, TimeUtils.currentLocalDateTime()).toMillis());
+                latch.countDown();
+            }
+
+            @Override
+            public LocalDateTime scheduleAt() {
+                return triggerAt;
+            }
+
+            @Override
+            public MetaTaskType getType() {
+                return MetaTaskType.TASK;
+            }
+
+            @Override
+            public String getMetaId() {
+                return "precise";
+            }
+        });
+
+        Assertions.assertTrue(latch.await(2, TimeUnit.SECONDS));
+        log.info("precise trigger late {}ms", late.get());
+        Assertions.assertTrue(late.get() < 50);
+        metaTaskScheduler.shutdown();
+    }
+
+    @Test
+    void testDeferred() throws InterruptedException {
+        MetaTaskScheduler metaTaskScheduler = new MetaTaskScheduler(Duration.ofMillis(100), 512, false, Duration.ofSeconds(1), Collections.emptyMap());
+        LocalDateTime triggerAt = TimeUtils.currentLocalDateTime().plusSeconds(3);
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger loaded = new AtomicInteger();
+        metaTaskScheduler.registerLoader(new MetaTaskLoader() {
+            @Override
+            public MetaTaskType getType() {
+                return MetaTaskType.PLAN;
+            }
+
+            @Override
+            public MetaTask load(DeferredMetaTask task) {
+                loaded.incrementAndGet();
+                return new SimpleMetaTask(task.getMetaId(), task.scheduleAt(), latch::countDown);
+            }
+        });
+        metaTaskScheduler.schedule(new SimpleMetaTask("deferred", triggerAt, latch::countDown));
+
+        // 超出常驻窗口，只保存压缩记录
+        Assertions.assertTrue(metaTaskScheduler.getSchedulingByType(MetaTaskType.PLAN).get(0) instanceof DeferredMetaTask);
+        Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, loaded.get());
+        metaTaskScheduler.shutdown();
+    }
+
+    @AllArgsConstructor
+    static class SimpleMetaTask implements MetaTask {
+
+        private final String metaId;
+
+        private final LocalDateTime triggerAt;
+
+        private final Runnable runnable;
+
+        @Override
+        public void execute() {
+            runnable.run();
+        }
+
+        @Override
+        public LocalDateTime scheduleAt() {
+            return triggerAt;
+        }
+
+        @Override
+        public MetaTaskType getType() {
+            return MetaTaskType.PLAN;
+        }
+
+        @Override
+        public String getMetaId() {
+            return metaId;
+        }
+    }
 }
@@ -17,8 +17,10 @@
 package org.limbo.flowjob.worker.core.domain;
 
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.limbo.flowjob.common.constants.DispatchMode;
 import org.limbo.flowjob.common.utils.Verifies;
 import org.limbo.flowjob.worker.core.executor.ExecuteContext;
 import org.limbo.flowjob.worker.core.executor.NamedThreadFactory;
@@ -33,8 +35,10 @@ import org.limbo.flowjob.worker.core.utils.collections.MutableMultiValueMap;
 
 import java.net.URL;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -106,6 +110,24 @@ public class BaseWorker implements Worker {
      */
     private WorkerHeartbeat pacemaker;
 
+    /**
+     * 获取任务的方式，默认由 broker 推送
+     */
+    @Getter
+    @Setter
+    private DispatchMode dispatchMode = DispatchMode.PUSH;
+
+    /**
+     * 拉取模式下，单次拉取没有任务时最长等待时间
+     */
+    @Setter
+    private Duration pullTimeout = WorkerTaskPuller.DEFAULT_TIMEOUT;
+
+    /**
+     * 拉取模式下的任务拉取器
+     */
+    private WorkerTaskPuller puller;
+
     /**
      * 创建一个 Worker 实例
      * @param name worker 实例 名称，如未指定则会随机生成一个
@@ -249,6 +271,14 @@ public class BaseWorker implements Worker {
 
                 // 更新为运行中
                 status.compareAndSet(WorkerStatus.INITIALIZING, WorkerStatus.RUNNING);
+
+                // 拉取模式下，开始从 broker 拉取任务
+                if (dispatchMode == DispatchMode.PULL) {
+                    if (puller == null) {
+                        puller = new WorkerTaskPuller(worker, brokerRpc, pullTimeout);
+                    }
+                    puller.start();
+                }
                 log.info("worker start!");
             }
         };
@@ -310,7 +340,50 @@ public class BaseWorker implements Worker {
 
         // TODO ??? 检测资源余量是否充足：cpu/ram/queue
 
+        admit(task, executor);
+    }
+
+
+    /**
+     * 批量接收 Broker 发送来的任务，队列余量只计算一次
+     * @param tasks 任务数据
+     * @return 接收成功的任务 ID
+     */
+    @Override
+    public synchronized List<String> receiveTasks(List<Task> tasks) {
+        assertWorkerRunning();
+
+        int remaining = this.resource.availableQueueSize();
+        List<String> accepted = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            TaskExecutor executor = executors.get(task.getExecutorName());
+            if (executor == null) {
+                log.warn("Reject task [{}], unsupported executor: {}", task.getTaskId(), task.getExecutorName());
+                continue;
+            }
+            if (remaining <= 0) {
+                log.warn("Reject task [{}], worker's queue is full", task.getTaskId());
+                continue;
+            }
+
+            try {
+                admit(task, executor);
+                accepted.add(task.getTaskId());
+                remaining--;
+            } catch (Exception e) {
+                log.error("Reject task [{}]", task.getTaskId(), e);
+            }
+        }
+        return accepted;
+    }
+
+
+    /**
+     * 存储任务并提交执行
+     */
+    private void admit(Task task, TaskExecutor executor) {
         // 存储任务，并判断是否重复接收任务
+        TaskRepository taskRepository = this.resource.taskRepository();
         ExecuteContext context = new ExecuteContext(taskRepository, executor, brokerRpc, task);
         if (!taskRepository.save(context)) {
             log.warn("Receive task [{}], but already in repository", task.getTaskId());
@@ -322,6 +395,7 @@ public class BaseWorker implements Worker {
             Future<?> future = this.threadPool.submit(context);
             context.setScheduleFuture(future);
         } catch (RejectedExecutionException e) {
+            taskRepository.delete(task.getTaskId());
             throw new IllegalStateException("Schedule task in worker failed, maybe work thread exhausted");
         }
     }
@@ -342,6 +416,9 @@ public class BaseWorker implements Worker {
      */
     @Override
     public void stop() {
+        if (puller != null) {
+            puller.stop();
+        }
         // TODO ???
     }
 
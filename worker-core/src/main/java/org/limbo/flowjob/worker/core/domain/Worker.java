@@ -16,12 +16,14 @@
 
 package org.limbo.flowjob.worker.core.domain;
 
+import org.limbo.flowjob.common.constants.DispatchMode;
 import org.limbo.flowjob.worker.core.executor.TaskExecutor;
 import org.limbo.flowjob.worker.core.utils.collections.ImmutableMultiValueMap;
 import org.limbo.flowjob.worker.core.utils.collections.MultiValueMap;
 
 import java.net.URL;
 import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -48,6 +50,11 @@ public interface Worker {
      */
     URL getRpcBaseURL();
 
+    /**
+     * 获取 Worker 获取任务的方式
+     */
+    DispatchMode getDispatchMode();
+
     /**
      * 获取此 Worker 标记的标签，返回的标签不可修改。
      */
@@ -89,6 +96,13 @@ public interface Worker {
      */
     void receiveTask(Task task);
 
+    /**
+     * 批量接收 Broker 发送来的任务，队列或执行器不满足的任务会被拒绝
+     * @param tasks 任务数据
+     * @return 接收成功的任务 ID
+     */
+    List<String> receiveTasks(List<Task> tasks);
+
     /**
      * 停止当前 Worker
      */
@@ -0,0 +1,246 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.worker.core.domain;
+
+import lombok.extern.slf4j.Slf4j;
+import org.limbo.flowjob.worker.core.executor.ExecuteContext;
+import org.limbo.flowjob.worker.core.rpc.BrokerNode;
+import org.limbo.flowjob.worker.core.rpc.BrokerRpc;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 拉取模式下从 broker 拉取任务。任务在各 broker 内存中排队，所以每个 broker 一个拉取线程，
+ * 每次按队列余量拉取，队列满时暂停拉取，由 worker 自身控制背压。
+ *
+ * @author Brozen
+ * @since 2024-06-17
+ */
+@Slf4j
+public class WorkerTaskPuller {
+
+    /**
+     * 默认单次拉取最长等待时间
+     */
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(15);
+
+    /**
+     * 检查 broker 节点变化的周期
+     */
+    private static final long RECONCILE_PERIOD_MILLIS = 1000;
+
+    /**
+     * 队列已满时，等待任务执行完成的时间
+     */
+    private static final long FULL_WAIT_MILLIS = 50;
+
+    /**
+     * 确认接收任务的最多尝试次数
+     */
+    private static final int ACK_ATTEMPTS = 3;
+
+    /**
+     * 拉取出错后重试间隔
+     */
+    private static final long ERROR_BACKOFF_MILLIS = 1000;
+
+    private final Worker worker;
+
+    private final BrokerRpc brokerRpc;
+
+    private final Duration timeout;
+
+    /**
+     * broker 地址 -> 拉取线程
+     */
+    private final Map<String, Thread> pullers = new ConcurrentHashMap<>();
+
+    /**
+     * 已分配给拉取中请求、尚未交给 worker 的队列余量
+     */
+    private int reserved = 0;
+
+    private Timer reconciler;
+
+    private volatile boolean running = false;
+
+    public WorkerTaskPuller(Worker worker, BrokerRpc brokerRpc, Duration timeout) {
+        this.worker = worker;
+        this.brokerRpc = brokerRpc;
+        this.timeout = timeout;
+    }
+
+    /**
+     * 开始拉取
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+
+        reconciler = new Timer("WorkerTaskPuller-" + worker.getName(), true);
+        reconciler.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    reconcile();
+                } catch (Exception e) {
+                    log.error("[WorkerTaskPuller] reconcile error", e);
+                }
+            }
+        }, 0, RECONCILE_PERIOD_MILLIS);
+    }
+
+    /**
+     * 停止拉取，已在挂起中的请求返回后线程退出
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+
+        reconciler.cancel();
+        reconciler = null;
+        pullers.values().forEach(Thread::interrupt);
+    }
+
+    /**
+     * 为新增的 broker 启动拉取线程，下线的 broker 对应线程在下次循环时退出
+     */
+    private void reconcile() {
+        for (BrokerNode broker : brokerRpc.listBrokers()) {
+            String key = broker.getUrl().toString();
+            pullers.computeIfAbsent(key, k -> {
+                Thread thread = new Thread(() -> pullLoop(broker, key), "WorkerTaskPuller-" + key);
+                thread.setDaemon(true);
+                thread.start();
+                return thread;
+            });
+        }
+    }
+
+    private void pullLoop(BrokerNode broker, String key) {
+        try {
+            while (running && alive(key)) {
+                int limit = reserve();
+                if (limit <= 0) {
+                    TimeUnit.MILLISECONDS.sleep(FULL_WAIT_MILLIS);
+                    continue;
+                }
+
+                try {
+                    List<Task> tasks = brokerRpc.pullTasks(broker, limit, timeout);
+                    if (!tasks.isEmpty()) {
+                        receive(broker, tasks);
+                    }
+                } catch (Exception e) {
+                    log.warn("[WorkerTaskPuller] pull tasks from {} failed", key, e);
+                    TimeUnit.MILLISECONDS.sleep(ERROR_BACKOFF_MILLIS);
+                } finally {
+                    release(limit);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pullers.remove(key);
+        }
+    }
+
+    /**
+     * 先向 broker 确认接收，只把确认成功的任务交给 worker 执行。确认失败的任务直接丢弃，由 broker 超时后重新下发，不会重复执行；
+     * 确认后被 worker 拒绝的任务反馈失败，避免在 broker 一直处于执行中
+     */
+    private void receive(BrokerNode broker, List<Task> tasks) {
+        Set<String> acked = new HashSet<>(ack(broker, tasks.stream().map(Task::getTaskId).collect(Collectors.toList())));
+        if (acked.size() < tasks.size()) {
+            log.warn("[WorkerTaskPuller] tasks dropped without ack: {}", tasks.stream()
+                    .map(Task::getTaskId)
+                    .filter(id -> !acked.contains(id))
+                    .collect(Collectors.toList()));
+        }
+        if (acked.isEmpty()) {
+            return;
+        }
+
+        List<Task> ackedTasks = tasks.stream().filter(task -> acked.contains(task.getTaskId())).collect(Collectors.toList());
+        Set<String> accepted = new HashSet<>(worker.receiveTasks(ackedTasks));
+        for (Task task : ackedTasks) {
+            if (accepted.contains(task.getTaskId())) {
+                continue;
+            }
+            try {
+                brokerRpc.feedbackTaskFailed(new ExecuteContext(null, null, brokerRpc, task), new IllegalStateException("Task rejected by worker after ack"));
+            } catch (Exception e) {
+                log.error("[WorkerTaskPuller] feedback rejected task {} failed", task.getTaskId(), e);
+            }
+        }
+    }
+
+    /**
+     * 确认接收任务，确认可重复，失败时重试，仍失败则视为全部未确认
+     */
+    private List<String> ack(BrokerNode broker, List<String> taskIds) {
+        for (int i = 1; ; i++) {
+            try {
+                return brokerRpc.ackTasks(broker, taskIds);
+            } catch (Exception e) {
+                if (i >= ACK_ATTEMPTS) {
+                    log.warn("[WorkerTaskPuller] ack tasks {} to {} failed", taskIds, broker.getUrl(), e);
+                    return Collections.emptyList();
+                }
+            }
+        }
+    }
+
+    private boolean alive(String key) {
+        return brokerRpc.listBrokers().stream().anyMatch(b -> key.equals(b.getUrl().toString()));
+    }
+
+    /**
+     * 为一次拉取分配队列余量，多个 broker 的拉取线程平分余量，避免拉取总数超过队列容量
+     */
+    private synchronized int reserve() {
+        int free = worker.getResource().availableQueueSize() - reserved;
+        if (free <= 0) {
+            return 0;
+        }
+        int limit = (free + pullers.size() - 1) / Math.max(pullers.size(), 1);
+        reserved += limit;
+        return limit;
+    }
+
+    private synchronized void release(int limit) {
+        reserved -= limit;
+    }
+
+}
@@ -0,0 +1,277 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.worker.core.rpc;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+import org.apache.commons.collections4.CollectionUtils;
+import org.limbo.flowjob.api.ResponseDTO;
+import org.limbo.flowjob.api.remote.dto.BrokerTopologyDTO;
+import org.limbo.flowjob.api.remote.dto.WorkerRegisterDTO;
+import org.limbo.flowjob.api.remote.param.TaskFeedbackParam;
+import org.limbo.flowjob.api.remote.param.TaskAckParam;
+import org.limbo.flowjob.api.remote.param.TaskPullParam;
+import org.limbo.flowjob.api.remote.param.TaskSubmitParam;
+import org.limbo.flowjob.api.remote.param.WorkerHeartbeatParam;
+import org.limbo.flowjob.api.remote.param.WorkerRegisterParam;
+import org.limbo.flowjob.common.constants.MsgConstants;
+import org.limbo.flowjob.common.constants.Protocol;
+import org.limbo.flowjob.common.lb.LBServerRepository;
+import org.limbo.flowjob.worker.core.domain.Task;
+import org.limbo.flowjob.worker.core.domain.Worker;
+import org.limbo.flowjob.worker.core.executor.ExecuteContext;
+import org.limbo.flowjob.worker.core.rpc.exceptions.BrokerRpcException;
+import org.limbo.flowjob.worker.core.rpc.exceptions.RegisterFailException;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Broker 通信的公共流程：响应校验、broker 拓扑维护，具体的传输方式由子类实现
+ *
+ * @author Brozen
+ * @since 2024-06-14
+ */
+@Slf4j
+public abstract class AbstractBrokerRpc implements BrokerRpc {
+
+    /**
+     * Broker 负载均衡
+     */
+    protected final LBServerRepository<BrokerNode> repository;
+
+    private static final Protocol DEFAULT_PROTOCOL = Protocol.HTTP;
+
+    protected volatile String workerId = "";
+
+    protected AbstractBrokerRpc(LBServerRepository<BrokerNode> repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @param worker 需注册的 Worker
+     * @return
+     * @throws RegisterFailException
+     */
+    @Override
+    public void register(Worker worker) throws RegisterFailException {
+        WorkerRegisterDTO result = null;
+        try {
+            result = registerWith(RpcParamFactory.registerParam(worker));
+        } catch (RegisterFailException e) {
+            log.error("Register to broker failed，try next node", e);
+        }
+
+        // 注册成功，更新 broker 节点拓扑
+        if (result != null) {
+            workerId = result.getWorkerId();
+            updateBrokerTopology(result.getBrokerTopology());
+        } else {
+            String msg = "Register failed after tried all broker, please check your configuration";
+            throw new RegisterFailException(msg);
+        }
+    }
+
+
+    /**
+     * 向 broker 节点发起注册请求
+     */
+    private WorkerRegisterDTO registerWith(WorkerRegisterParam param) throws RegisterFailException {
+        ResponseDTO<WorkerRegisterDTO> response = doRegister(param);
+
+        if (response == null || !response.success()) {
+            String msg = response == null ? MsgConstants.UNKNOWN : (response.getCode() + ":" + response.getMessage());
+            throw new RegisterFailException("Worker register failed: " + msg);
+        }
+
+        return response.getData();
+    }
+
+    /**
+     * 更新 broker 拓扑结构
+     */
+    private synchronized void updateBrokerTopology(BrokerTopologyDTO topo) {
+        if (topo == null || CollectionUtils.isEmpty(topo.getBrokers())) {
+            throw new IllegalStateException("Broker topology error: " + topo);
+        }
+
+        // 移除接口返回中不存在的，这批节点已经下线
+        Set<HttpUrl> realtime = topo.getBrokers().stream()
+                .map(b -> new HttpUrl.Builder().scheme(DEFAULT_PROTOCOL.protocol).host(b.getHost()).port(b.getPort()).build())
+                .collect(Collectors.toSet());
+        List<BrokerNode> brokerNodes = repository.listAliveServers().stream().filter(b -> realtime.contains(HttpUrl.get(b.getUrl()))).collect(Collectors.toList());
+
+        // 新增添加的
+        Set<HttpUrl> saved = brokerNodes.stream()
+                .map(b -> HttpUrl.get(b.getUrl()))
+                .collect(Collectors.toSet());
+        for (HttpUrl url : realtime) {
+            if (saved.contains(url)) {
+                continue;
+            }
+
+            brokerNodes.add(new BrokerNode(url.url()));
+        }
+
+        repository.updateServers(brokerNodes);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @param worker 发送心跳的 Worker
+     */
+    @Override
+    public void heartbeat(Worker worker) {
+        ResponseDTO<WorkerRegisterDTO> response = doHeartbeat(workerId, RpcParamFactory.heartbeatParam(worker));
+
+        if (response == null || !response.success()) {
+            String msg = response == null ? MsgConstants.UNKNOWN : (response.getCode() + ":" + response.getMessage());
+            throw new RegisterFailException("Worker heartbeat failed: " + msg);
+        }
+
+        // 更新 broker 节点拓扑
+        if (response.getData() != null) {
+            WorkerRegisterDTO data = response.getData();
+            updateBrokerTopology(data.getBrokerTopology());
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @param context 任务执行上下文
+     */
+    @Override
+    public void feedbackTaskSucceed(ExecuteContext context) {
+        Task task = context.getTask();
+        doFeedbackTask(task.getTaskId(), RpcParamFactory.taskFeedbackParam(task.getContext(), task.getJobAttributes(), task.getResult(), null));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @param context 任务执行上下文
+     * @param ex      导致任务失败的异常信息
+     */
+    @Override
+    public void feedbackTaskFailed(ExecuteContext context, @Nullable Throwable ex) {
+        Task task = context.getTask();
+        doFeedbackTask(context.getTask().getTaskId(), RpcParamFactory.taskFeedbackParam(task.getContext(), task.getJobAttributes(), task.getResult(), ex));
+    }
+
+
+    /**
+     * 反馈任务执行结果
+     */
+    private void doFeedbackTask(String taskId, TaskFeedbackParam feedbackParam) {
+        ResponseDTO<Void> response = doFeedback(taskId, feedbackParam);
+
+        if (response == null || !response.success()) {
+            String msg = response == null ? MsgConstants.UNKNOWN : (response.getCode() + ":" + response.getMessage());
+            throw new RegisterFailException("Worker feedback Task failed: " + msg);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<BrokerNode> listBrokers() {
+        return repository.listAliveServers();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @param broker 拉取任务的 Broker 节点
+     * @param limit 最多拉取的任务数
+     * @param timeout 没有任务时最长等待时间
+     * @return
+     */
+    @Override
+    public List<Task> pullTasks(BrokerNode broker, int limit, Duration timeout) {
+        ResponseDTO<List<TaskSubmitParam>> response = doPullTasks(broker, workerId, RpcParamFactory.taskPullParam(limit, timeout));
+
+        if (response == null || !response.success()) {
+            String msg = response == null ? MsgConstants.UNKNOWN : (response.getCode() + ":" + response.getMessage());
+            throw new BrokerRpcException("Worker pull tasks failed: " + msg);
+        }
+
+        List<TaskSubmitParam> params = response.getData();
+        if (CollectionUtils.isEmpty(params)) {
+            return Collections.emptyList();
+        }
+        return params.stream().map(RpcParamFactory::task).collect(Collectors.toList());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @param broker 拉取任务的 Broker 节点
+     * @param taskIds 拉取到的任务
+     * @return
+     */
+    @Override
+    public List<String> ackTasks(BrokerNode broker, List<String> taskIds) {
+        ResponseDTO<List<String>> response = doAckTasks(broker, workerId, RpcParamFactory.taskAckParam(taskIds));
+
+        if (response == null || !response.success()) {
+            String msg = response == null ? MsgConstants.UNKNOWN : (response.getCode() + ":" + response.getMessage());
+            throw new BrokerRpcException("Worker ack tasks failed: " + msg);
+        }
+        return response.getData() == null ? Collections.emptyList() : response.getData();
+    }
+
+    /**
+     * 发送注册请求
+     */
+    protected abstract ResponseDTO<WorkerRegisterDTO> doRegister(WorkerRegisterParam param);
+
+    /**
+     * 发送心跳请求
+     */
+    protected abstract ResponseDTO<WorkerRegisterDTO> doHeartbeat(String workerId, WorkerHeartbeatParam param);
+
+    /**
+     * 发送任务反馈请求
+     */
+    protected abstract ResponseDTO<Void> doFeedback(String taskId, TaskFeedbackParam param);
+
+    /**
+     * 向指定 broker 发送拉取任务请求，请求超时需大于拉取参数中的等待时间
+     */
+    protected abstract ResponseDTO<List<TaskSubmitParam>> doPullTasks(BrokerNode broker, String workerId, TaskPullParam param);
+
+    /**
+     * 向拉取任务的 broker 发送确认接收请求
+     */
+    protected abstract ResponseDTO<List<String>> doAckTasks(BrokerNode broker, String workerId, TaskAckParam param);
+
+}
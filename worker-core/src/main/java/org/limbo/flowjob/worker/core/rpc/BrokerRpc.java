@@ -16,11 +16,14 @@
 
 package org.limbo.flowjob.worker.core.rpc;
 
+import org.limbo.flowjob.worker.core.domain.Task;
 import org.limbo.flowjob.worker.core.domain.Worker;
 import org.limbo.flowjob.worker.core.executor.ExecuteContext;
 import org.limbo.flowjob.worker.core.rpc.exceptions.RegisterFailException;
 
 import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.List;
 
 /**
  * @author Brozen
@@ -56,4 +59,30 @@ public interface BrokerRpc {
      */
     void feedbackTaskFailed(ExecuteContext context, @Nullable Throwable ex);
 
+
+
+    /**
+     * 当前可用的 Broker 节点
+     */
+    List<BrokerNode> listBrokers();
+
+
+    /**
+     * 从指定 Broker 长轮询拉取任务，没有任务时 Broker 挂起请求直到有任务或超时
+     * @param broker 拉取任务的 Broker 节点
+     * @param limit 最多拉取的任务数
+     * @param timeout 没有任务时最长等待时间
+     * @return 拉取到的任务，超时返回空列表
+     */
+    List<Task> pullTasks(BrokerNode broker, int limit, Duration timeout);
+
+
+    /**
+     * 执行前向拉取任务的 Broker 确认接收任务，未确认的任务超时后由 Broker 重新下发。可重复确认
+     * @param broker 拉取任务的 Broker 节点
+     * @param taskIds 拉取到的任务
+     * @return 确认成功的任务，只能执行这些任务
+     */
+    List<String> ackTasks(BrokerNode broker, List<String> taskIds);
+
 }
@@ -20,15 +20,21 @@ package org.limbo.flowjob.worker.core.rpc;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.limbo.flowjob.api.remote.param.TaskFeedbackParam;
+import org.limbo.flowjob.api.remote.param.TaskAckParam;
+import org.limbo.flowjob.api.remote.param.TaskPullParam;
+import org.limbo.flowjob.api.remote.param.TaskSubmitParam;
 import org.limbo.flowjob.api.remote.param.WorkerExecutorRegisterParam;
 import org.limbo.flowjob.api.remote.param.WorkerHeartbeatParam;
 import org.limbo.flowjob.api.remote.param.WorkerRegisterParam;
 import org.limbo.flowjob.api.remote.param.WorkerResourceParam;
 import org.limbo.flowjob.common.constants.ExecuteResult;
+import org.limbo.flowjob.common.constants.TaskType;
+import org.limbo.flowjob.worker.core.domain.Task;
 import org.limbo.flowjob.worker.core.domain.Worker;
 import org.limbo.flowjob.worker.core.domain.WorkerResources;
 
 import java.net.URL;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -84,6 +90,7 @@ public class RpcParamFactory {
         registerParam.setExecutors(executors);
         registerParam.setAvailableResource(resourceParam);
         registerParam.setTags(tags);
+        registerParam.setDispatchMode(worker.getDispatchMode());
 
         return registerParam;
     }
@@ -119,4 +126,55 @@ public class RpcParamFactory {
         }
         return feedbackParam;
     }
+
+    /**
+     * 封装拉取任务参数
+     */
+    public static TaskPullParam taskPullParam(int limit, Duration timeout) {
+        TaskPullParam pullParam = new TaskPullParam();
+        pullParam.setLimit(limit);
+        pullParam.setTimeout(timeout.toMillis());
+        return pullParam;
+    }
+
+    /**
+     * 封装确认接收任务参数
+     */
+    public static TaskAckParam taskAckParam(List<String> taskIds) {
+        TaskAckParam ackParam = new TaskAckParam();
+        ackParam.setTaskIds(taskIds);
+        return ackParam;
+    }
+
+    /**
+     * Task 提交参数转为 Task
+     */
+    public static Task task(TaskSubmitParam param) {
+        TaskType taskType = TaskType.parse(param.getType());
+        Task task = new Task();
+        task.setTaskId(param.getTaskId());
+        task.setPlanId(param.getPlanId());
+        task.setPlanInstanceId(param.getPlanId());
+        task.setJobId(param.getJobId());
+        task.setJobInstanceId(param.getJobInstanceId());
+        task.setType(taskType);
+        task.setExecutorName(param.getExecutorName());
+        task.setContext(param.getContext());
+        task.setJobAttributes(param.getAttributes());
+        switch (taskType) {
+            case MAP:
+                task.setMapAttributes(param.getMapAttributes());
+                break;
+            case REDUCE:
+                List<Map<String, Object>> attr = param.getReduceAttributes();
+                attr = attr.stream()
+                        .map(Collections::unmodifiableMap)
+                        .collect(Collectors.toList());
+                task.setReduceAttributes(attr);
+                break;
+            default:
+                break;
+        }
+        return task;
+    }
 }
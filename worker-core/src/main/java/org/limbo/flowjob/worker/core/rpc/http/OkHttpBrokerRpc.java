@@ -28,47 +28,36 @@ import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
-import org.apache.commons.collections4.CollectionUtils;
 import org.limbo.flowjob.api.ResponseDTO;
-import org.limbo.flowjob.api.remote.dto.BrokerTopologyDTO;
 import org.limbo.flowjob.api.remote.dto.WorkerRegisterDTO;
 import org.limbo.flowjob.api.remote.param.TaskFeedbackParam;
+import org.limbo.flowjob.api.remote.param.TaskAckParam;
+import org.limbo.flowjob.api.remote.param.TaskPullParam;
+import org.limbo.flowjob.api.remote.param.TaskSubmitParam;
+import org.limbo.flowjob.api.remote.param.WorkerHeartbeatParam;
 import org.limbo.flowjob.api.remote.param.WorkerRegisterParam;
-import org.limbo.flowjob.common.constants.MsgConstants;
-import org.limbo.flowjob.common.constants.Protocol;
 import org.limbo.flowjob.common.lb.LBServerRepository;
 import org.limbo.flowjob.common.lb.LBStrategy;
 import org.limbo.flowjob.common.utils.json.JacksonUtils;
-import org.limbo.flowjob.worker.core.domain.Task;
-import org.limbo.flowjob.worker.core.domain.Worker;
-import org.limbo.flowjob.worker.core.executor.ExecuteContext;
+import org.limbo.flowjob.worker.core.rpc.AbstractBrokerRpc;
 import org.limbo.flowjob.worker.core.rpc.BrokerNode;
-import org.limbo.flowjob.worker.core.rpc.BrokerRpc;
-import org.limbo.flowjob.worker.core.rpc.RpcParamFactory;
 import org.limbo.flowjob.worker.core.rpc.exceptions.BrokerRpcException;
-import org.limbo.flowjob.worker.core.rpc.exceptions.RegisterFailException;
 
-import javax.annotation.Nullable;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.List;
 import java.util.Objects;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Brozen
  * @since 2022-08-31
  */
 @Slf4j
-public class OkHttpBrokerRpc implements BrokerRpc {
+public class OkHttpBrokerRpc extends AbstractBrokerRpc {
 
     private final OkHttpClient client;
 
-    /**
-     * Broker 负载均衡
-     */
-    private final LBServerRepository<BrokerNode> repository;
-
     // application/json; charset=utf-8
     private static final String JSON_UTF_8 = com.google.common.net.MediaType.JSON_UTF_8.toString();
 
@@ -76,161 +65,84 @@ public class OkHttpBrokerRpc implements BrokerRpc {
 
     private static final String BASE_URL = "http://0.0.0.0:8080";
 
-    private static final Protocol DEFAULT_PROTOCOL = Protocol.HTTP;
-
-    private String workerId = "";
-
-    public OkHttpBrokerRpc(LBServerRepository<BrokerNode> repository, LBStrategy<BrokerNode> strategy) {
-        this.repository = repository;
-        this.client = new OkHttpClient.Builder().addInterceptor(new LoadBalanceInterceptor<>(repository, strategy)).build();
-    }
-
     /**
-     * {@inheritDoc}
-     *
-     * @param worker 需注册的 Worker
-     * @return
-     * @throws RegisterFailException
+     * 拉取请求在 broker 挂起的时间之外，额外等待响应的时间
      */
-    @Override
-    public void register(Worker worker) throws RegisterFailException {
-        WorkerRegisterDTO result = null;
-        try {
-            result = registerWith(RpcParamFactory.registerParam(worker));
-        } catch (RegisterFailException e) {
-            log.error("Register to broker failed，try next node", e);
-        }
-
-        // 注册成功，更新 broker 节点拓扑
-        if (result != null) {
-            workerId = result.getWorkerId();
-            updateBrokerTopology(result.getBrokerTopology());
-        } else {
-            String msg = "Register failed after tried all broker, please check your configuration";
-            throw new RegisterFailException(msg);
-        }
-    }
-
+    private static final Duration PULL_RESPONSE_TIMEOUT = Duration.ofSeconds(10);
 
     /**
-     * 向指定 broker 节点发起注册请求
+     * 拉取、确认任务时需指定 broker，不经过负载均衡，与 {@link #client} 共享连接池
      */
-    private WorkerRegisterDTO registerWith(WorkerRegisterParam param) throws RegisterFailException {
-        ResponseDTO<WorkerRegisterDTO> response = executePost(BASE_URL + "/api/v1/rpc/worker", param, new TypeReference<ResponseDTO<WorkerRegisterDTO>>() {
-        });
-
-        if (response == null || !response.success()) {
-            String msg = response == null ? MsgConstants.UNKNOWN : (response.getCode() + ":" + response.getMessage());
-            throw new RegisterFailException("Worker register failed: " + msg);
-        }
+    private final OkHttpClient pullClient;
 
-        return response.getData();
+    public OkHttpBrokerRpc(LBServerRepository<BrokerNode> repository, LBStrategy<BrokerNode> strategy) {
+        super(repository);
+        this.client = new OkHttpClient.Builder().addInterceptor(new LoadBalanceInterceptor<>(repository, strategy)).build();
+        OkHttpClient.Builder pullClientBuilder = client.newBuilder().readTimeout(Duration.ZERO);
+        pullClientBuilder.interceptors().clear();
+        this.pullClient = pullClientBuilder.build();
     }
 
-    /**
-     * 更新 broker 拓扑结构
-     */
-    private synchronized void updateBrokerTopology(BrokerTopologyDTO topo) {
-        if (topo == null || CollectionUtils.isEmpty(topo.getBrokers())) {
-            throw new IllegalStateException("Broker topology error: " + topo);
-        }
-
-        // 移除接口返回中不存在的，这批节点已经下线
-        Set<HttpUrl> realtime = topo.getBrokers().stream()
-                .map(b -> new HttpUrl.Builder().scheme(DEFAULT_PROTOCOL.protocol).host(b.getHost()).port(b.getPort()).build())
-                .collect(Collectors.toSet());
-        List<BrokerNode> brokerNodes = repository.listAliveServers().stream().filter(b -> realtime.contains(HttpUrl.get(b.getUrl()))).collect(Collectors.toList());
-
-        // 新增添加的
-        Set<HttpUrl> saved = brokerNodes.stream()
-                .map(b -> HttpUrl.get(b.getUrl()))
-                .collect(Collectors.toSet());
-        for (HttpUrl url : realtime) {
-            if (saved.contains(url)) {
-                continue;
-            }
-
-            brokerNodes.add(new BrokerNode(url.url()));
-        }
-
-        repository.updateServers(brokerNodes);
+    @Override
+    protected ResponseDTO<WorkerRegisterDTO> doRegister(WorkerRegisterParam param) {
+        return executePost(BASE_URL + "/api/v1/rpc/worker", param, new TypeReference<ResponseDTO<WorkerRegisterDTO>>() {
+        });
     }
 
-    /**
-     * {@inheritDoc}
-     *
-     * @param worker 发送心跳的 Worker
-     */
     @Override
-    public void heartbeat(Worker worker) {
-        ResponseDTO<WorkerRegisterDTO> response = executePost(BASE_URL + "/api/v1/rpc/worker/" + workerId + "/heartbeat", RpcParamFactory.heartbeatParam(worker), new TypeReference<ResponseDTO<WorkerRegisterDTO>>() {
+    protected ResponseDTO<WorkerRegisterDTO> doHeartbeat(String workerId, WorkerHeartbeatParam param) {
+        return executePost(BASE_URL + "/api/v1/rpc/worker/" + workerId + "/heartbeat", param, new TypeReference<ResponseDTO<WorkerRegisterDTO>>() {
         });
-
-        if (response == null || !response.success()) {
-            String msg = response == null ? MsgConstants.UNKNOWN : (response.getCode() + ":" + response.getMessage());
-            throw new RegisterFailException("Worker heartbeat failed: " + msg);
-        }
-
-        // 更新 broker 节点拓扑
-        if (response.getData() != null) {
-            WorkerRegisterDTO data = response.getData();
-            updateBrokerTopology(data.getBrokerTopology());
-        }
     }
 
-
-    /**
-     * {@inheritDoc}
-     *
-     * @param context 任务执行上下文
-     */
     @Override
-    public void feedbackTaskSucceed(ExecuteContext context) {
-        Task task = context.getTask();
-        doFeedbackTask(task.getTaskId(), RpcParamFactory.taskFeedbackParam(task.getContext(), task.getJobAttributes(), task.getResult(), null));
+    protected ResponseDTO<Void> doFeedback(String taskId, TaskFeedbackParam param) {
+        return executePost(BASE_URL + "/api/v1/rpc/worker/task/" + taskId + "/feedback", param, new TypeReference<ResponseDTO<Void>>() {
+        });
     }
 
-
-    /**
-     * {@inheritDoc}
-     *
-     * @param context 任务执行上下文
-     * @param ex      导致任务失败的异常信息
-     */
     @Override
-    public void feedbackTaskFailed(ExecuteContext context, @Nullable Throwable ex) {
-        Task task = context.getTask();
-        doFeedbackTask(context.getTask().getTaskId(), RpcParamFactory.taskFeedbackParam(task.getContext(), task.getJobAttributes(), task.getResult(), ex));
+    protected ResponseDTO<List<TaskSubmitParam>> doPullTasks(BrokerNode broker, String workerId, TaskPullParam param) {
+        String url = HttpUrl.get(broker.getUrl()).newBuilder()
+                .encodedPath("/api/v1/rpc/worker/" + workerId + "/task/pull")
+                .build().toString();
+        String json = JacksonUtils.toJSONString(param);
+        Call call = pullClient.newCall(postRequest(url, json));
+        call.timeout().timeout(param.getTimeout() + PULL_RESPONSE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        return execute(call, url, json, new TypeReference<ResponseDTO<List<TaskSubmitParam>>>() {
+        });
     }
 
-
-    /**
-     * 反馈任务执行结果
-     */
-    private void doFeedbackTask(String taskId, TaskFeedbackParam feedbackParam) {
-        ResponseDTO<Void> response = executePost(BASE_URL + "/api/v1/rpc/worker/task/" + taskId + "/feedback", feedbackParam, new TypeReference<ResponseDTO<Void>>() {
+    @Override
+    protected ResponseDTO<List<String>> doAckTasks(BrokerNode broker, String workerId, TaskAckParam param) {
+        String url = HttpUrl.get(broker.getUrl()).newBuilder()
+                .encodedPath("/api/v1/rpc/worker/" + workerId + "/task/ack")
+                .build().toString();
+        String json = JacksonUtils.toJSONString(param);
+        Call call = pullClient.newCall(postRequest(url, json));
+        call.timeout().timeout(PULL_RESPONSE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        return execute(call, url, json, new TypeReference<ResponseDTO<List<String>>>() {
         });
-
-        if (response == null || !response.success()) {
-            String msg = response == null ? MsgConstants.UNKNOWN : (response.getCode() + ":" + response.getMessage());
-            throw new RegisterFailException("Worker feedback Task failed: " + msg);
-        }
     }
 
     /**
      * 通过 OkHttp 执行请求，并获取响应
      */
     private <T> ResponseDTO<T> executePost(String url, Object param, TypeReference<ResponseDTO<T>> reference) {
-        Objects.requireNonNull(reference);
-
         String json = JacksonUtils.toJSONString(param);
-        RequestBody body = RequestBody.create(MEDIA_TYPE, json);
+        return execute(client.newCall(postRequest(url, json)), url, json, reference);
+    }
 
-        Request request = new Request.Builder()
+    private Request postRequest(String url, String json) {
+        RequestBody body = RequestBody.create(MEDIA_TYPE, json);
+        return new Request.Builder()
                 .url(url)
                 .header(HttpHeaders.CONTENT_TYPE, JSON_UTF_8)
                 .post(body).build();
-        Call call = client.newCall(request);
+    }
+
+    private <T> ResponseDTO<T> execute(Call call, String url, String json, TypeReference<ResponseDTO<T>> reference) {
+        Objects.requireNonNull(reference);
 
         if (log.isDebugEnabled()) {
             log.debug("call broker {}", logRequest(url, json));
@@ -0,0 +1,168 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.worker.core.rpc.tcp;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
+import org.limbo.flowjob.api.ResponseDTO;
+import org.limbo.flowjob.api.remote.constants.TcpRpcApi;
+import org.limbo.flowjob.api.remote.dto.WorkerRegisterDTO;
+import org.limbo.flowjob.api.remote.param.TaskFeedbackParam;
+import org.limbo.flowjob.api.remote.param.TaskAckParam;
+import org.limbo.flowjob.api.remote.param.TaskPullParam;
+import org.limbo.flowjob.api.remote.param.TaskSubmitParam;
+import org.limbo.flowjob.api.remote.param.WorkerHeartbeatParam;
+import org.limbo.flowjob.api.remote.param.WorkerRegisterParam;
+import org.limbo.flowjob.common.lb.LBServerRepository;
+import org.limbo.flowjob.common.lb.LBStrategy;
+import org.limbo.flowjob.common.lb.RPCInvocation;
+import org.limbo.flowjob.common.rpc.RpcCodec;
+import org.limbo.flowjob.common.rpc.TcpRpcClient;
+import org.limbo.flowjob.worker.core.rpc.AbstractBrokerRpc;
+import org.limbo.flowjob.worker.core.rpc.BrokerNode;
+import org.limbo.flowjob.worker.core.rpc.exceptions.BrokerRpcException;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * 通过 TCP 长连接与 broker 通信，broker 节点仍来自 HTTP 注册返回的拓扑，使用节点的 host 与统一配置的 TCP 端口建立连接
+ *
+ * @author Brozen
+ * @since 2024-06-14
+ */
+@Slf4j
+public class TcpBrokerRpc extends AbstractBrokerRpc {
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(3);
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    private final LBStrategy<BrokerNode> strategy;
+
+    /**
+     * broker 的 TCP 端口
+     */
+    private final int brokerPort;
+
+    /**
+     * broker host -> 长连接
+     */
+    private final Map<String, TcpRpcClient> clients = new ConcurrentHashMap<>();
+
+    public TcpBrokerRpc(LBServerRepository<BrokerNode> repository, LBStrategy<BrokerNode> strategy, int brokerPort) {
+        super(repository);
+        this.strategy = strategy;
+        this.brokerPort = brokerPort;
+    }
+
+    @Override
+    protected ResponseDTO<WorkerRegisterDTO> doRegister(WorkerRegisterParam param) {
+        return call(TcpRpcApi.BROKER_REGISTER, null, param, new TypeReference<ResponseDTO<WorkerRegisterDTO>>() {
+        });
+    }
+
+    @Override
+    protected ResponseDTO<WorkerRegisterDTO> doHeartbeat(String workerId, WorkerHeartbeatParam param) {
+        return call(TcpRpcApi.BROKER_HEARTBEAT, workerId, param, new TypeReference<ResponseDTO<WorkerRegisterDTO>>() {
+        });
+    }
+
+    @Override
+    protected ResponseDTO<Void> doFeedback(String taskId, TaskFeedbackParam param) {
+        return call(TcpRpcApi.BROKER_TASK_FEEDBACK, taskId, param, new TypeReference<ResponseDTO<Void>>() {
+        });
+    }
+
+    @Override
+    protected ResponseDTO<List<TaskSubmitParam>> doPullTasks(BrokerNode broker, String workerId, TaskPullParam param) {
+        Duration timeout = Duration.ofMillis(param.getTimeout()).plus(REQUEST_TIMEOUT);
+        try {
+            byte[] response = client(broker).call(TcpRpcApi.BROKER_TASK_PULL, workerId, RpcCodec.encode(param), timeout).get();
+            return RpcCodec.decode(response, new TypeReference<ResponseDTO<List<TaskSubmitParam>>>() {
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BrokerRpcException("Broker tcp call interrupted " + TcpRpcApi.BROKER_TASK_PULL, e);
+        } catch (ExecutionException e) {
+            throw new BrokerRpcException("Broker tcp call failed " + TcpRpcApi.BROKER_TASK_PULL, e.getCause());
+        }
+    }
+
+    @Override
+    protected ResponseDTO<List<String>> doAckTasks(BrokerNode broker, String workerId, TaskAckParam param) {
+        try {
+            byte[] response = client(broker).call(TcpRpcApi.BROKER_TASK_ACK, workerId, RpcCodec.encode(param)).get();
+            return RpcCodec.decode(response, new TypeReference<ResponseDTO<List<String>>>() {
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BrokerRpcException("Broker tcp call interrupted " + TcpRpcApi.BROKER_TASK_ACK, e);
+        } catch (ExecutionException e) {
+            throw new BrokerRpcException("Broker tcp call failed " + TcpRpcApi.BROKER_TASK_ACK, e.getCause());
+        }
+    }
+
+    private TcpRpcClient client(BrokerNode broker) {
+        return clients.computeIfAbsent(broker.getUrl().getHost(), h -> new TcpRpcClient(new InetSocketAddress(h, brokerPort), CONNECT_TIMEOUT, REQUEST_TIMEOUT));
+    }
+
+    /**
+     * 负载均衡选择 broker 发起请求，连接失败时换下一个节点
+     */
+    private <T> ResponseDTO<T> call(String method, String key, Object param, TypeReference<ResponseDTO<T>> type) {
+        List<BrokerNode> servers = repository.listAliveServers();
+        if (CollectionUtils.isEmpty(servers)) {
+            throw new IllegalStateException("No alive servers!");
+        }
+
+        byte[] payload = RpcCodec.encode(param);
+        Exception last = null;
+        while (!servers.isEmpty()) {
+            Optional<BrokerNode> optional = strategy.select(servers, new RPCInvocation(method, new HashMap<>()));
+            if (!optional.isPresent()) {
+                break;
+            }
+            BrokerNode select = optional.get();
+            String host = select.getUrl().getHost();
+            TcpRpcClient client = client(select);
+            try {
+                return RpcCodec.decode(client.call(method, key, payload).get(), type);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BrokerRpcException("Broker tcp call interrupted " + method, e);
+            } catch (ExecutionException e) {
+                last = e;
+                log.warn("broker {}:{} call {} fail, try next node", host, brokerPort, method, e.getCause());
+                servers = servers.stream().filter(s -> !s.getServerId().equals(select.getServerId())).collect(Collectors.toList());
+            }
+        }
+        throw new BrokerRpcException("Broker tcp call failed " + method, last);
+    }
+
+}
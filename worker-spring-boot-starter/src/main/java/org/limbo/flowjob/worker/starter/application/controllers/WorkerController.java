@@ -27,6 +27,8 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+
 /**
  * @author Devil
  * @since 2021/7/24
@@ -52,5 +54,13 @@ public class WorkerController extends BaseController {
         return ResponseDTO.<Boolean>builder().ok(workerService.receive(param)).build();
     }
 
+    /**
+     * 批量接收任务，返回被接受的任务ID，未返回的任务视为拒绝。
+     */
+    @PostMapping(HttpWorkerApi.API_SEND_TASKS)
+    public ResponseDTO<List<String>> receiveJobs(@RequestBody List<TaskSubmitParam> params) {
+        return ResponseDTO.<List<String>>builder().ok(workerService.receive(params)).build();
+    }
+
 
 }
@@ -17,15 +17,10 @@
 package org.limbo.flowjob.worker.starter.application.converter;
 
 import org.limbo.flowjob.api.remote.param.TaskSubmitParam;
-import org.limbo.flowjob.common.constants.TaskType;
 import org.limbo.flowjob.worker.core.domain.Task;
+import org.limbo.flowjob.worker.core.rpc.RpcParamFactory;
 import org.springframework.stereotype.Component;
 
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
-
 /**
  * @author Brozen
  * @since 2022-09-20
@@ -37,32 +32,7 @@ public class TaskConverter {
      * Task 提交参数转为 Task
      */
     public Task task(TaskSubmitParam param) {
-        TaskType taskType = TaskType.parse(param.getType());
-        Task task = new Task();
-        task.setTaskId(param.getTaskId());
-        task.setPlanId(param.getPlanId());
-        task.setPlanInstanceId(param.getPlanId());
-        task.setJobId(param.getJobId());
-        task.setJobInstanceId(param.getJobInstanceId());
-        task.setType(taskType);
-        task.setExecutorName(param.getExecutorName());
-        task.setContext(param.getContext());
-        task.setJobAttributes(param.getAttributes());
-        switch (taskType) {
-            case MAP:
-                task.setMapAttributes(param.getMapAttributes());
-                break;
-            case REDUCE:
-                List<Map<String, Object>> attr = param.getReduceAttributes();
-                attr = attr.stream()
-                        .map(Collections::unmodifiableMap)
-                        .collect(Collectors.toList());
-                task.setReduceAttributes(attr);
-                break;
-            default:
-                break;
-        }
-        return task;
+        return RpcParamFactory.task(param);
     }
 
 }
@@ -26,6 +26,9 @@ import org.limbo.flowjob.worker.starter.application.converter.TaskConverter;
 import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * @author Devil
@@ -58,4 +61,25 @@ public class WorkerService {
         }
     }
 
+    /**
+     * 批量接收任务，转换失败的任务直接拒绝
+     * @param params
+     * @return 被接受的任务ID
+     */
+    public List<String> receive(List<TaskSubmitParam> params) {
+        log.info("receive tasks size={}", params.size());
+        List<Task> tasks = new ArrayList<>(params.size());
+        for (TaskSubmitParam param : params) {
+            try {
+                tasks.add(taskConverter.task(param));
+            } catch (Exception e) {
+                log.error("Failed to convert task {}", param, e);
+            }
+        }
+        if (tasks.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return worker.receiveTasks(tasks);
+    }
+
 }
@@ -16,14 +16,21 @@
 
 package org.limbo.flowjob.worker.starter.configuration;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.limbo.flowjob.api.ResponseDTO;
+import org.limbo.flowjob.api.remote.constants.TcpRpcApi;
+import org.limbo.flowjob.api.remote.param.TaskSubmitParam;
 import org.limbo.flowjob.common.constants.Protocol;
 import org.limbo.flowjob.common.lb.LBServerRepository;
 import org.limbo.flowjob.common.lb.LBStrategy;
 import org.limbo.flowjob.common.lb.strategies.RoundRobinLBStrategy;
+import org.limbo.flowjob.common.rpc.RpcCodec;
+import org.limbo.flowjob.common.rpc.RpcURLs;
+import org.limbo.flowjob.common.rpc.TcpRpcServer;
 import org.limbo.flowjob.common.utils.Verifies;
 import org.limbo.flowjob.worker.core.domain.BaseWorker;
 import org.limbo.flowjob.worker.core.domain.CalculatingWorkerResource;
@@ -33,10 +40,13 @@ import org.limbo.flowjob.worker.core.rpc.BaseLBServerRepository;
 import org.limbo.flowjob.worker.core.rpc.BrokerNode;
 import org.limbo.flowjob.worker.core.rpc.BrokerRpc;
 import org.limbo.flowjob.worker.core.rpc.http.OkHttpBrokerRpc;
+import org.limbo.flowjob.worker.core.rpc.tcp.TcpBrokerRpc;
 import org.limbo.flowjob.worker.core.utils.NetUtils;
 import org.limbo.flowjob.worker.starter.SpringDelegatedWorker;
+import org.limbo.flowjob.worker.starter.application.services.WorkerService;
 import org.limbo.flowjob.worker.starter.processor.ExecutorMethodProcessor;
 import org.limbo.flowjob.worker.starter.properties.WorkerProperties;
+import org.limbo.flowjob.worker.starter.properties.WorkerScheme;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -46,6 +56,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.util.Assert;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Collections;
@@ -90,9 +101,7 @@ public class WorkerAutoConfiguration {
      */
     @Bean
     public Worker httpWorker(WorkerResources resources, BrokerRpc rpc) throws MalformedURLException {
-        // 优先使用 SpringMVC 或 SpringWebflux 设置的端口号
-        Integer port = httpServerPort != null ? httpServerPort : workerProps.getPort();
-        port = port == null ? DEFAULT_HTTP_SERVER_PORT : port;
+        Integer port = workerPort();
 
         // 优先使用指定的 host，如未指定则自动寻找本机 IP
         String host = workerProps.getHost();
@@ -101,8 +110,10 @@ public class WorkerAutoConfiguration {
         }
 
         Assert.isTrue(port > 0, "Worker port must be a positive integer in range 1 ~ 65534");
-        URL workerBaseUrl = new URL(workerProps.getScheme().name(), host, port, "");
+        URL workerBaseUrl = RpcURLs.of(workerProps.getScheme().name(), host, port);
         BaseWorker worker = new BaseWorker(workerProps.getName(), workerBaseUrl, resources, rpc);
+        worker.setDispatchMode(workerProps.getDispatchMode());
+        worker.setPullTimeout(workerProps.getPullTimeout());
 
         // 将 tag 添加到 Worker
         if (CollectionUtils.isNotEmpty(workerProps.getTags())) {
@@ -113,6 +124,41 @@ public class WorkerAutoConfiguration {
     }
 
 
+    /**
+     * worker 注册的通信端口
+     */
+    private Integer workerPort() {
+        // TCP 协议使用独立的端口
+        if (workerProps.getScheme() == WorkerScheme.tcp) {
+            return workerProps.getPort() == null ? Protocol.TCP.port : workerProps.getPort();
+        }
+
+        // 优先使用 SpringMVC 或 SpringWebflux 设置的端口号
+        Integer port = httpServerPort != null ? httpServerPort : workerProps.getPort();
+        return port == null ? DEFAULT_HTTP_SERVER_PORT : port;
+    }
+
+
+    /**
+     * TCP 协议下接收 broker 下发的任务，接收逻辑与 HTTP 接口一致
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "flowjob.worker", value = "scheme", havingValue = "tcp")
+    public TcpRpcServer workerTcpServer(WorkerService workerService) throws IOException {
+        // 接收任务只做入队，直接在连接的读线程中执行
+        TcpRpcServer server = new TcpRpcServer(workerPort(), Runnable::run)
+                .register(TcpRpcApi.WORKER_SEND_TASK, (key, payload) -> RpcCodec.encode(
+                        ResponseDTO.<Boolean>builder().ok(workerService.receive(RpcCodec.decode(payload, TaskSubmitParam.class))).build()
+                ))
+                .register(TcpRpcApi.WORKER_SEND_TASKS, (key, payload) -> RpcCodec.encode(
+                        ResponseDTO.<List<String>>builder().ok(workerService.receive(RpcCodec.decode(payload, new TypeReference<List<TaskSubmitParam>>() {
+                        }))).build()
+                ));
+        server.start();
+        return server;
+    }
+
+
     /**
      * 动态计算 Worker 资源
      */
@@ -138,6 +184,9 @@ public class WorkerAutoConfiguration {
             throw new IllegalArgumentException("Unsupported broker protocol [" + brokerProtocol + "]");
         }
 
+        if (workerProps.getBrokerTcpPort() != null) {
+            return new TcpBrokerRpc(brokerLoadBalancer, strategy, workerProps.getBrokerTcpPort());
+        }
         return httpBrokerRpc(brokerLoadBalancer, strategy);
     }
 
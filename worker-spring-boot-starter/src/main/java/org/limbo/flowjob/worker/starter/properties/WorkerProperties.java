@@ -17,6 +17,8 @@
 package org.limbo.flowjob.worker.starter.properties;
 
 import lombok.Data;
+import org.limbo.flowjob.common.constants.DispatchMode;
+import org.limbo.flowjob.worker.core.domain.WorkerTaskPuller;
 import org.limbo.flowjob.worker.starter.processor.event.WorkerReadyEvent;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
@@ -49,9 +51,15 @@ public class WorkerProperties {
 
     /**
      * worker 注册时，向 broker 提交的 RPC 通信协议类型。默认为 http。
+     * 为 tcp 时 worker 启动 TCP 服务接收任务，监听 port 配置的端口，未配置则使用 9870。
      */
     private WorkerScheme scheme = WorkerScheme.http;
 
+    /**
+     * broker 的 TCP 端口，配置后 worker 通过 TCP 长连接向 broker 注册、心跳、反馈任务，否则使用 HTTP。
+     */
+    private Integer brokerTcpPort = null;
+
     /**
      * worker 注册时，向 broker 提交的 RPC 通信 host，可以是域名或 IP 地址，如不填写则自动发现本机非 127.0.0.1 的地址。
      * 多网卡场景下，建议显式配置 host。
@@ -79,6 +87,17 @@ public class WorkerProperties {
      */
     private int taskQueueSize = 0;
 
+    /**
+     * worker 获取任务的方式，默认为 push，由 broker 推送任务，worker 队列已满时任务下发失败。
+     * 为 pull 时 worker 按队列余量向 broker 长轮询拉取任务，任务在 broker 排队等待。
+     */
+    private DispatchMode dispatchMode = DispatchMode.PUSH;
+
+    /**
+     * 拉取模式下，单次拉取没有任务时最长等待时间，默认 15 秒，broker 会限制最长挂起时间。
+     */
+    private Duration pullTimeout = WorkerTaskPuller.DEFAULT_TIMEOUT;
+
     /**
      * worker 节点标签，可用于下发任务时进行过滤。
      */
@@ -22,6 +22,6 @@ package org.limbo.flowjob.worker.starter.properties;
  */
 public enum WorkerScheme {
 
-    http, https
+    http, https, tcp
 
 }